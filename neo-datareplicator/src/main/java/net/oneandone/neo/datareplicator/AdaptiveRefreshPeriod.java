@@ -0,0 +1,98 @@
+/*
+ * Copyright 1&1 Internet AG, https://github.com/1and1/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.oneandone.neo.datareplicator;
+
+
+import java.time.Duration;
+import java.util.Optional;
+import java.util.function.Supplier;
+
+import com.google.common.base.Preconditions;
+
+
+
+/**
+ * The refresh period of a replication job, which adapts to the modification history of the resource. The period 
+ * is bounded by the min and max period. After a modification the min period is used. As long as the resource is 
+ * unmodified or the refresh fails, the period is doubled each time (exponential backoff). A freshness lifetime 
+ * announced by the source (e.g. <i>Cache-Control: max-age</i>) is honored as lower limit. If the min and the max 
+ * period are equal, the period is fixed     
+ */
+final class AdaptiveRefreshPeriod implements Supplier<Duration> {
+    private final Duration minPeriod;
+    private final Duration maxPeriod;
+    
+    // guarded by this
+    private Duration backoffPeriod;
+    private Optional<Duration> freshnessLifetime = Optional.empty();
+    
+    
+    /**
+     * @param minPeriod  the min period
+     * @param maxPeriod  the max period
+     */
+    AdaptiveRefreshPeriod(final Duration minPeriod, final Duration maxPeriod) {
+        Preconditions.checkArgument(minPeriod.compareTo(maxPeriod) <= 0, "min period has to be less or equal max period");
+        this.minPeriod = minPeriod;
+        this.maxPeriod = maxPeriod;
+        this.backoffPeriod = minPeriod;
+    }
+    
+    
+    /**
+     * @param freshnessLifetime  the freshness lifetime announced by the source 
+     */
+    public synchronized void onModified(final Optional<Duration> freshnessLifetime) {
+        this.backoffPeriod = minPeriod;
+        this.freshnessLifetime = freshnessLifetime;
+    }
+    
+    /**
+     * @param freshnessLifetime  the freshness lifetime announced by the source 
+     */
+    public synchronized void onUnmodified(final Optional<Duration> freshnessLifetime) {
+        this.backoffPeriod = doubled(backoffPeriod);
+        this.freshnessLifetime = freshnessLifetime;
+    }
+    
+    public synchronized void onError() {
+        this.backoffPeriod = doubled(backoffPeriod);
+    }
+    
+    private Duration doubled(final Duration period) {
+        return (period.compareTo(maxPeriod.dividedBy(2)) > 0) ? maxPeriod : period.multipliedBy(2);
+    }
+    
+    /**
+     * @return the current period 
+     */
+    @Override
+    public synchronized Duration get() {
+        Duration period = backoffPeriod;
+        if (freshnessLifetime.isPresent() && (freshnessLifetime.get().compareTo(period) > 0)) {
+            period = freshnessLifetime.get();
+        }
+        return (period.compareTo(maxPeriod) > 0) ? maxPeriod 
+                                                 : (period.compareTo(minPeriod) < 0) ? minPeriod : period;
+    }
+    
+    
+    @Override
+    public String toString() {
+        return get().toString();
+    }
+}
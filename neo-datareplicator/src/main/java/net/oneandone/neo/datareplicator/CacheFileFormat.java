@@ -0,0 +1,182 @@
+/*
+ * Copyright 1&1 Internet AG, https://github.com/1and1/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.oneandone.neo.datareplicator;
+
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import com.google.common.io.ByteStreams;
+
+
+
+/**
+ * The format of the spooled and cached data files. By default a data file contains the raw data. A compressed
+ * data file starts with a header which records the codec followed by the compressed data. Files without the
+ * header (e.g. written by former versions) will be read as raw data  
+ */
+final class CacheFileFormat {
+    
+    private static final byte[] COMPRESSED_HEADER_MAGIC = new byte[] { 0x00, 'N', 'D', 'R', 'Z', 0x00 };
+    private static final byte CODEC_GZIP = 1;
+    private static final int HEADER_LENGTH = COMPRESSED_HEADER_MAGIC.length + 1;
+    private static final int BUFFER_SIZE = 64 * 1024;
+    
+    
+    private CacheFileFormat() { }
+    
+
+    /**
+     * @param file        the data file to write
+     * @param compressed  true, if the data should be written compressed 
+     * @return the output stream. The caller is responsible to close the stream
+     * @throws IOException if an I/O error occurs
+     */
+    public static OutputStream newOutputStream(final File file, final boolean compressed) throws IOException {
+        return newOutputStream(file, compressed, false);
+    }
+    
+    /**
+     * @param file        the data file to write
+     * @param compressed  true, if the data should be written compressed 
+     * @param synced      true, if the data should be synced to disk by closing the stream 
+     * @return the output stream. The caller is responsible to close the stream
+     * @throws IOException if an I/O error occurs
+     */
+    public static OutputStream newOutputStream(final File file, final boolean compressed, final boolean synced) throws IOException {
+        final OutputStream os = new FileChannelOutputStream(FileChannel.open(file.toPath(), 
+                                                                            StandardOpenOption.CREATE, 
+                                                                            StandardOpenOption.TRUNCATE_EXISTING, 
+                                                                            StandardOpenOption.WRITE), 
+                                                            synced);
+        if (compressed) {
+            try {
+                os.write(COMPRESSED_HEADER_MAGIC);
+                os.write(CODEC_GZIP);
+                return new GZIPOutputStream(os, BUFFER_SIZE);
+            } catch (final IOException ioe) {
+                os.close();
+                throw ioe;
+            }
+        } else {
+            return os;
+        }
+    }
+
+    
+    /**
+     * @param file    the raw (uncompressed) data file to append to
+     * @param synced  true, if the data should be synced to disk by closing the stream 
+     * @return the output stream, which appends the written bytes. The caller is responsible to close the stream
+     * @throws IOException if an I/O error occurs
+     */
+    public static OutputStream newAppendingOutputStream(final File file, final boolean synced) throws IOException {
+        return new FileChannelOutputStream(FileChannel.open(file.toPath(), StandardOpenOption.WRITE, StandardOpenOption.APPEND), synced);
+    }
+
+    
+    /**
+     * @param file  the data file to read 
+     * @return the stream of the (decompressed) data. The caller is responsible to close the stream
+     * @throws IOException if an I/O error occurs
+     */
+    public static InputStream newInputStream(final File file) throws IOException {
+        final InputStream is = new BufferedInputStream(new FileInputStream(file), BUFFER_SIZE);
+        try {
+            is.mark(HEADER_LENGTH);
+            final byte[] header = new byte[HEADER_LENGTH];
+            final int read = ByteStreams.read(is, header, 0, HEADER_LENGTH);
+            
+            if ((read == HEADER_LENGTH) && isCompressedHeader(header)) {
+                if (header[COMPRESSED_HEADER_MAGIC.length] == CODEC_GZIP) {
+                    return new GZIPInputStream(is, BUFFER_SIZE);
+                } else {
+                    throw new IOException(file.getAbsolutePath() + " is compressed by an unsupported codec " + header[COMPRESSED_HEADER_MAGIC.length]);
+                }
+            } else {
+                is.reset();
+                return is;
+            }
+        } catch (final IOException ioe) {
+            is.close();
+            throw ioe;
+        }
+    }
+    
+    
+    /**
+     * @param file  the data file 
+     * @return true, if the data file is compressed
+     * @throws IOException if an I/O error occurs
+     */
+    public static boolean isCompressed(final File file) throws IOException {
+        try (InputStream is = new FileInputStream(file)) {
+            final byte[] header = new byte[HEADER_LENGTH];
+            return (ByteStreams.read(is, header, 0, HEADER_LENGTH) == HEADER_LENGTH) && isCompressedHeader(header);
+        }
+    }
+    
+    private static boolean isCompressedHeader(final byte[] header) {
+        return Arrays.equals(COMPRESSED_HEADER_MAGIC, Arrays.copyOf(header, COMPRESSED_HEADER_MAGIC.length));
+    }
+    
+    
+    
+    private static final class FileChannelOutputStream extends OutputStream {
+        private final FileChannel channel;
+        private final boolean synced;
+        
+        FileChannelOutputStream(final FileChannel channel, final boolean synced) {
+            this.channel = channel;
+            this.synced = synced;
+        }
+        
+        @Override
+        public void write(final int b) throws IOException {
+            write(new byte[] { (byte) b }, 0, 1);
+        }
+        
+        @Override
+        public void write(final byte[] b, final int off, final int len) throws IOException {
+            final ByteBuffer buffer = ByteBuffer.wrap(b, off, len);
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        }
+        
+        @Override
+        public void close() throws IOException {
+            try {
+                if (synced && channel.isOpen()) {
+                    channel.force(false);   // the file size is synced as well
+                }
+            } finally {
+                channel.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,78 @@
+/*
+ * Copyright 1&1 Internet AG, https://github.com/1and1/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.oneandone.neo.datareplicator;
+
+
+import java.time.Instant;
+import java.util.Objects;
+import java.util.Optional;
+
+
+
+/**
+ * A version of the replicated data, which is retained by the local cache (see {@link ReplicationJob#getVersions()})
+ */
+public final class CachedVersion {
+    private final Instant timestamp;
+    private final String fingerprint;
+    private final Optional<String> etag;
+    
+    
+    CachedVersion(final Instant timestamp, final String fingerprint, final Optional<String> etag) {
+        this.timestamp = timestamp;
+        this.fingerprint = fingerprint;
+        this.etag = etag;
+    }
+    
+    /**
+     * @return the time the version has been written into the cache 
+     */
+    public Instant getTimestamp() {
+        return timestamp;
+    }
+    
+    /**
+     * @return the fingerprint of the data (hex-encoded 128 bit hash of the content)
+     */
+    public String getFingerprint() {
+        return fingerprint;
+    }
+    
+    /**
+     * @return the ETag of the data, if provided by the source
+     */
+    public Optional<String> getEtag() {
+        return etag;
+    }
+    
+    @Override
+    public boolean equals(final Object other) {
+        return (other instanceof CachedVersion) && 
+               ((CachedVersion) other).timestamp.equals(timestamp) && 
+               ((CachedVersion) other).fingerprint.equals(fingerprint);
+    }
+    
+    @Override
+    public int hashCode() {
+        return Objects.hash(timestamp, fingerprint);
+    }
+    
+    @Override
+    public String toString() {
+        return timestamp + " (fingerprint=" + fingerprint + etag.map(tag -> ", etag=" + tag).orElse("") + ")";
+    }
+}
@@ -16,42 +16,205 @@
 package net.oneandone.neo.datareplicator;
 
 
-
-
-
 import java.nio.ByteBuffer;
-import java.nio.charset.CharacterCodingException;
 import java.nio.charset.Charset;
-import java.nio.charset.CharsetDecoder;
 
 import com.google.common.base.Charsets;
-import com.google.common.collect.ImmutableList;
-
-
 
 
-// THIS is a very rudimentary implementation!! BOM is not considered, ... 
-// TODO are the better implementations. BUT, dependency of this project should be minimal
-// for this reason avoid to add additional dependencies to other projects. May code copy could be a solution.
-// This depends on the amount of code and on the license of the code to copy  
 
 
-class CharsetDetector {
+/**
+ * Detects the charset of text data without a declared charset. The detection considers the BOM. Data
+ * without BOM is validated as UTF-8 within a single pass over a bounded prefix. If the prefix is not 
+ * valid UTF-8, a single-byte charset is assumed. The detector does not copy or decode the data
+ */
+final class CharsetDetector {
+    
+    /**
+     * the max number of bytes to scan. The prefix will be extended, as long as it contains ASCII bytes only
+     */
+    static final int MAX_SCAN_LENGTH = 64 * 1024;
+    
+    private static final Charset UTF_32BE = Charset.forName("UTF-32BE");
+    private static final Charset UTF_32LE = Charset.forName("UTF-32LE");
+    private static final Charset ISO_8859_15 = Charset.forName("ISO-8859-15");
+    private static final Charset WINDOWS_1252 = Charset.forName("windows-1252");
+    
+    
+    private CharsetDetector() { }
+    
+    
+    /**
+     * @param binary  the data 
+     * @return the guessed charset 
+     */
+    public static Charset guessEncoding(final byte[] binary) {
+        return detect(binary).getCharset();
+    }
 
-    private static final ImmutableList<Charset> CHARSETS_TO_TESTED = ImmutableList.of(Charset.forName("UTF-8"),
-                                                                                      Charset.forName("ISO-8859-15"), 
-                                                                                      Charset.forName("windows-1253"));
+    /**
+     * @param binary  the data
+     * @return the detected charset and the length of the BOM 
+     */
+    public static Detection detect(final byte[] binary) {
+        
+        // BOM? (UTF-32 has to be checked first, the UTF-32LE BOM starts with the UTF-16LE BOM)
+        if (startsWith(binary, 0x00, 0x00, 0xFE, 0xFF)) {
+            return new Detection(UTF_32BE, 4);
+        } else if (startsWith(binary, 0xFF, 0xFE, 0x00, 0x00)) {
+            return new Detection(UTF_32LE, 4);
+        } else if (startsWith(binary, 0xEF, 0xBB, 0xBF)) {
+            return new Detection(Charsets.UTF_8, 3);
+        } else if (startsWith(binary, 0xFE, 0xFF)) {
+            return new Detection(Charsets.UTF_16BE, 2);
+        } else if (startsWith(binary, 0xFF, 0xFE)) {
+            return new Detection(Charsets.UTF_16LE, 2);
+        }
+        
+        return new Detection(isUtf8(binary) ? Charsets.UTF_8 : guessSingleByteEncoding(binary), 0);
+    }
     
-    public static Charset guessEncoding(byte[] binary) {
-        for (Charset charset : CHARSETS_TO_TESTED) {
-            try {
-                final CharsetDecoder decoder = charset.newDecoder();
-                decoder.reset();
-                decoder.decode(ByteBuffer.wrap(binary));
-                return charset;
-            } catch (CharacterCodingException ignore) { }
+    private static boolean startsWith(final byte[] binary, final int... bom) {
+        if (binary.length < bom.length) {
+            return false;
+        }
+        for (int i = 0; i < bom.length; i++) {
+            if ((binary[i] & 0xFF) != bom[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+    
+    
+    /**
+     * validates the prefix as UTF-8 (well-formed sequences only, no overlong encodings, no surrogates)
+     */
+    static boolean isUtf8(final byte[] binary) {
+        final ByteBuffer buffer = ByteBuffer.wrap(binary);
+        int limit = Math.min(binary.length, MAX_SCAN_LENGTH);
+        boolean isAsciiOnly = true;
+        
+        int i = 0;
+        while (true) {
+            i = skipAscii(buffer, i, limit);
+            if (i == limit) {
+                if (isAsciiOnly && (limit < binary.length)) {
+                    // no evidence so far -> extend the prefix 
+                    limit = Math.min(binary.length, limit + MAX_SCAN_LENGTH);
+                    continue;
+                } else {
+                    return true;
+                }
+            }
+            isAsciiOnly = false;
+            
+            final int b = binary[i] & 0xFF;
+            
+            // multi-byte sequence
+            final int numTrailing;
+            int min = 0x80;
+            int max = 0xBF;
+            if ((b >= 0xC2) && (b <= 0xDF)) {
+                numTrailing = 1;
+            } else if ((b >= 0xE0) && (b <= 0xEF)) {
+                numTrailing = 2;
+                if (b == 0xE0) {
+                    min = 0xA0;   // overlong 
+                } else if (b == 0xED) {
+                    max = 0x9F;   // surrogates
+                }
+            } else if ((b >= 0xF0) && (b <= 0xF4)) {
+                numTrailing = 3;
+                if (b == 0xF0) {
+                    min = 0x90;   // overlong
+                } else if (b == 0xF4) {
+                    max = 0x8F;   // > U+10FFFF
+                }
+            } else {
+                return false;
+            }
+            
+            for (int j = 1; j <= numTrailing; j++) {
+                if (i + j >= binary.length) {
+                    return false;                     // truncated sequence at the end of the data 
+                } else if (i + j >= limit) {
+                    return true;                      // sequence is cut by the end of the prefix
+                }
+                
+                final int trailing = binary[i + j] & 0xFF;
+                if ((trailing < ((j == 1) ? min : 0x80)) || (trailing > ((j == 1) ? max : 0xBF))) {
+                    return false;
+                }
+            }
+            i += numTrailing + 1;
+        }
+    }
+    
+    private static int skipAscii(final ByteBuffer buffer, final int offset, final int limit) {
+        int i = offset;
+        
+        // 8 bytes at once
+        while ((i + 8 <= limit) && ((buffer.getLong(i) & 0x8080808080808080L) == 0)) {
+            i += 8;
+        }
+        
+        while ((i < limit) && (buffer.get(i) >= 0)) {
+            i++;
+        }
+        return i;
+    }
+    
+    private static Charset guessSingleByteEncoding(final byte[] binary) {
+        // the range 0x80-0x9F contains control chars only in context of ISO-8859-x. However, windows-1252
+        // uses this range for printable chars such as the euro sign or typographic quotes
+        boolean isWindows1252 = false;
+        final int limit = Math.min(binary.length, MAX_SCAN_LENGTH);
+        for (int i = 0; i < limit; i++) {
+            final int b = binary[i] & 0xFF;
+            if ((b >= 0x80) && (b <= 0x9F)) {
+                if ((b == 0x81) || (b == 0x8D) || (b == 0x8F) || (b == 0x90) || (b == 0x9D)) {
+                    return ISO_8859_15;    // undefined in windows-1252 
+                }
+                isWindows1252 = true;
+            }
+        }
+        
+        return isWindows1252 ? WINDOWS_1252 : ISO_8859_15;
+    }
+    
+    
+    
+    /**
+     * the result of a detection
+     */
+    static final class Detection {
+        private final Charset charset;
+        private final int bomLength;
+        
+        Detection(final Charset charset, final int bomLength) {
+            this.charset = charset;
+            this.bomLength = bomLength;
+        }
+        
+        /**
+         * @return the detected charset
+         */
+        public Charset getCharset() {
+            return charset;
+        }
+        
+        /**
+         * @return the length of the BOM or 0, if the data has no BOM
+         */
+        public int getBomLength() {
+            return bomLength;
+        }
+        
+        @Override
+        public String toString() {
+            return charset.name() + ((bomLength > 0) ? " (BOM)" : "");
         }
- 
-        return Charsets.UTF_8;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,174 @@
+/*
+ * Copyright 1&1 Internet AG, https://github.com/1and1/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.oneandone.neo.datareplicator;
+
+
+import java.net.URI;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Preconditions;
+
+
+
+/**
+ * Per-host circuit breaker, which is shared by all replication jobs of the host (JVM-wide). A shared circuit 
+ * breaker is removed from the registry, if it is released by the last user (see {@link #release()}). The circuit
+ * breaker opens after a number of consecutive failed calls. While open, calls are rejected. After the 
+ * open duration a single probe call is let through. If the probe call succeeds, the circuit breaker will
+ * be closed. Otherwise it will be opened again
+ */
+final class CircuitBreaker {
+    private static final Logger LOG = LoggerFactory.getLogger(CircuitBreaker.class);
+    
+    static final int DEFAULT_FAILURE_THRESHOLD = 5;
+    static final Duration DEFAULT_OPEN_DURATION = Duration.ofSeconds(30);
+    
+    private static final ConcurrentMap<String, CircuitBreaker> CIRCUIT_BREAKERS = new ConcurrentHashMap<>();
+
+    private final String host;
+    private final int failureThreshold;
+    private final Duration openDuration;
+    
+    // guarded by the registry entry of the host (see forHost and release) 
+    private int numUsers = 0;
+    
+    // guarded by this
+    private CircuitState state = CircuitState.CLOSED;
+    private int numConsecutiveFailures = 0;
+    private Instant stateChanged = Instant.now();
+    
+    
+    /**
+     * @param host              the host (including the port, if present) 
+     * @param failureThreshold  the number of consecutive failed calls which opens the circuit breaker
+     * @param openDuration      the duration calls will be rejected before a probe call is let through
+     */
+    CircuitBreaker(final String host, final int failureThreshold, final Duration openDuration) {
+        Preconditions.checkArgument(failureThreshold > 0, "failure threshold has to be greater than 0");
+        this.host = host;
+        this.failureThreshold = failureThreshold;
+        this.openDuration = openDuration;
+    }
+    
+    /**
+     * @param uri  the uri 
+     * @return the shared circuit breaker of the host of the uri. The circuit breaker has to be released, if it is
+     *         not used anymore (see {@link #release()}) 
+     */
+    static CircuitBreaker forHost(final URI uri) {
+        return CIRCUIT_BREAKERS.compute(toHost(uri), (name, registered) -> {
+            final CircuitBreaker circuitBreaker = (registered == null) ? new CircuitBreaker(name, DEFAULT_FAILURE_THRESHOLD, DEFAULT_OPEN_DURATION) 
+                                                                       : registered;
+            circuitBreaker.numUsers++;
+            return circuitBreaker;
+        });
+    }
+    
+    /**
+     * @param uri  the uri
+     * @return true, if a shared circuit breaker of the host of the uri is registered
+     */
+    static boolean isRegistered(final URI uri) {
+        return CIRCUIT_BREAKERS.containsKey(toHost(uri));
+    }
+
+    private static String toHost(final URI uri) {
+        return (uri.getPort() == -1) ? uri.getHost().toLowerCase() : uri.getHost().toLowerCase() + ":" + uri.getPort();
+    }
+    
+    /**
+     * releases a shared circuit breaker (see {@link #forHost(URI)}). The circuit breaker will be removed from the 
+     * registry, if it is released by the last user. A new circuit breaker of the host starts closed 
+     */
+    void release() {
+        CIRCUIT_BREAKERS.computeIfPresent(host, (name, registered) -> ((registered == this) && (--numUsers == 0)) ? null : registered);
+    }
+    
+    /**
+     * @return the current state
+     */
+    public synchronized CircuitState getState() {
+        return state;
+    }
+    
+    /**
+     * acquires the permission to perform a call. The result of a permitted call has to be reported by
+     * {@link #onSuccess()} or {@link #onFailure()}
+     *   
+     * @throws ReplicationException if the call is rejected  
+     */
+    public synchronized void acquirePermission() throws ReplicationException {
+        final boolean isExpired = Instant.now().isAfter(stateChanged.plus(openDuration));
+        switch (state) {
+        
+        case OPEN:
+            if (isExpired) {
+                // let the probe call through
+                setState(CircuitState.HALF_OPEN);
+                return;
+            }
+            break;
+            
+        case HALF_OPEN:
+            if (isExpired) {
+                // the result of the probe call has not been reported -> let another probe call through 
+                stateChanged = Instant.now();
+                return;
+            }
+            break;
+
+        default:
+            return;
+        }
+        
+        throw new ReplicationException("circuit breaker of " + host + " is " + state.toString().toLowerCase() + ". Call rejected");
+    }
+    
+    public synchronized void onSuccess() {
+        numConsecutiveFailures = 0;
+        if (state != CircuitState.CLOSED) {
+            setState(CircuitState.CLOSED);
+            LOG.info("circuit breaker of " + host + " closed");
+        }
+    }
+    
+    public synchronized void onFailure() {
+        numConsecutiveFailures++;
+        if ((state == CircuitState.HALF_OPEN) || ((state == CircuitState.CLOSED) && (numConsecutiveFailures >= failureThreshold))) {
+            setState(CircuitState.OPEN);
+            LOG.warn("circuit breaker of " + host + " opened after " + numConsecutiveFailures + " consecutive failed calls. " + 
+                     "Calls will be rejected for " + openDuration);
+        }
+    }
+    
+    private void setState(final CircuitState state) {
+        this.state = state;
+        this.stateChanged = Instant.now();
+    }
+    
+    
+    @Override
+    public String toString() {
+        return host + " " + getState();
+    }
+}
@@ -0,0 +1,43 @@
+/*
+ * Copyright 1&1 Internet AG, https://github.com/1and1/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.oneandone.neo.datareplicator;
+
+
+
+/**
+ * The state of the circuit breaker of a host. The circuit breaker is shared by all replication jobs of the 
+ * same host. It opens, if the calls of the host fail repeatedly. While open, calls fail fast without 
+ * contacting the host. After a while a single probe call is let through (half-open) to check whether the 
+ * host has recovered
+ */
+public enum CircuitState {
+    
+    /**
+     * calls are performed 
+     */
+    CLOSED,
+    
+    /**
+     * calls fail fast without contacting the host
+     */
+    OPEN,
+    
+    /**
+     * a single probe call is performed. Other calls fail fast until the probe call completes
+     */
+    HALF_OPEN;
+}
@@ -0,0 +1,112 @@
+/*
+ * Copyright 1&1 Internet AG, https://github.com/1and1/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.oneandone.neo.datareplicator;
+
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.JarURLConnection;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.net.URLConnection;
+import java.nio.file.Paths;
+import java.util.Optional;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+
+
+class ClasspathDatasource extends Datasource {
+    private static final Logger LOG = LoggerFactory.getLogger(ClasspathDatasource.class);
+
+    // validators of a resource which has been loaded from a jar file
+    private volatile Optional<Validators> jarResourceValidators = Optional.empty();
+
+    public ClasspathDatasource(final URI uri, final FileCache fileCache) {
+        super(uri, fileCache);
+    }
+
+    @Override
+    public Data load() throws ReplicationException {
+        // a resource of a jar file will not be modified while running (the class loader keeps the opened jar file). 
+        // After the first successful load the cached data is returned without looking up the jar file again. 
+        // The file attribute check is performed for resource files (exploded class directories) only
+        final Optional<Validators> jarValidators = jarResourceValidators;
+        if (jarValidators.isPresent() && isCached(jarValidators.get())) {
+            return getFileCache().load();
+        }
+
+        ClassLoader classLoader = Thread.currentThread().getContextClassLoader();
+        if (classLoader == null) {
+            classLoader = getClass().getClassLoader();
+        }
+
+        final URL classpathUri = classLoader.getResource(getEndpoint().getRawSchemeSpecificPart());
+        if (classpathUri == null) {
+            throw new RuntimeException("resource " + getEndpoint().getRawSchemeSpecificPart() + " not found in classpath");
+
+        } else {
+            try {
+                // cheap pre-check based on the attributes of the file which contains the resource (jar file or 
+                // resource file). The resource will be read only, if the file has been modified
+                final Validators validators = getValidators(classpathUri);
+                if (isCached(validators)) {
+                    return getFileCache().load();
+                }
+
+                final Data data;
+                try (InputStream is=classpathUri.openStream()) {
+                    data = getFileCache().spool(is, Optional.empty(), validators);
+                }
+                
+                if (isJarResource(classpathUri) && !validators.isEmpty()) {
+                    jarResourceValidators = Optional.of(validators);
+                }
+                return data;
+            } catch (final IOException ioe) {
+                throw new ReplicationException(ioe);
+            }
+        }
+    }
+
+    private static Validators getValidators(final URL classpathUri) {
+        try {
+            if (isJarResource(classpathUri)) {
+                final URLConnection connection = classpathUri.openConnection();
+                if (connection instanceof JarURLConnection) {
+                    final URL jarFileUrl = ((JarURLConnection) connection).getJarFileURL();
+                    if (jarFileUrl.getProtocol().equalsIgnoreCase("file")) {
+                        return Validators.ofFileAttributes(Paths.get(jarFileUrl.toURI()));
+                    }
+                }
+            } else if (classpathUri.getProtocol().equalsIgnoreCase("file")) {
+                return Validators.ofFileAttributes(Paths.get(classpathUri.toURI()));
+            }
+
+        } catch (final IOException | URISyntaxException | RuntimeException e) {
+            LOG.debug("could not read file attributes of " + classpathUri + ". Resource will be read", e);
+        }
+
+        return Validators.NONE;
+    }
+
+    private static boolean isJarResource(final URL classpathUri) {
+        return classpathUri.getProtocol().equalsIgnoreCase("jar");
+    }
+}
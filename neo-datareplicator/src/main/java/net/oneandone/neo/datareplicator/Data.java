@@ -0,0 +1,186 @@
+/*
+ * Copyright 1&1 Internet AG, https://github.com/1and1/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.oneandone.neo.datareplicator;
+
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.MappedByteBuffer;
+import java.nio.charset.Charset;
+import java.util.Optional;
+
+import com.google.common.hash.HashCode;
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+import com.google.common.io.ByteSource;
+
+
+
+/**
+ * internal data representation. The data is backed by a file, which is a spooled temp file or a committed cache file 
+ */
+interface Data {
+
+    /**
+     * fast non-cryptographic hash function which is used to detect modifications 
+     */
+    static final HashFunction FINGERPRINT_FUNCTION = Hashing.murmur3_128();
+
+    /**
+     * @return the content fingerprint (128 bit murmur3 hash) of the data  
+     */
+    HashCode getFingerprint();
+
+    Validators getValidators();
+
+    /**
+     * @return the declared charset, if known
+     */
+    Optional<Charset> getCharset();
+
+    /**
+     * @return the file which contains the data
+     */
+    File getFile();
+
+    /**
+     * @return the length of the data. If the data file is compressed, the length of the decompressed data
+     * @throws ReplicationException if the data file can not be read
+     */
+    long getLength() throws ReplicationException;
+
+    /**
+     * @return the (decompressed) data stream. The caller is responsible to close the stream
+     * @throws ReplicationException if the data file can not be opened
+     */
+    InputStream openStream() throws ReplicationException;
+
+    /**
+     * @return the read-only memory-mapped data file
+     * @throws ReplicationException if the data file can not be mapped (e.g. the data file is compressed)
+     */
+    MappedByteBuffer asMappedBuffer() throws ReplicationException;
+
+    /**
+     * @return the original (decompressed) bytes. The bytes will not be transcoded, even though a charset is declared  
+     */
+    byte[] asBinary();
+
+    /**
+     * @return the text which is decoded by using the declared charset or the detected charset. The text will be 
+     *         decoded once and kept as long as memory is available 
+     */
+    String asText();
+
+    /**
+     * @return the delta, if the data has been created by appending bytes to a former version (see append mode)
+     */
+    Optional<Delta> getDelta();
+
+
+    
+    
+    /**
+     * @param file        the data file 
+     * @param charset     the declared charset 
+     * @param validators  the validators 
+     * @return the data
+     * @throws ReplicationException if the fingerprint of the data file can not be computed
+     */
+    static Data of(final File file, final Optional<Charset> charset, final Validators validators) throws ReplicationException {
+        try {
+            final ByteSource source = new ByteSource() {
+                @Override
+                public InputStream openStream() throws IOException {
+                    return CacheFileFormat.newInputStream(file);
+                }
+            };
+            return of(file, charset, validators, source.hash(FINGERPRINT_FUNCTION));
+        } catch (final IOException ioe) {
+            throw new ReplicationException("computing fingerprint of " + file.getAbsolutePath() + " failed", ioe);
+        }
+    }
+    
+    /**
+     * @param file        the data file 
+     * @param charset     the declared charset 
+     * @param validators  the validators 
+     * @param fingerprint the fingerprint of the data file  
+     * @return the data
+     */
+    static Data of(final File file, final Optional<Charset> charset, final Validators validators, final HashCode fingerprint) {
+        return of(file, charset, validators, fingerprint, Optional.empty(), Optional.empty());
+    }
+
+    /**
+     * @param file        the data file
+     * @param charset     the declared charset
+     * @param validators  the validators
+     * @param fingerprint the fingerprint of the data file
+     * @param delta       the delta, if the data has been created by appending bytes to a former version
+     * @param length      the length of the (uncompressed) data, if known
+     * @return the data
+     */
+    static Data of(final File file, 
+                   final Optional<Charset> charset, 
+                   final Validators validators, 
+                   final HashCode fingerprint, 
+                   final Optional<Delta> delta,
+                   final Optional<Long> length) {
+        return charset.map(cs -> (Data) new MimeTypeBasedDecodingData(file, cs, validators, fingerprint, delta, length))
+                      .orElseGet(() -> new HeuristicsDecodingData(file, validators, fingerprint, delta, length));
+    }
+
+
+
+    /**
+     * describes data which consists of a former version (the base) followed by appended bytes
+     */
+    static final class Delta {
+        private final long offset;
+        private final HashCode baseFingerprint;
+
+        /**
+         * @param offset           the offset of the appended bytes, which is the length of the base
+         * @param baseFingerprint  the fingerprint of the base
+         */
+        Delta(final long offset, final HashCode baseFingerprint) {
+            this.offset = offset;
+            this.baseFingerprint = baseFingerprint;
+        }
+
+        /**
+         * @return the offset of the appended bytes, which is the length of the base
+         */
+        public long getOffset() {
+            return offset;
+        }
+
+        /**
+         * @return the fingerprint of the base
+         */
+        public HashCode getBaseFingerprint() {
+            return baseFingerprint;
+        }
+
+        @Override
+        public String toString() {
+            return "appended at " + offset + " to " + baseFingerprint;
+        }
+    }
+}
@@ -0,0 +1,98 @@
+/*
+ * Copyright 1&1 Internet AG, https://github.com/1and1/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.oneandone.neo.datareplicator;
+
+
+import java.io.Closeable;
+import java.net.URI;
+import java.time.Duration;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+
+
+
+abstract class Datasource implements Closeable {
+    private final URI uri;
+    private final FileCache fileCache;
+
+    public Datasource(final URI uri, final FileCache fileCache) {
+        this.uri = uri;
+        this.fileCache = fileCache;
+    }
+
+    @Override
+    public void close() { }
+
+    public URI getEndpoint() {
+        return uri;
+    }
+
+    protected FileCache getFileCache() {
+        return fileCache;
+    }
+
+    /**
+     * @param validators  the validators of the source
+     * @return true, if the validators are equal to the validators of the cached data
+     */
+    protected boolean isCached(final Validators validators) {
+        return !validators.isEmpty() && validators.equals(fileCache.getValidators());
+    }
+
+    /**
+     * @return the loaded data. The data is spooled into a temp file of the file cache
+     * @throws ReplicationException if the data can not be loaded 
+     */
+    public abstract Data load() throws ReplicationException;
+
+    /**
+     * loads the data without blocking the calling thread, if supported by the data source. By default the data
+     * will be loaded within the calling thread
+     *
+     * @return the loaded data. The data is spooled into a temp file of the file cache
+     */
+    public CompletableFuture<Data> loadAsync() {
+        final CompletableFuture<Data> promise = new CompletableFuture<>();
+        try {
+            promise.complete(load());
+        } catch (final RuntimeException rt) {
+            promise.completeExceptionally(rt);
+        }
+        return promise;
+    }
+
+    /**
+     * @return the freshness lifetime announced by the source with the last load or empty, if no freshness 
+     *         lifetime has been announced. By default no freshness lifetime is announced 
+     */
+    public Optional<Duration> getFreshnessLifetime() {
+        return Optional.empty();
+    }
+
+    /**
+     * @return the state of the circuit breaker which protects the source. By default the source is not protected 
+     *         by a circuit breaker, which means it is always closed
+     */
+    public CircuitState getCircuitState() {
+        return CircuitState.CLOSED;
+    }
+
+    @Override
+    public String toString() {
+        return "[" + this.getClass().getSimpleName() + "] uri=" + uri;
+    }
+}
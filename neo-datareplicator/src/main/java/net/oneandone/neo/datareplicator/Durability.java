@@ -0,0 +1,44 @@
+/*
+ * Copyright 1&1 Internet AG, https://github.com/1and1/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.oneandone.neo.datareplicator;
+
+
+
+/**
+ * The durability level of the cache writes. Independent of the durability level a new cache file becomes 
+ * visible by an atomic rename. However, without syncing the file system may reorder the rename and the 
+ * writes of the data, which means that a power loss may leave empty or truncated cache files. Such cache
+ * files are detected by checking the integrity of the cache file and will be ignored
+ */
+public enum Durability {
+    
+    /**
+     * the cache files are not synced. The operating system decides when the data is written to disk
+     */
+    NONE, 
+    
+    /**
+     * the data of the cache files is synced to disk before the cache file becomes visible 
+     */
+    DATA, 
+    
+    /**
+     * the data of the cache files is synced to disk before the cache file becomes visible. Additionally the
+     * cache dir is synced after renaming, which makes the new cache file itself durable (if supported by the platform)
+     */
+    DATA_AND_DIR;
+}
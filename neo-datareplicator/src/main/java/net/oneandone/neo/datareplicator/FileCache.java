@@ -0,0 +1,940 @@
+/*
+ * Copyright 1&1 Internet AG, https://github.com/1and1/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.oneandone.neo.datareplicator;
+
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Optional;
+import java.util.Properties;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Consumer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hashing;
+import com.google.common.hash.HashingInputStream;
+import com.google.common.io.ByteStreams;
+
+import net.oneandone.neo.collect.Immutables;
+
+
+
+final class FileCache {
+    private static final Logger LOG = LoggerFactory.getLogger(FileCache.class);
+
+    private static final String TEMPFILE_SUFFIX = ".temp";
+    private static final String CACHEFILE_SUFFIX = ".cache";
+    private static final String METADATAFILE_SUFFIX = ".meta";
+    private static final String SNAPSHOTFILE_SUFFIX = ".snapshot";
+    private static final String SNAPSHOT_KEY_SEPARATOR = "-";
+    private static final String INDEXFILE_NAME = "newest.index";
+    private static final String LOCKFILE_NAME = "leader.lock";
+    private static final int MAX_INDEX_WRITE_ATTEMPTS = 3;
+
+    private static final String FINGERPRINT = "fingerprint";
+    private static final String CHARSET = "charset";
+    private static final String ETAG = "etag";
+    private static final String LAST_MODIFIED = "lastModified";
+    private static final String FILE_LENGTH = "fileLength";
+    private static final String FINGERPRINT_STATE = "fingerprintState";
+
+    private final File dir;
+    private final String genericCacheFileName;
+    private final File indexFile;
+    private final Duration maxCacheTime;
+    private final boolean compressed;
+    private final Durability durability;
+    private final int retainedVersions;
+    private final ConcurrentMap<String, Verification> verifications = Maps.newConcurrentMap();
+    private volatile Long oldestMetadataTimestamp = null;   // lazily looked up (see #predatesMetadata)
+    private final ConcurrentMap<String, String> fingerprintStates = Maps.newConcurrentMap();   // of the spooled data by temp file name
+
+
+    public FileCache(final File cacheDir, final String name, final Duration maxCacheTime) {
+        this(cacheDir, name, maxCacheTime, false, Durability.NONE, 1);
+    }
+
+    /**
+     * @param cacheDir          the cache dir
+     * @param name              the name of the cache entry
+     * @param maxCacheTime      the max cache time
+     * @param compressed        true, if new data files should be written compressed (see {@link CacheFileFormat})
+     * @param durability        the durability level of the cache writes
+     * @param retainedVersions  the number of versions to retain by cleaning up (including the newest one)
+     */
+    public FileCache(final File cacheDir, final String name, final Duration maxCacheTime, final boolean compressed, final Durability durability, final int retainedVersions) {
+        try {
+            this.retainedVersions = retainedVersions;
+            this.maxCacheTime = maxCacheTime;
+            this.compressed = compressed;
+            this.durability = durability;
+            this.dir = cacheDir.getCanonicalFile();
+            dir.mkdirs();  // will create cache dir, if necessary
+            if (!dir.exists()) {//if mkdir fails
+                throw new ReplicationException("could not create cache dir " + cacheDir);
+            }
+
+            // filename is base64 encoded to avoid trouble with special chars. The path separator '/' of the base64 
+            // alphabet is replaced by '-', which is not part of the alphabet (names without '/' remain unchanged)
+            this.genericCacheFileName = Base64.getEncoder().encodeToString(name.getBytes(Charsets.UTF_8)).replace('/', '-') + "_";
+
+            // the index file refers the newest cache file of the entry. This avoids scanning the cache dir, which
+            // may contain the cache files of many entries
+            this.indexFile = new File(dir, genericCacheFileName + INDEXFILE_NAME);
+
+        } catch (final IOException ioe) {
+            throw new ReplicationException(ioe);
+        }
+    }
+
+
+    /**
+     * writes the stream into a new temp file of the cache dir. The stream is copied chunk-wise, which means
+     * the data is not kept in memory. The fingerprint of the (uncompressed) data is computed while copying
+     *
+     * @param is          the stream to spool
+     * @param charset     the declared charset
+     * @param validators  the validators
+     * @return the spooled data
+     * @throws IOException if an I/O error occurs
+     */
+    public Data spool(final InputStream is, final Optional<Charset> charset, final Validators validators) throws IOException {
+        final File tempFile = new File(dir, UUID.randomUUID().toString() + TEMPFILE_SUFFIX);
+        final ResumableFingerprint fingerprint = new ResumableFingerprint();
+        try (OutputStream os = fingerprint.wrap(CacheFileFormat.newOutputStream(tempFile, compressed, isSynced()))) {
+            final long length = ByteStreams.copy(is, os);
+            fingerprintStates.put(tempFile.getName(), fingerprint.getState());   // will be recorded by the metadata to append to the data 
+            return Data.of(tempFile, charset, validators, fingerprint.hash(), Optional.empty(), Optional.of(length));
+        } catch (final IOException | RuntimeException e) {
+            delete(tempFile);
+            throw e;
+        }
+    }
+
+
+    /**
+     * writes the base data followed by the stream into a new temp file of the cache dir. Only the appended bytes 
+     * are read from the stream. The base is copied by the file system (copy-on-write, if supported by the platform). 
+     * The fingerprint of the resulting data is computed by resuming the fingerprint state recorded by the metadata 
+     * of the base, which means only the appended bytes are hashed. The base will be read to compute the fingerprint, 
+     * if no state is recorded (e.g. written by a former version). Appending to a compressed cache is not supported. 
+     * The appended data is written uncompressed
+     *
+     * @param base        the data to append to
+     * @param is          the stream of the bytes to append
+     * @param charset     the declared charset
+     * @param validators  the validators
+     * @return the spooled data
+     * @throws IOException if an I/O error occurs
+     */
+    public Data spoolAppended(final Data base, final InputStream is, final Optional<Charset> charset, final Validators validators) throws IOException {
+        Preconditions.checkState(!compressed, "appending to compressed cache files is not supported");
+        
+        final File tempFile = new File(dir, UUID.randomUUID().toString() + TEMPFILE_SUFFIX);
+        try {
+            if (CacheFileFormat.isCompressed(base.getFile())) {
+                // e.g. written before the cache compression has been deactivated
+                try (OutputStream os = CacheFileFormat.newOutputStream(tempFile, false); InputStream baseStream = base.openStream()) {
+                    ByteStreams.copy(baseStream, os);
+                }
+            } else {
+                java.nio.file.Files.copy(base.getFile().toPath(), tempFile.toPath());
+            }
+            
+            final long offset = tempFile.length();
+            final ResumableFingerprint fingerprint = readMetadata(base.getFile()).map(props -> props.getProperty(FINGERPRINT_STATE))
+                                                                                 .flatMap(ResumableFingerprint::resume)
+                                                                                 .filter(state -> state.getLength() == offset)
+                                                                                 .orElseGet(() -> computeFingerprint(tempFile));
+            
+            final long length;
+            try (OutputStream os = fingerprint.wrap(CacheFileFormat.newAppendingOutputStream(tempFile, isSynced()))) {
+                length = offset + ByteStreams.copy(is, os);
+            }
+            fingerprintStates.put(tempFile.getName(), fingerprint.getState());
+            return Data.of(tempFile, charset, validators, fingerprint.hash(), Optional.of(new Data.Delta(offset, base.getFingerprint())), Optional.of(length));
+            
+        } catch (final IOException | RuntimeException e) {
+            if (tempFile.exists()) {
+                delete(tempFile);
+            }
+            throw e;
+        }
+    }
+
+
+    private static ResumableFingerprint computeFingerprint(final File file) {
+        final ResumableFingerprint fingerprint = new ResumableFingerprint();
+        try (InputStream is = new FileInputStream(file); OutputStream os = fingerprint.wrap(ByteStreams.nullOutputStream())) {
+            ByteStreams.copy(is, os);
+            return fingerprint;
+        } catch (final IOException ioe) {
+            throw new ReplicationException("computing fingerprint of " + file.getAbsolutePath() + " failed", ioe);
+        }
+    }
+
+
+    /**
+     * @param data  the data
+     * @return true, if the data is a spooled temp file, which has not been committed
+     */
+    public boolean isSpooled(final Data data) {
+        return isTempFile(data.getFile());
+    }
+
+
+    /**
+     * removes the data file, if it is a spooled temp file which has not been committed
+     *
+     * @param data  the data
+     */
+    public void discard(final Data data) {
+        if (isTempFile(data.getFile())) {
+            fingerprintStates.remove(data.getFile().getName());
+        }
+        if (isTempFile(data.getFile()) && data.getFile().exists() && !FileLeases.isLeased(data.getFile())) {
+            delete(data.getFile());
+        }
+    }
+
+
+    /**
+     * commits the data. If the data is a spooled temp file, it becomes the newest cache file. If the data is
+     * already a cache file, the age of the cache file will be refreshed only
+     *
+     * @param data  the data to commit
+     * @return the committed data, which is backed by the cache file (see {@link #commit(Data, boolean)})
+     */
+    public Data commit(final Data data) {
+        return commit(data, true);
+    }
+
+
+    /**
+     * commits the data. If the data is a spooled temp file, it becomes the newest cache file. If the data is
+     * already a cache file, the age of the cache file will be refreshed only
+     *
+     * @param data     the data to commit
+     * @param cleanup  true, if former cache files should be removed. If false, the former cache files will be kept
+     *                 until {@link #cleanup()} is called (e.g. as long as they are referenced by a former group generation)
+     * @return the committed data, which is backed by the cache file. If committing fails, the spooled data 
+     */
+    public Data commit(final Data data, final boolean cleanup) {
+        if (!isTempFile(data.getFile())) {
+            touch();
+            return data;
+        }
+
+
+        // creates a new cache file with timestamp
+        final File cacheFile = new File(dir, genericCacheFileName + Instant.now().toEpochMilli() + CACHEFILE_SUFFIX);
+
+
+        /////
+        // why this "newest cache file" approach?
+        // this approach follows the immutable pattern and avoids race conditions by updating existing files. Instead
+        // updating the cache file which could cause trouble in the case of concurrent processes, new cache files will
+        // be written by using a timestamp as part of the file name.
+        ////
+
+        try {
+            // write the metadata file first. The metadata is part of the cache entry and has to exist as soon
+            // as the cache file becomes visible
+            final File tempMetadataFile = new File(dir, UUID.randomUUID().toString() + TEMPFILE_SUFFIX);
+            writeMetadata(data, tempMetadataFile);
+            final File metadataFile = toMetadataFile(cacheFile);
+            java.nio.file.Files.move(tempMetadataFile.toPath(), metadataFile.toPath(), StandardCopyOption.ATOMIC_MOVE);
+
+            // and commit the spooled data file (this renaming approach avoids "half-written" cache files. A cache file is there or not)
+            try {
+                java.nio.file.Files.move(data.getFile().toPath(), cacheFile.toPath(), StandardCopyOption.ATOMIC_MOVE);
+            } catch (final IOException ioe) {
+                // the metadata file would be orphaned  
+                delete(metadataFile);
+                throw ioe;
+            }
+            FileLeases.move(data.getFile(), cacheFile);
+            verifications.put(cacheFile.getName(), new Verification(cacheFile, true));
+            writeIndex(cacheFile);
+            syncDir();
+
+            // perform clean up to remove expired file
+            if (cleanup) {
+                cleanup();
+            }
+            
+            return Data.of(cacheFile, data.getCharset(), data.getValidators(), data.getFingerprint(), data.getDelta(), Optional.empty());
+
+        } catch (final IOException ioe) {
+            LOG.warn("writing cache file " + cacheFile.getAbsolutePath() + " failed", ioe);
+            return data;
+        }
+    }
+
+
+    /**
+     * refreshes the age of the newest cache file. Should be called, if the replicated data is still up to date
+     */
+    public void touch() {
+        getNewestCacheFile().ifPresent(file -> {
+            if (!file.setLastModified(Instant.now().toEpochMilli())) {
+                LOG.debug("failed to update last modified time of " + file.getName());
+            }
+        });
+    }
+
+
+    /**
+     * @return the validators of the newest cache file or {@link Validators#NONE}
+     */
+    public Validators getValidators() {
+        return getNewestCacheFile().flatMap(this::readMetadata)
+                                   .map(props -> Validators.of(props.getProperty(ETAG), props.getProperty(LAST_MODIFIED)))
+                                   .orElse(Validators.NONE);
+    }
+
+
+    /**
+     * @return the newest cache file. The data will not be read into memory
+     * @throws ReplicationException if no valid cache file exists
+     */
+    public Data load() throws ReplicationException {
+        return loadIfPresent().orElseThrow(() -> new ReplicationException("cache file not exists"));
+    }
+
+
+    /**
+     * @return the newest cache file or empty, if no valid cache file exists. The data will not be read into memory
+     */
+    public Optional<Data> loadIfPresent() {
+        return getNewestCacheFile().map(this::toData);
+    }
+
+
+    /**
+     * @param fingerprint  the fingerprint of the data
+     * @return the newest cache file with the given fingerprint or empty, if no valid cache file with this fingerprint
+     *         exists. Other than {@link #loadIfPresent()} former cache files are considered, too
+     */
+    public Optional<Data> loadIfPresent(final HashCode fingerprint) {
+        final Instant minLastModified = Instant.now().minus(maxCacheTime);
+        return getCacheFiles(listFiles()).stream()
+                              .filter(this::isValidCacheFileName)
+                              .filter(file -> Instant.ofEpochMilli(file.lastModified()).isAfter(minLastModified))
+                              .sorted((file1, file2) -> Long.compare(parseTimestamp(file2), parseTimestamp(file1)))  // newest first
+                              .filter(file -> readMetadata(file).map(props -> props.getProperty(FINGERPRINT))
+                                                                .map(HashCode::fromString)
+                                                                .equals(Optional.of(fingerprint)))
+                              .filter(this::isIntact)
+                              .findFirst()
+                              .map(this::toData);
+    }
+
+
+    /**
+     * @return the retained, non-expired versions, newest first. Cache files without metadata (written by former
+     *         versions) are not listed
+     */
+    public ImmutableList<CachedVersion> getVersions() {
+        final Instant minLastModified = Instant.now().minus(maxCacheTime);
+        return getCacheFiles(listFiles()).stream()
+                              .filter(this::isValidCacheFileName)
+                              .filter(file -> Instant.ofEpochMilli(file.lastModified()).isAfter(minLastModified))
+                              .sorted((file1, file2) -> Long.compare(parseTimestamp(file2), parseTimestamp(file1)))  // newest first
+                              .map(file -> readMetadata(file).filter(props -> props.getProperty(FINGERPRINT) != null)
+                                                             .map(props -> new CachedVersion(Instant.ofEpochMilli(parseTimestamp(file)),
+                                                                                             props.getProperty(FINGERPRINT),
+                                                                                             Optional.ofNullable(props.getProperty(ETAG)))))
+                              .filter(Optional::isPresent)
+                              .map(Optional::get)
+                              .collect(Immutables.toList());
+    }
+
+
+    /**
+     * @param version  the version
+     * @return the data of the version or empty, if the version is not available (anymore). The data will not be read into memory
+     */
+    public Optional<Data> loadVersion(final CachedVersion version) {
+        final File cacheFile = new File(dir, genericCacheFileName + version.getTimestamp().toEpochMilli() + CACHEFILE_SUFFIX);
+        return Optional.of(cacheFile)
+                       .filter(File::exists)
+                       .filter(file -> readMetadata(file).map(props -> props.getProperty(FINGERPRINT))
+                                                         .equals(Optional.of(version.getFingerprint())))
+                       .filter(this::isIntact)
+                       .map(this::toData);
+    }
+
+
+    /**
+     * makes the data of a former version the newest cache file. The cache file is hard linked (or copied, if
+     * hard links are not supported), which means the data is not transferred again. The validators of the current
+     * newest cache file are kept. This means that the source is considered as unmodified until it changes again
+     *
+     * @param data  the data of a former version
+     * @return the promoted data, which is backed by the newest cache file. If committing fails, the data of the former version
+     */
+    public Data promote(final Data data) {
+        final File tempFile = new File(dir, UUID.randomUUID().toString() + TEMPFILE_SUFFIX);
+        try {
+            try {
+                java.nio.file.Files.createLink(tempFile.toPath(), data.getFile().toPath());
+            } catch (final UnsupportedOperationException | IOException e) {
+                LOG.debug("hard linking " + data.getFile().getAbsolutePath() + " failed. Copying it", e);
+                java.nio.file.Files.copy(data.getFile().toPath(), tempFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+            final Data committed = commit(Data.of(tempFile, data.getCharset(), getValidators(), data.getFingerprint()));
+            return isSpooled(committed) ? data : committed;
+
+        } catch (final IOException ioe) {
+            throw new ReplicationException("promoting " + data.getFile().getAbsolutePath() + " failed", ioe);
+        } finally {
+            if (tempFile.exists()) {
+                delete(tempFile);
+            }
+        }
+    }
+
+
+    /**
+     * @return the leader lock of the cache entry. The lock is not acquired
+     */
+    public LeaderLock newLeaderLock() {
+        return new LeaderLock(new File(dir, genericCacheFileName + LOCKFILE_NAME));
+    }
+
+
+    /**
+     * @return the index file, which will be replaced each time a new cache file is committed
+     */
+    public File getIndexFile() {
+        return indexFile;
+    }
+
+
+    private Data toData(final File cacheFile) {
+        final Optional<Properties> metadata = readMetadata(cacheFile);
+        final Optional<Charset> charset = metadata.map(props -> props.getProperty(CHARSET)).map(Charset::forName);
+        final Validators validators = metadata.map(props -> Validators.of(props.getProperty(ETAG), props.getProperty(LAST_MODIFIED)))
+                                              .orElse(Validators.NONE);
+        final Optional<HashCode> fingerprint = metadata.map(props -> props.getProperty(FINGERPRINT)).map(HashCode::fromString);
+
+        return fingerprint.isPresent() ? Data.of(cacheFile, charset, validators, fingerprint.get())
+                                       : Data.of(cacheFile, charset, validators);
+    }
+
+
+    /**
+     * @param fingerprint  the fingerprint of the data the snapshot is derived from
+     * @param codecId      the id of the codec which has written the snapshot (including its format version)
+     * @return the (decompressed) snapshot stream or empty, if no snapshot exists. The caller is responsible to close the stream
+     */
+    public Optional<InputStream> openSnapshot(final HashCode fingerprint, final String codecId) {
+        final File snapshotFile = toSnapshotFile(fingerprint, codecId);
+        if (snapshotFile.exists()) {
+            try {
+                return Optional.of(CacheFileFormat.newInputStream(snapshotFile));
+            } catch (final IOException ioe) {
+                LOG.debug("reading snapshot file " + snapshotFile.getAbsolutePath() + " failed. Ignoring it", ioe);
+            }
+        }
+        return Optional.empty();
+    }
+
+
+    /**
+     * writes a snapshot which is derived from the data such as the parsed representation of the data. The 
+     * snapshot becomes visible after it has been written completely. Snapshots are removed together with the 
+     * cache file of the data (see {@link #cleanup()})
+     *
+     * @param fingerprint  the fingerprint of the data the snapshot is derived from
+     * @param codecId      the id of the codec which writes the snapshot (including its format version)
+     * @param writer       the writer which writes the snapshot into the given stream. The writer may throw a runtime exception
+     */
+    public void writeSnapshot(final HashCode fingerprint, final String codecId, final Consumer<OutputStream> writer) {
+        final File snapshotFile = toSnapshotFile(fingerprint, codecId);
+        final File tempFile = new File(dir, UUID.randomUUID().toString() + TEMPFILE_SUFFIX);
+        try {
+            try (OutputStream os = CacheFileFormat.newOutputStream(tempFile, compressed, isSynced())) {
+                writer.accept(os);
+            }
+            java.nio.file.Files.move(tempFile.toPath(), snapshotFile.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+
+        } catch (final IOException | RuntimeException e) {
+            LOG.warn("writing snapshot file " + snapshotFile.getAbsolutePath() + " failed", e);
+            if (tempFile.exists()) {
+                delete(tempFile);
+            }
+        }
+    }
+
+
+    private File toSnapshotFile(final HashCode fingerprint, final String codecId) {
+        // snapshots of different codecs (e.g. different value types) of the same data are kept apart. The codec id
+        // is hashed to get a file name safe key
+        final String codecKey = Hashing.murmur3_32().hashString(codecId, Charsets.UTF_8).toString();
+        return new File(dir, genericCacheFileName + fingerprint.toString() + SNAPSHOT_KEY_SEPARATOR + codecKey + SNAPSHOTFILE_SUFFIX);
+    }
+
+    private Optional<String> parseSnapshotFingerprint(final File snapshotFile) {
+        final String name = snapshotFile.getName();
+        final int separatorPos = name.indexOf(SNAPSHOT_KEY_SEPARATOR, genericCacheFileName.length());
+        return (separatorPos < 0) ? Optional.empty() : Optional.of(name.substring(genericCacheFileName.length(), separatorPos));
+    }
+
+
+    private void writeMetadata(final Data data, final File file) throws IOException {
+        final Properties props = new Properties();
+        props.setProperty(FINGERPRINT, data.getFingerprint().toString());
+        props.setProperty(FILE_LENGTH, Long.toString(data.getFile().length()));
+        Optional.ofNullable(fingerprintStates.remove(data.getFile().getName())).ifPresent(state -> props.setProperty(FINGERPRINT_STATE, state));
+        data.getCharset().ifPresent(charset -> props.setProperty(CHARSET, charset.name()));
+        data.getValidators().getEtag().ifPresent(etag -> props.setProperty(ETAG, etag));
+        data.getValidators().getLastModified().ifPresent(lastModified -> props.setProperty(LAST_MODIFIED, lastModified));
+
+        try (OutputStream os = CacheFileFormat.newOutputStream(file, false, isSynced())) {
+            props.store(os, null);
+        }
+    }
+
+
+    private Optional<Properties> readMetadata(final File cacheFile) {
+        final File metadataFile = toMetadataFile(cacheFile);
+        if (metadataFile.exists()) {
+            try (InputStream is = new FileInputStream(metadataFile)) {
+                final Properties props = new Properties();
+                props.load(is);
+                return Optional.of(props);
+            } catch (final IOException | RuntimeException e) {
+                LOG.debug("reading metadata file " + metadataFile.getAbsolutePath() + " failed. Ignoring it", e);
+            }
+        }
+        return Optional.empty();
+    }
+
+
+    private static File toMetadataFile(final File cacheFile) {
+        final String fileName = cacheFile.getName();
+        return new File(cacheFile.getParentFile(), fileName.substring(0, fileName.length() - CACHEFILE_SUFFIX.length()) + METADATAFILE_SUFFIX);
+    }
+
+
+    private boolean isTempFile(final File file) {
+        return file.getName().endsWith(TEMPFILE_SUFFIX);
+    }
+
+
+    /**
+     * @return the (most likely) newest cache file. It could happen that concurrent processes writes an new cache
+     *         file in parallel.
+     */
+    private Optional<File> getNewestCacheFile() {
+        // lookup the newest cache file by using the index. The cache dir will be scanned, if the index is
+        // missing or stale (e.g. written by a former version or the cache file has been removed or is corrupt)
+        File newestCacheFile = readIndex().filter(File::exists)
+                                          .filter(this::isIntact)
+                                          .orElseGet(() -> {
+                                              final File scanned = scanNewestCacheFile();
+                                              if (scanned != null) {
+                                                  writeIndex(scanned);   // repair the index
+                                              }
+                                              return scanned;
+                                          });
+
+
+        // check if newest cache file is expired
+        if (newestCacheFile != null) {
+            final Duration age = Duration.between(Instant.ofEpochMilli(newestCacheFile.lastModified()), Instant.now());
+            if (maxCacheTime.minus(age).isNegative()) {
+                LOG.warn("cache file is expired. Age is " + age.toDays() + " days. Ignoring it");
+                newestCacheFile = null;
+            }
+        }
+
+        return Optional.ofNullable(newestCacheFile);
+    }
+
+
+    private File scanNewestCacheFile() {
+        // find newest intact cache file. Corrupt cache files (e.g. truncated by a crash) will be skipped, which
+        // means that the previous version will be used
+        for (File file : getCacheFiles(listFiles()).stream()
+                                                   .filter(this::isValidCacheFileName)
+                                                   .sorted((file1, file2) -> Long.compare(parseTimestamp(file2), parseTimestamp(file1)))  // newest first
+                                                   .collect(Immutables.toList())) {
+            if (isIntact(file)) {
+                return file;
+            }
+        }
+
+        return null;
+    }
+
+
+    /**
+     * checks the integrity of the cache file by using the file length and the fingerprint recorded by the
+     * metadata. The result is memorized per cache file (its name, its length and the last modified time of its 
+     * metadata file), which means an unchanged cache file will not be checked again. The last modified time of the 
+     * cache file itself is not part of it, because it is refreshed by each unmodified refresh (see {@link #touch()}).
+     * Cache files without metadata are accepted only if they predate the metadata of the cache entry (written by
+     * former versions). Otherwise the metadata has been lost
+     * and the cache file can not be verified. A corrupt cache file is not removed by checking it, but by {@link #cleanup()}
+     */
+    private boolean isIntact(final File cacheFile) {
+        final Verification verification = verifications.get(cacheFile.getName());
+        if ((verification != null) && verification.isValidFor(cacheFile)) {
+            return verification.isIntact();
+        }
+
+        final String error = checkIntegrity(cacheFile);
+        if (error != null) {
+            LOG.warn("cache file " + cacheFile.getAbsolutePath() + " is corrupt (" + error + "). Ignoring it");
+        }
+        verifications.put(cacheFile.getName(), new Verification(cacheFile, error == null));
+        return error == null;
+    }
+
+
+    private boolean isKnownAsCorrupt(final File cacheFile) {
+        final Verification verification = verifications.get(cacheFile.getName());
+        return (verification != null) && verification.isValidFor(cacheFile) && !verification.isIntact();
+    }
+
+
+    private boolean predatesMetadata(final File cacheFile) {
+        // required for cache files without metadata only. The cache dir is listed once per instance
+        if (!isValidCacheFileName(cacheFile)) {
+            return false;
+        }
+        return parseTimestamp(cacheFile) <= getOldestMetadataTimestamp();
+    }
+
+
+    private long getOldestMetadataTimestamp() {
+        // the oldest metadata timestamp does not decrease, if found. New cache files are newer and cleaning up 
+        // removes the cache files, which are older than the removed metadata, as well
+        Long timestamp = oldestMetadataTimestamp;
+        if (timestamp == null) {
+            final String[] names = dir.list();
+            timestamp = (names == null) ? Long.MAX_VALUE
+                                        : Arrays.stream(names)
+                                                .filter(name -> name.startsWith(genericCacheFileName) && name.endsWith(METADATAFILE_SUFFIX))
+                                                .map(name -> name.substring(genericCacheFileName.length(), name.length() - METADATAFILE_SUFFIX.length()))
+                                                .map(FileCache::parseTimestampOrMax)
+                                                .min(Long::compare)
+                                                .orElse(Long.MAX_VALUE);
+            if (timestamp != Long.MAX_VALUE) {
+                oldestMetadataTimestamp = timestamp;   // metadata may be written later (e.g. by a concurrent process), if not found  
+            }
+        }
+        return timestamp;
+    }
+
+
+    private static long parseTimestampOrMax(final String timestamp) {
+        try {
+            return Long.parseLong(timestamp);
+        } catch (final NumberFormatException nfe) {
+            return Long.MAX_VALUE;
+        }
+    }
+
+
+    private String checkIntegrity(final File cacheFile) {
+        final File metadataFile = toMetadataFile(cacheFile);
+        if (!metadataFile.exists()) {
+            return predatesMetadata(cacheFile) ? null : "metadata is missing";
+        }
+
+        final Properties props = readMetadata(cacheFile).orElseGet(Properties::new);
+        if (props.isEmpty()) {
+            return "metadata is empty or unreadable";
+        }
+
+        final String fileLength = props.getProperty(FILE_LENGTH);
+        if ((fileLength != null) && (Long.parseLong(fileLength) != cacheFile.length())) {
+            return "length is " + cacheFile.length() + " instead of " + fileLength;
+        }
+
+        final String fingerprint = props.getProperty(FINGERPRINT);
+        if (fingerprint != null) {
+            try (InputStream is = CacheFileFormat.newInputStream(cacheFile)) {
+                final HashingInputStream his = new HashingInputStream(Data.FINGERPRINT_FUNCTION, is);
+                ByteStreams.copy(his, ByteStreams.nullOutputStream());
+                if (!his.hash().equals(HashCode.fromString(fingerprint))) {
+                    return "fingerprint mismatch";
+                }
+            } catch (final IOException | RuntimeException e) {
+                return e.toString();
+            }
+        }
+
+        return null;
+    }
+
+
+    private boolean isSynced() {
+        return durability != Durability.NONE;
+    }
+
+
+    private void syncDir() {
+        if (durability == Durability.DATA_AND_DIR) {
+            try (FileChannel channel = FileChannel.open(dir.toPath(), StandardOpenOption.READ)) {
+                channel.force(true);
+            } catch (final IOException ioe) {
+                LOG.debug("syncing cache dir " + dir.getAbsolutePath() + " failed (not supported by the platform?)", ioe);
+            }
+        }
+    }
+
+
+    private Optional<File> readIndex() {
+        if (indexFile.exists()) {
+            try {
+                final String cacheFileName = new String(java.nio.file.Files.readAllBytes(indexFile.toPath()), Charsets.UTF_8).trim();
+                if (cacheFileName.startsWith(genericCacheFileName) && cacheFileName.endsWith(CACHEFILE_SUFFIX)) {
+                    return Optional.of(new File(dir, cacheFileName));
+                }
+            } catch (final IOException ioe) {
+                LOG.debug("reading index file " + indexFile.getAbsolutePath() + " failed. Ignoring it", ioe);
+            }
+        }
+        return Optional.empty();
+    }
+
+
+    private synchronized void writeIndex(final File cacheFile) {
+        // the index is replaced atomically, but never by an older cache file. Concurrent processes may replace
+        // the index in parallel. Because the check and the replacement are not atomic across processes, the index
+        // is read again after replacing it. If a concurrent process has written an older cache file in between,
+        // the index will be replaced again
+        for (int i = 0; i < MAX_INDEX_WRITE_ATTEMPTS; i++) {
+            final Optional<File> indexed = readIndex();
+            if (indexed.equals(Optional.of(cacheFile)) || indexed.filter(this::isValidIndexEntry)
+                                                                  .map(file -> parseTimestamp(file) > parseTimestamp(cacheFile))
+                                                                  .orElse(false)) {
+                return;
+            }
+
+            final File tempIndexFile = new File(dir, UUID.randomUUID().toString() + TEMPFILE_SUFFIX);
+            try {
+                java.nio.file.Files.write(tempIndexFile.toPath(), cacheFile.getName().getBytes(Charsets.UTF_8));
+                java.nio.file.Files.move(tempIndexFile.toPath(), indexFile.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (final IOException ioe) {
+                LOG.debug("writing index file " + indexFile.getAbsolutePath() + " failed", ioe);
+                if (tempIndexFile.exists()) {
+                    delete(tempIndexFile);
+                }
+                return;
+            }
+        }
+    }
+
+
+    private boolean isValidIndexEntry(final File indexedFile) {
+        // a stale index entry (removed or corrupt cache file) may be replaced by an older cache file
+        return isValidCacheFileName(indexedFile) && indexedFile.exists() && isIntact(indexedFile);
+    }
+
+
+    private ImmutableList<File> listFiles() {
+        final File[] files = dir.listFiles();
+        return (files == null) ? ImmutableList.of()    // this should not happen unless some I/O error
+                               : ImmutableList.copyOf(files);
+    }
+
+
+    private ImmutableList<File> getCacheFiles(final ImmutableList<File> files) {
+        return files.stream()
+                    .filter(file -> file.getName().endsWith(CACHEFILE_SUFFIX))
+                    .filter(file -> file.getName().startsWith(genericCacheFileName))
+                    .collect(Immutables.toList());
+    }
+
+
+    private boolean isValidCacheFileName(final File file) {
+        try {
+            parseTimestamp(file);
+            return true;
+        } catch (final NumberFormatException nfe) {
+            return false;
+        }
+    }
+
+
+    private long parseTimestamp(File file) {
+        final String fileName = file.getName();
+        return Long.parseLong(fileName.substring(fileName.lastIndexOf("_") + 1, fileName.length() - CACHEFILE_SUFFIX.length()));
+    }
+
+
+    /**
+     * removes expired temp files, the former cache files and the corrupt cache files, which are not in use
+     */
+    public void cleanup() {
+        // the cache dir is listed once only. The newest cache file is looked up by the index
+        final ImmutableList<File> files = listFiles();
+        removeExpiredTempFiles(files);
+        
+        final Set<File> removed = Sets.newHashSet();
+        final ImmutableList<File> cacheFiles = getCacheFiles(files);
+        removed.addAll(removeExpiredCacheFiles(cacheFiles));
+        removed.addAll(removeCorruptCacheFiles(cacheFiles));
+        
+        final ImmutableList<File> retainedCacheFiles = cacheFiles.stream()
+                                                                 .filter(file -> !removed.contains(file))
+                                                                 .collect(Immutables.toList());
+        removeOrphanedSnapshotFiles(files, retainedCacheFiles);
+
+        // forget the verifications of removed cache files
+        verifications.keySet().retainAll(retainedCacheFiles.stream().map(File::getName).collect(Immutables.toSet()));
+    }
+
+
+    private void removeExpiredTempFiles(final ImmutableList<File> files) {
+        // remove expired temp files. temp file should exists for few millis or seconds only.
+        final long minAgeTime = Instant.now().minus(Duration.ofDays(7)).toEpochMilli();
+        files.stream()
+             .filter(file -> file.getName().endsWith(TEMPFILE_SUFFIX))
+             .filter(file -> file.lastModified() < minAgeTime)           // filter old temp file (days!)
+             .filter(file -> !FileLeases.isLeased(file))
+             .collect(Immutables.toList())
+             .forEach(this::delete); // and delete it
+    }
+
+
+    private ImmutableList<File> removeExpiredCacheFiles(final ImmutableList<File> cacheFiles) {
+        // get newest cache file. Concurrently a new cache file could be written by another process. However, this
+        // does not matter
+        final Optional<File> newest = getNewestCacheFile();
+        if (!newest.isPresent()) {
+            return ImmutableList.of();
+        }
+        
+        final long newestTime = parseTimestamp(newest.get());
+        final ImmutableList<File> expired = cacheFiles.stream()
+                                                      .filter(this::isValidCacheFileName)
+                                                      .filter(file -> parseTimestamp(file) < newestTime)   // filter expired cache files
+                                                      .sorted((file1, file2) -> Long.compare(parseTimestamp(file2), parseTimestamp(file1)))  // newest first
+                                                      .skip(retainedVersions - 1)                          // except the retained former versions
+                                                      .filter(file -> !FileLeases.isLeased(file))          // which are not in use by a consumer (e.g. mapped)
+                                                      .collect(Immutables.toList());
+        expired.forEach(this::deleteCacheFile);  // and delete it
+        return expired;
+    }
+
+
+    private ImmutableList<File> removeCorruptCacheFiles(final ImmutableList<File> cacheFiles) {
+        // corrupt cache files have been detected by looking up the newest cache file (see above)
+        final ImmutableList<File> corrupt = cacheFiles.stream()
+                                                      .filter(this::isKnownAsCorrupt)
+                                                      .filter(file -> !FileLeases.isLeased(file))
+                                                      .collect(Immutables.toList());
+        corrupt.forEach(this::deleteCacheFile);
+        return corrupt;
+    }
+
+
+    private void deleteCacheFile(final File cacheFile) {
+        if (cacheFile.exists()) {
+            delete(cacheFile);
+        }
+        final File metadataFile = toMetadataFile(cacheFile);
+        if (metadataFile.exists()) {
+            delete(metadataFile);
+        }
+    }
+
+
+    private void removeOrphanedSnapshotFiles(final ImmutableList<File> files, final ImmutableList<File> retainedCacheFiles) {
+        final ImmutableList<File> snapshotFiles = files.stream()
+                                                       .filter(file -> file.getName().startsWith(genericCacheFileName))
+                                                       .filter(file -> file.getName().endsWith(SNAPSHOTFILE_SUFFIX))
+                                                       .collect(Immutables.toList());
+        if (snapshotFiles.isEmpty()) {
+            return;
+        }
+        
+        // the snapshots of the retained cache files are kept (e.g. to roll back without parsing the data)
+        final ImmutableSet<String> retainedFingerprints = retainedCacheFiles.stream()
+                                                                            .map(this::readMetadata)
+                                                                            .filter(Optional::isPresent)
+                                                                            .map(metadata -> metadata.get().getProperty(FINGERPRINT))
+                                                                            .filter(fingerprint -> fingerprint != null)
+                                                                            .collect(Immutables.toSet());
+        snapshotFiles.stream()
+                     .filter(file -> !parseSnapshotFingerprint(file).map(retainedFingerprints::contains).orElse(false))
+                     .forEach(this::delete);
+    }
+
+
+    private void delete(final File file) {
+        if (!file.delete()) {
+            LOG.warn("failed to delete " + file.getName());
+        }
+    }
+
+
+    private static final class Verification {
+        private final long length;
+        private final long metadataLastModified;
+        private final boolean isIntact;
+
+        Verification(final File cacheFile, final boolean isIntact) {
+            this.length = cacheFile.length();
+            this.metadataLastModified = toMetadataFile(cacheFile).lastModified();   // 0, if not exists
+            this.isIntact = isIntact;
+        }
+
+        boolean isValidFor(final File cacheFile) {
+            return (length == cacheFile.length()) && (metadataLastModified == toMetadataFile(cacheFile).lastModified());
+        }
+
+        boolean isIntact() {
+            return isIntact;
+        }
+    }
+
+
+    @Override
+    public String toString() {
+        return "[" + this.getClass().getSimpleName() + "] dir=" + dir + (compressed ? " (compressed)" : "");
+    }
+}
@@ -0,0 +1,57 @@
+/*
+ * Copyright 1&1 Internet AG, https://github.com/1and1/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.oneandone.neo.datareplicator;
+
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.util.Optional;
+
+
+
+class FileDatasource extends Datasource {
+
+    public FileDatasource(final URI uri, final FileCache fileCache) {
+        super(uri, fileCache);
+    }
+
+    @Override
+    public Data load() {
+        final File file = new File(getEndpoint().getPath());
+        if (file.exists()) {
+            try {
+                // cheap pre-check based on the file attributes. The file will be read only, if it has been modified
+                final Validators validators = Validators.ofFileAttributes(file.toPath());
+                if (isCached(validators)) {
+                    return getFileCache().load();
+                }
+
+                try (InputStream is = new FileInputStream(file)) {
+                    return getFileCache().spool(is, Optional.empty(), validators);
+                }
+            } catch (IOException ioe) {
+                throw new ReplicationException(ioe);
+            }
+
+        } else {
+            throw new ReplicationException("file " + file.getAbsolutePath() + " not found");
+        }
+    }
+}
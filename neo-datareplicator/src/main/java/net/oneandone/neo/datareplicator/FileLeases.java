@@ -0,0 +1,96 @@
+/*
+ * Copyright 1&1 Internet AG, https://github.com/1and1/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.oneandone.neo.datareplicator;
+
+
+import java.io.File;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+
+
+/**
+ * JVM-wide registry of files which are in use by a consumer (e.g. memory-mapped). Leased files 
+ * will not be removed by the {@link FileCache} cleanup 
+ */
+final class FileLeases {
+    
+    private static final Set<Lease> LEASES = ConcurrentHashMap.newKeySet();
+    
+    private FileLeases() { }
+    
+    
+    /**
+     * @param file  the file to lease
+     * @return the lease. The lease has to be released, if the file is not used anymore
+     */
+    public static Lease acquire(final File file) {
+        final Lease lease = new Lease(file.getAbsoluteFile());
+        LEASES.add(lease);
+        return lease;
+    }
+    
+    /**
+     * @param file the file
+     * @return true, if the file is leased
+     */
+    public static boolean isLeased(final File file) {
+        final File absoluteFile = file.getAbsoluteFile();
+        return LEASES.stream().anyMatch(lease -> lease.getFile().equals(absoluteFile));
+    }
+    
+    /**
+     * moves the leases of a renamed file to the new file name 
+     * 
+     * @param from  the former file
+     * @param to    the new file
+     */
+    public static void move(final File from, final File to) {
+        final File absoluteFrom = from.getAbsoluteFile();
+        LEASES.stream()
+              .filter(lease -> lease.getFile().equals(absoluteFrom))
+              .forEach(lease -> lease.file.set(to.getAbsoluteFile()));
+    }
+
+    
+    
+    static final class Lease {
+        private final AtomicReference<File> file;
+        private final AtomicBoolean isReleased = new AtomicBoolean(false);
+        
+        private Lease(final File file) {
+            this.file = new AtomicReference<>(file);
+        }
+        
+        public File getFile() {
+            return file.get();
+        }
+        
+        public void release() {
+            if (!isReleased.getAndSet(true)) {
+                LEASES.remove(this);
+            }
+        }
+        
+        @Override
+        public String toString() {
+            return "lease of " + file.get() + (isReleased.get() ? " (released)" : "");
+        }
+    }
+}
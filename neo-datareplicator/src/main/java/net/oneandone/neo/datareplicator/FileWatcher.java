@@ -0,0 +1,170 @@
+/*
+ * Copyright 1&1 Internet AG, https://github.com/1and1/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.oneandone.neo.datareplicator;
+
+
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_DELETE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+import static java.nio.file.StandardWatchEventKinds.OVERFLOW;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+
+
+/**
+ * JVM-wide file watcher. A single watcher thread serves all registered files
+ */
+final class FileWatcher {
+    private static final Logger LOG = LoggerFactory.getLogger(FileWatcher.class);
+
+    private final WatchService watchService;
+    private final Map<Path, WatchKey> watchKeys = new ConcurrentHashMap<>();
+    private final Set<Registration> registrations = ConcurrentHashMap.newKeySet();
+
+
+    private FileWatcher() {
+        try {
+            this.watchService = FileSystems.getDefault().newWatchService();
+        } catch (final IOException ioe) {
+            throw new ReplicationException("could not create watch service", ioe);
+        }
+
+        final Thread thread = new Thread(this::watch, "datareplicator-filewatcher");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * @return the JVM-wide file watcher
+     */
+    public static FileWatcher getInstance() {
+        return InstanceHolder.INSTANCE;
+    }
+
+    private static final class InstanceHolder {
+        static final FileWatcher INSTANCE = new FileWatcher();
+    }
+
+
+    /**
+     * @param file      the file to watch
+     * @param listener  the listener which will be called, if the file is created, modified, deleted or renamed.
+     *                  The listener is called by the watcher thread and should return immediately
+     * @return the registration
+     * @throws ReplicationException if the file can not be watched
+     */
+    public Registration register(final File file, final Runnable listener) throws ReplicationException {
+        final Path path = file.getAbsoluteFile().toPath().normalize();
+        final Path dir = path.getParent();
+
+        // the watch service watches directories only. Registering the same directory again returns the existing key
+        synchronized (watchKeys) {
+            try {
+                watchKeys.put(dir, dir.register(watchService, ENTRY_CREATE, ENTRY_MODIFY, ENTRY_DELETE));
+            } catch (final IOException | RuntimeException e) {
+                throw new ReplicationException("could not watch " + dir, e);
+            }
+
+            final Registration registration = new Registration(path, listener);
+            registrations.add(registration);
+            return registration;
+        }
+    }
+
+
+    private void watch() {
+        while (true) {
+            final WatchKey key;
+            try {
+                key = watchService.take();
+            } catch (final InterruptedException | ClosedWatchServiceException e) {
+                return;
+            }
+
+            final Path dir = (Path) key.watchable();
+            for (WatchEvent<?> event : key.pollEvents()) {
+                if (event.kind() == OVERFLOW) {
+                    // events lost -> notify all listeners of the directory
+                    registrations.stream()
+                                 .filter(registration -> registration.path.getParent().equals(dir))
+                                 .forEach(Registration::notifyListener);
+                } else {
+                    final Path path = dir.resolve((Path) event.context());
+                    registrations.stream()
+                                 .filter(registration -> registration.path.equals(path))
+                                 .forEach(Registration::notifyListener);
+                }
+            }
+            key.reset();
+        }
+    }
+
+
+    final class Registration implements Closeable {
+        private final Path path;
+        private final Runnable listener;
+
+        private Registration(final Path path, final Runnable listener) {
+            this.path = path;
+            this.listener = listener;
+        }
+
+        private void notifyListener() {
+            try {
+                listener.run();
+            } catch (final RuntimeException rt) {
+                LOG.warn("error occured by notifying listener of " + path, rt);
+            }
+        }
+
+        @Override
+        public void close() {
+            synchronized (watchKeys) {
+                registrations.remove(this);
+
+                // stop watching the directory, if not required anymore
+                final Path dir = path.getParent();
+                if (registrations.stream().noneMatch(registration -> registration.path.getParent().equals(dir))) {
+                    final WatchKey key = watchKeys.remove(dir);
+                    if (key != null) {
+                        key.cancel();
+                    }
+                }
+            }
+        }
+
+        @Override
+        public String toString() {
+            return "watching " + path;
+        }
+    }
+}
@@ -0,0 +1,175 @@
+/*
+ * Copyright 1&1 Internet AG, https://github.com/1and1/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.oneandone.neo.datareplicator;
+
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.ref.SoftReference;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.charset.Charset;
+import java.nio.file.StandardOpenOption;
+import java.util.Optional;
+
+import com.google.common.hash.HashCode;
+import com.google.common.io.ByteStreams;
+
+
+
+class HeuristicsDecodingData implements Data {
+    private final File file;
+    private final HashCode fingerprint;
+    private final Validators validators;
+    private final Optional<Delta> delta;
+    private volatile Optional<Long> length;   // lazy computed, if unknown
+    private volatile Optional<CharsetDetector.Detection> detection = Optional.empty();   // lazy computed
+    private volatile SoftReference<String> text = new SoftReference<>(null);             // lazy decoded, may be released by the gc
+
+    public HeuristicsDecodingData(final File file, 
+                                  final Validators validators, 
+                                  final HashCode fingerprint, 
+                                  final Optional<Delta> delta,
+                                  final Optional<Long> length) {
+        this.file = file;
+        this.validators = validators;
+        this.fingerprint = fingerprint;
+        this.delta = delta;
+        this.length = length;
+    }
+
+    @Override
+    public HashCode getFingerprint() {
+        return fingerprint;
+    }
+
+    @Override
+    public Validators getValidators() {
+        return validators;
+    }
+
+    @Override
+    public Optional<Charset> getCharset() {
+        return Optional.empty();
+    }
+
+    @Override
+    public Optional<Delta> getDelta() {
+        return delta;
+    }
+
+    @Override
+    public File getFile() {
+        return file;
+    }
+
+    @Override
+    public long getLength() throws ReplicationException {
+        if (length.isPresent()) {
+            return length.get();
+        }
+
+        try {
+            if (CacheFileFormat.isCompressed(file)) {
+                try (InputStream is = openStream()) {
+                    length = Optional.of(ByteStreams.copy(is, ByteStreams.nullOutputStream()));
+                }
+            } else {
+                length = Optional.of(file.length());
+            }
+            return length.get();
+        } catch (final IOException ioe) {
+            throw new ReplicationException("reading data file " + file.getAbsolutePath() + " failed", ioe);
+        }
+    }
+
+    @Override
+    public InputStream openStream() throws ReplicationException {
+        try {
+            return CacheFileFormat.newInputStream(file);
+        } catch (final IOException ioe) {
+            throw new ReplicationException("opening data file " + file.getAbsolutePath() + " failed", ioe);
+        }
+    }
+
+    @Override
+    public MappedByteBuffer asMappedBuffer() throws ReplicationException {
+        try {
+            if (CacheFileFormat.isCompressed(file)) {
+                throw new ReplicationException("data file " + file.getAbsolutePath() + " is compressed and can not be mapped (cache compression has to be deactivated)");
+            }
+        } catch (final IOException ioe) {
+            throw new ReplicationException("mapping data file " + file.getAbsolutePath() + " failed", ioe);
+        }
+
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            // the mapping remains valid after closing the channel
+            return channel.map(MapMode.READ_ONLY, 0, channel.size());
+        } catch (final IOException | IllegalArgumentException e) {
+            throw new ReplicationException("mapping data file " + file.getAbsolutePath() + " failed", e);
+        }
+    }
+
+    @Override
+    public byte[] asBinary() {
+        return readBinary();
+    }
+
+    @Override
+    public String asText() {
+        // the data is immutable. The decoded text will be reused as long as it is not released by the gc
+        final String cachedText = text.get();
+        if (cachedText != null) {
+            return cachedText;
+        }
+        
+        final String decodedText = decode(readBinary());
+        text = new SoftReference<>(decodedText);
+        return decodedText;
+    }
+
+    /**
+     * @param binary  the original data 
+     * @return the decoded text
+     */
+    protected String decode(final byte[] binary) {
+        // the charset will be detected once only  
+        Optional<CharsetDetector.Detection> detection = this.detection;
+        if (!detection.isPresent()) {
+            detection = Optional.of(CharsetDetector.detect(binary));
+            this.detection = detection;
+        }
+        
+        final int bomLength = detection.get().getBomLength();
+        return new String(binary, bomLength, binary.length - bomLength, detection.get().getCharset());
+    }
+
+    protected byte[] readBinary() {
+        try (InputStream is = openStream()) {
+            return ByteStreams.toByteArray(is);
+        } catch (final IOException ioe) {
+            throw new ReplicationException("reading data file " + file.getAbsolutePath() + " failed", ioe);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return file.getName() + " (" + validators + ")";
+    }
+}
@@ -0,0 +1,513 @@
+/*
+ * Copyright 1&1 Internet AG, https://github.com/1and1/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.oneandone.neo.datareplicator;
+
+
+import java.io.BufferedInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.Arrays;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+import javax.ws.rs.client.Client;
+import javax.ws.rs.client.ClientBuilder;
+import javax.ws.rs.client.Invocation.Builder;
+import javax.ws.rs.client.InvocationCallback;
+import javax.ws.rs.core.Configuration;
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.collect.ImmutableSet;
+import com.google.common.io.ByteStreams;
+
+
+
+class HttpDatasource extends Datasource {
+    private static final Logger LOG = LoggerFactory.getLogger(HttpDatasource.class);
+
+    // number of cached bytes which will be requested again by range requests to verify the resource has been appended only
+    private static final int APPEND_OVERLAP = 1024;
+    // the decoders of the JAX-RS implementations (Jersey's GZipEncoder and DeflateEncoder extend ContentEncoder). They are
+    // referred by name, which means the client implementation is not required at compile time
+    private static final ImmutableSet<String> CONTENT_DECODER_CLASSNAMES = ImmutableSet.of("org.glassfish.jersey.spi.ContentEncoder",
+                                                                                           "org.jboss.resteasy.plugins.interceptors.GZIPDecodingInterceptor",
+                                                                                           "org.jboss.resteasy.plugins.interceptors.encoding.GZIPDecodingInterceptor");
+    private static final Pattern CONTENT_RANGE_PATTERN = Pattern.compile("bytes\\s+(\\d+)-\\d+/(\\d+|\\*)");
+    private static final Pattern MAX_AGE_PATTERN = Pattern.compile("(?:^|,)\\s*max-age\\s*=\\s*\"?(\\d+)\"?\\s*(?:,|$)", Pattern.CASE_INSENSITIVE);
+    private static final Pattern NO_CACHE_PATTERN = Pattern.compile("(?:^|,)\\s*(?:no-cache|no-store)\\s*(?:,|=|$)", Pattern.CASE_INSENSITIVE);
+
+    private final Client client;
+    private final boolean isUserClient;
+    private final boolean appendMode;
+    private final boolean transferCompression;
+    private final boolean isContentEncodingHandledByClient;
+    private final CircuitBreaker circuitBreaker;
+    private final AtomicBoolean isClosed = new AtomicBoolean(false);
+    private volatile Optional<Duration> freshnessLifetime = Optional.empty();
+
+    public HttpDatasource(final URI uri, final Client client, final boolean appendMode, final boolean transferCompression, final FileCache fileCache) {
+        super(uri, fileCache);
+        this.isUserClient = client != null;
+        this.client = (client != null) ? client : ClientBuilder.newClient();
+        this.appendMode = appendMode;
+        this.transferCompression = transferCompression;
+        this.isContentEncodingHandledByClient = isUserClient && isContentEncodingHandled(client);
+        this.circuitBreaker = CircuitBreaker.forHost(uri);
+    }
+
+    @Override
+    public void close() {
+        super.close();
+        if (isClosed.compareAndSet(false, true)) {
+            circuitBreaker.release();
+            if (!isUserClient) {
+                client.close();
+            }
+        }
+    }
+
+    @Override
+    public Optional<Duration> getFreshnessLifetime() {
+        return freshnessLifetime;
+    }
+
+    @Override
+    public CircuitState getCircuitState() {
+        return circuitBreaker.getState();
+    }
+
+    @Override
+    public Data load() {
+        return load(getEndpoint());
+    }
+
+    protected Data load(final URI uri) {
+        return load(uri, appendMode);
+    }
+
+    private Data load(final URI uri, final boolean isRangeRequestAllowed) {
+        final PreparedRequest request = new PreparedRequest(uri, isRangeRequestAllowed);
+
+        // fail fast, if the host is down
+        circuitBreaker.acquirePermission();
+        final Response response;
+        try {
+            response = request.getBuilder().get();
+        } catch (final RuntimeException rt) {
+            circuitBreaker.onFailure();
+            throw rt;
+        }
+        
+        try {
+            onResponse(response);
+            return request.handle(response).orElseGet(() -> load(uri, false));
+        } finally {
+            response.close();
+        }
+    }
+
+
+    /**
+     * performs the request by using the asynchronous invoker. The calling thread will not be blocked while
+     * waiting for the response. Please consider that it depends on the connector of the client whether a thread
+     * is blocked during the transfer (a non-blocking connector can be set by using a custom client)
+     */
+    @Override
+    public CompletableFuture<Data> loadAsync() {
+        return loadAsync(getEndpoint(), appendMode);
+    }
+
+    private CompletableFuture<Data> loadAsync(final URI uri, final boolean isRangeRequestAllowed) {
+        final CompletableFuture<Data> promise = new CompletableFuture<>();
+        final PreparedRequest request;
+        try {
+            request = new PreparedRequest(uri, isRangeRequestAllowed);
+
+            // fail fast, if the host is down
+            circuitBreaker.acquirePermission();
+        } catch (final RuntimeException rt) {
+            promise.completeExceptionally(rt);
+            return promise;
+        }
+
+        // the permission has been acquired. Each outcome has to be reported to the circuit breaker, including 
+        // errors which are thrown synchronously by the invoker (otherwise the probe call of a half-open circuit 
+        // breaker would never be reported)
+        try {
+            request.getBuilder().async().get(new InvocationCallback<Response>() {
+
+                @Override
+                public void completed(final Response response) {
+                    try {
+                        onResponse(response);
+                        final Optional<Data> data = request.handle(response);
+                        response.close();
+                        if (data.isPresent()) {
+                            promise.complete(data.get());
+                        } else {
+                            loadAsync(uri, false).whenComplete((fullData, error) -> {
+                                if (error == null) {
+                                    promise.complete(fullData);
+                                } else {
+                                    promise.completeExceptionally(error);
+                                }
+                            });
+                        }
+                    } catch (final RuntimeException rt) {
+                        response.close();
+                        promise.completeExceptionally(rt);
+                    }
+                }
+
+                @Override
+                public void failed(final Throwable error) {
+                    circuitBreaker.onFailure();
+                    promise.completeExceptionally(new ReplicationException("calling " + getEndpoint() + " failed", error));
+                }
+            });
+        } catch (final RuntimeException rt) {
+            circuitBreaker.onFailure();
+            promise.completeExceptionally(rt);
+        }
+        return promise;
+    }
+
+
+
+    /**
+     * the request to perform, which depends on the state of the cache
+     */
+    private void onResponse(final Response response) {
+        // server errors count as failed calls of the host. Other responses prove that the host is up 
+        if (response.getStatus() >= 500) {
+            circuitBreaker.onFailure();
+        } else {
+            circuitBreaker.onSuccess();
+        }
+    }
+
+
+    private final class PreparedRequest {
+        private final Validators validators;
+        private final Optional<Data> base;
+        private final Optional<Long> rangeStart;
+        private final Builder builder;
+
+        PreparedRequest(final URI uri, final boolean isRangeRequestAllowed) {
+            // validators of the cached data (if present). The validators will be available after a restart, too
+            this.validators = getFileCache().getValidators();
+
+
+            Builder builder = client.target(uri).request();
+
+            // append mode: request the bytes behind the cached data only. The range request is conditional (If-Range), 
+            // which means the server responds the full resource, if it has been replaced. This requires a strong 
+            // validator of the cached data. Additionally, the requested range overlaps the tail of the cached data 
+            // to detect modifications other than appending
+            this.base = isRangeRequestAllowed ? getFileCache().loadIfPresent().filter(data -> data.getLength() > 0)
+                                              : Optional.empty();
+            final Optional<String> rangeValidator = base.flatMap(data -> getRangeValidator(data.getValidators()));
+            this.rangeStart = rangeValidator.isPresent() ? base.map(Data::getLength).map(length -> length - Math.min(length, APPEND_OVERLAP))
+                                                         : Optional.empty();
+            if (rangeStart.isPresent()) {
+                // ranges refer to the encoded representation. Range requests will be performed uncompressed
+                builder = builder.header("Range", "bytes=" + rangeStart.get() + "-")
+                                 .header("If-Range", rangeValidator.get())
+                                 .header(HttpHeaders.ACCEPT_ENCODING, "identity");
+            } else {
+                if (transferCompression && !isContentEncodingHandledByClient) {
+                    builder = builder.header(HttpHeaders.ACCEPT_ENCODING, "gzip, deflate");
+                }
+                
+                // will make request conditional, if validators of a former response are available. Range requests 
+                // are not combined with them. An unmodified resource is answered by the overlapping range only
+                if (validators.getEtag().isPresent()) {
+                    builder = builder.header(HttpHeaders.IF_NONE_MATCH, validators.getEtag().get());
+                }
+                if (validators.getLastModified().isPresent()) {
+                    builder = builder.header(HttpHeaders.IF_MODIFIED_SINCE, validators.getLastModified().get());
+                }
+            }
+
+            this.builder = builder;
+        }
+
+        public Builder getBuilder() {
+            return builder;
+        }
+
+        /**
+         * @param response  the response
+         * @return the data or empty, if a full request has to be performed (range request has failed)
+         */
+        public Optional<Data> handle(final Response response) {
+            final int status = response.getStatus();
+            freshnessLifetime = parseFreshnessLifetime(response.getHeaderString(HttpHeaders.CACHE_CONTROL),
+                                                       response.getHeaderString(HttpHeaders.EXPIRES),
+                                                       response.getHeaderString(HttpHeaders.DATE));
+
+            // partial content (response of a range request). The resource has not been replaced (see If-Range)
+            if ((status == 206) && rangeStart.isPresent()) {
+                final String contentRange = response.getHeaderString("Content-Range");
+                if (rangeStart.equals(parseRangeStart(contentRange)) && 
+                    isIdentityEncoded(response.getHeaderString(HttpHeaders.CONTENT_ENCODING))) {
+                    try (InputStream is = response.readEntity(InputStream.class)) {
+                        // the overlapping bytes are checked anyway as a safeguard (e.g. servers with imprecise validators)
+                        if (isTailOf(base.get(), rangeStart.get(), is)) {
+                            if (parseCompleteLength(contentRange).equals(Optional.of(base.get().getLength()))) {
+                                // nothing appended -> the cached data is still up to date 
+                                return base;
+                            }
+                            return Optional.of(getFileCache().spoolAppended(base.get(),
+                                                                            is,
+                                                                            MimeTypeBasedDecodingData.getCharset(getMediaType(response)),
+                                                                            Validators.of(response.getHeaderString(HttpHeaders.ETAG),
+                                                                                          response.getHeaderString(HttpHeaders.LAST_MODIFIED))));
+                        }
+                    } catch (final IOException ioe) {
+                        throw new ReplicationException("reading response of " + getEndpoint() + " failed", ioe);
+                    }
+                }
+
+                LOG.debug(getEndpoint() + " has not been appended only. Performing full request");
+                return Optional.empty();
+
+                // range not satisfiable (resource has been shrunk)
+            } else if ((status == 416) && rangeStart.isPresent()) {
+                LOG.debug(getEndpoint() + " has been shrunk. Performing full request");
+                return Optional.empty();
+
+                // success
+            } else if ((status / 100) == 2) {
+                // body will be streamed (and decompressed, if encoded) into the file cache (the body is not kept in memory)
+                try (InputStream is = decode(response.getHeaderString(HttpHeaders.CONTENT_ENCODING), response.readEntity(InputStream.class))) {
+                    return Optional.of(getFileCache().spool(is,
+                                                            MimeTypeBasedDecodingData.getCharset(getMediaType(response)),
+                                                            Validators.of(response.getHeaderString(HttpHeaders.ETAG),
+                                                                          response.getHeaderString(HttpHeaders.LAST_MODIFIED))));
+                } catch (final IOException ioe) {
+                    throw new ReplicationException("reading response of " + getEndpoint() + " failed", ioe);
+                }
+
+                // not modified
+            } else if (status == 304) {
+                if (validators.isEmpty()) {
+                    throw new ReplicationException("got " + status + " by performing non-conditional request " + getEndpoint());
+                } else {
+                    // the cached data the validators belong to is still up to date
+                    return Optional.of(getFileCache().load());
+                }
+
+                // other (client error, ...)
+            } else {
+                throw new ReplicationException("got " + status + " by calling " + getEndpoint());
+            }
+        }
+    }
+
+
+    private static MediaType getMediaType(final Response response) {
+        final String contentType = response.getHeaderString(HttpHeaders.CONTENT_TYPE);
+        return (contentType == null) ? MediaType.APPLICATION_OCTET_STREAM_TYPE
+                                     : MediaType.valueOf(contentType);
+    }
+
+    /**
+     * @param client  the client
+     * @return true, if the client decodes encoded responses by itself (e.g. a Jersey client with a registered
+     *         EncodingFilter and GZipEncoder). In this case the content encoding is left to the client. Other
+     *         registered interceptors (e.g. logging) do not affect the content encoding 
+     */
+    private static boolean isContentEncodingHandled(final Client client) {
+        final Configuration config = client.getConfiguration();
+        return Stream.concat(config.getClasses().stream(), config.getInstances().stream().map(Object::getClass))
+                     .anyMatch(HttpDatasource::isContentDecoder);
+    }
+
+    private static boolean isContentDecoder(final Class<?> clazz) {
+        for (Class<?> current = clazz; current != null; current = current.getSuperclass()) {
+            if (CONTENT_DECODER_CLASSNAMES.contains(current.getName())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean isIdentityEncoded(final String contentEncoding) {
+        return (contentEncoding == null) || contentEncoding.trim().isEmpty() || contentEncoding.trim().equalsIgnoreCase("identity");
+    }
+
+    /**
+     * @param contentEncoding  the content encoding of the response
+     * @param is               the (encoded) stream
+     * @return the decoded stream
+     * @throws IOException if an I/O error occurs
+     */
+    private InputStream decode(final String contentEncoding, final InputStream is) throws IOException {
+        // the response header is kept by clients which decode the entity stream by themselves
+        if (isIdentityEncoded(contentEncoding) || isContentEncodingHandledByClient) {
+            return is;
+        }
+
+        final String encoding = contentEncoding.trim().toLowerCase();
+        if (encoding.equals("gzip") || encoding.equals("x-gzip")) {
+            return new GZIPInputStream(is);
+
+        } else if (encoding.equals("deflate")) {
+            // deflate should be zlib-wrapped. However, some servers send raw deflate data
+            final InputStream bis = new BufferedInputStream(is);
+            bis.mark(2);
+            final int cmf = bis.read();
+            final int flg = bis.read();
+            bis.reset();
+            final boolean isZlibWrapped = ((cmf & 0x0F) == 8) && ((((cmf << 8) | flg) % 31) == 0);
+            final Inflater inflater = new Inflater(!isZlibWrapped);
+            return new InflaterInputStream(bis, inflater) {
+                @Override
+                public void close() throws IOException {
+                    try {
+                        super.close();
+                    } finally {
+                        inflater.end();
+                    }
+                }
+            };
+
+        } else {
+            is.close();
+            throw new ReplicationException("got unsupported content encoding " + contentEncoding + " by calling " + getEndpoint());
+        }
+    }
+
+    private static Optional<Long> parseRangeStart(final String contentRange) {
+        if (contentRange != null) {
+            final Matcher matcher = CONTENT_RANGE_PATTERN.matcher(contentRange.trim());
+            if (matcher.matches()) {
+                return Optional.of(Long.parseLong(matcher.group(1)));
+            }
+        }
+        return Optional.empty();
+    }
+
+    private static Optional<Long> parseCompleteLength(final String contentRange) {
+        if (contentRange != null) {
+            final Matcher matcher = CONTENT_RANGE_PATTERN.matcher(contentRange.trim());
+            if (matcher.matches() && !matcher.group(2).equals("*")) {
+                return Optional.of(Long.parseLong(matcher.group(2)));
+            }
+        }
+        return Optional.empty();
+    }
+
+    /**
+     * @param validators  the validators of the cached data
+     * @return the validator of the If-Range header or empty, if no strong validator is available. Weak entity tags 
+     *         must not be used by If-Range (see RFC 7233 section 3.2)
+     */
+    private static Optional<String> getRangeValidator(final Validators validators) {
+        final Optional<String> strongEtag = validators.getEtag().filter(etag -> !etag.trim().startsWith("W/"));
+        return strongEtag.isPresent() ? strongEtag : validators.getLastModified();
+    }
+
+    /**
+     * @param cacheControl  the Cache-Control header or null
+     * @param expires       the Expires header or null
+     * @param date          the Date header or null
+     * @return the freshness lifetime of the response or empty, if no freshness lifetime is announced. The max-age 
+     *         directive overrides the Expires header (see RFC 7234 section 4.2.1)
+     */
+    static Optional<Duration> parseFreshnessLifetime(final String cacheControl, final String expires, final String date) {
+        if (cacheControl != null) {
+            if (NO_CACHE_PATTERN.matcher(cacheControl).find()) {
+                return Optional.of(Duration.ZERO);
+            }
+            
+            final Matcher matcher = MAX_AGE_PATTERN.matcher(cacheControl);
+            if (matcher.find()) {
+                try {
+                    return Optional.of(Duration.ofSeconds(Long.parseLong(matcher.group(1))));
+                } catch (final NumberFormatException nfe) {
+                    return Optional.of(Duration.ofSeconds(Long.MAX_VALUE));  // overflow 
+                }
+            }
+        }
+
+        if (expires != null) {
+            // invalid dates such as "0" represent a time in the past (already expired)
+            final Optional<Instant> expiresTime = parseHttpDate(expires);
+            if (!expiresTime.isPresent()) {
+                return Optional.of(Duration.ZERO);
+            }
+            final Instant dateTime = Optional.ofNullable(date).flatMap(HttpDatasource::parseHttpDate).orElse(Instant.now());
+            final Duration lifetime = Duration.between(dateTime, expiresTime.get());
+            return Optional.of(lifetime.isNegative() ? Duration.ZERO : lifetime);
+        }
+
+        return Optional.empty();
+    }
+
+    private static Optional<Instant> parseHttpDate(final String httpDate) {
+        try {
+            return Optional.of(ZonedDateTime.parse(httpDate.trim(), DateTimeFormatter.RFC_1123_DATE_TIME).toInstant());
+        } catch (final DateTimeParseException dpe) {
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * consumes the overlapping bytes of the stream and compares them with the tail of the cached data
+     *
+     * @param base   the cached data
+     * @param start  the start position of the stream within the cached data
+     * @param is     the stream
+     * @return true, if the stream starts with the tail of the cached data
+     * @throws IOException if an I/O error occurs
+     */
+    private static boolean isTailOf(final Data base, final long start, final InputStream is) throws IOException {
+        try (InputStream baseStream = base.openStream()) {
+            ByteStreams.skipFully(baseStream, start);
+            final byte[] tail = ByteStreams.toByteArray(baseStream);
+
+            final byte[] overlap = new byte[tail.length];
+            try {
+                ByteStreams.readFully(is, overlap);
+            } catch (final EOFException eofe) {
+                return false;
+            }
+            return Arrays.equals(tail, overlap);
+        }
+    }
+}
@@ -0,0 +1,108 @@
+/*
+ * Copyright 1&1 Internet AG, https://github.com/1and1/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.oneandone.neo.datareplicator;
+
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+
+
+/**
+ * Thread-safe, allocation-free latency histogram. The histogram uses log-linear buckets (similar to the 
+ * HdrHistogram): values below 16 are recorded exactly, each power of two above is divided into 16 sub buckets,
+ * which means the relative error of a recorded value is less than 6.25%. Values above 2^40 ns (~18 min) are 
+ * recorded as 2^40 ns  
+ */
+final class LatencyHistogram {
+    private static final int SUB_BUCKET_BITS = 4;
+    private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+    private static final int MAX_EXPONENT = 40;
+    private static final long MAX_VALUE = (1L << MAX_EXPONENT) - 1;
+    static final int BUCKET_COUNT = indexOf(MAX_VALUE) + 1;
+    
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKET_COUNT);
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong sum = new AtomicLong();
+    private final AtomicLong min = new AtomicLong(Long.MAX_VALUE);
+    private final AtomicLong max = new AtomicLong(0);
+    
+    
+    /**
+     * @param nanos  the latency to record
+     */
+    public void record(final long nanos) {
+        final long value = Math.min(Math.max(nanos, 0), MAX_VALUE);
+        
+        buckets.incrementAndGet(indexOf(value));
+        count.incrementAndGet();
+        sum.addAndGet(value);
+        
+        long current = min.get();
+        while ((value < current) && !min.compareAndSet(current, value)) {
+            current = min.get();
+        }
+        current = max.get();
+        while ((value > current) && !max.compareAndSet(current, value)) {
+            current = max.get();
+        }
+    }
+    
+    
+    /**
+     * @return the snapshot of the histogram. The snapshot is not necessarily consistent, if values are recorded 
+     *         concurrently
+     */
+    public ReplicationStatistics.Latency getSnapshot() {
+        final long[] snapshot = new long[BUCKET_COUNT];
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            snapshot[i] = buckets.get(i);
+        }
+        final long currentCount = count.get();
+        return new ReplicationStatistics.Latency(snapshot, 
+                                                 currentCount,
+                                                 sum.get(), 
+                                                 (currentCount == 0) ? 0 : min.get(), 
+                                                 max.get());
+    }
+    
+    
+    static int indexOf(final long value) {
+        if (value < SUB_BUCKET_COUNT) {
+            return (int) value;
+        } else {
+            final int exponent = 63 - Long.numberOfLeadingZeros(value);
+            final int subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKET_COUNT - 1);
+            return ((exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKET_COUNT) + subBucket;
+        }
+    }
+    
+    /**
+     * @param index  the bucket index
+     * @return the highest value which will be recorded into the bucket
+     */
+    static long highestValueOf(final int index) {
+        if (index < SUB_BUCKET_COUNT) {
+            return index;
+        } else {
+            final int exponent = (index / SUB_BUCKET_COUNT) + SUB_BUCKET_BITS - 1;
+            final int subBucket = index % SUB_BUCKET_COUNT;
+            final long lowest = ((long) (SUB_BUCKET_COUNT + subBucket)) << (exponent - SUB_BUCKET_BITS);
+            return lowest + (1L << (exponent - SUB_BUCKET_BITS)) - 1;
+        }
+    }
+}
@@ -0,0 +1,117 @@
+/*
+ * Copyright 1&1 Internet AG, https://github.com/1and1/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.oneandone.neo.datareplicator;
+
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.StandardOpenOption;
+import java.util.Optional;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+
+
+/**
+ * Cross-process leader lock of a cache entry, which is based on a file lock in the cache dir. The lock is 
+ * released by closing it or by the operating system, if the holding process dies. Within the same JVM 
+ * the lock of a file can be held by one holder only
+ */
+final class LeaderLock implements Closeable {
+    private static final Logger LOG = LoggerFactory.getLogger(LeaderLock.class);
+    
+    private final File lockFile;
+    private Optional<FileLock> lock = Optional.empty();
+    private boolean isClosed = false;
+    
+    
+    /**
+     * @param lockFile  the lock file
+     */
+    LeaderLock(final File lockFile) {
+        this.lockFile = lockFile;
+    }
+    
+    
+    /**
+     * @return true, if the lock is held by this instance. If not, a try is made to acquire it 
+     */
+    public synchronized boolean tryAcquire() {
+        if (isClosed) {
+            return false;
+        }
+        
+        if (!isHeld()) {
+            FileChannel channel = null;
+            try {
+                channel = FileChannel.open(lockFile.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+                final FileLock fileLock = channel.tryLock();
+                if (fileLock == null) {
+                    channel.close();   // held by another process
+                } else {
+                    lock = Optional.of(fileLock);
+                    LOG.info("leadership of " + lockFile.getAbsolutePath() + " acquired");
+                }
+            } catch (final OverlappingFileLockException | IOException e) {
+                // held by another holder of the JVM or lock is not supported 
+                LOG.debug("acquiring " + lockFile.getAbsolutePath() + " failed", e);
+                if (channel != null) {
+                    try {
+                        channel.close();
+                    } catch (final IOException ignore) { }
+                }
+            }
+        }
+        return isHeld();
+    }
+    
+    
+    /**
+     * @return true, if the lock is held by this instance
+     */
+    public synchronized boolean isHeld() {
+        return lock.map(FileLock::isValid).orElse(false);
+    }
+    
+
+    /**
+     * releases the lock, if held
+     */
+    @Override
+    public synchronized void close() {
+        isClosed = true;
+        lock.ifPresent(fileLock -> {
+            try {
+                fileLock.channel().close();   // releases the lock as well
+            } catch (final IOException ioe) {
+                LOG.debug("releasing " + lockFile.getAbsolutePath() + " failed", ioe);
+            }
+        });
+        lock = Optional.empty();
+    }
+    
+    
+    @Override
+    public String toString() {
+        return lockFile.getAbsolutePath() + (isHeld() ? " (held)" : "");
+    }
+}
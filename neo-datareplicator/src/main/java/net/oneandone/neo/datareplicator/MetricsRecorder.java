@@ -0,0 +1,111 @@
+/*
+ * Copyright 1&1 Internet AG, https://github.com/1and1/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.oneandone.neo.datareplicator;
+
+
+import java.net.URI;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import net.oneandone.neo.datareplicator.ReplicationMetrics.Counter;
+import net.oneandone.neo.datareplicator.ReplicationMetrics.Phase;
+
+
+
+/**
+ * The in-process metrics of a replication job. The metrics will be forwarded to the configured 
+ * {@link ReplicationMetrics}. Recording does not allocate memory 
+ */
+final class MetricsRecorder {
+    private static final Logger LOG = LoggerFactory.getLogger(MetricsRecorder.class);
+    
+    private final URI endpoint;
+    private final ReplicationMetrics metrics;
+    private final LatencyHistogram[] histograms = new LatencyHistogram[Phase.values().length];
+    private final AtomicLongArray counters = new AtomicLongArray(Counter.values().length);
+    
+    
+    public MetricsRecorder(final URI endpoint, final ReplicationMetrics metrics) {
+        this.endpoint = endpoint;
+        this.metrics = metrics;
+        for (int i = 0; i < histograms.length; i++) {
+            histograms[i] = new LatencyHistogram();
+        }
+    }
+    
+    /**
+     * @param phase      the phase
+     * @param startNanos the start time of the phase (see {@link System#nanoTime()}) 
+     */
+    public void recordElapsed(final Phase phase, final long startNanos) {
+        recordLatency(phase, System.nanoTime() - startNanos);
+    }
+    
+    /**
+     * @param phase  the phase
+     * @param nanos  the elapsed time in nanoseconds
+     */
+    public void recordLatency(final Phase phase, final long nanos) {
+        histograms[phase.ordinal()].record(nanos);
+        try {
+            metrics.recordLatency(endpoint, phase, nanos);
+        } catch (final RuntimeException rt) {
+            LOG.debug("recording metrics failed", rt);   // metrics must not break the replication
+        }
+    }
+    
+    /**
+     * @param counter  the counter to increment
+     */
+    public void increment(final Counter counter) {
+        add(counter, 1);
+    }
+    
+    /**
+     * @param counter  the counter
+     * @param delta    the value to add
+     */
+    public void add(final Counter counter, final long delta) {
+        counters.addAndGet(counter.ordinal(), delta);
+        try {
+            metrics.add(endpoint, counter, delta);
+        } catch (final RuntimeException rt) {
+            LOG.debug("recording metrics failed", rt);   // metrics must not break the replication
+        }
+    }
+    
+    /**
+     * @return the snapshot of the statistics
+     */
+    public ReplicationStatistics getStatistics() {
+        final Map<Counter, Long> counterSnapshot = new EnumMap<>(Counter.class);
+        for (Counter counter : Counter.values()) {
+            counterSnapshot.put(counter, counters.get(counter.ordinal()));
+        }
+        
+        final Map<Phase, ReplicationStatistics.Latency> latencySnapshot = new EnumMap<>(Phase.class);
+        for (Phase phase : Phase.values()) {
+            latencySnapshot.put(phase, histograms[phase.ordinal()].getSnapshot());
+        }
+        
+        return new ReplicationStatistics(counterSnapshot, latencySnapshot);
+    }
+}
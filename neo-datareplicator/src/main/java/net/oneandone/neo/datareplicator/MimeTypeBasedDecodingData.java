@@ -0,0 +1,57 @@
+/*
+ * Copyright 1&1 Internet AG, https://github.com/1and1/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.oneandone.neo.datareplicator;
+
+
+import java.io.File;
+import java.nio.charset.Charset;
+import java.util.Optional;
+
+import javax.ws.rs.core.MediaType;
+
+import com.google.common.hash.HashCode;
+
+
+
+class MimeTypeBasedDecodingData extends HeuristicsDecodingData {
+    private final Charset charset;
+
+    public MimeTypeBasedDecodingData(final File file, final Charset charset, final Validators validators, final HashCode fingerprint, final Optional<Delta> delta, final Optional<Long> length) {
+        super(file, validators, fingerprint, delta, length);
+        this.charset = charset;
+    }
+
+    /**
+     * @param mediaType  the media type 
+     * @return the charset parameter of the media type, if present
+     */
+    public static Optional<Charset> getCharset(final MediaType mediaType) {
+        return Optional.ofNullable(mediaType.getParameters().get(MediaType.CHARSET_PARAMETER))
+                       .map(Charset::forName);
+    }
+
+    @Override
+    public Optional<Charset> getCharset() {
+        return Optional.of(charset);
+    }
+
+    @Override
+    protected String decode(final byte[] binary) {
+        // the original bytes are kept. They will be decoded by using the declared charset
+        return new String(binary, charset);
+    }
+}
@@ -0,0 +1,50 @@
+/*
+ * Copyright 1&1 Internet AG, https://github.com/1and1/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package net.oneandone.neo.datareplicator;
+
+
+
+
+/**
+ * Replication job which holds the current value of the replicated resource. The value can be read by hot 
+ * read paths such as request threads. Reading the value is lock-free and allocation-free (a single volatile read)
+ *
+ * @param <T> the type of the value
+ */
+public interface ReplicatedReference<T> extends ReplicationJob {
+
+    /**
+     * @return the current value
+     */
+    T get();
+
+    /**
+     * @return the version of the current value. The version is 1 for the initial value and will be incremented
+     *         each time the value is updated. Callers can keep the version (e.g. per thread) to detect updates 
+     *         without comparing values
+     */
+    long getVersion();
+
+    /**
+     * @param version  the version known by the caller
+     * @return true, if the value has been updated since the given version
+     */
+    default boolean isUpdatedSince(final long version) {
+        return getVersion() != version;
+    }
+}
@@ -0,0 +1,107 @@
+/*
+ * Copyright 1&1 Internet AG, https://github.com/1and1/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package net.oneandone.neo.datareplicator;
+
+
+import java.io.Closeable;
+import java.net.URI;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
+
+
+/**
+ * Represents the replication of a group of related resources (e.g. several lookup tables) which have to be
+ * changed together. The members are fetched in parallel and the consumer is called with a consistent snapshot
+ * of all members only, if each member has been loaded successfully
+ *
+ */
+public interface ReplicationGroup extends Closeable {
+
+    /**
+     * @return  the resource end points of the members
+     */
+    ImmutableList<URI> getEndpoints();
+
+    /**
+     * @return the expired time since the last successfully refresh
+     */
+    Optional<Duration> getExpiredTimeSinceRefreshSuccess();
+
+    /**
+     * @return the expired time since the last erroneous refresh
+     */
+    Optional<Duration> getExpiredTimeSinceRefreshError();
+
+    /**
+     * @return the fingerprint of the currently consumed snapshot (hex-encoded 128 bit hash which is combined of
+     *         the fingerprints of the members)
+     */
+    Optional<String> getFingerprint();
+
+    /**
+     * triggers a refresh immediately. The refresh will not be performed concurrently with the periodic refreshes
+     *
+     * @return the future which will be completed, if the refresh is done. The future will be completed
+     *         exceptionally, if the refresh fails, and cancelled, if the group is closed
+     */
+    CompletableFuture<Void> refreshAsync();
+
+    /**
+     * @return the max cache time
+     */
+    Duration getMaxCacheTime();
+
+    /**
+     * @return the refresh period
+     */
+    Duration getRefreshPeriod();
+
+    /**
+     * terminates the replication group
+     */
+    void close();
+
+
+
+
+    /**
+     * @param members  the members of the group. The source uri, the cache dir, the max cache time, the client and
+     *                 the transfer settings of the members will be used. Refresh period, scheduler and start-up 
+     *                 behaviour are settings of the group (see {@link ReplicationGroupBuilder})
+     */
+    static ReplicationGroupBuilder of(final ReplicationJobBuilder... members) {
+        Preconditions.checkNotNull(members);
+        return of(Arrays.asList(members));
+    }
+
+    /**
+     * @param members  the members of the group. The source uri, the cache dir, the max cache time, the client and
+     *                 the transfer settings of the members will be used. Refresh period, scheduler and start-up 
+     *                 behaviour are settings of the group (see {@link ReplicationGroupBuilder})
+     */
+    static ReplicationGroupBuilder of(final List<? extends ReplicationJobBuilder> members) {
+        Preconditions.checkNotNull(members);
+        return new ReplicationGroupBuilderImpl(ImmutableList.copyOf(members));
+    }
+}
@@ -0,0 +1,88 @@
+/*
+ * Copyright 1&1 Internet AG, https://github.com/1and1/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package net.oneandone.neo.datareplicator;
+
+
+import java.io.File;
+import java.net.URI;
+import java.time.Duration;
+import java.util.function.Consumer;
+
+import com.google.common.collect.ImmutableMap;
+
+
+
+
+/**
+ * Builder of a replication group (see {@link ReplicationGroup#of(ReplicationJobBuilder...)}). The consumer of a group
+ * will be called with an immutable snapshot map, which contains the data of each member by the member uri. Each time
+ * any member is updated, a new snapshot will be delivered. The snapshot will be committed to the local cache as one 
+ * generation. This means a snapshot restored from the cache is consistent, too
+ */
+public interface ReplicationGroupBuilder {
+
+    /**
+     * @param refreshPeriod   the refresh period of the group (default is {@link ReplicationJob#DEFAULT_REFRESHPERIOD})
+     * @return the new instance of the group builder
+     */
+    ReplicationGroupBuilder withRefreshPeriod(final Duration refreshPeriod);
+
+    /**
+     * @param maxCacheTime  the max cache time of the cached generation (default is {@link ReplicationJob#DEFAULT_MAX_CACHETIME}).
+     *                      The max cache time of the members will be applied to the cached member data 
+     * @return the new instance of the group builder
+     */
+    ReplicationGroupBuilder withMaxCacheTime(final Duration maxCacheTime);
+
+    /**
+     * @param failOnInitFailure true, if the start-up should be aborted, if any member can not be fetched. If false,
+     *                          the snapshot of the last cached generation will be used (default is {@link ReplicationJob#DEFAULT_FAIL_ON_INITFAILURE})
+     * @return the new instance of the group builder
+     */
+    ReplicationGroupBuilder withFailOnInitFailure(final boolean failOnInitFailure);
+
+    /**
+     * @param cacheDir  the cache dir of the generation metadata (default is {@link ReplicationJob#DEFAULT_CACHEDIR}).
+     *                  The member data will be cached within the cache dir of the members 
+     * @return the new instance of the group builder
+     */
+    ReplicationGroupBuilder withCacheDir(final File cacheDir);
+
+    /**
+     * @param scheduler the scheduler to use. The members will be fetched in parallel by using the worker pool of
+     *                  the scheduler. By default a JVM-wide scheduler will be used
+     * @return the new instance of the group builder
+     */
+    ReplicationGroupBuilder withScheduler(final ReplicationScheduler scheduler);
+
+    /**
+     * @param consumer  the binary snapshot consumer which will be called each time any member is updated. If a
+     *                  parsing error occurs, the consumer will throw a RuntimeException. In this case the snapshot
+     *                  will not be committed 
+     * @return the replication group
+     */
+    ReplicationGroup startConsumingBinary(final Consumer<ImmutableMap<URI, byte[]>> consumer);
+
+    /**
+     * @param consumer  the (UTF-8 encoded) text snapshot consumer which will be called each time any member is updated. 
+     *                  If a parsing error occurs, the consumer will throw a RuntimeException. In this case the snapshot
+     *                  will not be committed 
+     * @return the replication group
+     */
+    ReplicationGroup startConsumingText(final Consumer<ImmutableMap<URI, String>> consumer);
+}
@@ -0,0 +1,414 @@
+/*
+ * Copyright 1&1 Internet AG, https://github.com/1and1/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+
+package net.oneandone.neo.datareplicator;
+
+
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Map.Entry;
+import java.util.Optional;
+import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Joiner;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hashing;
+
+import net.oneandone.neo.collect.Immutables;
+
+
+final class ReplicationGroupBuilderImpl implements ReplicationGroupBuilder {
+    private static final Logger LOG = LoggerFactory.getLogger(ReplicationGroupBuilderImpl.class);
+
+    private final Settings settings;
+
+
+    /**
+     * @param members  the member builders. The other settings are the defaults (see {@link ReplicationGroup})
+     */
+    ReplicationGroupBuilderImpl(final ImmutableList<? extends ReplicationJobBuilder> members) {
+        this(new Settings(toMemberBuilders(members)));
+    }
+
+    private ReplicationGroupBuilderImpl(final Settings settings) {
+        this.settings = settings;
+    }
+
+    private static ImmutableList<ReplicationJobBuilderImpl> toMemberBuilders(final ImmutableList<? extends ReplicationJobBuilder> members) {
+        Preconditions.checkArgument(!members.isEmpty(), "a replication group requires at least one member");
+        Preconditions.checkArgument(members.stream().allMatch(member -> member instanceof ReplicationJobBuilderImpl), "unsupported member builder");
+        final ImmutableList<ReplicationJobBuilderImpl> memberBuilders = members.stream()
+                                                                               .map(member -> (ReplicationJobBuilderImpl) member)
+                                                                               .collect(Immutables.toList());
+        Preconditions.checkArgument(memberBuilders.stream().map(ReplicationJobBuilderImpl::getUri).distinct().count() == memberBuilders.size(),
+                                    "the member uris of a replication group have to be unique");
+        return memberBuilders;
+    }
+
+    @Override
+    public ReplicationGroupBuilderImpl withRefreshPeriod(final Duration refreshPeriod) {
+        Preconditions.checkNotNull(refreshPeriod);
+        return with(copy -> copy.refreshPeriod = refreshPeriod);
+    }
+
+    @Override
+    public ReplicationGroupBuilderImpl withMaxCacheTime(final Duration maxCacheTime) {
+        Preconditions.checkNotNull(maxCacheTime);
+        return with(copy -> copy.maxCacheTime = maxCacheTime);
+    }
+
+    @Override
+    public ReplicationGroupBuilderImpl withFailOnInitFailure(final boolean failOnInitFailure) {
+        return with(copy -> copy.failOnInitFailure = failOnInitFailure);
+    }
+
+    @Override
+    public ReplicationGroupBuilderImpl withCacheDir(final File cacheDir) {
+        Preconditions.checkNotNull(cacheDir);
+        return with(copy -> copy.cacheDir = cacheDir);
+    }
+
+    @Override
+    public ReplicationGroupBuilderImpl withScheduler(final ReplicationScheduler scheduler) {
+        Preconditions.checkNotNull(scheduler);
+        return with(copy -> copy.scheduler = scheduler);
+    }
+
+    private ReplicationGroupBuilderImpl with(final Consumer<Settings> modification) {
+        // the settings of this builder remain unchanged
+        final Settings copy = new Settings(settings);
+        modification.accept(copy);
+        return new ReplicationGroupBuilderImpl(copy);
+    }
+
+    @Override
+    public ReplicationGroup startConsumingBinary(final Consumer<ImmutableMap<URI, byte[]>> consumer) {
+        return startConsuming(Data::asBinary, consumer);
+    }
+
+    @Override
+    public ReplicationGroup startConsumingText(final Consumer<ImmutableMap<URI, String>> consumer) {
+        return startConsuming(Data::asText, consumer);
+    }
+
+    private <T> ReplicationGroup startConsuming(final Function<Data, T> decoder, final Consumer<ImmutableMap<URI, T>> consumer) {
+        Preconditions.checkNotNull(consumer);
+        return new ReplicationGroupImpl(settings,
+                                        snapshot -> consumer.accept(snapshot.entrySet()
+                                                                            .stream()
+                                                                            .collect(Immutables.toMap(Entry::getKey, entry -> decoder.apply(entry.getValue())))));
+    }
+
+
+
+    /**
+     * The settings of a builder. The settings will not be modified after passing them to a builder 
+     */
+    private static final class Settings {
+        private final ImmutableList<ReplicationJobBuilderImpl> members;
+        private boolean failOnInitFailure = ReplicationJob.DEFAULT_FAIL_ON_INITFAILURE;
+        private File cacheDir = ReplicationJob.DEFAULT_CACHEDIR;
+        private Duration maxCacheTime = ReplicationJob.DEFAULT_MAX_CACHETIME;
+        private Duration refreshPeriod = ReplicationJob.DEFAULT_REFRESHPERIOD;
+        private ReplicationScheduler scheduler = null;
+
+        Settings(final ImmutableList<ReplicationJobBuilderImpl> members) {
+            this.members = members;
+        }
+
+        Settings(final Settings other) {
+            this.members = other.members;
+            this.failOnInitFailure = other.failOnInitFailure;
+            this.cacheDir = other.cacheDir;
+            this.maxCacheTime = other.maxCacheTime;
+            this.refreshPeriod = other.refreshPeriod;
+            this.scheduler = other.scheduler;
+        }
+    }
+
+
+
+    private static final class ReplicationGroupImpl implements ReplicationGroup {
+        private static final String GENERATION_NAME_PREFIX = "group:";
+
+        private final ImmutableList<Member> members;
+        private final FileCache generationCache;
+        private final Consumer<ImmutableMap<URI, Data>> consumer;
+        private final Executor executor;
+        private final ReplicationScheduler.Schedule schedule;
+        private final Duration maxCacheTime;
+        private final Duration refreshPeriod;
+
+        private final AtomicReference<Optional<ImmutableMap<URI, HashCode>>> lastFingerprints = new AtomicReference<>(Optional.empty());
+        private final AtomicReference<Optional<Instant>> lastRefreshSuccess = new AtomicReference<>(Optional.empty());
+        private final AtomicReference<Optional<Instant>> lastRefreshError = new AtomicReference<>(Optional.empty());
+
+
+        public ReplicationGroupImpl(final Settings settings, final Consumer<ImmutableMap<URI, Data>> consumer) {
+            final ReplicationScheduler scheduler = (settings.scheduler == null) ? ReplicationScheduler.getDefault() : settings.scheduler;
+            this.maxCacheTime = settings.maxCacheTime;
+            this.refreshPeriod = settings.refreshPeriod;
+            this.consumer = consumer;
+            this.executor = scheduler.getExecutor();
+            this.members = settings.members.stream()
+                                           .map(Member::new)
+                                           .collect(Immutables.toList());
+
+            // the generation cache entry refers the member data of the last committed snapshot
+            this.generationCache = new FileCache(settings.cacheDir, GENERATION_NAME_PREFIX + Joiner.on(",").join(getEndpoints()), maxCacheTime);
+
+
+            // load on startup
+            try {
+                loadAndNotifyConsumerAsync().join();
+
+            } catch (final CompletionException ce) {
+                final RuntimeException rt = (ce.getCause() instanceof RuntimeException) ? (RuntimeException) ce.getCause() : ce;
+                if (settings.failOnInitFailure) {
+                    throw rt;
+                } else {
+                    // fallback -> try to load the last committed generation from cache (will throw a runtime exception, if fails)
+                    notifyConsumer(loadCachedGeneration());
+                }
+            }
+
+
+            // register on scheduler for periodically reloadings. The group is not bound to a single host
+            this.schedule = scheduler.scheduleAsync(refreshPeriod, () -> loadAndNotifyConsumerAsync());
+        }
+
+        @Override
+        public void close() {
+            schedule.cancel();
+            members.forEach(member -> member.getDatasource().close());
+        }
+
+        private CompletableFuture<Void> loadAndNotifyConsumerAsync() {
+            // the members are fetched in parallel by using the worker pool. The calling thread will not be blocked
+            final ImmutableList<CompletableFuture<Data>> loads = members.stream()
+                                                                        .map(member -> CompletableFuture.supplyAsync(member.getDatasource()::load, executor))
+                                                                        .collect(Immutables.toList());
+
+            return CompletableFuture.allOf(loads.toArray(new CompletableFuture<?>[loads.size()]))
+                                    .thenRun(() -> notifyConsumerIfModified(loads.stream()
+                                                                                 .map(CompletableFuture::join)
+                                                                                 .collect(Immutables.toList())))
+                                    .whenComplete((ignore, error) -> {
+                                        // remove spooled data, if not committed (e.g. another member has not been loaded)
+                                        for (int i = 0; i < members.size(); i++) {
+                                            loads.get(i).thenAccept(members.get(i).getFileCache()::discard);
+                                        }
+
+                                        if (error == null) {
+                                            lastRefreshSuccess.set(Optional.of(Instant.now()));
+                                        } else {
+                                            // loading of any member failed or consumer has not accepted the snapshot
+                                            LOG.warn("error occured by loading group " + getEndpoints(), (error instanceof CompletionException) ? error.getCause() : error);
+                                            lastRefreshError.set(Optional.of(Instant.now()));
+                                        }
+                                    });
+        }
+
+        private void notifyConsumerIfModified(final ImmutableList<Data> datas) throws RuntimeException {
+            final ImmutableMap.Builder<URI, Data> snapshot = ImmutableMap.builder();
+            for (int i = 0; i < members.size(); i++) {
+                snapshot.put(members.get(i).getEndpoint(), datas.get(i));
+            }
+
+            if (isModified(snapshot.build())) {
+                notifyConsumer(snapshot.build());
+
+                // snapshot has been accepted by the consumer -> update cache
+                commit(snapshot.build());
+            } else {
+                // snapshot is unchanged -> refresh age of the cache files only
+                members.forEach(member -> member.getFileCache().touch());
+                generationCache.touch();
+            }
+        }
+
+        private boolean isModified(final ImmutableMap<URI, Data> snapshot) {
+            return !Optional.of(toFingerprints(snapshot)).equals(lastFingerprints.get());
+        }
+
+        private void notifyConsumer(final ImmutableMap<URI, Data> snapshot) throws RuntimeException {
+            consumer.accept(snapshot);   // let the consumer handle the new snapshot. Consumer may throw a runtime exception
+            lastFingerprints.set(Optional.of(toFingerprints(snapshot)));
+        }
+
+        private static ImmutableMap<URI, HashCode> toFingerprints(final ImmutableMap<URI, Data> snapshot) {
+            return snapshot.entrySet()
+                           .stream()
+                           .collect(Immutables.toMap(Entry::getKey, entry -> entry.getValue().getFingerprint()));
+        }
+
+        private void commit(final ImmutableMap<URI, Data> snapshot) {
+            // the member data is committed first. The former cache files are kept, because they are referred
+            // by the former generation, which is valid until the new generation is committed
+            for (Member member : members) {
+                member.getFileCache().commit(snapshot.get(member.getEndpoint()), false);
+            }
+
+            // commit the new generation, which refers the member data by fingerprint
+            final Properties generation = new Properties();
+            toFingerprints(snapshot).forEach((uri, fingerprint) -> generation.setProperty(uri.toString(), fingerprint.toString()));
+
+            try (ByteArrayOutputStream os = new ByteArrayOutputStream()) {
+                generation.store(os, null);
+                final Data generationData = generationCache.spool(new ByteArrayInputStream(os.toByteArray()), Optional.empty(), Validators.NONE);
+                try {
+                    generationCache.commit(generationData);
+                } finally {
+                    generationCache.discard(generationData);
+                }
+
+                // the former generation is not required anymore, if the new generation has been committed
+                if (generationCache.loadIfPresent().map(Data::getFingerprint).equals(Optional.of(generationData.getFingerprint()))) {
+                    members.forEach(member -> member.getFileCache().cleanup());
+                }
+
+            } catch (final IOException ioe) {
+                LOG.warn("writing generation cache file of group " + getEndpoints() + " failed", ioe);
+            }
+        }
+
+        private ImmutableMap<URI, Data> loadCachedGeneration() throws ReplicationException {
+            final Properties generation = generationCache.loadIfPresent()
+                                                         .map(this::readGeneration)
+                                                         .orElseThrow(() -> new ReplicationException("generation cache file not exists"));
+
+            final ImmutableMap.Builder<URI, Data> snapshot = ImmutableMap.builder();
+            for (Member member : members) {
+                final HashCode fingerprint = Optional.ofNullable(generation.getProperty(member.getEndpoint().toString()))
+                                                     .map(HashCode::fromString)
+                                                     .orElseThrow(() -> new ReplicationException("cached generation does not contain " + member.getEndpoint()));
+                snapshot.put(member.getEndpoint(), member.getFileCache()
+                                                         .loadIfPresent(fingerprint)
+                                                         .orElseThrow(() -> new ReplicationException("cache file of " + member.getEndpoint() + " not exists")));
+            }
+            return snapshot.build();
+        }
+
+        private Properties readGeneration(final Data data) {
+            try (InputStream is = data.openStream()) {
+                final Properties generation = new Properties();
+                generation.load(is);
+                return generation;
+            } catch (final IOException ioe) {
+                throw new ReplicationException(ioe);
+            }
+        }
+
+        @Override
+        public ImmutableList<URI> getEndpoints() {
+            return members.stream()
+                          .map(Member::getEndpoint)
+                          .collect(Immutables.toList());
+        }
+
+        @Override
+        public Duration getMaxCacheTime() {
+            return maxCacheTime;
+        }
+
+        @Override
+        public Duration getRefreshPeriod() {
+            return refreshPeriod;
+        }
+
+        @Override
+        public Optional<Duration> getExpiredTimeSinceRefreshSuccess() {
+            return lastRefreshSuccess.get().map(time -> Duration.between(time, Instant.now()));
+        }
+
+        @Override
+        public Optional<Duration> getExpiredTimeSinceRefreshError() {
+            return lastRefreshError.get().map(time -> Duration.between(time, Instant.now()));
+        }
+
+        @Override
+        public Optional<String> getFingerprint() {
+            return lastFingerprints.get()
+                                   .map(fingerprints -> Hashing.combineOrdered(fingerprints.values()))
+                                   .map(HashCode::toString);
+        }
+
+        @Override
+        public CompletableFuture<Void> refreshAsync() {
+            // the refresh will be performed by the schedule, which means it never runs concurrently with a periodic refresh
+            return schedule.trigger(Duration.ZERO);
+        }
+
+
+        @Override
+        public String toString() {
+            return new StringBuilder("[group] uris=").append(getEndpoints())
+                    .append(", refreshperiod=").append(refreshPeriod)
+                    .append(", maxCacheTime=").append(maxCacheTime)
+                    .append(", fingerprint=").append(getFingerprint().orElse("none"))
+                    .append(" (last reload success: ").append(lastRefreshSuccess.get().map(Instant::toString).orElse("none"))
+                    .append(", last reload error: ").append(lastRefreshError.get().map(Instant::toString).orElse("none")).append(")")
+                    .toString();
+        }
+
+
+
+        private static final class Member {
+            private final URI endpoint;
+            private final FileCache fileCache;
+            private final Datasource datasource;
+
+            public Member(final ReplicationJobBuilderImpl builder) {
+                this.endpoint = builder.getUri();
+                this.fileCache = builder.newFileCache();
+                this.datasource = builder.newDatasource(fileCache);
+            }
+
+            public URI getEndpoint() {
+                return endpoint;
+            }
+
+            public FileCache getFileCache() {
+                return fileCache;
+            }
+
+            public Datasource getDatasource() {
+                return datasource;
+            }
+        }
+    }
+}
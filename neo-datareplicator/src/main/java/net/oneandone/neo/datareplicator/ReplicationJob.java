@@ -23,8 +23,10 @@ import java.net.URI;
 import java.nio.file.Paths;
 import java.time.Duration;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
 
 import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
 
 
 /**
@@ -38,6 +40,17 @@ public interface ReplicationJob extends Closeable {
                                                          File.separator + "datareplicator_cache"); 
     public static final Duration DEFAULT_MAX_CACHETIME = Duration.ofDays(30);
     public static final Duration DEFAULT_REFRESHPERIOD = Duration.ofSeconds(60);
+    public static final Duration DEFAULT_MAX_REFRESHPERIOD = Duration.ZERO;
+    public static final boolean DEFAULT_FILE_WATCHING = false;
+    public static final boolean DEFAULT_APPEND_MODE = false;
+    public static final boolean DEFAULT_TRANSFER_COMPRESSION = false;
+    public static final boolean DEFAULT_CACHE_COMPRESSION = false;
+    public static final boolean DEFAULT_NON_BLOCKING_FETCH = false;
+    public static final Durability DEFAULT_DURABILITY = Durability.NONE;
+    public static final int DEFAULT_RETAINED_VERSIONS = 1;
+    public static final boolean DEFAULT_LEADER_MODE = false;
+    public static final Duration DEFAULT_MAX_STALE = Duration.ZERO;
+    public static final boolean DEFAULT_COALESCING = false;
 
 
     /**
@@ -55,13 +68,61 @@ public interface ReplicationJob extends Closeable {
      */
     Optional<Duration> getExpiredTimeSinceRefreshError();
 
+    /**
+     * @return the age of the currently consumed data, if it has been served by the cache file and has not been 
+     *         revalidated by the source so far (e.g. by using stale-while-revalidate, see 
+     *         {@link ReplicationJobBuilder#withMaxStale(Duration)}, or if the source is not available) 
+     */
+    Optional<Duration> getStaleness();
+
+    /**
+     * @return the state of the circuit breaker of the host, which is shared by the replication jobs of the same 
+     *         host. While open, refreshes fail fast without contacting the host. Sources which are not 
+     *         <i>http</i> addressed are not protected by a circuit breaker (always closed)
+     */
+    CircuitState getCircuitState();
+
+    /**
+     * @return the fingerprint of the currently consumed data (hex-encoded 128 bit hash of the content) 
+     */
+    Optional<String> getFingerprint();
+
+    /**
+     * triggers a refresh immediately. The refresh will not be performed concurrently with the periodic refreshes
+     *
+     * @return the future which will be completed, if the refresh is done. The future will be completed
+     *         exceptionally, if the refresh fails, and cancelled, if the job is closed
+     */
+    CompletableFuture<Void> refreshAsync();
+
+    /**
+     * @return the snapshot of the in-process statistics such as latency distributions of the refresh phases and
+     *         counters (see {@link ReplicationMetrics})
+     */
+    ReplicationStatistics getStatistics();
+
+    /**
+     * @return the versions retained by the local cache, newest first (see {@link ReplicationJobBuilder#withRetainedVersions(int)})
+     */
+    ImmutableList<CachedVersion> getVersions();
+
+    /**
+     * delivers a former version to the consumer. The version is read from the local cache, which means nothing
+     * will be transferred. The version becomes the newest cache file and will be kept until the source is modified
+     * again. Not supported in append mode
+     *
+     * @param version  the version to roll back to (see {@link #getVersions()})
+     * @throws ReplicationException if the version is not available or the consumer does not accept it
+     */
+    void rollbackTo(CachedVersion version) throws ReplicationException;
+
     /**
      * @return the max cache time
      */
     Duration getMaxCacheTime();
 
     /**
-     * @return the refresh period
+     * @return the current refresh period (see {@link ReplicationJobBuilder#withMaxRefreshPeriod(Duration)})
      */
     Duration getRefreshPeriod();
 
@@ -90,11 +151,6 @@ public interface ReplicationJob extends Closeable {
      */
     static ReplicationJobBuilder source(final URI uri) {
         Preconditions.checkNotNull(uri);
-        return new ReplicationJobBuilderImpl(uri,
-                                             DEFAULT_FAIL_ON_INITFAILURE,
-                                             DEFAULT_CACHEDIR,
-                                             DEFAULT_MAX_CACHETIME,
-                                             DEFAULT_REFRESHPERIOD,
-                                             null);
+        return new ReplicationJobBuilderImpl(uri);
     }
 }
\ No newline at end of file
@@ -18,8 +18,12 @@ package net.oneandone.neo.datareplicator;
 
 
 import java.io.File;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
 import java.time.Duration;
+import java.util.function.BiConsumer;
 import java.util.function.Consumer;
+import java.util.function.Function;
 
 import javax.ws.rs.client.Client;
 
@@ -43,6 +47,18 @@ public interface ReplicationJobBuilder {
      */
     ReplicationJobBuilder withRefreshPeriod(final Duration refreshPeriod);
 
+    /**
+     * @param maxRefreshPeriod  the max refresh period. If the max refresh period is greater than the refresh period,
+     *                          the refresh period adapts: As long as the resource is unmodified or the refresh fails,
+     *                          the period is doubled each time up to the max refresh period. After a modification the
+     *                          refresh period is used again. A freshness lifetime announced by a <i>http</i> addressed
+     *                          resource (<i>Cache-Control: max-age</i> or <i>Expires</i> header) is honored within
+     *                          these bounds. Zero disables the adaptive refresh period
+     *                          (default is {@link ReplicationJob#DEFAULT_MAX_REFRESHPERIOD})
+     * @return the new instance of the data replicator
+     */
+    ReplicationJobBuilder withMaxRefreshPeriod(final Duration maxRefreshPeriod);
+
     /**
      *
      * @param maxCacheTime  the max cache time. The max time data is cached. This means it is highly
@@ -82,7 +98,122 @@ public interface ReplicationJobBuilder {
     ReplicationJobBuilder withClient(final Client client);
 
     /**
-     * @param consumer  the binary data consumer which will be called each time updated data is fetched. If a
+     * @param scheduler the scheduler to use. A scheduler can be shared by many replication jobs. By default 
+     *                  a JVM-wide scheduler will be used 
+     * @return the new instance of the data replicator
+     */
+    ReplicationJobBuilder withScheduler(final ReplicationScheduler scheduler);
+
+    /**
+     * @param fileWatching  true, if modifications of <i>file</i> addressed resources should be detected by file system 
+     *                      events. In this case modifications are replicated within milliseconds. The periodically 
+     *                      refresh will be performed as safety net anyway. Has no effect for other schemes. 
+     *                      (default is {@link ReplicationJob#DEFAULT_FILE_WATCHING})
+     * @return the new instance of the data replicator
+     */
+    ReplicationJobBuilder withFileWatching(final boolean fileWatching);
+
+    /**
+     * @param appendMode  true, if the <i>http</i> addressed resource is append-only (e.g. a log or a journal). In this
+     *                    case only the bytes behind the cached data will be requested by using range requests. To
+     *                    detect other modifications, the range overlaps the tail of the cached data. If the tail does
+     *                    not match or the server does not support range requests, a full request will be performed.
+     *                    Has no effect for other schemes. The append mode can not be combined with compressed cache 
+     *                    files (see {@link #withCacheCompression(boolean)}). (default is {@link ReplicationJob#DEFAULT_APPEND_MODE})
+     * @return the new instance of the data replicator
+     */
+    ReplicationJobBuilder withAppendMode(final boolean appendMode);
+
+    /**
+     * @param transferCompression  true, if <i>http</i> addressed resources should be transferred compressed (gzip or
+     *                             deflate), if supported by the server. The data is decompressed while streaming it 
+     *                             into the local cache. If a client is set which decodes encoded responses by itself
+     *                             (a registered reader interceptor such as Jersey's GZipEncoder), the content encoding is
+     *                             left to the client. (default is {@link ReplicationJob#DEFAULT_TRANSFER_COMPRESSION})
+     * @return the new instance of the data replicator
+     */
+    ReplicationJobBuilder withTransferCompression(final boolean transferCompression);
+
+    /**
+     * @param cacheCompression  true, if the cache files should be written compressed (gzip) to reduce the disk 
+     *                          usage of the cache dir. Compressed cache files can not be consumed memory-mapped.
+     *                          (default is {@link ReplicationJob#DEFAULT_CACHE_COMPRESSION})
+     * @return the new instance of the data replicator
+     */
+    ReplicationJobBuilder withCacheCompression(final boolean cacheCompression);
+
+    /**
+     * @param durability  the durability level of the cache writes. Syncing the cache files to disk avoids 
+     *                    that a power loss discards the newest cache file. Independent of the durability level 
+     *                    corrupt cache files will be detected and the previous cache file will be used instead.
+     *                    (default is {@link ReplicationJob#DEFAULT_DURABILITY})
+     * @return the new instance of the data replicator
+     */
+    ReplicationJobBuilder withDurability(final Durability durability);
+
+    /**
+     * @param retainedVersions  the number of versions which will be retained by the local cache including the
+     *                          newest one. Former versions can be delivered again without transferring them
+     *                          (see {@link ReplicationJob#rollbackTo(CachedVersion)}).
+     *                          (default is {@link ReplicationJob#DEFAULT_RETAINED_VERSIONS})
+     * @return the new instance of the data replicator
+     */
+    ReplicationJobBuilder withRetainedVersions(final int retainedVersions);
+
+    /**
+     * @param leaderMode  true, if processes sharing the cache dir should coordinate the replication. In this case
+     *                    the resource is fetched by the process holding the file lock of the cache entry (the leader) 
+     *                    only. The other processes (the followers) consume the cache files written by the leader. 
+     *                    If the leader dies, a follower takes over the leadership with its next refresh.  
+     *                    (default is {@link ReplicationJob#DEFAULT_LEADER_MODE})
+     * @return the new instance of the data replicator
+     */
+    ReplicationJobBuilder withLeaderMode(final boolean leaderMode);
+
+    /**
+     * @param maxStale  the max age of the cache file, which will be served on startup without loading the resource
+     *                  first (stale-while-revalidate). In this case the cache file will be revalidated by the source 
+     *                  asynchronously. The age is the time since the last validation of the cache file. The max 
+     *                  stale is bounded by the max cache time. Zero disables stale-while-revalidate, which means the 
+     *                  resource will be loaded first and the cache file is used as fallback only.
+     *                  (default is {@link ReplicationJob#DEFAULT_MAX_STALE})
+     * @return the new instance of the data replicator
+     */
+    ReplicationJobBuilder withMaxStale(final Duration maxStale);
+
+    /**
+     * @param coalescing  true, if replication jobs of the same resource should be coalesced JVM-wide. Coalesced 
+     *                    jobs share a single replication, which means the resource is fetched, hashed, cached and 
+     *                    decoded once per refresh and the data is fanned out to the consumers of all coalesced jobs. 
+     *                    Only jobs which are built with coalescing and equal options are coalesced. A client, a 
+     *                    scheduler or metrics are equal, if the same instance is set. Each coalesced 
+     *                    job keeps its own lifecycle. The shared replication will be terminated, if the last 
+     *                    coalesced job is closed. (default is {@link ReplicationJob#DEFAULT_COALESCING})
+     * @return the new instance of the data replicator
+     */
+    ReplicationJobBuilder withCoalescing(final boolean coalescing);
+
+    /**
+     * @param nonBlockingFetch  true, if periodic refreshes of <i>http</i> addressed resources should be performed by 
+     *                          using the asynchronous invoker of the client. In this case the worker threads of the
+     *                          scheduler are not blocked while the request is in flight. To avoid blocking threads 
+     *                          during the transfer at all, a client with a non-blocking connector should be used 
+     *                          (see {@link #withClient(Client)}). (default is {@link ReplicationJob#DEFAULT_NON_BLOCKING_FETCH})
+     * @return the new instance of the data replicator
+     */
+    ReplicationJobBuilder withNonBlockingFetch(final boolean nonBlockingFetch);
+
+    /**
+     * @param metrics  the metrics which will be called to record latencies and counters. The metrics can be shared
+     *                 by many replication jobs. By default a no-op metrics ({@link ReplicationMetrics#NOOP}) will be 
+     *                 used. The in-process statistics of a job are available anyway (see {@link ReplicationJob#getStatistics()})
+     * @return the new instance of the data replicator
+     */
+    ReplicationJobBuilder withMetrics(final ReplicationMetrics metrics);
+
+    /**
+     * @param consumer  the binary data consumer which will be called each time updated data is fetched. The consumer
+     *                  gets the original bytes, which will not be transcoded even though a charset is declared. If a
      *                  parsing error occurs, the data consumer will throw a RuntimeException
      * @return the replication job
      */
@@ -94,4 +225,89 @@ public interface ReplicationJobBuilder {
      * @return the replication job
      */
     ReplicationJob startConsumingText(final Consumer<String> consumer);
+
+    /**
+     * @param consumer  the stream consumer which will be called each time updated data is fetched. The data is
+     *                  streamed from the local cache. This means the data will not be kept in memory. The stream
+     *                  is valid within the consumer call only and will be closed afterwards. If a parsing error 
+     *                  occurs, the data consumer will throw a RuntimeException
+     * @return the replication job
+     */
+    ReplicationJob startConsumingStream(final Consumer<InputStream> consumer);
+
+    /**
+     * @param parser    the parser which reads the typed value from the data stream. The data is streamed from the 
+     *                  local cache by the replication thread, which means the raw data will not be kept in memory.
+     *                  If a parsing error occurs, the parser will throw a RuntimeException
+     * @param consumer  the consumer of the parsed value which will be called each time updated data is fetched. If a
+     *                  processing error occurs, the consumer will throw a RuntimeException
+     * @param <T>       the type of the parsed value
+     * @return the replication job
+     */
+    <T> ReplicationJob startConsuming(final Function<InputStream, T> parser, final Consumer<T> consumer);
+
+    /**
+     * @param parser    the parser which reads the typed value from the data stream (see {@link #startConsuming(Function, Consumer)})
+     * @param codec     the codec which persists the parsed value as snapshot next to the cache file. If the same data 
+     *                  is loaded again (e.g. on start-up), the snapshot will be read instead of parsing the data. If 
+     *                  the snapshot can not be read, the data will be parsed 
+     * @param consumer  the consumer of the parsed value which will be called each time updated data is fetched. If a
+     *                  processing error occurs, the consumer will throw a RuntimeException
+     * @param <T>       the type of the parsed value
+     * @return the replication job
+     */
+    <T> ReplicationJob startConsuming(final Function<InputStream, T> parser, final SnapshotCodec<T> codec, final Consumer<T> consumer);
+
+    /**
+     * @return the replicated reference which holds the current binary data
+     */
+    ReplicatedReference<byte[]> startReplicatingBinary();
+
+    /**
+     * @return the replicated reference which holds the current (UTF-8 encoded) text 
+     */
+    ReplicatedReference<String> startReplicatingText();
+
+    /**
+     * @param parser    the parser which reads the typed value from the data stream (see {@link #startConsuming(Function, Consumer)}).
+     *                  If a parsing error occurs, the parser will throw a RuntimeException. In this case the current 
+     *                  value will be kept
+     * @param <T>       the type of the parsed value
+     * @return the replicated reference which holds the current parsed value
+     */
+    <T> ReplicatedReference<T> startReplicating(final Function<InputStream, T> parser);
+
+    /**
+     * @param parser    the parser which reads the typed value from the data stream (see {@link #startConsuming(Function, Consumer)}).
+     *                  If a parsing error occurs, the parser will throw a RuntimeException. In this case the current 
+     *                  value will be kept
+     * @param codec     the codec which persists the parsed value as snapshot (see {@link #startConsuming(Function, SnapshotCodec, Consumer)}) 
+     * @param <T>       the type of the parsed value
+     * @return the replicated reference which holds the current parsed value
+     */
+    <T> ReplicatedReference<T> startReplicating(final Function<InputStream, T> parser, final SnapshotCodec<T> codec);
+
+    /**
+     * @param consumer  the memory-mapped data consumer which will be called each time updated data is fetched. The 
+     *                  consumer gets a read-only buffer which is mapped to the local cache file. This means processes 
+     *                  of the same host share the data by the page cache instead of holding a heap copy. The buffer 
+     *                  is valid until the consumer is called with updated data or the replication job is closed. 
+     *                  The mapped cache file will not be removed before. If a parsing error occurs, the data 
+     *                  consumer will throw a RuntimeException
+     * @return the replication job
+     * @throws IllegalStateException if cache compression is activated
+     */
+    ReplicationJob startConsumingMapped(final Consumer<ByteBuffer> consumer);
+
+    /**
+     * @param consumer  the delta consumer which will be called each time updated data is fetched. The consumer gets
+     *                  the offset and the stream of the data starting at this offset. If the data has been appended
+     *                  (see {@link #withAppendMode(boolean)}), the offset is the length of the data the consumer
+     *                  has been called with before and the stream contains the appended bytes only. Otherwise the
+     *                  offset is 0 and the stream contains the complete data. The stream is valid within the consumer
+     *                  call only and will be closed afterwards. If a parsing error occurs, the data consumer will
+     *                  throw a RuntimeException
+     * @return the replication job
+     */
+    ReplicationJob startConsumingDelta(final BiConsumer<Long, InputStream> consumer);
 }
\ No newline at end of file
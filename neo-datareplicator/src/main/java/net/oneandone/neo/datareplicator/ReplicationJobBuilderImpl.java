@@ -19,726 +19,1513 @@ package net.oneandone.neo.datareplicator;
 
 
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
 import java.io.Closeable;
-
-
 import java.io.File;
-
-import java.io.FileInputStream;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.net.URI;
-import java.net.URL;
-import java.nio.charset.Charset;
-import java.nio.file.StandardCopyOption;
+import java.nio.ByteBuffer;
 import java.time.Duration;
 import java.time.Instant;
-import java.util.*;
-import java.util.concurrent.Executors;
-import java.util.concurrent.ScheduledExecutorService;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BiConsumer;
 import java.util.function.Consumer;
+import java.util.function.Function;
 
 import javax.ws.rs.client.Client;
-import javax.ws.rs.client.ClientBuilder;
-import javax.ws.rs.client.Invocation.Builder;
-import javax.ws.rs.core.HttpHeaders;
-import javax.ws.rs.core.MediaType;
-import javax.ws.rs.core.Response;
 
-import net.oneandone.neo.collect.Immutables;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import com.google.common.base.Charsets;
 import com.google.common.base.Preconditions;
-import com.google.common.base.Strings;
 import com.google.common.collect.ImmutableList;
-import com.google.common.hash.Hashing;
+import com.google.common.hash.HashCode;
 import com.google.common.io.ByteStreams;
 import com.google.common.io.Closeables;
-import com.google.common.io.Files;
+
+import net.oneandone.neo.datareplicator.ReplicationMetrics.Counter;
+import net.oneandone.neo.datareplicator.ReplicationMetrics.Phase;
 
 
 final class ReplicationJobBuilderImpl implements ReplicationJobBuilder {
     private static final Logger LOG = LoggerFactory.getLogger(ReplicationJobBuilderImpl.class);
 
-    private final URI uri;
-    private final boolean failOnInitFailure;
-    private final Duration refreshPeriod;
-    private final File cacheDir;
-    private final Duration maxCacheTime;
-    private final Client client;
+    private final Settings settings;
 
 
-    ReplicationJobBuilderImpl(final URI uri,
-                              final boolean failOnInitFailure,
-                              final File cacheDir,
-                              final Duration maxCacheTime,
-                              final Duration refreshPeriod,
-                              final Client client) {
-        this.uri = uri;
-        this.failOnInitFailure = failOnInitFailure;
-        this.refreshPeriod = refreshPeriod;
-        this.cacheDir = cacheDir;
-        this.maxCacheTime = maxCacheTime;
-        this.client = client;
+    /**
+     * @param uri  the source uri. The other settings are the defaults (see {@link ReplicationJob})
+     */
+    ReplicationJobBuilderImpl(final URI uri) {
+        this(new Settings(uri));
+    }
+
+    private ReplicationJobBuilderImpl(final Settings settings) {
+        this.settings = settings;
     }
 
     @Override
     public ReplicationJobBuilderImpl withRefreshPeriod(final Duration refreshPeriod) {
         Preconditions.checkNotNull(refreshPeriod);
-        return new ReplicationJobBuilderImpl(this.uri,
-                                             this.failOnInitFailure,
-                                             this.cacheDir,
-                                             this.maxCacheTime,
-                                             refreshPeriod,
-                                             this.client);
+        return with(copy -> copy.refreshPeriod = refreshPeriod);
     }
 
     @Override
     public ReplicationJobBuilderImpl withMaxCacheTime(final Duration maxCacheTime) {
         Preconditions.checkNotNull(maxCacheTime);
-        return new ReplicationJobBuilderImpl(this.uri,
-                                             this.failOnInitFailure,
-                                             this.cacheDir,
-                                             maxCacheTime,
-                                             this.refreshPeriod,
-                                             this.client);
+        return with(copy -> copy.maxCacheTime = maxCacheTime);
     }
 
     @Override
     public ReplicationJobBuilderImpl withFailOnInitFailure(final boolean failOnInitFailure) {
-        return new ReplicationJobBuilderImpl(this.uri,
-                                             failOnInitFailure,
-                                             this.cacheDir,
-                                             this.maxCacheTime,
-                                             this.refreshPeriod,
-                                             this.client);
+        return with(copy -> copy.failOnInitFailure = failOnInitFailure);
     }
 
     @Override
     public ReplicationJobBuilderImpl withCacheDir(final File cacheDir) {
         Preconditions.checkNotNull(cacheDir);
-        return new ReplicationJobBuilderImpl(this.uri,
-                                             this.failOnInitFailure,
-                                             cacheDir,
-                                             this.maxCacheTime,
-                                             this.refreshPeriod,
-                                             this.client);
+        return with(copy -> copy.cacheDir = cacheDir);
     }
 
     @Override
     public ReplicationJobBuilderImpl withClient(final Client client) {
         Preconditions.checkNotNull(client);
-        return new ReplicationJobBuilderImpl(this.uri,
-                                             this.failOnInitFailure,
-                                             this.cacheDir,
-                                             this.maxCacheTime,
-                                             this.refreshPeriod,
-                                             client);
+        return with(copy -> copy.client = client);
+    }
+
+    @Override
+    public ReplicationJobBuilderImpl withScheduler(final ReplicationScheduler scheduler) {
+        Preconditions.checkNotNull(scheduler);
+        return with(copy -> copy.scheduler = scheduler);
+    }
+
+    @Override
+    public ReplicationJobBuilderImpl withFileWatching(final boolean fileWatching) {
+        return with(copy -> copy.fileWatching = fileWatching);
+    }
+
+    @Override
+    public ReplicationJobBuilderImpl withAppendMode(final boolean appendMode) {
+        return with(copy -> copy.appendMode = appendMode);
+    }
+
+    @Override
+    public ReplicationJobBuilderImpl withTransferCompression(final boolean transferCompression) {
+        return with(copy -> copy.transferCompression = transferCompression);
+    }
+
+    @Override
+    public ReplicationJobBuilderImpl withCacheCompression(final boolean cacheCompression) {
+        return with(copy -> copy.cacheCompression = cacheCompression);
+    }
+
+    @Override
+    public ReplicationJobBuilderImpl withNonBlockingFetch(final boolean nonBlockingFetch) {
+        return with(copy -> copy.nonBlockingFetch = nonBlockingFetch);
+    }
+
+    @Override
+    public ReplicationJobBuilderImpl withMetrics(final ReplicationMetrics metrics) {
+        Preconditions.checkNotNull(metrics);
+        return with(copy -> copy.metrics = metrics);
+    }
+
+    @Override
+    public ReplicationJobBuilderImpl withDurability(final Durability durability) {
+        Preconditions.checkNotNull(durability);
+        return with(copy -> copy.durability = durability);
+    }
+
+    @Override
+    public ReplicationJobBuilderImpl withRetainedVersions(final int retainedVersions) {
+        Preconditions.checkArgument(retainedVersions > 0, "at least the newest version has to be retained");
+        return with(copy -> copy.retainedVersions = retainedVersions);
+    }
+
+    @Override
+    public ReplicationJobBuilderImpl withLeaderMode(final boolean leaderMode) {
+        return with(copy -> copy.leaderMode = leaderMode);
+    }
+
+    /**
+     * @param startupDeadline  the deadline of the initial load. If the initial load is not completed in time, the
+     *                         consumer is served by the cache file first and updated, if the initial load completes
+     * @return the new instance of the data replicator
+     */
+    ReplicationJobBuilderImpl withStartupDeadline(final Instant startupDeadline) {
+        Preconditions.checkNotNull(startupDeadline);
+        return with(copy -> copy.startupDeadline = Optional.of(startupDeadline));
+    }
+
+    @Override
+    public ReplicationJobBuilderImpl withMaxStale(final Duration maxStale) {
+        Preconditions.checkNotNull(maxStale);
+        Preconditions.checkArgument(!maxStale.isNegative(), "max stale must not be negative");
+        return with(copy -> copy.maxStale = maxStale);
+    }
+
+    @Override
+    public ReplicationJobBuilderImpl withMaxRefreshPeriod(final Duration maxRefreshPeriod) {
+        Preconditions.checkNotNull(maxRefreshPeriod);
+        Preconditions.checkArgument(!maxRefreshPeriod.isNegative(), "max refresh period must not be negative");
+        return with(copy -> copy.maxRefreshPeriod = maxRefreshPeriod);
+    }
+
+    @Override
+    public ReplicationJobBuilderImpl withCoalescing(final boolean coalescing) {
+        return with(copy -> copy.coalescing = coalescing);
+    }
+
+    private ReplicationJobBuilderImpl with(final Consumer<Settings> modification) {
+        // the settings of this builder remain unchanged
+        final Settings copy = new Settings(settings);
+        modification.accept(copy);
+        return new ReplicationJobBuilderImpl(copy);
     }
 
     @Override
     public ReplicationJob startConsumingBinary(final Consumer<byte[]> consumer) {
-        return startConsuming(data -> consumer.accept(data.asBinary()));
+        return startDecoding(Data::asBinary, consumer);
     }
 
     @Override
     public ReplicationJob startConsumingText(final Consumer<String> consumer) {
-        return startConsuming(data -> consumer.accept(data.asText()));
+        return startDecoding(Data::asText, consumer);
     }
 
-    private ReplicationJob startConsuming(final Consumer<Data> consumer) {
+    @Override
+    public ReplicationJob startConsumingStream(final Consumer<InputStream> consumer) {
+        return startConsuming(data -> {
+            try (InputStream is = data.openStream()) {
+                consumer.accept(is);
+            } catch (final IOException ioe) {
+                throw new ReplicationException(ioe);
+            }
+        });
+    }
+
+    @Override
+    public <T> ReplicationJob startConsuming(final Function<InputStream, T> parser, final Consumer<T> consumer) {
+        Preconditions.checkNotNull(parser);
         Preconditions.checkNotNull(consumer);
-        return new ReplicatonJobImpl(uri,
-                                     failOnInitFailure,
-                                     cacheDir,
-                                     maxCacheTime,
-                                     refreshPeriod,
-                                     client,
-                                     consumer);
+        return startDecoding(new ParsingDecoder<>(parser, Optional.empty(), newFileCache()), consumer);
     }
 
+    @Override
+    public <T> ReplicationJob startConsuming(final Function<InputStream, T> parser, final SnapshotCodec<T> codec, final Consumer<T> consumer) {
+        Preconditions.checkNotNull(parser);
+        Preconditions.checkNotNull(codec);
+        Preconditions.checkNotNull(consumer);
+        final ParsingDecoder<T> decoder = new ParsingDecoder<>(parser, Optional.of(codec), newFileCache());
+        return startDecoding(decoder, (T value) -> {
+            consumer.accept(value);
+            decoder.writeSnapshotIfAbsent();  // the value has been accepted by the consumer
+        });
+    }
 
-    // internal data representation
-    private static interface Data {
+    @Override
+    public ReplicatedReference<byte[]> startReplicatingBinary() {
+        final ReferenceHolder<byte[]> holder = new ReferenceHolder<>();
+        return new ReplicatedReferenceImpl<>(startConsumingBinary(holder), holder);
+    }
+
+    @Override
+    public ReplicatedReference<String> startReplicatingText() {
+        final ReferenceHolder<String> holder = new ReferenceHolder<>();
+        return new ReplicatedReferenceImpl<>(startConsumingText(holder), holder);
+    }
 
-        long getHash();
+    @Override
+    public <T> ReplicatedReference<T> startReplicating(final Function<InputStream, T> parser) {
+        final ReferenceHolder<T> holder = new ReferenceHolder<>();
+        return new ReplicatedReferenceImpl<>(startConsuming(parser, holder), holder);
+    }
 
-        byte[] asBinary();
+    @Override
+    public <T> ReplicatedReference<T> startReplicating(final Function<InputStream, T> parser, final SnapshotCodec<T> codec) {
+        final ReferenceHolder<T> holder = new ReferenceHolder<>();
+        return new ReplicatedReferenceImpl<>(startConsuming(parser, codec, holder), holder);
+    }
 
-        String asText();
+    @Override
+    public ReplicationJob startConsumingMapped(final Consumer<ByteBuffer> consumer) {
+        Preconditions.checkNotNull(consumer);
+        Preconditions.checkState(!settings.cacheCompression, "compressed cache files can not be consumed memory-mapped");
+        return startConsuming(new MappedDataConsumer(consumer));
     }
 
+    @Override
+    public ReplicationJob startConsumingDelta(final BiConsumer<Long, InputStream> consumer) {
+        Preconditions.checkNotNull(consumer);
+        return startConsuming(new DeltaDataConsumer(consumer));
+    }
 
-    private static class HeuristicsDecodingData implements Data {
-        private final byte[] binary;
-        private final long hash;
+    private ReplicationJob startConsuming(final Consumer<Data> consumer) {
+        return startDecoding(data -> data, consumer);
+    }
 
-        public HeuristicsDecodingData(final byte[] binary) {
-            this.binary = binary;
-            this.hash = Hashing.md5().newHasher().putBytes(binary).hash().asLong();
+    private <T> ReplicationJob startDecoding(final Function<Data, T> decoder, final Consumer<T> consumer) {
+        Preconditions.checkNotNull(consumer);
+        checkAppendMode();
+        if (settings.coalescing) {
+            return SharedJob.subscribe(this, metricsRecorder -> new DecodingConsumer<>(decoder, consumer, metricsRecorder));
+        } else {
+            final MetricsRecorder metricsRecorder = new MetricsRecorder(settings.uri, settings.metrics);
+            return newReplicationJob(metricsRecorder, new DecodingConsumer<>(decoder, consumer, metricsRecorder));
         }
+    }
 
-        @Override
-        public long getHash() {
-            return hash;
-        }
+    private ReplicatonJobImpl newReplicationJob(final MetricsRecorder metricsRecorder, final Consumer<Data> consumer) {
+        return new ReplicatonJobImpl(settings, metricsRecorder, consumer);
+    }
 
-        @Override
-        public byte[] asBinary() {
-            return binary;
-        }
+    /**
+     * @return the key of coalesced jobs. Jobs are coalesced, if all options are equal. The effective options are
+     *         used, e.g. the default scheduler, if no scheduler is set. Client, scheduler and metrics do not 
+     *         implement equals, which means they are compared by identity. Jobs have to use the same instances 
+     *         to be coalesced
+     */
+    private List<Object> getCoalescingKey() {
+        return Arrays.asList(settings.uri,
+                             settings.failOnInitFailure,
+                             settings.cacheDir.getAbsoluteFile(),
+                             settings.maxCacheTime,
+                             settings.refreshPeriod,
+                             settings.client,
+                             (settings.scheduler == null) ? ReplicationScheduler.getDefault() : settings.scheduler,
+                             settings.fileWatching,
+                             settings.appendMode,
+                             settings.transferCompression,
+                             settings.cacheCompression,
+                             settings.nonBlockingFetch,
+                             settings.metrics,
+                             settings.durability,
+                             settings.retainedVersions,
+                             settings.leaderMode,
+                             settings.startupDeadline,
+                             settings.maxStale,
+                             settings.maxRefreshPeriod);
+    }
 
-        @Override
-        public String asText() {
-            return new String(binary, getCharset());
-        }
 
-        protected Charset getCharset() {
-            return CharsetDetector.guessEncoding(binary);
-        }
+    /**
+     * @return the uri of the resource
+     */
+    URI getUri() {
+        return settings.uri;
     }
 
+    /**
+     * @return a new file cache of the resource
+     */
+    FileCache newFileCache() {
+        return new FileCache(settings.cacheDir, settings.uri.toString(), settings.maxCacheTime, settings.cacheCompression, settings.durability, settings.retainedVersions);
+    }
 
+    /**
+     * @param fileCache  the file cache of the resource
+     * @return a new data source of the resource
+     */
+    Datasource newDatasource(final FileCache fileCache) {
+        checkAppendMode();
+        return newDatasource(settings.uri, settings.client, settings.appendMode, settings.transferCompression, fileCache);
+    }
+
+    private void checkAppendMode() {
+        // appending would decompress and recompress the whole cached data on each refresh
+        Preconditions.checkState(!(settings.appendMode && settings.cacheCompression), "append mode can not be combined with compressed cache files");
+    }
 
+    private static Datasource newDatasource(final URI uri,
+                                            final Client client,
+                                            final boolean appendMode,
+                                            final boolean transferCompression,
+                                            final FileCache fileCache) {
+        // create proper data source
+        if (uri.getScheme().equalsIgnoreCase("classpath")) {
+            return new ClasspathDatasource(uri, fileCache);
 
-    private static class MimeTypeBasedDecodingData extends HeuristicsDecodingData {
-        private final Charset charset;
+        } else if (uri.getScheme().equalsIgnoreCase("http") || uri.getScheme().equalsIgnoreCase("https")) {
+            return new HttpDatasource(uri, client, appendMode, transferCompression, fileCache);
 
-        public MimeTypeBasedDecodingData(final byte[] binary, final MediaType mediaType) {
-            this(binary, mediaType.getParameters().get(MediaType.CHARSET_PARAMETER));
-        }
+        } else if (uri.getScheme().equalsIgnoreCase("file")) {
+            return new FileDatasource(uri, fileCache);
 
-        private MimeTypeBasedDecodingData(final byte[] binary, final String charsetname) {
-            this(binary, (charsetname == null) ? null : Charset.forName(charsetname));
+        } else {
+            throw new RuntimeException("scheme of " + uri + " is not supported (supported: classpath, http, https, file)");
         }
+    }
+
+
+    private static final class DecodingConsumer<T> implements Consumer<Data>, Closeable {
+        private final Function<Data, T> decoder;
+        private final Consumer<T> consumer;
+        private final MetricsRecorder metricsRecorder;
 
-        private MimeTypeBasedDecodingData(final byte[] binary, final Charset charset) {
-            super((charset == null) ? binary : toUtf8EncodedBinary(binary, charset));
-            this.charset = (charset == null) ? null : Charsets.UTF_8;
+        public DecodingConsumer(final Function<Data, T> decoder, final Consumer<T> consumer, final MetricsRecorder metricsRecorder) {
+            this.decoder = decoder;
+            this.consumer = consumer;
+            this.metricsRecorder = metricsRecorder;
         }
 
-        private static byte[] toUtf8EncodedBinary(final byte[] binary, final Charset charset) {
-            return new String(binary, charset).getBytes(Charsets.UTF_8);
+        @Override
+        public void accept(final Data data) {
+            final long decodeStart = System.nanoTime();
+            final T decoded = decoder.apply(data);
+
+            final long consumerStart = System.nanoTime();
+            if (decoded != data) {   // data based consumers perform decoding by themselves
+                metricsRecorder.recordLatency(Phase.DECODE, consumerStart - decodeStart);
+            }
+
+            try {
+                consumer.accept(decoded);
+            } finally {
+                metricsRecorder.recordElapsed(Phase.CONSUMER, consumerStart);
+            }
         }
 
         @Override
-        protected Charset getCharset() {
-            return (charset == null) ? super.getCharset()
-                                     : charset;
+        public void close() throws IOException {
+            if (consumer instanceof Closeable) {
+                ((Closeable) consumer).close();
+            }
         }
     }
 
 
 
-    private static final class ReplicatonJobImpl implements ReplicationJob {
-        private final Datasource datasource;
+    private static final class ParsingDecoder<T> implements Function<Data, T> {
+        private final Function<InputStream, T> parser;
+        private final Optional<SnapshotCodec<T>> codec;
         private final FileCache fileCache;
-        private final Consumer<Data> consumer;
-        private final ScheduledExecutorService executor;
-        private final Duration maxCacheTime;
-        private final Duration refreshPeriod;
+        private final AtomicReference<Optional<ParsedValue<T>>> lastParsed = new AtomicReference<>(Optional.empty());
 
-        private final AtomicReference<Optional<Instant>> lastRefreshSuccess = new AtomicReference<>(Optional.empty());
-        private final AtomicReference<Optional<Instant>> lastRefreshError = new AtomicReference<>(Optional.empty());
+        public ParsingDecoder(final Function<InputStream, T> parser, final Optional<SnapshotCodec<T>> codec, final FileCache fileCache) {
+            this.parser = parser;
+            this.codec = codec;
+            this.fileCache = fileCache;
+        }
 
+        @Override
+        public T apply(final Data data) {
+            // the last parsed value will be reused, if the data is unchanged (e.g. the consumer has rejected the value before)
+            final Optional<ParsedValue<T>> last = lastParsed.get();
+            if (last.isPresent() && last.get().getFingerprint().equals(data.getFingerprint())) {
+                return last.get().getValue();
+            }
 
-        public ReplicatonJobImpl(final URI uri,
-                                 final boolean failOnInitFailure,
-                                 final File cacheDir,
-                                 final Duration maxCacheTime,
-                                 final Duration refreshPeriod,
-                                 final Client client,
-                                 final Consumer<Data> consumer) {
+            final ParsedValue<T> parsed = readSnapshot(data.getFingerprint()).map(value -> new ParsedValue<>(data.getFingerprint(), value, true))
+                                                                             .orElseGet(() -> new ParsedValue<>(data.getFingerprint(), parse(data), false));
+            lastParsed.set(Optional.of(parsed));
+            return parsed.getValue();
+        }
 
-            this.maxCacheTime = maxCacheTime;
-            this.refreshPeriod = refreshPeriod;
-            this.consumer = new ConsumerAdapter(consumer);
-            this.fileCache = new FileCache(cacheDir, uri.toString(), maxCacheTime);
+        private T parse(final Data data) {
+            try (InputStream is = data.openStream()) {
+                return parser.apply(is);
+            } catch (final IOException ioe) {
+                throw new ReplicationException(ioe);
+            }
+        }
 
+        private Optional<T> readSnapshot(final HashCode fingerprint) {
+            if (codec.isPresent()) {
+                final Optional<InputStream> snapshot = fileCache.openSnapshot(fingerprint, codec.get().getId());
+                if (snapshot.isPresent()) {
+                    try (InputStream is = new BufferedInputStream(snapshot.get())) {
+                        return Optional.of(codec.get().read(is));
+                    } catch (final IOException | RuntimeException e) {
+                        LOG.debug("reading snapshot of " + fingerprint + " failed. Parsing the data", e);
+                    } finally {
+                        Closeables.closeQuietly(snapshot.get());
+                    }
+                }
+            }
+            return Optional.empty();
+        }
 
-            // create proper data source
-            if (uri.getScheme().equalsIgnoreCase("classpath")) {
-                this.datasource = new ClasspathDatasource(uri);
+        public void writeSnapshotIfAbsent() {
+            final Optional<ParsedValue<T>> last = lastParsed.get();
+            last.filter(parsed -> !parsed.isSnapshotted())
+                .filter(parsed -> codec.isPresent())
+                .ifPresent(parsed -> {
+                    fileCache.writeSnapshot(parsed.getFingerprint(), codec.get().getId(), os -> {
+                        try {
+                            final OutputStream bos = new BufferedOutputStream(os);
+                            codec.get().write(parsed.getValue(), bos);
+                            bos.flush();
+                        } catch (final IOException ioe) {
+                            throw new ReplicationException(ioe);
+                        }
+                    });
+                    lastParsed.compareAndSet(last, Optional.of(new ParsedValue<>(parsed.getFingerprint(), parsed.getValue(), true)));
+                });
+        }
 
-            } else if (uri.getScheme().equalsIgnoreCase("http") || uri.getScheme().equalsIgnoreCase("https")) {
-                this.datasource = new HttpDatasource(uri, client);
 
-            } else if (uri.getScheme().equalsIgnoreCase("file")) {
-                this.datasource = new FileDatasource(uri);
+        private static final class ParsedValue<T> {
+            private final HashCode fingerprint;
+            private final T value;
+            private final boolean isSnapshotted;
 
-            } else {
-                throw new RuntimeException("scheme of " + uri + " is not supported (supported: classpath, http, https, file)");
+            public ParsedValue(final HashCode fingerprint, final T value, final boolean isSnapshotted) {
+                this.fingerprint = fingerprint;
+                this.value = value;
+                this.isSnapshotted = isSnapshotted;
             }
 
+            public HashCode getFingerprint() {
+                return fingerprint;
+            }
 
-            // load on startup
-            try {
-                loadAndNotifyConsumer();
+            public T getValue() {
+                return value;
+            }
 
-            } catch (final RuntimeException rt) {
-                if (failOnInitFailure) {
-                    throw rt;
-                } else {
-                    // fallback -> try to load from cache (will throw a runtime exception, if fails)
-                    notifyConsumer(fileCache.load());
-                }
+            public boolean isSnapshotted() {
+                return isSnapshotted;
             }
+        }
+    }
 
 
-            // start scheduler for periodically reloadings
-            this.executor = Executors.newScheduledThreadPool(0);
-            executor.scheduleWithFixedDelay(() -> loadAndNotifyConsumer(),
-                                            refreshPeriod.toMillis(),
-                                            refreshPeriod.toMillis(),
-                                            TimeUnit.MILLISECONDS);
-        }
+
+    private static final class ReferenceHolder<T> implements Consumer<T> {
+        // the value and its version are replaced together by a single volatile write
+        private volatile Versioned<T> current = new Versioned<>(null, 0);
 
         @Override
-        public void close() {
-            executor.shutdown();
-            datasource.close();
+        public void accept(final T value) {
+            current = new Versioned<>(value, current.version + 1);   // the consumer is never called concurrently
         }
 
-        private void loadAndNotifyConsumer() throws RuntimeException {
-            try {
-                final Data data = datasource.load();
-                notifyConsumer(data);
+        public T get() {
+            return current.value;
+        }
 
-                // data has been accepted by the consumer -> update cache
-                fileCache.update(data);
-                lastRefreshSuccess.set(Optional.of(Instant.now()));
+        public long getVersion() {
+            return current.version;
+        }
 
-            } catch (final RuntimeException rt) {
-                // loading failed or consumer has not accepted the data
-                LOG.warn("error occured by loading " + getEndpoint(), rt);
-                lastRefreshError.set(Optional.of(Instant.now()));
 
-                throw rt;
+        private static final class Versioned<T> {
+            private final T value;
+            private final long version;
+
+            public Versioned(final T value, final long version) {
+                this.value = value;
+                this.version = version;
             }
         }
+    }
 
-        private void notifyConsumer(final Data data) throws RuntimeException {
-            consumer.accept(data);   // let the consumer handle the new data. Consumer may throw a runtime exception 
+
+
+    private static final class ReplicatedReferenceImpl<T> implements ReplicatedReference<T> {
+        private final ReplicationJob job;
+        private final ReferenceHolder<T> holder;
+
+        public ReplicatedReferenceImpl(final ReplicationJob job, final ReferenceHolder<T> holder) {
+            this.job = job;
+            this.holder = holder;
         }
 
         @Override
-        public URI getEndpoint() {
-            return datasource.getEndpoint();
+        public T get() {
+            return holder.get();
         }
 
         @Override
-        public Duration getMaxCacheTime() {
-            return maxCacheTime;
+        public long getVersion() {
+            return holder.getVersion();
         }
 
         @Override
-        public Duration getRefreshPeriod() {
-            return refreshPeriod;
+        public URI getEndpoint() {
+            return job.getEndpoint();
         }
 
         @Override
         public Optional<Duration> getExpiredTimeSinceRefreshSuccess() {
-            return lastRefreshSuccess.get().map(time -> Duration.between(time, Instant.now()));
+            return job.getExpiredTimeSinceRefreshSuccess();
         }
 
         @Override
         public Optional<Duration> getExpiredTimeSinceRefreshError() {
-            return lastRefreshError.get()
-                                   .map(time -> Duration.between(time, Instant.now()));
+            return job.getExpiredTimeSinceRefreshError();
+        }
+
+        @Override
+        public Optional<String> getFingerprint() {
+            return job.getFingerprint();
+        }
+
+        @Override
+        public CompletableFuture<Void> refreshAsync() {
+            return job.refreshAsync();
+        }
+
+        @Override
+        public ReplicationStatistics getStatistics() {
+            return job.getStatistics();
+        }
+
+        @Override
+        public ImmutableList<CachedVersion> getVersions() {
+            return job.getVersions();
         }
 
+        @Override
+        public void rollbackTo(final CachedVersion version) throws ReplicationException {
+            job.rollbackTo(version);
+        }
+
+        @Override
+        public Optional<Duration> getStaleness() {
+            return job.getStaleness();
+        }
+
+        @Override
+        public CircuitState getCircuitState() {
+            return job.getCircuitState();
+        }
+
+        @Override
+        public Duration getMaxCacheTime() {
+            return job.getMaxCacheTime();
+        }
+
+        @Override
+        public Duration getRefreshPeriod() {
+            return job.getRefreshPeriod();
+        }
+
+        @Override
+        public void close() {
+            job.close();
+        }
 
         @Override
         public String toString() {
-            return new StringBuilder(datasource.toString())
-                    .append(", refreshperiod=").append(refreshPeriod)
-                    .append(", maxCacheTime=").append(maxCacheTime)
-                    .append(" (last reload success: ").append(lastRefreshSuccess.get().map(Instant::toString).orElse("none"))
-                    .append(", last reload error: ").append(lastRefreshError.get().map(Instant::toString).orElse("none")).append(")")
-                    .toString();
+            return job.toString() + ", version=" + getVersion();
         }
+    }
 
 
 
-        private static final class ConsumerAdapter implements Consumer<Data> {
-            private final Consumer<Data> consumer;
-            private final AtomicReference<Long> lastMd5 = new AtomicReference<>(0L);
+    private static final class MappedDataConsumer implements Consumer<Data>, Closeable {
+        private final Consumer<ByteBuffer> consumer;
+        private final AtomicReference<Optional<FileLeases.Lease>> currentLease = new AtomicReference<>(Optional.empty());
 
-            public ConsumerAdapter(final Consumer<Data> consumer) {
-                this.consumer = consumer;
+        public MappedDataConsumer(final Consumer<ByteBuffer> consumer) {
+            this.consumer = consumer;
+        }
+
+        @Override
+        public void accept(final Data data) {
+            // the mapped file must not be removed as long as the buffer is in use
+            final FileLeases.Lease lease = FileLeases.acquire(data.getFile());
+            try {
+                consumer.accept(data.asMappedBuffer().asReadOnlyBuffer());
+            } catch (final RuntimeException rt) {
+                lease.release();
+                throw rt;
             }
 
-            @Override
-            public void accept(final Data data) {
+            // the buffer of the former data is not in use anymore
+            currentLease.getAndSet(Optional.of(lease)).ifPresent(FileLeases.Lease::release);
+        }
 
-                // data changed (new or modified)?
-                if (data.getHash() != lastMd5.get()) {
-                    // yes
-                    consumer.accept(data);
-                    lastMd5.set(data.getHash());
-                }
-            }
+        @Override
+        public void close() {
+            currentLease.getAndSet(Optional.empty()).ifPresent(FileLeases.Lease::release);
         }
+    }
 
 
-        private static abstract class Datasource implements Closeable {
-            private final URI uri;
 
-            public Datasource(final URI uri) {
-                this.uri = uri;
-            }
+    private static final class DeltaDataConsumer implements Consumer<Data> {
+        private final BiConsumer<Long, InputStream> consumer;
+        private final AtomicReference<Optional<HashCode>> lastFingerprint = new AtomicReference<>(Optional.empty());
 
-            @Override
-            public void close() { }
+        public DeltaDataConsumer(final BiConsumer<Long, InputStream> consumer) {
+            this.consumer = consumer;
+        }
 
-            public URI getEndpoint() {
-                return uri;
+        @Override
+        public void accept(final Data data) {
+            // the delta can be used only, if it is based on the data the consumer has been called with before
+            final long offset = data.getDelta()
+                                    .filter(delta -> Optional.of(delta.getBaseFingerprint()).equals(lastFingerprint.get()))
+                                    .map(Data.Delta::getOffset)
+                                    .orElse(0L);
+
+            try (InputStream is = data.openStream()) {
+                ByteStreams.skipFully(is, offset);
+                consumer.accept(offset, is);
+            } catch (final IOException ioe) {
+                throw new ReplicationException(ioe);
             }
 
-            public abstract Data load() throws ReplicationException;
+            lastFingerprint.set(Optional.of(data.getFingerprint()));
+        }
+    }
+
 
-            @Override
-            public String toString() {
-                return "[" + this.getClass().getSimpleName() + "] uri=" + uri;
-            }
+
+    /**
+     * The settings of a builder. The settings will not be modified after passing them to a builder 
+     */
+    private static final class Settings {
+        private final URI uri;
+        private boolean failOnInitFailure = ReplicationJob.DEFAULT_FAIL_ON_INITFAILURE;
+        private File cacheDir = ReplicationJob.DEFAULT_CACHEDIR;
+        private Duration maxCacheTime = ReplicationJob.DEFAULT_MAX_CACHETIME;
+        private Duration refreshPeriod = ReplicationJob.DEFAULT_REFRESHPERIOD;
+        private Client client = null;
+        private ReplicationScheduler scheduler = null;
+        private boolean fileWatching = ReplicationJob.DEFAULT_FILE_WATCHING;
+        private boolean appendMode = ReplicationJob.DEFAULT_APPEND_MODE;
+        private boolean transferCompression = ReplicationJob.DEFAULT_TRANSFER_COMPRESSION;
+        private boolean cacheCompression = ReplicationJob.DEFAULT_CACHE_COMPRESSION;
+        private boolean nonBlockingFetch = ReplicationJob.DEFAULT_NON_BLOCKING_FETCH;
+        private ReplicationMetrics metrics = ReplicationMetrics.NOOP;
+        private Durability durability = ReplicationJob.DEFAULT_DURABILITY;
+        private int retainedVersions = ReplicationJob.DEFAULT_RETAINED_VERSIONS;
+        private boolean leaderMode = ReplicationJob.DEFAULT_LEADER_MODE;
+        private Optional<Instant> startupDeadline = Optional.empty();
+        private Duration maxStale = ReplicationJob.DEFAULT_MAX_STALE;
+        private Duration maxRefreshPeriod = ReplicationJob.DEFAULT_MAX_REFRESHPERIOD;
+        private boolean coalescing = ReplicationJob.DEFAULT_COALESCING;
+
+        Settings(final URI uri) {
+            this.uri = uri;
         }
 
+        Settings(final Settings other) {
+            this.uri = other.uri;
+            this.failOnInitFailure = other.failOnInitFailure;
+            this.cacheDir = other.cacheDir;
+            this.maxCacheTime = other.maxCacheTime;
+            this.refreshPeriod = other.refreshPeriod;
+            this.client = other.client;
+            this.scheduler = other.scheduler;
+            this.fileWatching = other.fileWatching;
+            this.appendMode = other.appendMode;
+            this.transferCompression = other.transferCompression;
+            this.cacheCompression = other.cacheCompression;
+            this.nonBlockingFetch = other.nonBlockingFetch;
+            this.metrics = other.metrics;
+            this.durability = other.durability;
+            this.retainedVersions = other.retainedVersions;
+            this.leaderMode = other.leaderMode;
+            this.startupDeadline = other.startupDeadline;
+            this.maxStale = other.maxStale;
+            this.maxRefreshPeriod = other.maxRefreshPeriod;
+            this.coalescing = other.coalescing;
+        }
+    }
 
-        private static class ClasspathDatasource extends Datasource {
 
-            public ClasspathDatasource(final URI uri) {
-                super(uri);
-            }
 
-            @Override
-            public Data load() throws ReplicationException {
-                ClassLoader classLoader = Thread.currentThread().getContextClassLoader();
-                if (classLoader == null) {
-                    classLoader = getClass().getClassLoader();
+    /**
+     * The replication which is shared by coalesced jobs (see {@link ReplicationJobBuilder#withCoalescing(boolean)}).
+     * The data is fetched, hashed, cached and decoded once per refresh and fanned out to the subscribed consumers.
+     * The shared replication will be closed, if the last subscriber is closed 
+     */
+    private static final class SharedJob {
+        private static final ConcurrentMap<List<Object>, SharedJob> SHARED_JOBS = new ConcurrentHashMap<>();
+        
+        private final List<Object> key;
+        private final FanOutConsumer fanOut = new FanOutConsumer();
+        
+        // guarded by this
+        private Optional<CompletableFuture<ReplicatonJobImpl>> job = Optional.empty();
+        private int numSubscribers = 0;
+        private boolean isRemoved = false;
+
+        private SharedJob(final List<Object> key) {
+            this.key = key;
+        }
+        
+        /**
+         * @param builder          the builder of the job
+         * @param consumerFactory  the factory which creates the consumer of the subscriber by using the metrics 
+         *                         recorder of the shared replication
+         * @return the coalesced job of the subscriber
+         */
+        static ReplicationJob subscribe(final ReplicationJobBuilderImpl builder, final Function<MetricsRecorder, Consumer<Data>> consumerFactory) {
+            while (true) {
+                final Optional<ReplicationJob> coalescedJob = SHARED_JOBS.computeIfAbsent(builder.getCoalescingKey(), SharedJob::new)
+                                                                         .trySubscribe(builder, consumerFactory);
+                if (coalescedJob.isPresent()) {
+                    return coalescedJob.get();
                 }
+                // shared replication has been closed concurrently -> retry 
+            }
+        }
 
-                final URL classpathUri = classLoader.getResource(getEndpoint().getRawSchemeSpecificPart());
-                if (classpathUri == null) {
-                    throw new RuntimeException("resource " + getEndpoint().getRawSchemeSpecificPart() + " not found in classpath");
+        private Optional<ReplicationJob> trySubscribe(final ReplicationJobBuilderImpl builder, final Function<MetricsRecorder, Consumer<Data>> consumerFactory) {
+            final CompletableFuture<ReplicatonJobImpl> startedJob;
+            final boolean isStarter;
+            synchronized (this) {
+                if (isRemoved) {
+                    return Optional.empty();
+                }
+                
+                // the subscription is counted before the job has been started. The shared replication will not be closed in the meantime
+                isStarter = !job.isPresent();
+                if (isStarter) {
+                    job = Optional.of(new CompletableFuture<>());
+                }
+                startedJob = job.get();
+                numSubscribers++;
+            }
+            
+            return Optional.of(isStarter ? start(builder, consumerFactory, startedJob) 
+                                         : join(builder, consumerFactory, startedJob));
+        }
+        
+        private ReplicationJob start(final ReplicationJobBuilderImpl builder, 
+                                     final Function<MetricsRecorder, Consumer<Data>> consumerFactory,
+                                     final CompletableFuture<ReplicatonJobImpl> startedJob) {
+            // the initial load will be performed by the calling thread outside the monitor. Concurrent subscribers 
+            // will wait for it 
+            final MetricsRecorder metricsRecorder = new MetricsRecorder(builder.getUri(), builder.settings.metrics);
+            final ReplicatonJobImpl.ConsumerAdapter subscriber = new ReplicatonJobImpl.ConsumerAdapter(consumerFactory.apply(metricsRecorder));
+            fanOut.add(subscriber);
+            try {
+                final ReplicatonJobImpl newJob = builder.newReplicationJob(metricsRecorder, fanOut);
+                startedJob.complete(newJob);
+                return new CoalescedJob(this, newJob, subscriber);
+                
+            } catch (final RuntimeException rt) {
+                fanOut.remove(subscriber);
+                synchronized (this) {
+                    remove();   // subsequent subscribers will start a new shared replication
+                }
+                startedJob.completeExceptionally(rt);
+                release();
+                throw rt;
+            }
+        }
+        
+        private ReplicationJob join(final ReplicationJobBuilderImpl builder, 
+                                    final Function<MetricsRecorder, Consumer<Data>> consumerFactory,
+                                    final CompletableFuture<ReplicatonJobImpl> startedJob) {
+            final ReplicatonJobImpl sharedJob;
+            try {
+                sharedJob = startedJob.join();
+            } catch (final CompletionException ce) {
+                // the concurrently performed initial load has failed 
+                release();
+                throw ReplicatonJobImpl.toRuntimeException(ce.getCause());
+            }
+            
+            // the new subscriber will be notified with the data the other subscribers have been notified with 
+            final ReplicatonJobImpl.ConsumerAdapter subscriber = new ReplicatonJobImpl.ConsumerAdapter(consumerFactory.apply(sharedJob.metricsRecorder));
+            try {
+                sharedJob.withLastDeliveredData(lastDelivered -> {
+                    // no data has been delivered so far, if the initial load has missed the startup deadline. The 
+                    // subscriber will be notified together with the other subscribers, if it is completed
+                    if (lastDelivered.isPresent() || !sharedJob.isInitialLoadPending()) {
+                        subscriber.accept(lastDelivered.orElseThrow(() -> new ReplicationException("no data of " + builder.getUri() + " is available")));
+                    }
+                    fanOut.add(subscriber);
+                });
+            } catch (final RuntimeException rt) {
+                release();
+                throw rt;
+            }
+            return new CoalescedJob(this, sharedJob, subscriber);
+        }
+        
+        private void unsubscribe(final ReplicatonJobImpl.ConsumerAdapter subscriber) {
+            fanOut.remove(subscriber);
+            subscriber.close();
+            release();
+        }
+        
+        private synchronized void release() {
+            numSubscribers--;
+            if (numSubscribers == 0) {
+                // the job has been started or has failed. Subscribers which wait for the initial load are counted
+                job.filter(startedJob -> !startedJob.isCompletedExceptionally())
+                   .ifPresent(startedJob -> startedJob.join().close());
+                job = Optional.empty();
+                remove();
+            }
+        }
+        
+        private void remove() {
+            isRemoved = true;
+            SHARED_JOBS.remove(key, this);
+        }
+    }
 
-                } else {
-                    try (InputStream is=classpathUri.openStream()) {
-                        return new HeuristicsDecodingData(ByteStreams.toByteArray(is));
-                    } catch (final IOException ioe) {
-                        throw new ReplicationException(ioe);
+    
+    private static final class FanOutConsumer implements Consumer<Data>, Closeable {
+        private final List<ReplicatonJobImpl.ConsumerAdapter> subscribers = new CopyOnWriteArrayList<>();
+        
+        public void add(final ReplicatonJobImpl.ConsumerAdapter subscriber) {
+            subscribers.add(subscriber);
+        }
+        
+        public void remove(final ReplicatonJobImpl.ConsumerAdapter subscriber) {
+            subscribers.remove(subscriber);
+        }
+        
+        @Override
+        public void accept(final Data data) {
+            // each subscriber will be notified, even though another one rejects the data. Subscribers which have 
+            // accepted the data will not be notified again, if the data is redelivered 
+            RuntimeException error = null;
+            for (ReplicatonJobImpl.ConsumerAdapter subscriber : subscribers) {
+                try {
+                    subscriber.accept(data);
+                } catch (final RuntimeException rt) {
+                    if (error == null) {
+                        error = rt;
+                    } else {
+                        error.addSuppressed(rt);
                     }
                 }
             }
+            
+            if (error != null) {
+                throw error;
+            }
         }
+        
+        @Override
+        public void close() {
+            subscribers.forEach(ReplicatonJobImpl.ConsumerAdapter::close);
+            subscribers.clear();
+        }
+    }
 
 
+    private static final class CoalescedJob implements ReplicationJob {
+        private final SharedJob sharedJob;
+        private final ReplicationJob job;
+        private final ReplicatonJobImpl.ConsumerAdapter subscriber;
+        private final AtomicBoolean isClosed = new AtomicBoolean(false);
 
+        public CoalescedJob(final SharedJob sharedJob, final ReplicationJob job, final ReplicatonJobImpl.ConsumerAdapter subscriber) {
+            this.sharedJob = sharedJob;
+            this.job = job;
+            this.subscriber = subscriber;
+        }
 
-        private static class FileDatasource extends Datasource {
+        @Override
+        public URI getEndpoint() {
+            return job.getEndpoint();
+        }
 
-            public FileDatasource(final URI uri) {
-                super(uri);
-            }
+        @Override
+        public Optional<Duration> getExpiredTimeSinceRefreshSuccess() {
+            return job.getExpiredTimeSinceRefreshSuccess();
+        }
 
-            @Override
-            public Data load() {
-                final File file = new File(getEndpoint().getPath());
-                if (file.exists()) {
-                    try {
-                        return new HeuristicsDecodingData(Files.toByteArray(file));
-                    } catch (IOException ioe) {
-                        throw new ReplicationException(ioe);
-                    }
+        @Override
+        public Optional<Duration> getExpiredTimeSinceRefreshError() {
+            return job.getExpiredTimeSinceRefreshError();
+        }
 
-                } else {
-                    throw new ReplicationException("file " + file.getAbsolutePath() + " not found");
-                }
-            }
+        @Override
+        public Optional<Duration> getStaleness() {
+            return job.getStaleness();
         }
 
+        @Override
+        public CircuitState getCircuitState() {
+            return job.getCircuitState();
+        }
 
+        @Override
+        public Optional<String> getFingerprint() {
+            // the fingerprint of the data which has been accepted by this subscriber
+            return subscriber.getFingerprint().map(HashCode::toString);
+        }
 
-        private static class HttpDatasource extends Datasource {
-            private final Client client;
-            private final boolean isUserClient;
-            private final AtomicReference<CachedResponseData> cacheResponseDate = new AtomicReference<>(CachedResponseData.EMPTY);
+        @Override
+        public CompletableFuture<Void> refreshAsync() {
+            return job.refreshAsync();
+        }
 
-            public HttpDatasource(final URI uri, final Client client) {
-                super(uri);
-                this.isUserClient = client != null;
-                this.client = (client != null) ? client : ClientBuilder.newClient();
-            }
+        @Override
+        public ReplicationStatistics getStatistics() {
+            return job.getStatistics();
+        }
 
-            @Override
-            public void close() {
-                super.close();
-                if (!isUserClient) {
-                    client.close();
-                }
-            }
+        @Override
+        public ImmutableList<CachedVersion> getVersions() {
+            return job.getVersions();
+        }
 
-            @Override
-            public Data load() {
-                return load(getEndpoint());
-            }
+        @Override
+        public void rollbackTo(final CachedVersion version) throws ReplicationException {
+            // the roll back affects all coalesced jobs
+            job.rollbackTo(version);
+        }
 
-            protected Data load(final URI uri) {
-                Response response = null;
-                try {
+        @Override
+        public Duration getMaxCacheTime() {
+            return job.getMaxCacheTime();
+        }
 
-                    CachedResponseData cached = cacheResponseDate.get();
-                    if (!cached.getUri().equals(uri)) {
-                        cached = null;
-                    }
+        @Override
+        public Duration getRefreshPeriod() {
+            return job.getRefreshPeriod();
+        }
 
+        @Override
+        public void close() {
+            if (!isClosed.getAndSet(true)) {
+                sharedJob.unsubscribe(subscriber);
+            }
+        }
 
-                    Builder builder = client.target(uri).request();
+        @Override
+        public String toString() {
+            return job.toString() + " (coalesced)";
+        }
+    }
 
-                    // will make request conditional, if a response has already been a received
-                    if (cached != null) {
-                        builder = builder.header(HttpHeaders.ETAG, cached.getEtag());
-                    }
 
 
-                    // perform query
-                    response = builder.get();
-                    final int status = response.getStatus();
+    private static final class ReplicatonJobImpl implements ReplicationJob {
+        // editors may write a file in several steps. The refresh will be performed after the last modification event 
+        private static final Duration FILE_WATCHING_DEBOUNCE_DELAY = Duration.ofMillis(200);
 
-                    // success
-                    if ((status / 100) == 2) {
-                        String contentType = response.getHeaderString(HttpHeaders.CONTENT_TYPE);
-                        final MediaType mediaType = (contentType == null) ?
-                                MediaType.APPLICATION_OCTET_STREAM_TYPE :
-                                MediaType.valueOf(contentType);
-                        final Data data = new MimeTypeBasedDecodingData(response.readEntity(byte[].class), mediaType);
+        private final Datasource datasource;
+        private final FileCache fileCache;
+        private final ConsumerAdapter consumer;
+        private final ReplicationScheduler.Schedule schedule;
+        private final Executor notificationExecutor;
+        private final Optional<FileWatcher.Registration> fileWatcherRegistration;
+        private final Optional<LeaderLock> leaderLock;
+        private final Optional<FileWatcher.Registration> cacheWatcherRegistration;
+        private final Duration maxCacheTime;
+        private final AdaptiveRefreshPeriod refreshPeriod;
+        private final MetricsRecorder metricsRecorder;
+        private final boolean appendMode;
+        private final ThrottledErrorLog errorLog = new ThrottledErrorLog(LOG, ThrottledErrorLog.DEFAULT_INTERVAL);
 
-                        final String etag = response.getHeaderString(HttpHeaders.ETAG);
-                        if (!Strings.isNullOrEmpty(etag)) {
-                            // add response to cache
-                            cacheResponseDate.set(new CachedResponseData(uri, data, etag));
-                        }
+        private final AtomicReference<Optional<Instant>> lastRefreshSuccess = new AtomicReference<>(Optional.empty());
+        private final AtomicReference<Optional<Instant>> lastRefreshError = new AtomicReference<>(Optional.empty());
+        private final AtomicReference<Optional<Instant>> lastValidationOfServedCacheFile = new AtomicReference<>(Optional.empty());
+        
+        // the initial load which missed the startup deadline and proceeds in the background. Scheduled refreshes will not overlap with it
+        private volatile CompletableFuture<Void> pendingInitialLoad = CompletableFuture.completedFuture(null);
+        private volatile boolean isClosed = false;
+        
+        // the (cached) data the consumer has been notified with. guarded by consumer
+        private Optional<Data> lastDelivered = Optional.empty();
+
+
+        public ReplicatonJobImpl(final Settings settings, final MetricsRecorder metricsRecorder, final Consumer<Data> consumer) {
+            final URI uri = settings.uri;
+            final ReplicationScheduler scheduler = (settings.scheduler == null) ? ReplicationScheduler.getDefault() : settings.scheduler;
+
+            this.maxCacheTime = settings.maxCacheTime;
+            // the refresh period is fixed, if no greater max refresh period is set 
+            this.refreshPeriod = new AdaptiveRefreshPeriod(settings.refreshPeriod, (settings.maxRefreshPeriod.compareTo(settings.refreshPeriod) > 0) ? settings.maxRefreshPeriod : settings.refreshPeriod);
+            this.metricsRecorder = metricsRecorder;
+            this.appendMode = settings.appendMode;
+            this.consumer = new ConsumerAdapter(consumer);
+            this.fileCache = new FileCache(settings.cacheDir, uri.toString(), settings.maxCacheTime, settings.cacheCompression, settings.durability, settings.retainedVersions);
 
-                        return data;
 
-                        // not modified
-                    } else if (status == 304) {
-                        if (cached == null) {
-                            throw new ReplicationException("got " + status + " by performing non-conditional request " + getEndpoint());
-                        } else {
-                            return cached.getData();
-                        }
+            this.datasource = newDatasource(uri, settings.client, settings.appendMode, settings.transferCompression, fileCache);
+            this.leaderLock = settings.leaderMode ? Optional.of(fileCache.newLeaderLock()) : Optional.empty();
+
 
-                        // other (client error, ...)
+            // load on startup. By using stale-while-revalidate a cache file which is fresh enough will be served 
+            // first. In this case the cache file will be revalidated asynchronously
+            final boolean isServedStale = !settings.maxStale.isZero() && tryNotifyConsumerStale(settings.maxStale);
+            if (!isServedStale) {
+                try {
+                    if (settings.startupDeadline.isPresent()) {
+                        loadAndNotifyConsumer(settings.startupDeadline.get(), settings.failOnInitFailure);
                     } else {
-                        throw new ReplicationException("got " + status + " by calling " + getEndpoint());
+                        loadAndNotifyConsumer();
                     }
 
-                } finally {
-                    if (response != null) {
-                        response.close();
+                } catch (final RuntimeException rt) {
+                    if (settings.failOnInitFailure) {
+                        abandon();
+                        throw rt;
+                    } else {
+                        // fallback -> try to load from cache (will throw a runtime exception, if fails)
+                        try {
+                            notifyConsumerByCacheFile(fileCache.load());
+                            metricsRecorder.increment(Counter.CACHE_FALLBACK);
+                        } catch (final RuntimeException fallbackError) {
+                            abandon();
+                            throw fallbackError;
+                        }
                     }
                 }
             }
 
 
-            private static class CachedResponseData {
-                final static CachedResponseData EMPTY = new CachedResponseData(URI.create("http://example.org"), new HeuristicsDecodingData(new byte[0]), "");
+            // register on scheduler for periodically reloadings
+            this.notificationExecutor = scheduler.getExecutor();
+            this.schedule = settings.nonBlockingFetch ? scheduler.scheduleAsync(uri, this.refreshPeriod, () -> pendingInitialLoad.handle((ignore, error) -> null)
+                                                                                                                  .thenCompose(ignore -> loadAndNotifyConsumerAsync()))
+                                             : scheduler.schedule(uri, this.refreshPeriod, () -> {
+                                                 awaitPendingInitialLoad();
+                                                 loadAndNotifyConsumer();
+                                             });
 
-                private final URI uri;
-                private final Data data;
-                private final String etag;
+            // file modifications will trigger a refresh immediately, if file watching is activated. Periodically
+            // reloadings will be performed anyway (e.g. if modification events get lost)
+            this.fileWatcherRegistration = (settings.fileWatching && uri.getScheme().equalsIgnoreCase("file")) ? registerFileWatcher(uri)
+                                                                                                       : Optional.empty();
 
-                public CachedResponseData(final URI uri, final Data data, final String etag) {
-                    this.uri = uri;
-                    this.data = data;
-                    this.etag = etag;
-                }
+            // in leader mode new cache files written by the leader will be consumed immediately by the followers
+            this.cacheWatcherRegistration = settings.leaderMode ? registerCacheWatcher() : Optional.empty();
 
-                public URI getUri() {
-                    return uri;
-                }
+            // revalidate the stale cache file 
+            if (isServedStale) {
+                schedule.trigger(Duration.ZERO);
+            }
+        }
 
-                public String getEtag() {
-                    return etag;
+        private boolean tryNotifyConsumerStale(final Duration maxStale) {
+            final Optional<Data> cached = fileCache.loadIfPresent()
+                                                   .filter(data -> !maxStale.minus(getAge(data)).isNegative());
+            if (cached.isPresent()) {
+                try {
+                    notifyConsumerByCacheFile(cached.get());
+                    return true;
+                } catch (final RuntimeException rt) {
+                    LOG.warn("consumer rejected the cache file of " + getEndpoint() + ". Loading it", rt);
                 }
+            }
+            return false;
+        }
 
-                public Data getData() {
-                    return data;
-                }
+        private static Duration getAge(final Data cached) {
+            // the last modified time of a cache file is the time of its last validation (see FileCache#touch)
+            return Duration.between(Instant.ofEpochMilli(cached.getFile().lastModified()), Instant.now());
+        }
+
+        private void notifyConsumerByCacheFile(final Data cached) throws RuntimeException {
+            synchronized (consumer) {
+                notifyConsumer(cached);
+                lastDelivered = Optional.of(cached);
             }
+            lastValidationOfServedCacheFile.set(Optional.of(Instant.ofEpochMilli(cached.getFile().lastModified())));
         }
 
+        private Optional<FileWatcher.Registration> registerCacheWatcher() {
+            try {
+                return Optional.of(FileWatcher.getInstance().register(fileCache.getIndexFile(), () -> {
+                    if (!leaderLock.map(LeaderLock::isHeld).orElse(false)) {
+                        schedule.trigger(FILE_WATCHING_DEBOUNCE_DELAY);
+                    }
+                }));
+            } catch (final ReplicationException rt) {
+                LOG.warn("cache dir watching is not available. Cache files written by the leader will be consumed by periodically reloadings only", rt);
+                return Optional.empty();
+            }
+        }
 
+        private Optional<FileWatcher.Registration> registerFileWatcher(final URI uri) {
+            try {
+                return Optional.of(FileWatcher.getInstance().register(new File(uri.getPath()),
+                                                                      () -> schedule.trigger(FILE_WATCHING_DEBOUNCE_DELAY)));
+            } catch (final ReplicationException rt) {
+                LOG.warn("file watching is not available for " + uri + ". Modifications will be detected by periodically reloadings only", rt);
+                return Optional.empty();
+            }
+        }
 
+        /**
+         * marks the job as closed, if the start-up fails. A pending initial load will not notify the consumer
+         */
+        private void abandon() {
+            isClosed = true;
+        }
 
-        private static final class FileCache extends Datasource {
-            private static final String TEMPFILE_SUFFIX = ".temp";
-            private static final String CACHEFILE_SUFFIX = ".cache";
-            private final File dir;
-            private final String genericCacheFileName;
-            private final Duration maxCacheTime;
+        private void awaitPendingInitialLoad() {
+            awaitQuietly(pendingInitialLoad);
+        }
 
+        boolean isInitialLoadPending() {
+            return !pendingInitialLoad.isDone();
+        }
 
-            public FileCache(final File cacheDir, final String name, final Duration maxCacheTime) {
-                super(cacheDir.toURI());
+        private static void awaitQuietly(final CompletableFuture<Void> future) {
+            try {
+                future.join();
+            } catch (final CompletionException | CancellationException ignore) {
+                // the error has been handled by the load
+            }
+        }
 
-                try {
-                    this.maxCacheTime = maxCacheTime;
-                    this.dir = cacheDir.getCanonicalFile();
-                    dir.mkdirs();  // will create cache dir, if necessary
-                    if (!dir.exists()) {//if mkdir fails
-                        throw new ReplicationException("could not create cache dir " + cacheDir);
-                    }
+        @Override
+        public void close() {
+            isClosed = true;
+            fileWatcherRegistration.ifPresent(FileWatcher.Registration::close);
+            cacheWatcherRegistration.ifPresent(FileWatcher.Registration::close);
+            final CompletableFuture<Void> runningRefresh = schedule.cancel();
+            
+            // a running refresh discards its spooled data, if the job is closed. It will be awaited before closing 
+            // the datasource. This does not apply, if the consumer closes the job while it is notified by the refresh
+            if (!Thread.holdsLock(consumer)) {
+                awaitQuietly(runningRefresh);
+                awaitQuietly(pendingInitialLoad);
+            }
+            leaderLock.ifPresent(LeaderLock::close);
+            datasource.close();
+            consumer.close();
+        }
 
-                    // filename is base64 encoded to avoid trouble with special chars
-                    this.genericCacheFileName = Base64.getEncoder().encodeToString(name.getBytes(Charsets.UTF_8)) + "_";
+        private void loadAndNotifyConsumer() throws RuntimeException {
+            try {
+                final Optional<Data> followed = loadAsFollower();
+                if (followed.isPresent()) {
+                    notifyConsumerIfFollowedModified(followed.get());
+                } else {
+                    final long fetchStart = System.nanoTime();
+                    final Data data = datasource.load();
+                    metricsRecorder.recordElapsed(Phase.FETCH, fetchStart);
 
-                } catch (final IOException ioe) {
-                    throw new ReplicationException(ioe);
+                    notifyConsumerIfModified(data);
                 }
-            }
+                lastRefreshSuccess.set(Optional.of(Instant.now()));
+                lastValidationOfServedCacheFile.set(Optional.empty());
+                errorLog.reset();
+                metricsRecorder.increment(Counter.REFRESH_SUCCESS);
 
+            } catch (final RuntimeException rt) {
+                // loading failed or consumer has not accepted the data
+                errorLog.warn("error occured by loading " + getEndpoint(), rt);
+                lastRefreshError.set(Optional.of(Instant.now()));
+                refreshPeriod.onError();
+                metricsRecorder.increment(Counter.REFRESH_ERROR);
 
+                throw rt;
+            }
+        }
 
-            public void update(final Data data) {
-                // creates a new cache file with timestamp
-                final File cacheFile = new File(dir, genericCacheFileName + Instant.now().toEpochMilli() + CACHEFILE_SUFFIX);
-                final File tempFile = new File(dir, UUID.randomUUID().toString() + TEMPFILE_SUFFIX);
+        private void loadAndNotifyConsumer(final Instant deadline, final boolean failOnInitFailure) throws RuntimeException {
+            final CompletableFuture<Void> initialLoad = CompletableFuture.runAsync(this::loadAndNotifyConsumer, ReplicationJobs.getInitialLoadExecutor());
+            try {
+                initialLoad.get(Math.max(0, Duration.between(Instant.now(), deadline).toMillis()), TimeUnit.MILLISECONDS);
+
+            } catch (final TimeoutException te) {
+                // deadline missed -> serve the cache file first. The initial load proceeds in the background and
+                // will update the consumer, if completed. The cache file is not delivered, if the initial load has
+                // completed in the meantime
+                final Optional<Data> cached = fileCache.loadIfPresent();
+                if (cached.isPresent()) {
+                    synchronized (consumer) {
+                        if (!consumer.getFingerprint().isPresent()) {
+                            LOG.warn("initial load of " + getEndpoint() + " missed the startup deadline. Using cache file");
+                            notifyConsumerByCacheFile(cached.get());
+                            metricsRecorder.increment(Counter.CACHE_FALLBACK);
+                        }
+                    }
+                    pendingInitialLoad = initialLoad;
+                } else if (failOnInitFailure) {
+                    // no cache file -> the start-up fails (the initial load will not notify the consumer of an abandoned job)
+                    throw new ReplicationException("initial load of " + getEndpoint() + " missed the startup deadline and no cache file is available");
+                } else {
+                    // no cache file -> the job will be started anyway. The consumer will be notified, if the initial load is completed 
+                    LOG.warn("initial load of " + getEndpoint() + " missed the startup deadline and no cache file is available. Consumer will be notified, if the initial load is completed");
+                    pendingInitialLoad = initialLoad;
+                }
 
+            } catch (final ExecutionException ee) {
+                throw toRuntimeException(ee.getCause());
+            } catch (final InterruptedException ie) {
+                Thread.currentThread().interrupt();
+                throw new ReplicationException(ie);
+            }
+        }
 
-                /////
-                // why this "newest cache file" approach?
-                // this approach follows the immutable pattern and avoids race conditions by updating existing files. Instead
-                // updating the cache file which could cause trouble in the case of concurrent processes, new cache files will
-                // be written by using a timestamp as part of the file name.
-                ////
+        private static RuntimeException toRuntimeException(final Throwable error) {
+            return (error instanceof RuntimeException) ? (RuntimeException) error : new ReplicationException(error);
+        }
 
-                try {
-                    try (FileOutputStream os = new FileOutputStream(tempFile)) {
-                        // write the new cache file
-                        os.write(data.asBinary());
-                        os.close();
-                        // and commit it (this renaming approach avoids "half-written" cache files. A cache file is there or not)
-                        java.nio.file.Files.move(tempFile.toPath(), cacheFile.toPath(), StandardCopyOption.ATOMIC_MOVE);
-                    }
+        private CompletableFuture<Void> loadAndNotifyConsumerAsync() {
+            // the consumer will be notified by using a worker thread of the scheduler (not by the thread which completes the fetch)
+            final Optional<Data> followed = loadAsFollower();
+            final CompletableFuture<Void> loaded;
+            if (followed.isPresent()) {
+                loaded = CompletableFuture.runAsync(() -> notifyConsumerIfFollowedModified(followed.get()), notificationExecutor);
+            } else {
+                final long fetchStart = System.nanoTime();
+                loaded = datasource.loadAsync()
+                                   .thenApply(data -> {
+                                       metricsRecorder.recordElapsed(Phase.FETCH, fetchStart);
+                                       return data;
+                                   })
+                                   .thenAcceptAsync(this::notifyConsumerIfModified, notificationExecutor);
+            }
 
-                    // perform clean up to remove expired file
-                    cleanup();
+            return loaded.whenComplete((ignore, error) -> {
+                if (error == null) {
+                    lastRefreshSuccess.set(Optional.of(Instant.now()));
+                    lastValidationOfServedCacheFile.set(Optional.empty());
+                    errorLog.reset();
+                    metricsRecorder.increment(Counter.REFRESH_SUCCESS);
+                } else {
+                    // loading failed or consumer has not accepted the data
+                    errorLog.warn("error occured by loading " + getEndpoint(), (error instanceof CompletionException) ? error.getCause() : error);
+                    lastRefreshError.set(Optional.of(Instant.now()));
+                    refreshPeriod.onError();
+                    metricsRecorder.increment(Counter.REFRESH_ERROR);
+                }
+            });
+        }
 
-                } catch (final IOException ioe) {
-                    LOG.warn("writing cache file " + cacheFile.getAbsolutePath() + " failed", ioe);
+        private void notifyConsumerIfModified(final Data data) throws RuntimeException {
+            // synchronized to avoid interfering with a concurrent roll back
+            synchronized (consumer) {
+                if (isClosed) {
+                    // e.g. a refresh which completes after closing the job
+                    fileCache.discard(data);
+                } else {
+                    notifyConsumerIfModifiedUnsynchronized(data);
                 }
             }
+        }
 
+        private void notifyConsumerIfModifiedUnsynchronized(final Data data) throws RuntimeException {
+            try {
+                // the data has been transferred, if it is spooled (not modified responses are served by the cache file)
+                final boolean isTransferred = fileCache.isSpooled(data);
+                if (isTransferred) {
+                    metricsRecorder.add(Counter.BYTES_FETCHED, data.getLength() - data.getDelta().map(Data.Delta::getOffset).orElse(0L));
+                }
 
-            @Override
-            public Data load() {
-                final Optional<File> cacheFile = getNewestCacheFile();
-                if (cacheFile.isPresent()) {
-                    try(FileInputStream is = new FileInputStream(cacheFile.get());) {
-                        return new HeuristicsDecodingData(ByteStreams.toByteArray(is));
-                    } catch (final IOException ioe) {
-                        throw new ReplicationException("loading cache file " + cacheFile.get()  + " failed", ioe);
-                    }
-
+                if (consumer.isModified(data)) {
+                    notifyConsumer(data);
+                    metricsRecorder.increment(Counter.MODIFIED);
+
+                    // data has been accepted by the consumer -> update cache
+                    final long cacheWriteStart = System.nanoTime();
+                    final Data committed = fileCache.commit(data);
+                    metricsRecorder.recordElapsed(Phase.CACHE_WRITE, cacheWriteStart);
+                    lastDelivered = fileCache.isSpooled(committed) ? Optional.empty() : Optional.of(committed);   // the spooled data will be discarded
+                    
+                    refreshPeriod.onModified(datasource.getFreshnessLifetime());
                 } else {
-                    throw new ReplicationException("cache file not exists");
+                    metricsRecorder.increment(isTransferred ? Counter.UNCHANGED : Counter.NOT_MODIFIED);
+
+                    // data is unchanged (e.g. not modified response) -> refresh age of the cache file only
+                    fileCache.touch();
+                    
+                    refreshPeriod.onUnmodified(datasource.getFreshnessLifetime());
                 }
+            } finally {
+                // remove spooled data, if not committed
+                fileCache.discard(data);
             }
+        }
 
+        /**
+         * performs the action synchronized with the notifications of the consumer. This means the consumer
+         * will not be notified while the action is performed
+         *
+         * @param action  the action which gets the (cached) data the consumer has been notified with last, if present.
+         *                This may differ from the newest cache file (e.g. written by another process in the meantime) 
+         */
+        void withLastDeliveredData(final Consumer<Optional<Data>> action) {
+            synchronized (consumer) {
+                // the cache file may have been removed by another process sharing the cache dir. In this case a
+                // retained cache file of the same data will be used, if present
+                final Optional<Data> data = lastDelivered.filter(delivered -> delivered.getFile().exists());
+                action.accept(data.isPresent() ? data : lastDelivered.flatMap(delivered -> fileCache.loadIfPresent(delivered.getFingerprint())));
+            }
+        }
 
-            /**
-             * @return the (most likely) newest cache file. It could happen that concurrent processes writes an new cache
-             *         file in parallel.
-             */
-            private Optional<File> getNewestCacheFile() {
-                long newestTimestamp = 0;
-                File newestCacheFile = null;
+        private Optional<Data> loadAsFollower() {
+            // in leader mode the resource is fetched by the leader only. Followers consume the newest cache file
+            // written by the leader. A follower fetches the resource by itself, if no cache file exists (e.g. the 
+            // leader has not fetched the resource so far)
+            if (leaderLock.isPresent() && !leaderLock.get().tryAcquire()) {
+                return fileCache.loadIfPresent();
+            } else {
+                return Optional.empty();
+            }
+        }
 
-                // find newest cache file
-                for (File file : getCacheFiles()) {
-                    try {
-                        final long timestamp = parseTimestamp(file);
-                        if (timestamp > newestTimestamp) {
-                            newestCacheFile = file;
-                            newestTimestamp = timestamp;
-                        }
-                    } catch (NumberFormatException nfe) {
-                        LOG.debug(dir.getAbsolutePath() + " contains cache file with invalid name " + file.getName() + " Ignoring it");
-                    }
+        private void notifyConsumerIfFollowedModified(final Data data) throws RuntimeException {
+            // the cache file is owned by the leader. The age of the cache file will not be refreshed by the follower
+            synchronized (consumer) {
+                if (isClosed) {
+                    return;
                 }
+                
+                if (consumer.isModified(data)) {
+                    notifyConsumer(data);
+                    lastDelivered = Optional.of(data);
+                    metricsRecorder.increment(Counter.MODIFIED);
+                    refreshPeriod.onModified(Optional.empty());
+                } else {
+                    metricsRecorder.increment(Counter.UNCHANGED);
+                    refreshPeriod.onUnmodified(Optional.empty());
+                }
+            }
+        }
 
+        private void notifyConsumer(final Data data) throws RuntimeException {
+            consumer.accept(data);   // let the consumer handle the new data. Consumer may throw a runtime exception 
+        }
 
-                // check if newest cache file is expired
-                if (newestCacheFile != null) {
-                    final Duration age = Duration.between(Instant.ofEpochMilli(newestCacheFile.lastModified()), Instant.now());
-                    if (maxCacheTime.minus(age).isNegative()) {
-                        LOG.warn("cache file is expired. Age is " + age.toDays() + " days. Ignoring it");
-                        newestCacheFile = null;
-                    }
+        @Override
+        public URI getEndpoint() {
+            return datasource.getEndpoint();
+        }
+
+        @Override
+        public ImmutableList<CachedVersion> getVersions() {
+            return fileCache.getVersions();
+        }
+
+        @Override
+        public void rollbackTo(final CachedVersion version) throws ReplicationException {
+            // the appended data of the source would be appended to the wrong base
+            Preconditions.checkState(!appendMode, "roll back is not supported in append mode");
+
+            synchronized (consumer) {
+                final Data data = fileCache.loadVersion(version)
+                                           .orElseThrow(() -> new ReplicationException("version " + version + " of " + getEndpoint() + " is not available"));
+                if (consumer.isModified(data)) {
+                    notifyConsumer(data);
+                    metricsRecorder.increment(Counter.MODIFIED);
                 }
 
-                return Optional.ofNullable(newestCacheFile);
+                // make it the newest cache file. Refreshes consider it as unmodified until the source is modified
+                lastDelivered = Optional.of(fileCache.promote(data));
+                LOG.info(getEndpoint() + " rolled back to " + version);
             }
+        }
 
+        @Override
+        public Duration getMaxCacheTime() {
+            return maxCacheTime;
+        }
 
-            private ImmutableList<File> getCacheFiles() {
-                File[] files = dir.listFiles();
-                if (files==null)
-                    return ImmutableList.of();
-                return ImmutableList.copyOf(files)
-                                               .stream()
-                                               .filter(file -> file.getName().endsWith(CACHEFILE_SUFFIX))
-                                               .filter(file -> file.getName().startsWith(genericCacheFileName))
-                                               .collect(Immutables.toList());
-            }
+        @Override
+        public Duration getRefreshPeriod() {
+            return refreshPeriod.get();
+        }
 
+        @Override
+        public Optional<Duration> getExpiredTimeSinceRefreshSuccess() {
+            return lastRefreshSuccess.get().map(time -> Duration.between(time, Instant.now()));
+        }
 
-            private long parseTimestamp(File file) {
-                final String fileName = file.getName();
-                return Long.parseLong(fileName.substring(fileName.lastIndexOf("_") + 1, fileName.length() - CACHEFILE_SUFFIX.length()));
-            }
+        @Override
+        public CompletableFuture<Void> refreshAsync() {
+            // the refresh will be performed by the schedule, which means it never runs concurrently with a periodic refresh
+            return schedule.trigger(Duration.ZERO);
+        }
+
+        @Override
+        public ReplicationStatistics getStatistics() {
+            return metricsRecorder.getStatistics();
+        }
 
+        @Override
+        public Optional<String> getFingerprint() {
+            return consumer.getFingerprint().map(HashCode::toString);
+        }
 
-            private void cleanup() {
-                removeExpiredTempFiles();
-                removeExpiredCacheFiles();
+        @Override
+        public Optional<Duration> getExpiredTimeSinceRefreshError() {
+            return lastRefreshError.get()
+                                   .map(time -> Duration.between(time, Instant.now()));
+        }
+
+        @Override
+        public Optional<Duration> getStaleness() {
+            return lastValidationOfServedCacheFile.get()
+                                                  .map(time -> Duration.between(time, Instant.now()));
+        }
+
+        @Override
+        public CircuitState getCircuitState() {
+            return datasource.getCircuitState();
+        }
+
+
+        @Override
+        public String toString() {
+            return new StringBuilder(datasource.toString())
+                    .append(", refreshperiod=").append(refreshPeriod)
+                    .append(", maxCacheTime=").append(maxCacheTime)
+                    .append(", circuit=").append(getCircuitState())
+                    .append(", fingerprint=").append(getFingerprint().orElse("none"))
+                    .append(" (last reload success: ").append(lastRefreshSuccess.get().map(Instant::toString).orElse("none"))
+                    .append(", last reload error: ").append(lastRefreshError.get().map(Instant::toString).orElse("none")).append(")")
+                    .toString();
+        }
+
+
+
+        private static final class ConsumerAdapter implements Consumer<Data>, Closeable {
+            private final Consumer<Data> consumer;
+            private final AtomicReference<Optional<HashCode>> lastFingerprint = new AtomicReference<>(Optional.empty());
+
+            public ConsumerAdapter(final Consumer<Data> consumer) {
+                this.consumer = consumer;
             }
 
+            public boolean isModified(final Data data) {
+                return !Optional.of(data.getFingerprint()).equals(lastFingerprint.get());
+            }
 
-            private void removeExpiredTempFiles() {
-                // remove expired temp files. temp file should exists for few millis or seconds only.
-                final long minAgeTime = Instant.now().minus(Duration.ofDays(7)).toEpochMilli();
-                File[] files = dir.listFiles();
-                if (files==null)//this should not happen unless some I/O error
-                    return;
-                ImmutableList.copyOf(files)
-                             .stream()
-                             .filter(file -> file.getName().endsWith(TEMPFILE_SUFFIX))
-                             .filter(file -> file.lastModified() < minAgeTime)           // filter old temp file (days!)
-                             .collect(Immutables.toList())
-                             .forEach(file -> {if (!file.delete()) LOG.warn("failed to delete "+file.getName());}); // and delete it
-            }
-
-
-            private void removeExpiredCacheFiles() {
-                // get newest cache file. Concurrently a new cache file could be written by another process. However, this
-                // does not matter
-                final Optional<File> newest = getNewestCacheFile();
-                if (newest.isPresent()) {
-                    final long newestTime = parseTimestamp(newest.get());
-                    getCacheFiles().stream()
-                                   .filter(file -> parseTimestamp(file) < newestTime)   // filter expired cache files
-                                   .collect(Immutables.toList())
-                                   .forEach(file -> {if (!file.delete()) LOG.warn("failed to delete "+file.getName());}); // and delete it
+            @Override
+            public void accept(final Data data) {
+
+                // data changed (new or modified)?
+                if (isModified(data)) {
+                    // yes
+                    consumer.accept(data);
+                    lastFingerprint.set(Optional.of(data.getFingerprint()));
                 }
             }
 
+            public Optional<HashCode> getFingerprint() {
+                return lastFingerprint.get();
+            }
+
+            @Override
+            public void close() {
+                if (consumer instanceof Closeable) {
+                    try {
+                        ((Closeable) consumer).close();
+                    } catch (final IOException ioe) {
+                        LOG.debug("closing consumer failed", ioe);
+                    }
+                }
+            }
         }
     }
 }
\ No newline at end of file
@@ -0,0 +1,166 @@
+/*
+ * Copyright 1&1 Internet AG, https://github.com/1and1/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.oneandone.neo.datareplicator;
+
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
+
+import net.oneandone.neo.collect.Immutables;
+
+
+
+/**
+ * Utility methods to handle many replication jobs 
+ */
+public final class ReplicationJobs {
+    
+    // the max number of jobs which will be started in parallel. Further starts are queued
+    static final int MAX_PARALLEL_STARTS = 32;
+    
+    // the starts and the initial loads will be performed by dedicated threads, which terminate if idle. A start waits
+    // for the initial load of its job. Both use separated pools, which means a queued initial load is never blocked by 
+    // waiting starts 
+    private static final Executor STARTUP_EXECUTOR = newBoundedExecutor("datareplicator-startup");
+    private static final Executor INITIAL_LOAD_EXECUTOR = newBoundedExecutor("datareplicator-initialload");
+    
+    
+    private ReplicationJobs() { }
+    
+    
+    /**
+     * @param builder  the builder of the job
+     * @param starter  the function, which starts the job by using the given builder (e.g. <i>builder -&gt; builder.startConsumingText(this::update)</i>)
+     * @return the start of the job (see {@link #startAll(Duration, JobStart...)})
+     */
+    public static JobStart jobStart(final ReplicationJobBuilder builder, final Function<ReplicationJobBuilder, ReplicationJob> starter) {
+        Preconditions.checkArgument(builder instanceof ReplicationJobBuilderImpl, "unsupported builder");
+        Preconditions.checkNotNull(starter);
+        return new JobStart((ReplicationJobBuilderImpl) builder, starter);
+    }
+    
+    /**
+     * starts the replication jobs in parallel (see {@link #startAll(Duration, List)}).
+     * <pre>
+     *  ImmutableList&lt;ReplicationJob&gt; jobs = ReplicationJobs.startAll(Duration.ofSeconds(5), 
+     *                                                     jobStart(ReplicationJob.source(uri1), builder -&gt; builder.startConsumingText(this::updateA)),
+     *                                                     jobStart(ReplicationJob.source(uri2), builder -&gt; builder.startConsumingBinary(this::updateB)));
+     * </pre>
+     * 
+     * @param deadline  the max duration of the initial loads
+     * @param starts    the starts of the jobs (see {@link #jobStart(ReplicationJobBuilder, Function)})
+     * @return the started jobs in the order of the given starts
+     * @throws RuntimeException if a job fails to start (see {@link ReplicationJobBuilder#withFailOnInitFailure(boolean)}). 
+     *                          In this case the jobs which have been started successfully will be closed 
+     */
+    public static ImmutableList<ReplicationJob> startAll(final Duration deadline, final JobStart... starts) {
+        return startAll(deadline, ImmutableList.copyOf(starts));
+    }
+    
+    /**
+     * starts the replication jobs in parallel. The initial loads have to be completed within the deadline. If an 
+     * initial load misses the deadline, the consumer will be served by the cache file first. In this case the 
+     * initial load proceeds in the background and the consumer will be updated, if the initial load is completed. 
+     * The first periodic refresh of such a job will be performed after the initial load. Jobs without a (non-expired) 
+     * cache file will be started without notifying the consumer, if the deadline is missed. Their consumer will be 
+     * notified, if the initial load is completed. Such jobs fail to start only, if failOnInitFailure is set (see 
+     * {@link ReplicationJobBuilder#withFailOnInitFailure(boolean)}).<p>
+     * 
+     * At most {@value #MAX_PARALLEL_STARTS} jobs will be started in parallel. Further starts are queued, which means 
+     * they have less time until the deadline 
+     * 
+     * @param deadline  the max duration of the initial loads
+     * @param starts    the starts of the jobs (see {@link #jobStart(ReplicationJobBuilder, Function)})
+     * @return the started jobs in the order of the given starts
+     * @throws RuntimeException if a job fails to start (see {@link ReplicationJobBuilder#withFailOnInitFailure(boolean)}). 
+     *                          In this case the jobs which have been started successfully will be closed 
+     */
+    public static ImmutableList<ReplicationJob> startAll(final Duration deadline, final List<JobStart> starts) {
+        Preconditions.checkNotNull(deadline);
+        
+        final Instant deadlineTime = Instant.now().plus(deadline);
+        final List<CompletableFuture<ReplicationJob>> jobs = starts.stream()
+                                                                   .map(start -> CompletableFuture.supplyAsync(() -> start.start(deadlineTime), STARTUP_EXECUTOR))
+                                                                   .collect(Immutables.toList());
+        try {
+            return jobs.stream()
+                       .map(CompletableFuture::join)
+                       .collect(Immutables.toList());
+            
+        } catch (final CompletionException ce) {
+            // close the jobs started successfully
+            jobs.forEach(job -> job.thenAccept(ReplicationJob::close));
+            throw (ce.getCause() instanceof RuntimeException) ? (RuntimeException) ce.getCause() : ce;
+        }
+    }
+    
+    
+    static Executor getInitialLoadExecutor() {
+        return INITIAL_LOAD_EXECUTOR;
+    }
+    
+    private static Executor newBoundedExecutor(final String name) {
+        final AtomicInteger count = new AtomicInteger();
+        final ThreadPoolExecutor executor = new ThreadPoolExecutor(MAX_PARALLEL_STARTS,
+                                                                   MAX_PARALLEL_STARTS,
+                                                                   60, TimeUnit.SECONDS,
+                                                                   new LinkedBlockingQueue<>(),
+                                                                   runnable -> {
+                                                                       final Thread thread = new Thread(runnable, name + "-" + count.incrementAndGet());
+                                                                       thread.setDaemon(true);
+                                                                       return thread;
+                                                                   });
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    
+    
+    /**
+     * The deferred start of a replication job (see {@link ReplicationJobs#jobStart(ReplicationJobBuilder, Function)})
+     */
+    public static final class JobStart {
+        private final ReplicationJobBuilderImpl builder;
+        private final Function<ReplicationJobBuilder, ReplicationJob> starter;
+        
+        private JobStart(final ReplicationJobBuilderImpl builder, final Function<ReplicationJobBuilder, ReplicationJob> starter) {
+            this.builder = builder;
+            this.starter = starter;
+        }
+        
+        private ReplicationJob start(final Instant deadline) {
+            return starter.apply(builder.withStartupDeadline(deadline));
+        }
+        
+        @Override
+        public String toString() {
+            return "start of " + builder.getUri();
+        }
+    }
+}
@@ -0,0 +1,128 @@
+/*
+ * Copyright 1&1 Internet AG, https://github.com/1and1/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.oneandone.neo.datareplicator;
+
+
+import java.net.URI;
+
+
+
+/**
+ * Metrics SPI which will be called by the replication jobs. Implementations can be used to export the metrics
+ * into a monitoring system (see {@link ReplicationJobBuilder#withMetrics(ReplicationMetrics)}). Implementations
+ * have to be thread-safe and should return fast, because they are called within the refresh path. Independent
+ * of the configured metrics, each replication job records its statistics in-process (see 
+ * {@link ReplicationJob#getStatistics()}) 
+ */
+public interface ReplicationMetrics {
+    
+    /**
+     * the no-op metrics which is used by default
+     */
+    public static final ReplicationMetrics NOOP = new ReplicationMetrics() {
+        
+        @Override
+        public void recordLatency(final URI endpoint, final Phase phase, final long nanos) { }
+        
+        @Override
+        public void add(final URI endpoint, final Counter counter, final long delta) { }
+    };
+
+    
+    /**
+     * the phases of a refresh 
+     */
+    public enum Phase {
+        
+        /**
+         * loading the data from the source including spooling it into the cache dir
+         */
+        FETCH, 
+        
+        /**
+         * decoding the data into the consumer type (e.g. binary or text)
+         */
+        DECODE, 
+        
+        /**
+         * processing the data by the consumer 
+         */
+        CONSUMER, 
+        
+        /**
+         * committing the data into the cache 
+         */
+        CACHE_WRITE
+    }
+    
+    
+    /**
+     * the counters of a replication job
+     */
+    public enum Counter {
+        
+        /**
+         * number of successful refreshes
+         */
+        REFRESH_SUCCESS,
+        
+        /**
+         * number of erroneous refreshes
+         */
+        REFRESH_ERROR,
+        
+        /**
+         * number of refreshes which provided modified data to the consumer
+         */
+        MODIFIED,
+        
+        /**
+         * number of refreshes which has been answered without transferring the data (e.g. <i>304 Not Modified</i>)
+         */
+        NOT_MODIFIED,
+        
+        /**
+         * number of refreshes which transferred the data, but the data has not been changed 
+         */
+        UNCHANGED,
+        
+        /**
+         * number of initial loads which has been served by the cache, because the source has not been available 
+         */
+        CACHE_FALLBACK,
+        
+        /**
+         * number of (decoded) payload bytes which has been transferred from the source 
+         */
+        BYTES_FETCHED
+    }
+    
+    
+    /**
+     * @param endpoint  the endpoint of the replication job
+     * @param phase     the phase
+     * @param nanos     the elapsed time in nanoseconds
+     */
+    void recordLatency(URI endpoint, Phase phase, long nanos);
+
+    /**
+     * @param endpoint  the endpoint of the replication job
+     * @param counter   the counter
+     * @param delta     the value to add
+     */
+    void add(URI endpoint, Counter counter, long delta);
+}
@@ -0,0 +1,482 @@
+/*
+ * Copyright 1&1 Internet AG, https://github.com/1and1/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.oneandone.neo.datareplicator;
+
+
+import java.io.Closeable;
+import java.net.URI;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Preconditions;
+
+
+/**
+ * Scheduler which performs the periodic refreshes of replication jobs. A scheduler can be shared by many
+ * replication jobs (see {@link ReplicationJobBuilder#withScheduler(ReplicationScheduler)}). All jobs of a
+ * scheduler share a single timer thread and a bounded worker pool. Furthermore the number of concurrent
+ * refreshes per host is limited and the refresh times are jittered to avoid that jobs with the same
+ * refresh period hit the resource server at the same moment. Refreshes which exceed the per-host limit
+ * are queued per host. They neither occupy a worker nor the timer while waiting, and will be performed
+ * as soon as a refresh of the same host is done.
+ */
+public final class ReplicationScheduler implements Closeable {
+    private static final Logger LOG = LoggerFactory.getLogger(ReplicationScheduler.class);
+
+    public static final int DEFAULT_MAX_WORKERS = 8;
+    public static final int DEFAULT_MAX_CONCURRENT_REFRESHES_PER_HOST = 2;
+    public static final double DEFAULT_JITTER = 0.1;
+
+    private final ScheduledThreadPoolExecutor timer;
+    private final ThreadPoolExecutor workers;
+    private final int maxConcurrentRefreshesPerHost;
+    private final double jitter;
+    private final ConcurrentMap<String, HostPermits> hostPermits = new ConcurrentHashMap<>();
+
+
+    private ReplicationScheduler(final String name,
+                                 final int maxWorkers,
+                                 final int maxConcurrentRefreshesPerHost,
+                                 final double jitter) {
+        this.maxConcurrentRefreshesPerHost = maxConcurrentRefreshesPerHost;
+        this.jitter = jitter;
+
+        this.timer = new ScheduledThreadPoolExecutor(1, newThreadFactory(name + "-timer"));
+        timer.setRemoveOnCancelPolicy(true);
+
+        this.workers = new ThreadPoolExecutor(maxWorkers,
+                                              maxWorkers,
+                                              60, TimeUnit.SECONDS,
+                                              new LinkedBlockingQueue<>(),
+                                              newThreadFactory(name + "-worker"));
+        workers.allowCoreThreadTimeOut(true);
+    }
+
+
+    /**
+     * @return a new scheduler with default settings
+     */
+    public static ReplicationScheduler create() {
+        return create(DEFAULT_MAX_WORKERS, DEFAULT_MAX_CONCURRENT_REFRESHES_PER_HOST, DEFAULT_JITTER);
+    }
+
+    /**
+     * @param maxWorkers                     the max number of refreshes which will be performed concurrently
+     * @param maxConcurrentRefreshesPerHost  the max number of refreshes which will be performed concurrently against the same host
+     * @param jitter                         the jitter ratio of the refresh period (e.g. 0.1 means the period varies by +/- 10%)
+     * @return a new scheduler
+     */
+    public static ReplicationScheduler create(final int maxWorkers, final int maxConcurrentRefreshesPerHost, final double jitter) {
+        Preconditions.checkArgument(maxWorkers > 0, "maxWorkers has to be positive");
+        Preconditions.checkArgument(maxConcurrentRefreshesPerHost > 0, "maxConcurrentRefreshesPerHost has to be positive");
+        Preconditions.checkArgument((jitter >= 0) && (jitter < 1), "jitter has to be within [0, 1)");
+        return new ReplicationScheduler("datareplicator", maxWorkers, maxConcurrentRefreshesPerHost, jitter);
+    }
+
+    /**
+     * @return the scheduler which will be used, if no scheduler is set explicitly. This scheduler will never be closed
+     */
+    static ReplicationScheduler getDefault() {
+        return DefaultHolder.INSTANCE;
+    }
+
+    private static final class DefaultHolder {
+        static final ReplicationScheduler INSTANCE = new ReplicationScheduler("datareplicator-default",
+                                                                              DEFAULT_MAX_WORKERS,
+                                                                              DEFAULT_MAX_CONCURRENT_REFRESHES_PER_HOST,
+                                                                              DEFAULT_JITTER);
+    }
+
+
+    /**
+     * terminates the scheduler. Pending refreshes will not be performed anymore
+     */
+    @Override
+    public void close() {
+        if (this == getDefault()) {
+            LOG.debug("default scheduler can not be closed. Ignoring close call");
+        } else {
+            timer.shutdownNow();
+            workers.shutdownNow();
+        }
+    }
+
+
+    /**
+     * @param uri     the uri of the resource to refresh
+     * @param period  the refresh period
+     * @param task    the refresh task
+     * @return the schedule handle
+     */
+    Schedule schedule(final URI uri, final Duration period, final Runnable task) {
+        return schedule(uri, () -> period, task);
+    }
+
+    /**
+     * @param uri     the uri of the resource to refresh
+     * @param period  the refresh period, which is requested each time the next run is scheduled (e.g. an adaptive period)
+     * @param task    the refresh task
+     * @return the schedule handle
+     */
+    Schedule schedule(final URI uri, final Supplier<Duration> period, final Runnable task) {
+        return scheduleAsync(uri, period, () -> {
+            task.run();
+            return CompletableFuture.completedFuture(null);
+        });
+    }
+
+    /**
+     * @param uri     the uri of the resource to refresh
+     * @param period  the refresh period
+     * @param task    the non-blocking refresh task. The returned future has to be completed, if the refresh is done. 
+     *                The worker thread will be released while the refresh is in flight
+     * @return the schedule handle
+     */
+    Schedule scheduleAsync(final URI uri, final Duration period, final Supplier<CompletableFuture<Void>> task) {
+        return scheduleAsync(uri, () -> period, task);
+    }
+
+    /**
+     * @param uri     the uri of the resource to refresh
+     * @param period  the refresh period, which is requested each time the next run is scheduled (e.g. an adaptive period)
+     * @param task    the non-blocking refresh task. The returned future has to be completed, if the refresh is done. 
+     *                The worker thread will be released while the refresh is in flight
+     * @return the schedule handle
+     */
+    Schedule scheduleAsync(final URI uri, final Supplier<Duration> period, final Supplier<CompletableFuture<Void>> task) {
+        return scheduleAsync(Optional.ofNullable(uri.getHost()).map(this::getHostPermits), period, task);
+    }
+
+    /**
+     * @param period  the refresh period
+     * @param task    the non-blocking refresh task which is not bound to a single host (e.g. the refresh of a 
+     *                replication group). The per-host limit will not be applied
+     * @return the schedule handle
+     */
+    Schedule scheduleAsync(final Duration period, final Supplier<CompletableFuture<Void>> task) {
+        return scheduleAsync(Optional.empty(), () -> period, task);
+    }
+
+    private Schedule scheduleAsync(final Optional<HostPermits> hostPermits, final Supplier<Duration> period, final Supplier<CompletableFuture<Void>> task) {
+        final Schedule schedule = new Schedule(hostPermits, period, task);
+        schedule.scheduleNext(jittered(period.get()));
+        return schedule;
+    }
+
+    /**
+     * @return the executor of the worker pool 
+     */
+    Executor getExecutor() {
+        return workers;
+    }
+
+    private HostPermits getHostPermits(final String host) {
+        return hostPermits.computeIfAbsent(host.toLowerCase(), name -> new HostPermits(maxConcurrentRefreshesPerHost));
+    }
+
+    private Duration jittered(final Duration period) {
+        if (jitter == 0) {
+            return period;
+        } else {
+            final long millis = period.toMillis();
+            final long delta = (long) (millis * jitter * ((ThreadLocalRandom.current().nextDouble() * 2) - 1));
+            return Duration.ofMillis(Math.max(0, millis + delta));
+        }
+    }
+
+
+    @Override
+    public String toString() {
+        return "maxWorkers=" + workers.getMaximumPoolSize() +
+               ", maxConcurrentRefreshesPerHost=" + maxConcurrentRefreshesPerHost +
+               ", jitter=" + jitter +
+               " (active workers: " + workers.getActiveCount() + ", queued refreshes: " + workers.getQueue().size() + ")";
+    }
+
+
+
+    /**
+     * The schedule of a single replication job. The task of a schedule never runs concurrently with itself.
+     * The next run will be scheduled after the current run has been completed (fixed delay). The period is
+     * requested each time the next run is scheduled
+     */
+    final class Schedule {
+        private final Optional<HostPermits> hostPermits;
+        private final Supplier<Duration> period;
+        private final Supplier<CompletableFuture<Void>> task;
+
+        // guarded by this
+        private boolean isCancelled = false;
+        private boolean isDispatched = false;
+        private Optional<Duration> pendingTrigger = Optional.empty();
+        private Optional<ScheduledFuture<?>> next = Optional.empty();
+        private long generation = 0;   // identifies the current timer task. Replaced timer tasks will not dispatch
+        private CompletableFuture<Void> running = CompletableFuture.completedFuture(null);
+        private List<CompletableFuture<Void>> waiters = new ArrayList<>();
+
+        private Schedule(final Optional<HostPermits> hostPermits, final Supplier<Duration> period, final Supplier<CompletableFuture<Void>> task) {
+            this.hostPermits = hostPermits;
+            this.period = period;
+            this.task = task;
+        }
+
+        /**
+         * cancels the schedule. A run which is currently performed will not be interrupted
+         * 
+         * @return the future which will be completed, if the currently performed run is done
+         */
+        public synchronized CompletableFuture<Void> cancel() {
+            isCancelled = true;
+            next.ifPresent(future -> future.cancel(false));
+            failWaiters(new CancellationException("schedule is cancelled"));
+
+            // a run which waits for a permit of the host will not be performed anymore 
+            if (hostPermits.isPresent() && hostPermits.get().dequeue(this)) {
+                running.complete(null);
+            }
+            return running;
+        }
+
+        /**
+         * triggers an extra run after the given delay. If the schedule is triggered again within this delay, the
+         * former trigger will be replaced (debouncing). If the task is currently running, the triggered run will
+         * be performed after the current run
+         *
+         * @param delay  the delay
+         * @return the future which will be completed, if the triggered run is done
+         */
+        public synchronized CompletableFuture<Void> trigger(final Duration delay) {
+            final CompletableFuture<Void> waiter = new CompletableFuture<>();
+            if (isCancelled) {
+                waiter.completeExceptionally(new CancellationException("schedule is cancelled"));
+                return waiter;
+            }
+            waiters.add(waiter);
+
+            if (isDispatched) {
+                pendingTrigger = Optional.of(pendingTrigger.map(pending -> (pending.compareTo(delay) < 0) ? pending : delay)
+                                                           .orElse(delay));
+            } else {
+                next.ifPresent(future -> future.cancel(false));
+                scheduleNext(delay);
+            }
+            return waiter;
+        }
+
+        private synchronized void scheduleNext(final Duration delay) {
+            if (!isCancelled) {
+                try {
+                    final long scheduledGeneration = ++generation;
+                    next = Optional.of(timer.schedule(() -> dispatch(scheduledGeneration), delay.toMillis(), TimeUnit.MILLISECONDS));
+                } catch (final RejectedExecutionException ree) {
+                    LOG.debug("scheduler is closed. Refresh will not be performed");
+                    failWaiters(ree);
+                }
+            }
+        }
+
+        private synchronized void dispatch(final long scheduledGeneration) {
+            // a replaced timer task may have been started before it has been cancelled (e.g. it waits for 
+            // the monitor while the schedule is triggered). It must not dispatch a concurrent run 
+            if (isCancelled || isDispatched || (scheduledGeneration != generation)) {
+                return;
+            }
+            
+            // the timer thread hands over the task to the worker pool immediately
+            try {
+                workers.execute(this::run);
+                isDispatched = true;
+            } catch (final RejectedExecutionException ree) {
+                LOG.debug("scheduler is closed. Refresh will not be performed");
+                failWaiters(ree);
+            }
+        }
+
+        private synchronized List<CompletableFuture<Void>> takeWaiters() {
+            final List<CompletableFuture<Void>> currentWaiters = waiters;
+            waiters = new ArrayList<>();
+            return currentWaiters;
+        }
+
+        private void failWaiters(final Throwable error) {
+            takeWaiters().forEach(waiter -> waiter.completeExceptionally(error));
+        }
+
+        private synchronized void abandon(final Throwable error) {
+            failWaiters(error);
+            running.complete(null);
+        }
+
+        private synchronized void completed(final Duration delay) {
+            isDispatched = false;
+            scheduleNext(pendingTrigger.orElse(delay));
+            pendingTrigger = Optional.empty();
+        }
+
+        private void run() {
+            final CompletableFuture<Void> done = new CompletableFuture<>();
+            synchronized (this) {
+                if (isCancelled) {
+                    return;
+                }
+                running = done;
+            }
+
+            // max concurrent refreshes of the host reached? -> the run is queued and will be performed, if 
+            // a permit of the host is released (see runWithPermit)
+            if (!hostPermits.isPresent() || hostPermits.get().acquireOrEnqueue(this)) {
+                perform(done);
+            }
+        }
+
+        /**
+         * performs the queued run. The permit of the host has been handed over by the releasing run
+         */
+        private void runWithPermit() {
+            final CompletableFuture<Void> done;
+            synchronized (this) {
+                done = running;
+                if (isCancelled) {
+                    hostPermits.get().release();
+                    done.complete(null);
+                    return;
+                }
+            }
+            perform(done);
+        }
+
+        private void perform(final CompletableFuture<Void> done) {
+            // waiters which are registered while running will be served by the next run
+            final List<CompletableFuture<Void>> currentWaiters = takeWaiters();
+
+            CompletableFuture<Void> result;
+            try {
+                result = task.get();
+            } catch (final RuntimeException rt) {
+                result = new CompletableFuture<>();
+                result.completeExceptionally(rt);
+            }
+
+            result.whenComplete((ignore, error) -> {
+                hostPermits.ifPresent(HostPermits::release);
+
+                if (error == null) {
+                    currentWaiters.forEach(waiter -> waiter.complete(null));
+                } else {
+                    // the task is responsible for error handling. Keep the schedule alive
+                    final Throwable cause = ((error instanceof CompletionException) && (error.getCause() != null)) ? error.getCause() : error;
+                    LOG.debug("refresh failed", cause);
+                    currentWaiters.forEach(waiter -> waiter.completeExceptionally(cause));
+                }
+
+                completed(jittered(period.get()));
+                done.complete(null);
+            });
+        }
+    }
+
+
+
+    /**
+     * The permits of a host. Other than a semaphore, a run which does not get a permit is queued. A released
+     * permit is handed over to the longest waiting run directly (FIFO)
+     */
+    private final class HostPermits {
+
+        // guarded by this
+        private int available;
+        private final ArrayDeque<Schedule> queued = new ArrayDeque<>();
+
+        HostPermits(final int permits) {
+            this.available = permits;
+        }
+
+        /**
+         * @param schedule  the schedule to run
+         * @return true, if a permit has been acquired. Otherwise the schedule is queued
+         */
+        synchronized boolean acquireOrEnqueue(final Schedule schedule) {
+            if (available > 0) {
+                available--;
+                return true;
+            } else {
+                queued.add(schedule);
+                return false;
+            }
+        }
+
+        /**
+         * @param schedule  the schedule to remove
+         * @return true, if the schedule has been queued
+         */
+        synchronized boolean dequeue(final Schedule schedule) {
+            return queued.remove(schedule);
+        }
+
+        void release() {
+            final Schedule next;
+            synchronized (this) {
+                next = queued.poll();
+                if (next == null) {
+                    available++;
+                    return;
+                }
+            }
+
+            // the permit is handed over. The run is performed by the worker pool, not by the releasing thread
+            try {
+                workers.execute(next::runWithPermit);
+            } catch (final RejectedExecutionException ree) {
+                LOG.debug("scheduler is closed. Refresh will not be performed");
+                next.abandon(ree);
+            }
+        }
+    }
+
+
+
+    private static ThreadFactory newThreadFactory(final String name) {
+        final AtomicInteger count = new AtomicInteger();
+        return runnable -> {
+            final Thread thread = new Thread(runnable, name + "-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+}
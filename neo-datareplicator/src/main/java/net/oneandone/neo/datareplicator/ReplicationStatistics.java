@@ -0,0 +1,145 @@
+/*
+ * Copyright 1&1 Internet AG, https://github.com/1and1/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.oneandone.neo.datareplicator;
+
+
+import java.time.Duration;
+import java.util.Map;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableMap;
+
+import net.oneandone.neo.datareplicator.ReplicationMetrics.Counter;
+import net.oneandone.neo.datareplicator.ReplicationMetrics.Phase;
+
+
+
+/**
+ * Snapshot of the in-process statistics of a replication job (see {@link ReplicationJob#getStatistics()})
+ */
+public final class ReplicationStatistics {
+    private final ImmutableMap<Counter, Long> counters;
+    private final ImmutableMap<Phase, Latency> latencies;
+    
+    
+    ReplicationStatistics(final Map<Counter, Long> counters, final Map<Phase, Latency> latencies) {
+        this.counters = ImmutableMap.copyOf(counters);
+        this.latencies = ImmutableMap.copyOf(latencies);
+    }
+    
+    /**
+     * @param counter  the counter
+     * @return the counter value
+     */
+    public long getCount(final Counter counter) {
+        return counters.getOrDefault(counter, 0L);
+    }
+    
+    /**
+     * @param phase  the phase
+     * @return the latency distribution of the phase
+     */
+    public Latency getLatency(final Phase phase) {
+        return latencies.get(phase);
+    }
+    
+    @Override
+    public String toString() {
+        return "counters=" + counters + ", latencies=" + latencies;
+    }
+    
+
+    
+    /**
+     * The latency distribution of a phase. Percentiles have a relative error of less than 6.25%
+     */
+    public static final class Latency {
+        private final long[] buckets;
+        private final long count;
+        private final long sum;
+        private final long min;
+        private final long max;
+        
+        Latency(final long[] buckets, final long count, final long sum, final long min, final long max) {
+            this.buckets = buckets;
+            this.count = count;
+            this.sum = sum;
+            this.min = min;
+            this.max = max;
+        }
+        
+        /**
+         * @return the number of recorded latencies
+         */
+        public long getCount() {
+            return count;
+        }
+        
+        /**
+         * @return the min latency or 0, if no latency is recorded
+         */
+        public Duration getMin() {
+            return Duration.ofNanos(min);
+        }
+        
+        /**
+         * @return the max latency or 0, if no latency is recorded
+         */
+        public Duration getMax() {
+            return Duration.ofNanos(max);
+        }
+        
+        /**
+         * @return the mean latency or 0, if no latency is recorded
+         */
+        public Duration getMean() {
+            return Duration.ofNanos((count == 0) ? 0 : (sum / count));
+        }
+        
+        /**
+         * @param quantile  the quantile within [0, 1] (e.g. 0.99 for the 99th percentile)
+         * @return the latency, which is not exceeded by the given quantile of the recorded latencies, or 0, if no 
+         *         latency is recorded 
+         */
+        public Duration getPercentile(final double quantile) {
+            Preconditions.checkArgument((quantile >= 0) && (quantile <= 1), "quantile has to be within [0, 1]");
+            
+            long total = 0;
+            for (long bucket : buckets) {
+                total += bucket;
+            }
+            if (total == 0) {
+                return Duration.ZERO;
+            }
+            
+            final long rank = Math.max(1, (long) Math.ceil(quantile * total));
+            long cumulated = 0;
+            for (int i = 0; i < buckets.length; i++) {
+                cumulated += buckets[i];
+                if (cumulated >= rank) {
+                    return Duration.ofNanos(Math.max(min, Math.min(max, LatencyHistogram.highestValueOf(i))));
+                }
+            }
+            return Duration.ofNanos(max);
+        }
+        
+        @Override
+        public String toString() {
+            return "count=" + count + ", mean=" + getMean() + ", p50=" + getPercentile(0.5) + ", p99=" + getPercentile(0.99) + ", max=" + getMax();
+        }
+    }
+}
@@ -0,0 +1,220 @@
+/*
+ * Copyright 1&1 Internet AG, https://github.com/1and1/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.oneandone.neo.datareplicator;
+
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Optional;
+
+import com.google.common.hash.HashCode;
+import com.google.common.io.BaseEncoding;
+
+
+
+/**
+ * Computes the fingerprint of the data (see {@link Data#FINGERPRINT_FUNCTION}) incrementally. Other than the
+ * hasher of the fingerprint function, the intermediate state can be recorded and resumed. This allows computing
+ * the fingerprint of appended data by hashing the appended bytes only (see append mode). The result is equal to
+ * the 128 bit murmur3 hash (x64 variant, seed 0) of the fingerprint function
+ */
+final class ResumableFingerprint {
+    private static final long C1 = 0x87c37b91114253d5L;
+    private static final long C2 = 0x4cf5ad432745937fL;
+    private static final int BLOCK_SIZE = 16;
+    private static final String STATE_SEPARATOR = ":";
+
+    private long h1;
+    private long h2;
+    private long length;    // number of processed bytes including the pending ones
+    private final ByteBuffer pending = ByteBuffer.allocate(BLOCK_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+
+
+    /**
+     * creates a fingerprint of empty data
+     */
+    ResumableFingerprint() {
+        this(0, 0, 0, new byte[0]);
+    }
+
+    private ResumableFingerprint(final long h1, final long h2, final long length, final byte[] pending) {
+        this.h1 = h1;
+        this.h2 = h2;
+        this.length = length;
+        this.pending.put(pending);
+    }
+
+
+    /**
+     * @param state  the recorded state (see {@link #getState()})
+     * @return the resumed fingerprint or empty, if the state is invalid
+     */
+    static Optional<ResumableFingerprint> resume(final String state) {
+        try {
+            final String[] parts = state.split(STATE_SEPARATOR, -1);
+            if (parts.length == 4) {
+                final byte[] pending = BaseEncoding.base16().lowerCase().decode(parts[3]);
+                final long length = Long.parseLong(parts[2]);
+                if ((pending.length < BLOCK_SIZE) && (length >= pending.length) && ((length - pending.length) % BLOCK_SIZE == 0)) {
+                    return Optional.of(new ResumableFingerprint(Long.parseUnsignedLong(parts[0], 16), Long.parseUnsignedLong(parts[1], 16), length, pending));
+                }
+            }
+        } catch (final IllegalArgumentException iae) {
+            // invalid state
+        }
+        return Optional.empty();
+    }
+
+    /**
+     * @return the state which can be resumed (see {@link #resume(String)})
+     */
+    String getState() {
+        final byte[] pendingBytes = new byte[pending.position()];
+        ((ByteBuffer) pending.duplicate().flip()).get(pendingBytes);
+        return Long.toHexString(h1) + STATE_SEPARATOR +
+               Long.toHexString(h2) + STATE_SEPARATOR +
+               length + STATE_SEPARATOR +
+               BaseEncoding.base16().lowerCase().encode(pendingBytes);
+    }
+
+    /**
+     * @return the number of hashed bytes
+     */
+    long getLength() {
+        return length;
+    }
+
+    /**
+     * @param bytes   the bytes to hash
+     * @param offset  the offset
+     * @param len     the number of bytes
+     */
+    void update(final byte[] bytes, final int offset, final int len) {
+        final int end = offset + len;
+        int pos = offset;
+
+        // complete the pending block first
+        while ((pending.position() > 0) && (pos < end)) {
+            pending.put(bytes[pos++]);
+            if (!pending.hasRemaining()) {
+                pending.flip();
+                mixBlock(pending.getLong(), pending.getLong());
+                pending.clear();
+            }
+        }
+
+        // process the complete blocks directly
+        final ByteBuffer blocks = ByteBuffer.wrap(bytes, pos, end - pos).order(ByteOrder.LITTLE_ENDIAN);
+        while (blocks.remaining() >= BLOCK_SIZE) {
+            mixBlock(blocks.getLong(), blocks.getLong());
+        }
+        pending.put(bytes, blocks.position(), end - blocks.position());
+
+        length += len;
+    }
+
+    /**
+     * @param os  the stream to write to
+     * @return the stream which updates this fingerprint by the written bytes
+     */
+    OutputStream wrap(final OutputStream os) {
+        return new FilterOutputStream(os) {
+
+            @Override
+            public void write(final int b) throws IOException {
+                write(new byte[] { (byte) b }, 0, 1);
+            }
+
+            @Override
+            public void write(final byte[] bytes, final int offset, final int len) throws IOException {
+                out.write(bytes, offset, len);
+                update(bytes, offset, len);
+            }
+        };
+    }
+
+    /**
+     * @return the fingerprint of the bytes hashed so far. The state remains unchanged, which means further bytes can be hashed
+     */
+    HashCode hash() {
+        long k1 = 0;
+        long k2 = 0;
+        final int numPending = pending.position();
+        for (int i = numPending - 1; i >= 8; i--) {
+            k2 = (k2 << 8) | (pending.get(i) & 0xFF);
+        }
+        for (int i = Math.min(numPending, 8) - 1; i >= 0; i--) {
+            k1 = (k1 << 8) | (pending.get(i) & 0xFF);
+        }
+
+        long r1 = h1 ^ mixK1(k1);
+        long r2 = h2 ^ mixK2(k2);
+
+        r1 ^= length;
+        r2 ^= length;
+        r1 += r2;
+        r2 += r1;
+        r1 = fmix64(r1);
+        r2 = fmix64(r2);
+        r1 += r2;
+        r2 += r1;
+
+        return HashCode.fromBytes(ByteBuffer.allocate(BLOCK_SIZE)
+                                            .order(ByteOrder.LITTLE_ENDIAN)
+                                            .putLong(r1)
+                                            .putLong(r2)
+                                            .array());
+    }
+
+    private void mixBlock(final long k1, final long k2) {
+        h1 ^= mixK1(k1);
+        h1 = Long.rotateLeft(h1, 27);
+        h1 += h2;
+        h1 = h1 * 5 + 0x52dce729;
+
+        h2 ^= mixK2(k2);
+        h2 = Long.rotateLeft(h2, 31);
+        h2 += h1;
+        h2 = h2 * 5 + 0x38495ab5;
+    }
+
+    private static long mixK1(long k1) {
+        k1 *= C1;
+        k1 = Long.rotateLeft(k1, 31);
+        k1 *= C2;
+        return k1;
+    }
+
+    private static long mixK2(long k2) {
+        k2 *= C2;
+        k2 = Long.rotateLeft(k2, 33);
+        k2 *= C1;
+        return k2;
+    }
+
+    private static long fmix64(long k) {
+        k ^= k >>> 33;
+        k *= 0xff51afd7ed558ccdL;
+        k ^= k >>> 33;
+        k *= 0xc4ceb9fe1a85ec53L;
+        k ^= k >>> 33;
+        return k;
+    }
+}
@@ -0,0 +1,54 @@
+/*
+ * Copyright 1&1 Internet AG, https://github.com/1and1/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.oneandone.neo.datareplicator;
+
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+
+
+/**
+ * Codec which persists parsed values as snapshots next to the cache files. If the same data is loaded again 
+ * (e.g. on start-up), the snapshot will be read instead of parsing the data. Snapshots are keyed by the 
+ * fingerprint of the data and the id of the codec. Snapshots written by other codecs are never read   
+ *
+ * @param <T>  the type of the value
+ */
+public interface SnapshotCodec<T> {
+
+    /**
+     * @return the id of the codec. The id has to identify the value type and the format version of the 
+     *         snapshot (e.g. "countrytable-v2"). If the format is changed incompatible, the id has to be changed   
+     */
+    String getId();
+
+    /**
+     * @param value  the value to write
+     * @param os     the snapshot stream. The stream will be closed by the caller 
+     * @throws IOException if an I/O error occurs
+     */
+    void write(T value, OutputStream os) throws IOException;
+
+    /**
+     * @param is  the snapshot stream. The stream will be closed by the caller
+     * @return the value
+     * @throws IOException if an I/O error occurs or the snapshot is broken
+     */
+    T read(InputStream is) throws IOException;
+}
@@ -0,0 +1,92 @@
+/*
+ * Copyright 1&1 Internet AG, https://github.com/1and1/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.oneandone.neo.datareplicator;
+
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Optional;
+
+import org.slf4j.Logger;
+
+import com.google.common.base.Throwables;
+
+
+
+/**
+ * Rate-limited error log. Repeated identical errors (same root cause) are logged once per interval only. 
+ * Suppressed errors are logged on debug level and counted. The count will be reported with the next warning   
+ */
+final class ThrottledErrorLog {
+    static final Duration DEFAULT_INTERVAL = Duration.ofMinutes(5);
+    
+    private final Logger log;
+    private final Duration interval;
+    
+    // guarded by this
+    private Optional<String> lastError = Optional.empty();
+    private Instant lastLogged = Instant.MIN;
+    private int numSuppressed = 0;
+    
+    
+    /**
+     * @param log       the underlying log
+     * @param interval  the min interval between warnings of identical errors
+     */
+    ThrottledErrorLog(final Logger log, final Duration interval) {
+        this.log = log;
+        this.interval = interval;
+    }
+    
+    /**
+     * @param message  the message
+     * @param error    the error
+     */
+    public void warn(final String message, final Throwable error) {
+        final String rootCause = Throwables.getRootCause(error).toString();
+        
+        final int suppressed;
+        synchronized (this) {
+            final Instant now = Instant.now();
+            if (lastError.equals(Optional.of(rootCause)) && now.isBefore(lastLogged.plus(interval))) {
+                numSuppressed++;
+                suppressed = -1;
+            } else {
+                suppressed = numSuppressed;
+                numSuppressed = 0;
+                lastError = Optional.of(rootCause);
+                lastLogged = now;
+            }
+        }
+
+        if (suppressed < 0) {
+            log.debug(message, error);
+        } else if (suppressed > 0) {
+            log.warn(message + " (" + suppressed + " identical errors suppressed before)", error);
+        } else {
+            log.warn(message, error);
+        }
+    }
+    
+    /**
+     * resets the log, which means the next error will be logged as warning in any case 
+     */
+    public synchronized void reset() {
+        lastError = Optional.empty();
+        numSuppressed = 0;
+    }
+}
@@ -0,0 +1,98 @@
+/*
+ * Copyright 1&1 Internet AG, https://github.com/1and1/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.oneandone.neo.datareplicator;
+
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Objects;
+import java.util.Optional;
+
+import com.google.common.base.Strings;
+
+
+
+/**
+ * validators of the source data, which are required to perform conditional loads. In context of http these are 
+ * the cache validators of the response. In context of local files the validator is derived from the file attributes
+ */
+final class Validators {
+    static final Validators NONE = new Validators(Optional.empty(), Optional.empty());
+    private static final Duration MIN_FILE_AGE = Duration.ofSeconds(2);
+
+    private final Optional<String> etag;
+    private final Optional<String> lastModified;
+
+    public Validators(final Optional<String> etag, final Optional<String> lastModified) {
+        this.etag = etag;
+        this.lastModified = lastModified;
+    }
+
+    public static Validators of(final String etag, final String lastModified) {
+        return new Validators(Optional.ofNullable(Strings.emptyToNull(etag)),
+                              Optional.ofNullable(Strings.emptyToNull(lastModified)));
+    }
+
+    /**
+     * @param path  the file
+     * @return the validators which is derived from the size, the last modified time and the file key (inode) of the 
+     *         file. If the file has been modified recently, {@link #NONE} is returned. A further modification within 
+     *         the resolution of the file system timestamp could not be detected in this case  
+     * @throws IOException if the file attributes can not be read
+     */
+    public static Validators ofFileAttributes(final Path path) throws IOException {
+        final BasicFileAttributes attributes = java.nio.file.Files.readAttributes(path, BasicFileAttributes.class);
+        final Instant lastModified = attributes.lastModifiedTime().toInstant();
+        if (lastModified.plus(MIN_FILE_AGE).isAfter(Instant.now())) {
+            return NONE;
+        } else {
+            return of(attributes.size() + "-" + lastModified.toEpochMilli() + "-" + attributes.fileKey(), null);
+        }
+    }
+
+    public Optional<String> getEtag() {
+        return etag;
+    }
+
+    public Optional<String> getLastModified() {
+        return lastModified;
+    }
+
+    public boolean isEmpty() {
+        return !etag.isPresent() && !lastModified.isPresent();
+    }
+
+    @Override
+    public boolean equals(final Object other) {
+        return (other instanceof Validators) && 
+               ((Validators) other).etag.equals(etag) && 
+               ((Validators) other).lastModified.equals(lastModified);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(etag, lastModified);
+    }
+
+    @Override
+    public String toString() {
+        return "etag=" + etag.orElse("none") + ", lastModified=" + lastModified.orElse("none");
+    }
+}
@@ -0,0 +1,114 @@
+/*
+ * Copyright 1&1 Internet AG, https://github.com/1and1/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.oneandone.neo.datareplicator;
+
+
+import java.io.File;
+import java.time.Duration;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.Files;
+
+
+
+public class AdaptiveRefreshTest {
+    
+    @Test
+    public void testBackoff() throws Exception {
+        final AdaptiveRefreshPeriod period = new AdaptiveRefreshPeriod(Duration.ofSeconds(1), Duration.ofSeconds(5));
+        Assert.assertEquals(Duration.ofSeconds(1), period.get());
+        
+        period.onUnmodified(Optional.empty());
+        Assert.assertEquals(Duration.ofSeconds(2), period.get());
+        period.onError();
+        Assert.assertEquals(Duration.ofSeconds(4), period.get());
+        period.onUnmodified(Optional.empty());
+        Assert.assertEquals(Duration.ofSeconds(5), period.get());
+        
+        period.onModified(Optional.empty());
+        Assert.assertEquals(Duration.ofSeconds(1), period.get());
+        
+        // freshness lifetime is honored within the bounds 
+        period.onModified(Optional.of(Duration.ofSeconds(3)));
+        Assert.assertEquals(Duration.ofSeconds(3), period.get());
+        period.onModified(Optional.of(Duration.ofHours(1)));
+        Assert.assertEquals(Duration.ofSeconds(5), period.get());
+        period.onModified(Optional.of(Duration.ZERO));
+        Assert.assertEquals(Duration.ofSeconds(1), period.get());
+        
+        // fixed period
+        final AdaptiveRefreshPeriod fixedPeriod = new AdaptiveRefreshPeriod(Duration.ofSeconds(1), Duration.ofSeconds(1));
+        fixedPeriod.onUnmodified(Optional.of(Duration.ofHours(1)));
+        Assert.assertEquals(Duration.ofSeconds(1), fixedPeriod.get());
+    }
+    
+    
+    @Test
+    public void testParseFreshnessLifetime() throws Exception {
+        Assert.assertEquals(Optional.empty(), HttpDatasource.parseFreshnessLifetime(null, null, null));
+        Assert.assertEquals(Optional.empty(), HttpDatasource.parseFreshnessLifetime("public", null, null));
+        Assert.assertEquals(Optional.of(Duration.ofSeconds(300)), HttpDatasource.parseFreshnessLifetime("public, max-age=300", null, null));
+        Assert.assertEquals(Optional.of(Duration.ofSeconds(300)), HttpDatasource.parseFreshnessLifetime("Max-Age=300, must-revalidate", null, null));
+        Assert.assertEquals(Optional.of(Duration.ZERO), HttpDatasource.parseFreshnessLifetime("no-cache", null, null));
+        
+        // max-age overrides expires
+        Assert.assertEquals(Optional.of(Duration.ofSeconds(60)), HttpDatasource.parseFreshnessLifetime("max-age=60", 
+                                                                                                        "Thu, 01 Dec 2016 17:00:00 GMT", 
+                                                                                                        "Thu, 01 Dec 2016 16:00:00 GMT"));
+        Assert.assertEquals(Optional.of(Duration.ofHours(1)), HttpDatasource.parseFreshnessLifetime(null, 
+                                                                                                     "Thu, 01 Dec 2016 17:00:00 GMT", 
+                                                                                                     "Thu, 01 Dec 2016 16:00:00 GMT"));
+        Assert.assertEquals(Optional.of(Duration.ZERO), HttpDatasource.parseFreshnessLifetime(null, "0", null));
+    }
+    
+    
+    @Test
+    public void testUnmodifiedSourceIsRefreshedLessOften() throws Exception {
+        final File file = File.createTempFile("adaptive", ".txt");
+        Files.write("v1", file, Charsets.UTF_8);
+
+        final AtomicReference<String> text = new AtomicReference<>();
+        final ReplicationJob job = ReplicationJob.source(file.toURI())
+                                                 .withCacheDir(Files.createTempDir())
+                                                 .withRefreshPeriod(Duration.ofMillis(100))
+                                                 .withMaxRefreshPeriod(Duration.ofMillis(800))
+                                                 .startConsumingText(text::set);
+        Assert.assertEquals("v1", text.get());
+        
+        // unmodified -> backoff
+        for (int i = 0; (i < 50) && !job.getRefreshPeriod().equals(Duration.ofMillis(800)); i++) {
+            Thread.sleep(100);
+        }
+        Assert.assertEquals(Duration.ofMillis(800), job.getRefreshPeriod());
+        
+        // modified -> min period
+        Files.write("v2", file, Charsets.UTF_8);
+        for (int i = 0; (i < 50) && !"v2".equals(text.get()); i++) {
+            Thread.sleep(100);
+        }
+        Assert.assertEquals("v2", text.get());
+        Assert.assertTrue(job.getRefreshPeriod().compareTo(Duration.ofMillis(800)) < 0);
+        
+        job.close();
+        file.delete();
+    }
+}
@@ -0,0 +1,249 @@
+/*
+ * Copyright 1&1 Internet AG, https://github.com/1and1/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.oneandone.neo.datareplicator;
+
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.Duration;
+import java.util.Map.Entry;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.Maps;
+import com.google.common.io.ByteStreams;
+import com.google.common.io.Files;
+
+import net.oneandone.neo.datareplicator.utils.AppendableTestServlet;
+import net.oneandone.neo.datareplicator.utils.InMemoryConsumer;
+import net.oneandone.neo.datareplicator.utils.WebServer;
+
+
+public class AppendModeTest {
+    
+    private static AppendableTestServlet servlet = new AppendableTestServlet();
+    private static WebServer server;
+
+    
+    @BeforeClass
+    public static void setUp() throws Exception {
+        server = WebServer.withServlet(servlet)
+                          .start();
+    }
+    
+    @AfterClass
+    public static void tearDown() throws Exception {
+        server.close();
+    }
+    
+    @Before
+    public void resetServlet() {
+        servlet.reset();
+        servlet.setContent(lines(0, 100));
+    }
+    
+    
+    @Test
+    public void testAppended() throws Exception {
+        servlet.setEtagPerGeneration(true);
+        final BlockingQueue<Entry<Long, String>> deltas = new LinkedBlockingQueue<>();
+        
+        final ReplicationJob job = ReplicationJob.source(server.getBasepath() + "journal.txt")
+                                                 .withCacheDir(Files.createTempDir())
+                                                 .withRefreshPeriod(Duration.ofMillis(100))
+                                                 .withAppendMode(true)
+                                                 .startConsumingDelta((offset, is) -> deltas.add(Maps.immutableEntry(offset, read(is))));
+        
+        Entry<Long, String> delta = deltas.poll(3, TimeUnit.SECONDS);
+        Assert.assertEquals(0L, (long) delta.getKey());
+        Assert.assertEquals(new String(lines(0, 100), Charsets.UTF_8), delta.getValue());
+        
+        
+        // appended -> only the appended bytes will be transferred
+        final int length = lines(0, 100).length;
+        servlet.append(lines(100, 110));
+        
+        delta = deltas.poll(3, TimeUnit.SECONDS);
+        Assert.assertEquals(length, (long) delta.getKey());
+        Assert.assertEquals(new String(lines(100, 110), Charsets.UTF_8), delta.getValue());
+        Assert.assertEquals(1, servlet.getNumFullResponses());
+        Assert.assertTrue(servlet.getNumPartialResponses() >= 1);
+        
+        
+        // replaced -> the If-Range validator does not match -> full request
+        servlet.setContent(lines(200, 300));
+        
+        delta = deltas.poll(3, TimeUnit.SECONDS);
+        Assert.assertEquals(0L, (long) delta.getKey());
+        Assert.assertEquals(new String(lines(200, 300), Charsets.UTF_8), delta.getValue());
+        Assert.assertEquals(2, servlet.getNumFullResponses());
+        
+        
+        // shrunk -> the If-Range validator does not match -> full request
+        servlet.setContent(lines(0, 1));
+        
+        delta = deltas.poll(3, TimeUnit.SECONDS);
+        Assert.assertEquals(0L, (long) delta.getKey());
+        Assert.assertEquals(new String(lines(0, 1), Charsets.UTF_8), delta.getValue());
+        Assert.assertEquals(3, servlet.getNumFullResponses());
+        
+        job.close();
+    }
+    
+    
+    @Test
+    public void testRewrittenWithUnchangedTail() throws Exception {
+        servlet.setEtagPerGeneration(true);
+        final BlockingQueue<Entry<Long, String>> deltas = new LinkedBlockingQueue<>();
+        
+        final ReplicationJob job = ReplicationJob.source(server.getBasepath() + "journal.txt")
+                                                 .withCacheDir(Files.createTempDir())
+                                                 .withRefreshPeriod(Duration.ofMillis(100))
+                                                 .withAppendMode(true)
+                                                 .startConsumingDelta((offset, is) -> deltas.add(Maps.immutableEntry(offset, read(is))));
+        Assert.assertEquals(0L, (long) deltas.poll(3, TimeUnit.SECONDS).getKey());
+        
+        // the head is rewritten, the tail remains unchanged and new bytes are added -> the overlapping range 
+        // matches, but the If-Range validator does not -> full request 
+        final String rewritten = new String(lines(0, 110), Charsets.UTF_8).replaceFirst("journal", "JOURNAL");
+        servlet.setContent(rewritten.getBytes(Charsets.UTF_8));
+        
+        final Entry<Long, String> delta = deltas.poll(3, TimeUnit.SECONDS);
+        Assert.assertEquals(0L, (long) delta.getKey());
+        Assert.assertEquals(rewritten, delta.getValue());
+        Assert.assertEquals(2, servlet.getNumFullResponses());
+        job.close();
+    }
+    
+    
+    @Test
+    public void testAppendedEtagPerContent() throws Exception {
+        final BlockingQueue<Entry<Long, String>> deltas = new LinkedBlockingQueue<>();
+        
+        final ReplicationJob job = ReplicationJob.source(server.getBasepath() + "journal.txt")
+                                                 .withCacheDir(Files.createTempDir())
+                                                 .withRefreshPeriod(Duration.ofMillis(100))
+                                                 .withAppendMode(true)
+                                                 .startConsumingDelta((offset, is) -> deltas.add(Maps.immutableEntry(offset, read(is))));
+        Assert.assertEquals(0L, (long) deltas.poll(3, TimeUnit.SECONDS).getKey());
+        
+        // the ETag changes by appending -> the If-Range validator does not match -> full request
+        servlet.append(lines(100, 110));
+        
+        final Entry<Long, String> delta = deltas.poll(3, TimeUnit.SECONDS);
+        Assert.assertEquals(0L, (long) delta.getKey());
+        Assert.assertEquals(new String(lines(0, 110), Charsets.UTF_8), delta.getValue());
+        Assert.assertEquals(2, servlet.getNumFullResponses());
+        job.close();
+    }
+    
+    
+    @Test
+    public void testAppendedFullView() throws Exception {
+        servlet.setEtagPerGeneration(true);
+        final File cacheDir = Files.createTempDir();
+        final InMemoryConsumer consumer = new InMemoryConsumer();
+        
+        final ReplicationJob job = ReplicationJob.source(server.getBasepath() + "journal.txt")
+                                                 .withCacheDir(cacheDir)
+                                                 .withRefreshPeriod(Duration.ofMillis(100))
+                                                 .withAppendMode(true)
+                                                 .startConsumingText(consumer);
+        Assert.assertEquals(new String(lines(0, 100), Charsets.UTF_8), consumer.waitForText());
+        
+        servlet.append(lines(100, 110));
+        Thread.sleep(700);
+        
+        // the consumer gets the complete data
+        Assert.assertEquals(new String(lines(0, 110), Charsets.UTF_8), consumer.waitForText());
+        Assert.assertTrue(servlet.getNumPartialResponses() >= 1);
+        job.close();
+        
+        
+        // restart -> the cached data will be used as base of the range request
+        servlet.reset();
+        servlet.setEtagPerGeneration(true);
+        servlet.append(lines(110, 120));
+        
+        final InMemoryConsumer consumer2 = new InMemoryConsumer();
+        final ReplicationJob job2 = ReplicationJob.source(server.getBasepath() + "journal.txt")
+                                                  .withCacheDir(cacheDir)
+                                                  .withFailOnInitFailure(true)
+                                                  .withAppendMode(true)
+                                                  .startConsumingText(consumer2);
+        Assert.assertEquals(new String(lines(0, 120), Charsets.UTF_8), consumer2.waitForText());
+        Assert.assertEquals(0, servlet.getNumFullResponses());
+        Assert.assertEquals(1, servlet.getNumPartialResponses());
+        job2.close();
+    }
+    
+    
+    @Test
+    public void testAppendModeNotActivated() throws Exception {
+        final BlockingQueue<Entry<Long, String>> deltas = new LinkedBlockingQueue<>();
+        
+        final ReplicationJob job = ReplicationJob.source(server.getBasepath() + "journal.txt")
+                                                 .withCacheDir(Files.createTempDir())
+                                                 .withRefreshPeriod(Duration.ofMillis(100))
+                                                 .startConsumingDelta((offset, is) -> deltas.add(Maps.immutableEntry(offset, read(is))));
+        Assert.assertEquals(0L, (long) deltas.poll(3, TimeUnit.SECONDS).getKey());
+        
+        servlet.append(lines(100, 110));
+        
+        final Entry<Long, String> delta = deltas.poll(3, TimeUnit.SECONDS);
+        Assert.assertEquals(0L, (long) delta.getKey());
+        Assert.assertEquals(new String(lines(0, 110), Charsets.UTF_8), delta.getValue());
+        Assert.assertEquals(0, servlet.getNumPartialResponses());
+        job.close();
+    }
+    
+    
+    @Test(expected = IllegalStateException.class)
+    public void testAppendModeWithCacheCompression() throws Exception {
+        ReplicationJob.source(server.getBasepath() + "journal.txt")
+                      .withCacheDir(Files.createTempDir())
+                      .withAppendMode(true)
+                      .withCacheCompression(true)
+                      .startConsumingDelta((offset, is) -> { });
+    }
+    
+    
+    private static byte[] lines(final int from, final int to) {
+        final StringBuilder sb = new StringBuilder();
+        for (int i = from; i < to; i++) {
+            sb.append("journal entry ").append(i).append("\n");
+        }
+        return sb.toString().getBytes(Charsets.UTF_8);
+    }
+    
+    private static String read(final InputStream is) {
+        try {
+            return new String(ByteStreams.toByteArray(is), Charsets.UTF_8);
+        } catch (final IOException ioe) {
+            throw new RuntimeException(ioe);
+        }
+    }
+}
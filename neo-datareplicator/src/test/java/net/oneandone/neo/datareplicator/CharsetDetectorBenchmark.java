@@ -0,0 +1,103 @@
+/*
+ * Copyright 1&1 Internet AG, https://github.com/1and1/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package net.oneandone.neo.datareplicator;
+
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.Charset;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.ImmutableList;
+import com.google.common.io.Files;
+
+
+
+/**
+ * Compares the charset detection with the former detection, which decodes the complete data for each
+ * candidate charset. The inputs are the hello.* fixtures and large generated inputs (10 MB)    
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class CharsetDetectorBenchmark {
+    
+    private static final ImmutableList<Charset> FORMER_CHARSETS_TO_TESTED = ImmutableList.of(Charset.forName("UTF-8"),
+                                                                                             Charset.forName("ISO-8859-15"), 
+                                                                                             Charset.forName("windows-1253"));
+    
+    @Param({ "hello.utf8.txt", "hello.utf8.withbom.txt", "hello.ISO_8859_15.txt", "hello.cp_1252.txt",
+             "large.ascii", "large.utf8", "large.latin1" })
+    public String input;
+    
+    private byte[] binary;
+    
+    
+    @Setup
+    public void setUp() throws Exception {
+        if (input.startsWith("large.")) {
+            final StringBuilder sb = new StringBuilder();
+            for (int i = 0; sb.length() < 10 * 1024 * 1024; i++) {
+                sb.append(i).append(input.equals("large.ascii") ? ";entry;generated line\n" : ";Eintrag;Grüße aus Köln\n");
+            }
+            binary = sb.toString().getBytes(input.equals("large.latin1") ? Charsets.ISO_8859_1 : Charsets.UTF_8);
+        } else {
+            binary = Files.toByteArray(new File("src/test/resources/" + input));
+        }
+    }
+    
+    
+    @Benchmark
+    public Object detect() {
+        return CharsetDetector.detect(binary);
+    }
+
+    @Benchmark
+    public Object formerDetect() {
+        for (Charset charset : FORMER_CHARSETS_TO_TESTED) {
+            try {
+                return charset.newDecoder().decode(ByteBuffer.wrap(binary)).length() >= 0 ? charset : null;
+            } catch (CharacterCodingException ignore) { }
+        }
+        return Charsets.UTF_8;
+    }
+    
+    
+    public static void main(final String[] args) throws Exception {
+        new Runner(new OptionsBuilder().include(CharsetDetectorBenchmark.class.getSimpleName()).build()).run();
+    }
+}
@@ -0,0 +1,91 @@
+/*
+ * Copyright 1&1 Internet AG, https://github.com/1and1/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package net.oneandone.neo.datareplicator;
+
+
+import java.io.File;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.Files;
+
+
+
+public class CharsetDetectorTest {
+    
+    @Test
+    public void testFixtures() throws Exception {
+        Assert.assertEquals(Charsets.UTF_8, detect("hello.utf8.txt").getCharset());
+        Assert.assertEquals(0, detect("hello.utf8.txt").getBomLength());
+        Assert.assertEquals(Charset.forName("ISO-8859-15"), detect("hello.usascii.txt").getCharset());   // contains latin-1 chars
+        Assert.assertEquals(Charset.forName("ISO-8859-15"), detect("hello.ISO_8859_1.txt").getCharset());
+        Assert.assertEquals(Charset.forName("ISO-8859-15"), detect("hello.ISO_8859_15.txt").getCharset());
+        Assert.assertEquals(Charsets.UTF_8, detect("hello.utf8.withbom.txt").getCharset());
+        Assert.assertEquals(3, detect("hello.utf8.withbom.txt").getBomLength());
+    }
+    
+    
+    @Test
+    public void testBom() throws Exception {
+        Assert.assertEquals(Charsets.UTF_16BE, CharsetDetector.detect("﻿hello".getBytes(Charsets.UTF_16BE)).getCharset());
+        Assert.assertEquals(Charsets.UTF_16LE, CharsetDetector.detect("﻿hello".getBytes(Charsets.UTF_16LE)).getCharset());
+        Assert.assertEquals(Charset.forName("UTF-32LE"), CharsetDetector.detect("﻿hello".getBytes("UTF-32LE")).getCharset());
+        Assert.assertEquals(4, CharsetDetector.detect("﻿hello".getBytes("UTF-32BE")).getBomLength());
+    }
+    
+    
+    @Test
+    public void testUtf8Validation() throws Exception {
+        Assert.assertTrue(CharsetDetector.isUtf8("Grüße € 😀".getBytes(Charsets.UTF_8)));
+        Assert.assertFalse(CharsetDetector.isUtf8("Grüße".getBytes(Charsets.ISO_8859_1)));
+        Assert.assertFalse(CharsetDetector.isUtf8(new byte[] { 'a', (byte) 0xC0, (byte) 0xAF }));               // overlong
+        Assert.assertFalse(CharsetDetector.isUtf8(new byte[] { 'a', (byte) 0xED, (byte) 0xA0, (byte) 0x80 }));  // surrogate
+        Assert.assertFalse(CharsetDetector.isUtf8(new byte[] { 'a', (byte) 0xE2, (byte) 0x82 }));               // truncated
+        
+        // non-ASCII evidence behind the first prefix 
+        final byte[] latin1 = new byte[CharsetDetector.MAX_SCAN_LENGTH * 3];
+        Arrays.fill(latin1, (byte) 'a');
+        latin1[latin1.length - 1] = (byte) 0xFC;
+        Assert.assertFalse(CharsetDetector.isUtf8(latin1));
+        
+        // sequence cut by the end of the prefix
+        final byte[] utf8 = new byte[CharsetDetector.MAX_SCAN_LENGTH * 2];
+        Arrays.fill(utf8, (byte) 'a');
+        utf8[0] = (byte) 0xC3;
+        utf8[1] = (byte) 0xBC;
+        utf8[CharsetDetector.MAX_SCAN_LENGTH - 1] = (byte) 0xE2;
+        utf8[CharsetDetector.MAX_SCAN_LENGTH + 5] = (byte) 0xFC;  // behind the prefix
+        Assert.assertTrue(CharsetDetector.isUtf8(utf8));
+    }
+    
+    
+    @Test
+    public void testSingleByteFallback() throws Exception {
+        Assert.assertEquals(Charset.forName("windows-1252"), CharsetDetector.guessEncoding("„Grüße“ – 5 €".getBytes("windows-1252")));
+        Assert.assertEquals(Charset.forName("ISO-8859-15"), CharsetDetector.guessEncoding("Grüße 5 €".getBytes("ISO-8859-15")));
+    }
+    
+    
+    private static CharsetDetector.Detection detect(final String name) throws Exception {
+        return CharsetDetector.detect(Files.toByteArray(new File("src/test/resources/" + name)));
+    }
+}
@@ -17,10 +17,18 @@ package net.oneandone.neo.datareplicator;
 
 
 
+import java.io.File;
+import java.nio.charset.Charset;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicReference;
+
 import org.junit.AfterClass;
+import org.junit.Assert;
 import org.junit.BeforeClass;
 import org.junit.Test;
 
+import com.google.common.io.Files;
+
 import net.oneandone.neo.datareplicator.utils.InMemoryConsumer;
 import net.oneandone.neo.datareplicator.utils.TestServlet;
 import net.oneandone.neo.datareplicator.utils.Utils;
@@ -130,4 +138,28 @@ public class CharsetTest {
         Utils.assertMapEntryEquals(Utils.loadFileAsMap("hello.utf8.txt", "UTF-8"), Utils.toMap(testConsumer.waitForText()), "German");
         job.close();
     }
-}
\ No newline at end of file
+    
+    
+    @Test
+    public void testBinaryKeepsOriginalBytes() throws Exception {
+        final AtomicReference<byte[]> binary = new AtomicReference<>();
+        
+        final ReplicationJob job = ReplicationJob.source(server.getBasepath() + "hello.ISO_8859_15.txt?charset=ISO-8859-15")
+                                                 .withCacheDir(Files.createTempDir())
+                                                 .startConsumingBinary(binary::set);
+        Assert.assertArrayEquals(Files.toByteArray(new File("src/test/resources/hello.ISO_8859_15.txt")), binary.get());
+        job.close();
+    }
+    
+    
+    @Test
+    public void testTextIsDecodedOnce() throws Exception {
+        final File file = new File(Files.createTempDir(), "hello.txt");
+        Files.copy(new File("src/test/resources/hello.ISO_8859_15.txt"), file);
+        
+        final Data data = Data.of(file, Optional.of(Charset.forName("ISO-8859-15")), Validators.NONE);
+        final String text = data.asText();
+        Assert.assertSame(text, data.asText());
+        Utils.assertMapEntryEquals(Utils.loadFileAsMap("hello.utf8.txt", "UTF-8"), Utils.toMap(text), "German");
+    }
+}
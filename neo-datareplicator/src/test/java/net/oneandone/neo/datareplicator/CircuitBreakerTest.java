@@ -0,0 +1,171 @@
+/*
+ * Copyright 1&1 Internet AG, https://github.com/1and1/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.oneandone.neo.datareplicator;
+
+
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.net.URI;
+import java.time.Duration;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
+
+import javax.ws.rs.client.AsyncInvoker;
+import javax.ws.rs.client.Client;
+import javax.ws.rs.client.ClientBuilder;
+import javax.ws.rs.client.Invocation;
+import javax.ws.rs.client.WebTarget;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.google.common.base.Throwables;
+import com.google.common.io.Files;
+
+import net.oneandone.neo.datareplicator.utils.TestServlet;
+import net.oneandone.neo.datareplicator.utils.WebServer;
+
+
+
+public class CircuitBreakerTest {
+    
+    @Test
+    public void testStateTransitions() throws Exception {
+        final CircuitBreaker circuitBreaker = new CircuitBreaker("localhost", 2, Duration.ofMillis(200));
+        circuitBreaker.acquirePermission();
+        circuitBreaker.onFailure();
+        Assert.assertEquals(CircuitState.CLOSED, circuitBreaker.getState());
+        circuitBreaker.acquirePermission();
+        circuitBreaker.onFailure();
+        Assert.assertEquals(CircuitState.OPEN, circuitBreaker.getState());
+        
+        // open -> fail fast
+        try {
+            circuitBreaker.acquirePermission();
+            Assert.fail("ReplicationException expected");
+        } catch (final ReplicationException expected) { }
+        
+        // half-open -> a single probe call is let through
+        Thread.sleep(300);
+        circuitBreaker.acquirePermission();
+        Assert.assertEquals(CircuitState.HALF_OPEN, circuitBreaker.getState());
+        try {
+            circuitBreaker.acquirePermission();
+            Assert.fail("ReplicationException expected");
+        } catch (final ReplicationException expected) { }
+        
+        // failed probe call -> open again 
+        circuitBreaker.onFailure();
+        Assert.assertEquals(CircuitState.OPEN, circuitBreaker.getState());
+        
+        // successful probe call -> closed
+        Thread.sleep(300);
+        circuitBreaker.acquirePermission();
+        circuitBreaker.onSuccess();
+        Assert.assertEquals(CircuitState.CLOSED, circuitBreaker.getState());
+        circuitBreaker.acquirePermission();
+    }
+    
+    
+    @Test
+    public void testRefreshFailsFastIfHostIsDown() throws Exception {
+        final WebServer server = WebServer.withServlet(new TestServlet())
+                                          .start();
+        final ReplicationJob job = ReplicationJob.source(server.getBasepath() + "hello.utf8.txt")
+                                                 .withCacheDir(Files.createTempDir())
+                                                 .startConsumingText(text -> { });
+        Assert.assertEquals(CircuitState.CLOSED, job.getCircuitState());
+        final URI uri = URI.create(server.getBasepath());
+        server.close();
+
+        for (int i = 0; i < CircuitBreaker.DEFAULT_FAILURE_THRESHOLD; i++) {
+            try {
+                job.refreshAsync().join();
+                Assert.fail("CompletionException expected");
+            } catch (final CompletionException expected) { }
+        }
+        Assert.assertEquals(CircuitState.OPEN, job.getCircuitState());
+        
+        try {
+            job.refreshAsync().join();
+            Assert.fail("CompletionException expected");
+        } catch (final CompletionException expected) { 
+            Assert.assertTrue(Throwables.getRootCause(expected).getMessage().contains("circuit breaker"));
+        }
+        
+        // the shared circuit breaker is removed with the last job of the host 
+        job.close();
+        Assert.assertFalse(CircuitBreaker.isRegistered(uri));
+    }
+    
+    
+    @Test
+    public void testReleased() throws Exception {
+        final URI uri = URI.create("http://released.example.org/resource");
+        final CircuitBreaker circuitBreaker = CircuitBreaker.forHost(uri);
+        Assert.assertSame(circuitBreaker, CircuitBreaker.forHost(URI.create("http://RELEASED.example.org/other")));
+        
+        circuitBreaker.release();
+        Assert.assertTrue(CircuitBreaker.isRegistered(uri));
+        circuitBreaker.release();
+        Assert.assertFalse(CircuitBreaker.isRegistered(uri));
+        
+        // a released circuit breaker does not affect the new one of the host
+        final CircuitBreaker newCircuitBreaker = CircuitBreaker.forHost(uri);
+        Assert.assertNotSame(circuitBreaker, newCircuitBreaker);
+        circuitBreaker.release();
+        Assert.assertTrue(CircuitBreaker.isRegistered(uri));
+        newCircuitBreaker.release();
+        Assert.assertFalse(CircuitBreaker.isRegistered(uri));
+    }
+    
+    
+    @Test
+    public void testSynchronousInvocationErrorIsReported() throws Exception {
+        // client which fails by invoking the request (within the calling thread)
+        final Client defaultClient = ClientBuilder.newClient();
+        final AsyncInvoker invoker = proxy(AsyncInvoker.class, method -> { throw new IllegalStateException("invocation failed"); });
+        final AtomicReference<Invocation.Builder> builder = new AtomicReference<>();
+        builder.set(proxy(Invocation.Builder.class, method -> method.getName().equals("async") ? invoker : builder.get()));
+        final WebTarget target = proxy(WebTarget.class, method -> builder.get());
+        final Client client = proxy(Client.class, method -> method.getName().equals("getConfiguration") ? defaultClient.getConfiguration() : target);
+        
+        final URI uri = URI.create("http://failing.example.org/resource");
+        final HttpDatasource datasource = new HttpDatasource(uri, client, false, false, new FileCache(Files.createTempDir(), uri.toString(), Duration.ofDays(1)));
+        for (int i = 0; i < CircuitBreaker.DEFAULT_FAILURE_THRESHOLD; i++) {
+            try {
+                datasource.loadAsync().join();
+                Assert.fail("CompletionException expected");
+            } catch (final CompletionException expected) { }
+        }
+        Assert.assertEquals(CircuitState.OPEN, datasource.getCircuitState());
+        
+        datasource.close();
+        defaultClient.close();
+    }
+    
+    private static <T> T proxy(final Class<T> type, final Function<Method, Object> answer) {
+        return type.cast(Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[] { type }, (proxy, method, args) -> {
+            if (method.getDeclaringClass() == Object.class) {
+                return method.getName().equals("equals") ? (proxy == args[0]) 
+                                                         : method.getName().equals("hashCode") ? System.identityHashCode(proxy) : type.getSimpleName();
+            }
+            return answer.apply(method);
+        }));
+    }
+}
@@ -0,0 +1,182 @@
+/*
+ * Copyright 1&1 Internet AG, https://github.com/1and1/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.oneandone.neo.datareplicator;
+
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.time.Duration;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.Lists;
+import com.google.common.io.Files;
+
+import net.oneandone.neo.datareplicator.utils.ConditionalTestServlet;
+import net.oneandone.neo.datareplicator.utils.WebServer;
+
+
+
+public class CoalescingTest {
+    
+    private static ConditionalTestServlet servlet = new ConditionalTestServlet();
+    private static WebServer server;
+
+    
+    @BeforeClass
+    public static void setUp() throws Exception {
+        server = WebServer.withServlet(servlet)
+                          .start();
+    }
+    
+    @AfterClass
+    public static void tearDown() throws Exception {
+        server.close();
+    }
+    
+    @Before
+    public void resetServlet() {
+        servlet.reset();
+    }
+    
+    
+    @Test
+    public void testJobsOfSameResourceAreCoalesced() throws Exception {
+        final File cacheDir = Files.createTempDir();
+        final ReplicationJobBuilder builder = ReplicationJob.source(server.getBasepath() + "hello.utf8.txt?charset=utf-8")
+                                                            .withCacheDir(cacheDir)
+                                                            .withCoalescing(true);
+        
+        final AtomicReference<String> text1 = new AtomicReference<>();
+        final ReplicationJob job1 = builder.startConsumingText(text1::set);
+        final AtomicReference<byte[]> binary2 = new AtomicReference<>();
+        final ReplicationJob job2 = builder.startConsumingBinary(binary2::set);
+        
+        // one fetch, fanned out to both consumers 
+        Assert.assertEquals(1, servlet.getNumFullResponses());
+        Assert.assertNotNull(text1.get());
+        Assert.assertNotNull(binary2.get());
+        Assert.assertEquals(job1.getFingerprint(), job2.getFingerprint());
+        
+        // one request per refresh
+        job1.refreshAsync().join();
+        Assert.assertEquals(2, servlet.getNumFullResponses() + servlet.getNumNotModifiedResponses());
+        
+        // each coalesced job keeps its own lifecycle
+        job1.close();
+        job2.refreshAsync().join();
+        Assert.assertEquals(3, servlet.getNumFullResponses() + servlet.getNumNotModifiedResponses());
+        job2.close();
+        
+        // the shared replication has been closed with the last job -> a new one will be started 
+        final ReplicationJob job3 = builder.startConsumingText(text -> { });
+        Assert.assertEquals(4, servlet.getNumFullResponses() + servlet.getNumNotModifiedResponses());
+        job3.close();
+    }
+    
+    
+    @Test
+    public void testJobsWithDifferentOptionsAreNotCoalesced() throws Exception {
+        final ReplicationJobBuilder builder = ReplicationJob.source(server.getBasepath() + "hello.utf8.txt?charset=utf-8")
+                                                            .withCacheDir(Files.createTempDir())
+                                                            .withCoalescing(true);
+        
+        final ReplicationJob job1 = builder.startConsumingText(text -> { });
+        final ReplicationJob job2 = builder.withRefreshPeriod(Duration.ofMinutes(5))
+                                           .startConsumingText(text -> { });
+        Assert.assertEquals(2, servlet.getNumFullResponses() + servlet.getNumNotModifiedResponses());
+        
+        job1.close();
+        job2.close();
+    }
+    
+    
+    @Test
+    public void testJobsWithDifferentSchedulerInstancesAreNotCoalesced() throws Exception {
+        final ReplicationJobBuilder builder = ReplicationJob.source(server.getBasepath() + "hello.utf8.txt?charset=utf-8")
+                                                            .withCacheDir(Files.createTempDir())
+                                                            .withCoalescing(true);
+        
+        // schedulers are compared by identity
+        try (ReplicationScheduler scheduler1 = ReplicationScheduler.create();
+             ReplicationScheduler scheduler2 = ReplicationScheduler.create()) {
+            final ReplicationJob job1 = builder.withScheduler(scheduler1).startConsumingText(text -> { });
+            final ReplicationJob job2 = builder.withScheduler(scheduler2).startConsumingText(text -> { });
+            final ReplicationJob job3 = builder.withScheduler(scheduler1).startConsumingText(text -> { });
+            Assert.assertEquals(2, servlet.getNumFullResponses() + servlet.getNumNotModifiedResponses());
+            
+            job1.close();
+            job2.close();
+            job3.close();
+        }
+    }
+    
+    
+    @Test
+    public void testNewSubscriberIsNotifiedWithDeliveredData() throws Exception {
+        final File cacheDir = Files.createTempDir();
+        final ReplicationJobBuilder builder = ReplicationJob.source(server.getBasepath() + "hello.utf8.txt?charset=utf-8")
+                                                            .withCacheDir(cacheDir)
+                                                            .withRetainedVersions(2)
+                                                            .withCoalescing(true);
+        final ReplicationJob job1 = builder.startConsumingText(text -> { });
+        
+        // another process writes a newer cache file, which has not been consumed so far
+        Thread.sleep(5);
+        final FileCache fileCache = new FileCache(cacheDir, job1.getEndpoint().toString(), Duration.ofDays(1), false, Durability.NONE, 2);
+        fileCache.commit(fileCache.spool(new ByteArrayInputStream("other".getBytes(Charsets.UTF_8)), Optional.empty(), Validators.NONE));
+        
+        final AtomicReference<String> text2 = new AtomicReference<>();
+        final ReplicationJob job2 = builder.startConsumingText(text2::set);
+        Assert.assertEquals(job1.getFingerprint(), job2.getFingerprint());
+        Assert.assertNotEquals("other", text2.get());
+        
+        job1.close();
+        job2.close();
+    }
+    
+    
+    @Test
+    public void testConcurrentSubscribersShareInitialLoad() throws Exception {
+        final ReplicationJobBuilder builder = ReplicationJob.source(server.getBasepath() + "hello.utf8.txt?charset=utf-8")
+                                                            .withCacheDir(Files.createTempDir())
+                                                            .withCoalescing(true);
+        
+        final List<CompletableFuture<ReplicationJob>> jobs = Lists.newArrayList();
+        final List<AtomicReference<String>> texts = Lists.newArrayList();
+        for (int i = 0; i < 8; i++) {
+            final AtomicReference<String> text = new AtomicReference<>();
+            texts.add(text);
+            jobs.add(CompletableFuture.supplyAsync(() -> builder.startConsumingText(text::set)));
+        }
+        
+        for (CompletableFuture<ReplicationJob> job : jobs) {
+            job.get().close();
+        }
+        Assert.assertEquals(1, servlet.getNumFullResponses());
+        texts.forEach(text -> Assert.assertNotNull(text.get()));
+    }
+}
@@ -0,0 +1,202 @@
+/*
+ * Copyright 1&1 Internet AG, https://github.com/1and1/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.oneandone.neo.datareplicator;
+
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.ws.rs.client.Client;
+import javax.ws.rs.client.ClientBuilder;
+import javax.ws.rs.ext.ReaderInterceptor;
+
+import org.glassfish.jersey.client.filter.EncodingFilter;
+import org.glassfish.jersey.message.GZipEncoder;
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.ByteStreams;
+import com.google.common.io.Files;
+
+import net.oneandone.neo.datareplicator.utils.CompressingTestServlet;
+import net.oneandone.neo.datareplicator.utils.InMemoryConsumer;
+import net.oneandone.neo.datareplicator.utils.WebServer;
+
+
+public class CompressionTest {
+    
+    private static CompressingTestServlet servlet = new CompressingTestServlet();
+    private static WebServer server;
+    private static String json;
+
+    
+    @BeforeClass
+    public static void setUp() throws Exception {
+        final StringBuilder sb = new StringBuilder("[");
+        for (int i = 0; i < 1000; i++) {
+            sb.append((i == 0) ? "" : ",").append("{\"id\": " + i + ", \"name\": \"entry " + i + "\", \"greek\": \"Καλημέρα κόσμε\"}");
+        }
+        json = sb.append("]").toString();
+        servlet.setContent(json.getBytes(Charsets.UTF_8));
+        
+        server = WebServer.withServlet(servlet)
+                          .start();
+    }
+    
+    @AfterClass
+    public static void tearDown() throws Exception {
+        server.close();
+    }
+    
+    @Before
+    public void resetServlet() {
+        servlet.reset();
+    }
+    
+    
+    @Test
+    public void testGzipTransfer() throws Exception {
+        testTransfer(server.getBasepath() + "entries.json?encoding=gzip");
+    }
+
+    @Test
+    public void testDeflateTransfer() throws Exception {
+        testTransfer(server.getBasepath() + "entries.json?encoding=deflate");
+    }
+
+    @Test
+    public void testRawDeflateTransfer() throws Exception {
+        testTransfer(server.getBasepath() + "entries.json?encoding=rawdeflate");
+    }
+    
+    private void testTransfer(final String uri) throws Exception {
+        final InMemoryConsumer consumer = new InMemoryConsumer();
+        final ReplicationJob job = ReplicationJob.source(uri)
+                                                 .withCacheDir(Files.createTempDir())
+                                                 .withTransferCompression(true)
+                                                 .startConsumingText(consumer);
+        Assert.assertEquals(json, consumer.waitForText());
+        Assert.assertEquals(1, servlet.getNumCompressedResponses());
+        job.close();
+    }
+    
+    
+    @Test
+    public void testTransferCompressionDeactivatedByDefault() throws Exception {
+        final InMemoryConsumer consumer = new InMemoryConsumer();
+        final ReplicationJob job = ReplicationJob.source(server.getBasepath() + "entries.json")
+                                                 .withCacheDir(Files.createTempDir())
+                                                 .startConsumingText(consumer);
+        Assert.assertEquals(json, consumer.waitForText());
+        Assert.assertEquals(0, servlet.getNumCompressedResponses());
+        Assert.assertEquals(1, servlet.getNumUncompressedResponses());
+        job.close();
+    }
+    
+    
+    @Test
+    public void testClientHandlingContentEncoding() throws Exception {
+        // the client decodes the response by itself. The response must not be decoded twice 
+        final Client client = ClientBuilder.newClient()
+                                           .register(EncodingFilter.class)
+                                           .register(GZipEncoder.class);
+        for (boolean transferCompression : new boolean[] { false, true }) {
+            final InMemoryConsumer consumer = new InMemoryConsumer();
+            final ReplicationJob job = ReplicationJob.source(server.getBasepath() + "entries.json")
+                                                     .withCacheDir(Files.createTempDir())
+                                                     .withClient(client)
+                                                     .withTransferCompression(transferCompression)
+                                                     .startConsumingText(consumer);
+            Assert.assertEquals(json, consumer.waitForText());
+            job.close();
+        }
+        Assert.assertEquals(2, servlet.getNumCompressedResponses());
+        client.close();
+    }
+    
+    
+    @Test
+    public void testClientWithOtherInterceptor() throws Exception {
+        // the registered interceptor does not decode the response -> the response is decoded by the replicator 
+        final AtomicInteger numIntercepted = new AtomicInteger();
+        final Client client = ClientBuilder.newClient()
+                                           .register((ReaderInterceptor) context -> {
+                                               numIntercepted.incrementAndGet();
+                                               return context.proceed();
+                                           });
+        final InMemoryConsumer consumer = new InMemoryConsumer();
+        final ReplicationJob job = ReplicationJob.source(server.getBasepath() + "entries.json")
+                                                 .withCacheDir(Files.createTempDir())
+                                                 .withClient(client)
+                                                 .withTransferCompression(true)
+                                                 .startConsumingText(consumer);
+        Assert.assertEquals(json, consumer.waitForText());
+        Assert.assertEquals(1, servlet.getNumCompressedResponses());
+        Assert.assertTrue(numIntercepted.get() > 0);
+        job.close();
+        client.close();
+    }
+    
+    
+    @Test
+    public void testCacheCompression() throws Exception {
+        final File cacheDir = Files.createTempDir();
+        final String uri = server.getBasepath() + "entries.json";
+        
+        final InMemoryConsumer consumer = new InMemoryConsumer();
+        final ReplicationJob job = ReplicationJob.source(uri)
+                                                 .withCacheDir(cacheDir)
+                                                 .withCacheCompression(true)
+                                                 .startConsumingText(consumer);
+        Assert.assertEquals(json, consumer.waitForText());
+        Assert.assertEquals(job.getFingerprint().get(), 
+                            Data.FINGERPRINT_FUNCTION.hashBytes(json.getBytes(Charsets.UTF_8)).toString());
+        job.close();
+        
+        // cache file is compressed 
+        final File cacheFile = cacheDir.listFiles((dir, name) -> name.endsWith(".cache"))[0];
+        Assert.assertTrue(CacheFileFormat.isCompressed(cacheFile));
+        Assert.assertTrue(cacheFile.length() < (json.getBytes(Charsets.UTF_8).length / 4));
+        try (InputStream is = new FileInputStream(cacheFile)) {
+            Assert.assertEquals(0, is.read());   // header
+        }
+        
+        // and will be read decompressed 
+        final FileCache fileCache = new FileCache(cacheDir, uri, Duration.ofDays(1));
+        Assert.assertEquals(json, fileCache.load().asText());
+        try (InputStream is = fileCache.load().openStream()) {
+            Assert.assertArrayEquals(json.getBytes(Charsets.UTF_8), ByteStreams.toByteArray(is));
+        }
+        Assert.assertEquals(json.getBytes(Charsets.UTF_8).length, fileCache.load().getLength());
+    }
+    
+    
+    @Test(expected = IllegalStateException.class)
+    public void testCacheCompressionMapped() throws Exception {
+        ReplicationJob.source(server.getBasepath() + "entries.json")
+                      .withCacheDir(Files.createTempDir())
+                      .withCacheCompression(true)
+                      .startConsumingMapped(buffer -> { });
+    }
+}
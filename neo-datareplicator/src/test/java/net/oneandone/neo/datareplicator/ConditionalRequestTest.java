@@ -0,0 +1,110 @@
+/*
+ * Copyright 1&1 Internet AG, https://github.com/1and1/
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.oneandone.neo.datareplicator;
+
+
+
+
+
+import java.io.File;
+import java.time.Duration;
+
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.google.common.io.Files;
+
+import net.oneandone.neo.datareplicator.utils.ConditionalTestServlet;
+import net.oneandone.neo.datareplicator.utils.InMemoryConsumer;
+import net.oneandone.neo.datareplicator.utils.Utils;
+import net.oneandone.neo.datareplicator.utils.WebServer;
+
+
+public class ConditionalRequestTest {
+    
+    private static ConditionalTestServlet servlet = new ConditionalTestServlet();
+    private static WebServer server;
+
+    
+    @BeforeClass
+    public static void setUp() throws Exception {
+        server = WebServer.withServlet(servlet)
+                          .start();
+    }
+    
+    @AfterClass
+    public static void tearDown() throws Exception {
+        server.close();
+    }
+    
+    @Before
+    public void resetServlet() {
+        servlet.reset();
+    }
+    
+    
+    @Test
+    public void testEtag() throws Exception {
+        testRevalidation(server.getBasepath() + "hello.utf8.txt?charset=utf-8&validator=etag");
+    }
+
+    @Test
+    public void testLastModified() throws Exception {
+        testRevalidation(server.getBasepath() + "hello.utf8.txt?charset=utf-8&validator=lastmodified");
+    }
+    
+    @Test
+    public void testEtagAndLastModified() throws Exception {
+        testRevalidation(server.getBasepath() + "hello.utf8.txt?charset=utf-8");
+    }
+
+    
+    private void testRevalidation(final String uri) throws Exception {
+        File cacheDir = Files.createTempDir();
+        InMemoryConsumer testConsumer = new InMemoryConsumer();
+        
+        ReplicationJob job = ReplicationJob.source(uri)
+                                           .withCacheDir(cacheDir)
+                                           .withRefreshPeriod(Duration.ofMillis(100))
+                                           .startConsumingText(testConsumer);
+        Utils.assertMapEntryEquals(Utils.loadFileAsMap("hello.utf8.txt", "UTF-8"), Utils.toMap(testConsumer.waitForText()), "Greek");
+        
+        Thread.sleep(700);
+        job.close();
+        
+        // the resource has been downloaded once. All refreshes has been answered by a 304 
+        Assert.assertEquals(1, servlet.getNumFullResponses());
+        Assert.assertTrue(servlet.getNumNotModifiedResponses() >= 3);
+        
+        
+        
+        // restart job -> the validators of the cache file will be used 
+        servlet.reset();
+        testConsumer = new InMemoryConsumer();
+        job = ReplicationJob.source(uri)
+                            .withCacheDir(cacheDir)
+                            .withFailOnInitFailure(true)
+                            .startConsumingText(testConsumer);
+        Utils.assertMapEntryEquals(Utils.loadFileAsMap("hello.utf8.txt", "UTF-8"), Utils.toMap(testConsumer.waitForText()), "Greek");
+        job.close();
+
+        Assert.assertEquals(0, servlet.getNumFullResponses());
+        Assert.assertEquals(1, servlet.getNumNotModifiedResponses());
+    }
+}
@@ -0,0 +1,149 @@
+/*
+ * Copyright 1&1 Internet AG, https://github.com/1and1/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.oneandone.neo.datareplicator;
+
+
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.time.Duration;
+import java.util.Optional;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.Files;
+
+
+
+/**
+ * Simulates torn writes, which may occur if the data of a renamed cache file has not been written to disk
+ * before a power loss. The former cache files are kept by committing without clean up 
+ */
+public class CrashConsistencyTest {
+    
+    @Test
+    public void testZeroLengthCacheFile() throws Exception {
+        assertPreviousVersionIsLoaded(Durability.NONE, file -> truncate(file, 0));
+    }
+
+    @Test
+    public void testTruncatedCacheFile() throws Exception {
+        assertPreviousVersionIsLoaded(Durability.DATA, file -> truncate(file, file.length() / 2));
+    }
+
+    @Test
+    public void testCorruptCacheFile() throws Exception {
+        assertPreviousVersionIsLoaded(Durability.DATA_AND_DIR, file -> {
+            try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+                raf.seek(3);
+                raf.write('X');
+            }
+        });
+    }
+
+    @Test
+    public void testZeroLengthMetadataFile() throws Exception {
+        assertPreviousVersionIsLoaded(Durability.NONE, file -> truncate(new File(file.getParentFile(), file.getName().replace(".cache", ".meta")), 0));
+    }
+
+    @Test
+    public void testMissingMetadataFile() throws Exception {
+        // cache files without metadata are accepted, if written by a former version only  
+        assertPreviousVersionIsLoaded(Durability.NONE, file -> Assert.assertTrue(new File(file.getParentFile(), file.getName().replace(".cache", ".meta")).delete()));
+    }
+
+    @Test
+    public void testCompressedTruncatedCacheFile() throws Exception {
+        final File cacheDir = Files.createTempDir();
+        final FileCache fileCache = new FileCache(cacheDir, "test", Duration.ofDays(1), true, Durability.DATA, 1);
+        commit(fileCache, "version 1");
+        commit(fileCache, "version 2");
+        final File newest = fileCache.load().getFile();
+        truncate(newest, newest.length() - 4);  // drops the gzip trailer
+        
+        Assert.assertEquals("version 1", read(new FileCache(cacheDir, "test", Duration.ofDays(1), true, Durability.DATA, 1)));
+    }
+
+    @Test
+    public void testTouchedCacheFileIsNotVerifiedAgain() throws Exception {
+        final File cacheDir = Files.createTempDir();
+        final FileCache leaderCache = new FileCache(cacheDir, "test", Duration.ofDays(1), false, Durability.NONE, 1);
+        commit(leaderCache, "version 1");
+        final FileCache followerCache = new FileCache(cacheDir, "test", Duration.ofDays(1), false, Durability.NONE, 1);
+        Assert.assertEquals("version 1", read(followerCache));
+        
+        // the bytes are replaced by the same number of other bytes. Verifying the cache file again would detect this 
+        final File newest = leaderCache.load().getFile();
+        Files.write("VERSION 1".getBytes(Charsets.UTF_8), newest);
+        
+        // refreshing the age of the cache file (e.g. by the leader) does not make the follower verify it again
+        Thread.sleep(5);
+        leaderCache.touch();
+        Assert.assertEquals("VERSION 1", read(followerCache));
+        
+        // a new instance verifies it
+        Assert.assertFalse(new FileCache(cacheDir, "test", Duration.ofDays(1), false, Durability.NONE, 1).loadIfPresent().isPresent());
+    }
+
+    
+    
+    private static void assertPreviousVersionIsLoaded(final Durability durability, final Fault fault) throws Exception {
+        final File cacheDir = Files.createTempDir();
+        final FileCache fileCache = new FileCache(cacheDir, "test", Duration.ofDays(1), false, durability, 1);
+        commit(fileCache, "version 1 with some content");
+        commit(fileCache, "version 2 with some content");
+        Assert.assertEquals("version 2 with some content", read(fileCache));
+        
+        // simulate the crash and restart 
+        final File newest = fileCache.load().getFile();
+        fault.inject(newest);
+        final FileCache restartedFileCache = new FileCache(cacheDir, "test", Duration.ofDays(1), false, durability, 1);
+        Assert.assertEquals("version 1 with some content", read(restartedFileCache));
+        Assert.assertTrue(newest.exists());    // looking up does not remove the corrupt cache file 
+        restartedFileCache.cleanup();
+        Assert.assertFalse(newest.exists());   // but cleaning up
+        
+        // next update becomes the newest one
+        commit(restartedFileCache, "version 3 with some content");
+        Assert.assertEquals("version 3 with some content", read(new FileCache(cacheDir, "test", Duration.ofDays(1), false, durability, 1)));
+    }
+    
+    private static void commit(final FileCache fileCache, final String content) throws Exception {
+        Thread.sleep(5);  // cache file names are based on timestamps 
+        fileCache.commit(fileCache.spool(new ByteArrayInputStream(content.getBytes(Charsets.UTF_8)), Optional.empty(), Validators.NONE), false);
+    }
+    
+    private static String read(final FileCache fileCache) {
+        return new String(fileCache.load().asBinary(), Charsets.UTF_8);
+    }
+    
+    private static void truncate(final File file, final long length) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.setLength(length);
+        }
+    }
+    
+    
+    @FunctionalInterface
+    private static interface Fault {
+        void inject(File cacheFile) throws IOException;
+    }
+}
@@ -86,7 +86,9 @@ public class ExpiredFilesCleanupTest {
         job.close();
 
         
-        // check that cache dir contains one cache file only
-        Assert.assertEquals(1, cacheDir.listFiles().length);
+        // check that cache dir contains one cache file (and its metadata file) only
+        Assert.assertEquals(1, cacheDir.listFiles((dir, name) -> name.endsWith(".cache")).length);
+        Assert.assertEquals(1, cacheDir.listFiles((dir, name) -> name.endsWith(".meta")).length);
+        Assert.assertEquals(0, cacheDir.listFiles((dir, name) -> name.endsWith(".temp")).length);
     }
 }
\ No newline at end of file
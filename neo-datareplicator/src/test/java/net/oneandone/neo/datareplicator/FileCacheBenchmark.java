@@ -0,0 +1,122 @@
+/*
+ * Copyright 1&1 Internet AG, https://github.com/1and1/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.oneandone.neo.datareplicator;
+
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.time.Duration;
+import java.util.Base64;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.Files;
+
+
+
+/**
+ * Compares the lookup of the newest cache file by using the index with the former lookup, which scans the
+ * complete cache dir. The cache dir contains the cache files of the given number of entries. The clean up
+ * performed by each commit lists the cache dir once 
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class FileCacheBenchmark {
+    
+    @Param({ "10", "10000" })
+    public int entries;
+    
+    private File cacheDir;
+    private FileCache fileCache;
+    private String prefix;
+    
+    
+    @Setup
+    public void setUp() throws Exception {
+        cacheDir = Files.createTempDir();
+        for (int i = 0; i < entries; i++) {
+            final String name = Base64.getEncoder().encodeToString(("http://example.org/resource" + i).getBytes(Charsets.UTF_8)) + "_";
+            Files.write(("data" + i).getBytes(Charsets.UTF_8), new File(cacheDir, name + System.currentTimeMillis() + ".cache"));
+            Files.write("etag=\"1\"".getBytes(Charsets.UTF_8), new File(cacheDir, name + System.currentTimeMillis() + ".meta"));
+        }
+        
+        fileCache = new FileCache(cacheDir, "http://example.org/resource", Duration.ofDays(1));
+        fileCache.commit(fileCache.spool(new ByteArrayInputStream("data".getBytes(Charsets.UTF_8)), Optional.empty(), Validators.of("\"1\"", null)));
+        prefix = Base64.getEncoder().encodeToString("http://example.org/resource".getBytes(Charsets.UTF_8)) + "_";
+    }
+    
+    @TearDown
+    public void tearDown() throws Exception {
+        for (File file : cacheDir.listFiles()) {
+            file.delete();
+        }
+        cacheDir.delete();
+    }
+    
+    
+    @Benchmark
+    public Object getValidators() {
+        return fileCache.getValidators();
+    }
+
+    @Benchmark
+    public void cleanup() {
+        fileCache.cleanup();
+    }
+
+    @Benchmark
+    public Object formerScan() {
+        long newestTimestamp = 0;
+        File newestCacheFile = null;
+        for (File file : cacheDir.listFiles()) {
+            final String fileName = file.getName();
+            if (fileName.endsWith(".cache") && fileName.startsWith(prefix)) {
+                final long timestamp = Long.parseLong(fileName.substring(prefix.length(), fileName.length() - ".cache".length()));
+                if (timestamp > newestTimestamp) {
+                    newestTimestamp = timestamp;
+                    newestCacheFile = file;
+                }
+            }
+        }
+        return newestCacheFile;
+    }
+    
+    
+    public static void main(final String[] args) throws Exception {
+        new Runner(new OptionsBuilder().include(FileCacheBenchmark.class.getSimpleName()).build()).run();
+    }
+}
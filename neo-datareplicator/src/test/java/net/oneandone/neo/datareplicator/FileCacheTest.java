@@ -0,0 +1,124 @@
+/*
+ * Copyright 1&1 Internet AG, https://github.com/1and1/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.oneandone.neo.datareplicator;
+
+
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.time.Duration;
+import java.util.Base64;
+import java.util.Optional;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.Files;
+
+
+
+public class FileCacheTest {
+    
+    @Test
+    public void testNewestCacheFileIsIndexed() throws Exception {
+        final File cacheDir = Files.createTempDir();
+
+        final FileCache fileCache = new FileCache(cacheDir, "test", Duration.ofDays(1));
+        fileCache.commit(fileCache.spool(new ByteArrayInputStream("first".getBytes(Charsets.UTF_8)), Optional.empty(), Validators.of("\"1\"", null)));
+        Thread.sleep(5);
+        fileCache.commit(fileCache.spool(new ByteArrayInputStream("second".getBytes(Charsets.UTF_8)), Optional.empty(), Validators.of("\"2\"", null)));
+        
+        Assert.assertEquals("second", new String(fileCache.load().asBinary(), Charsets.UTF_8));
+        Assert.assertEquals(Optional.of("\"2\""), fileCache.getValidators().getEtag());
+        
+        // a new instance uses the index as well
+        Assert.assertEquals("second", new String(new FileCache(cacheDir, "test", Duration.ofDays(1)).load().asBinary(), Charsets.UTF_8));
+    }
+
+
+    @Test
+    public void testMissingOrStaleIndexFallsBackToScan() throws Exception {
+        final File cacheDir = Files.createTempDir();
+        final String prefix = Base64.getEncoder().encodeToString("test".getBytes(Charsets.UTF_8)) + "_";
+        
+        // cache written by a former version without index
+        Files.write("former".getBytes(Charsets.UTF_8), new File(cacheDir, prefix + System.currentTimeMillis() + ".cache"));
+        final FileCache fileCache = new FileCache(cacheDir, "test", Duration.ofDays(1));
+        Assert.assertEquals("former", new String(fileCache.load().asBinary(), Charsets.UTF_8));
+        Assert.assertTrue(new File(cacheDir, prefix + "newest.index").exists());
+        
+        // index refers a removed cache file
+        Thread.sleep(5);
+        fileCache.commit(fileCache.spool(new ByteArrayInputStream("current".getBytes(Charsets.UTF_8)), Optional.empty(), Validators.NONE), false);
+        final File newest = fileCache.load().getFile();
+        Thread.sleep(5);
+        Files.write("newer".getBytes(Charsets.UTF_8), new File(cacheDir, prefix + System.currentTimeMillis() + ".cache"));
+        Assert.assertTrue(newest.delete());
+        Assert.assertTrue(new File(cacheDir, newest.getName().replace(".cache", ".meta")).delete());
+        Assert.assertEquals("newer", new String(fileCache.load().asBinary(), Charsets.UTF_8));
+        
+        // corrupt index
+        Files.write("../../etc/passwd".getBytes(Charsets.UTF_8), new File(cacheDir, prefix + "newest.index"));
+        Assert.assertEquals("newer", new String(fileCache.load().asBinary(), Charsets.UTF_8));
+    }
+    
+    
+    @Test
+    public void testIndexIsNeverReplacedByOlderCacheFile() throws Exception {
+        final File cacheDir = Files.createTempDir();
+        final String prefix = Base64.getEncoder().encodeToString("test".getBytes(Charsets.UTF_8)) + "_";
+        
+        // a concurrent process (e.g. with a clock running ahead) has committed a newer cache file 
+        final FileCache otherFileCache = new FileCache(cacheDir, "test", Duration.ofDays(1));
+        otherFileCache.commit(otherFileCache.spool(new ByteArrayInputStream("newer".getBytes(Charsets.UTF_8)), Optional.empty(), Validators.NONE));
+        final File newer = new File(cacheDir, prefix + (System.currentTimeMillis() + 60 * 1000) + ".cache");
+        final File committed = otherFileCache.load().getFile();
+        Assert.assertTrue(new File(cacheDir, committed.getName().replace(".cache", ".meta")).renameTo(new File(cacheDir, newer.getName().replace(".cache", ".meta"))));
+        Assert.assertTrue(committed.renameTo(newer));
+        Files.write(newer.getName().getBytes(Charsets.UTF_8), otherFileCache.getIndexFile());
+        
+        // committing an older cache file does not move the index back 
+        final FileCache fileCache = new FileCache(cacheDir, "test", Duration.ofDays(1));
+        fileCache.commit(fileCache.spool(new ByteArrayInputStream("older".getBytes(Charsets.UTF_8)), Optional.empty(), Validators.NONE), false);
+        Assert.assertEquals(newer.getName(), new String(java.nio.file.Files.readAllBytes(fileCache.getIndexFile().toPath()), Charsets.UTF_8));
+        Assert.assertEquals("newer", new String(fileCache.load().asBinary(), Charsets.UTF_8));
+        
+        // unless the indexed cache file has been removed
+        Assert.assertTrue(newer.delete());
+        Assert.assertEquals("older", new String(fileCache.load().asBinary(), Charsets.UTF_8));
+    }
+    
+    
+    @Test
+    public void testNameEncodedWithPathSeparator() throws Exception {
+        final File cacheDir = Files.createTempDir();
+        final String name = "http://example.org/data?v=1";   // the base64 encoding contains a '/'
+        Assert.assertTrue(Base64.getEncoder().encodeToString(name.getBytes(Charsets.UTF_8)).contains("/"));
+        
+        final FileCache fileCache = new FileCache(cacheDir, name, Duration.ofDays(1));
+        fileCache.commit(fileCache.spool(new ByteArrayInputStream("first".getBytes(Charsets.UTF_8)), Optional.empty(), Validators.NONE));
+        Thread.sleep(5);
+        fileCache.commit(fileCache.spool(new ByteArrayInputStream("second".getBytes(Charsets.UTF_8)), Optional.empty(), Validators.NONE));
+        Assert.assertEquals("second", new String(new FileCache(cacheDir, name, Duration.ofDays(1)).load().asBinary(), Charsets.UTF_8));
+        
+        // the cache entry is written into the cache dir. Former cache files and their metadata files are removed 
+        Assert.assertEquals(0, cacheDir.listFiles(File::isDirectory).length);
+        Assert.assertEquals(1, cacheDir.listFiles((dir, fileName) -> fileName.endsWith(".cache")).length);
+        Assert.assertEquals(1, cacheDir.listFiles((dir, fileName) -> fileName.endsWith(".meta")).length);
+    }
+}
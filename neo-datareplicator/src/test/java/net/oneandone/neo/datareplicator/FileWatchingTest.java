@@ -0,0 +1,81 @@
+/*
+ * Copyright 1&1 Internet AG, https://github.com/1and1/
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.oneandone.neo.datareplicator;
+
+
+
+
+
+import java.io.File;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.Files;
+
+
+public class FileWatchingTest {
+    
+    @Test
+    public void testModification() throws Exception {
+        File sourceDir = Files.createTempDir();
+        File sourceFile = new File(sourceDir, "source.txt");
+        Files.write("version 1", sourceFile, Charsets.UTF_8);
+        
+        AtomicReference<String> textRef = new AtomicReference<>();
+        ReplicationJob job = ReplicationJob.source(sourceFile.toURI())
+                                           .withCacheDir(Files.createTempDir())
+                                           .withRefreshPeriod(Duration.ofHours(1))
+                                           .withFileWatching(true)
+                                           .startConsumingText(textRef::set);
+        Assert.assertEquals("version 1", textRef.get());
+        
+        
+        // modify file
+        Files.write("version 2", sourceFile, Charsets.UTF_8);
+        waitFor(textRef, "version 2");
+        
+        
+        // replace file by renaming (editor-like)
+        File tempFile = new File(sourceDir, "source.txt.swp");
+        Files.write("version 3", tempFile, Charsets.UTF_8);
+        java.nio.file.Files.move(tempFile.toPath(), sourceFile.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        waitFor(textRef, "version 3");
+
+        
+        // modifications will not be detected after closing 
+        job.close();
+        Files.write("version 4", sourceFile, Charsets.UTF_8);
+        Thread.sleep(1000);
+        Assert.assertEquals("version 3", textRef.get());
+    }
+    
+    
+    private static void waitFor(final AtomicReference<String> textRef, final String expected) throws InterruptedException {
+        // on platforms without native file watching support, the watch service polls periodically (every ~10 sec)
+        for (int i = 0; i < 150; i++) {
+            if (expected.equals(textRef.get())) {
+                return;
+            }
+            Thread.sleep(100);
+        }
+        Assert.assertEquals(expected, textRef.get());
+    }
+}
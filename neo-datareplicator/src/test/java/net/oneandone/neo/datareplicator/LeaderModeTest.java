@@ -0,0 +1,136 @@
+/*
+ * Copyright 1&1 Internet AG, https://github.com/1and1/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.oneandone.neo.datareplicator;
+
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.time.Duration;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.Files;
+
+import net.oneandone.neo.datareplicator.utils.ConditionalTestServlet;
+import net.oneandone.neo.datareplicator.utils.WebServer;
+
+
+
+public class LeaderModeTest {
+    
+    private static ConditionalTestServlet servlet = new ConditionalTestServlet();
+    private static WebServer server;
+
+    
+    @BeforeClass
+    public static void setUp() throws Exception {
+        server = WebServer.withServlet(servlet)
+                          .start();
+    }
+    
+    @AfterClass
+    public static void tearDown() throws Exception {
+        server.close();
+    }
+    
+    
+    @Test
+    public void testFollowerDoesNotFetch() throws Exception {
+        final File cacheDir = Files.createTempDir();
+        final String uri = server.getBasepath() + "hello.utf8.txt?charset=utf-8";
+        servlet.reset();
+        
+        final AtomicReference<String> leaderText = new AtomicReference<>();
+        final ReplicationJob leader = ReplicationJob.source(uri)
+                                                    .withCacheDir(cacheDir)
+                                                    .withRefreshPeriod(Duration.ofDays(1))
+                                                    .withLeaderMode(true)
+                                                    .startConsumingText(leaderText::set);
+        
+        final AtomicReference<String> followerText = new AtomicReference<>();
+        final ReplicationJob follower = ReplicationJob.source(uri)
+                                                      .withCacheDir(cacheDir)
+                                                      .withRefreshPeriod(Duration.ofDays(1))
+                                                      .withLeaderMode(true)
+                                                      .startConsumingText(followerText::set);
+        Assert.assertEquals(leaderText.get(), followerText.get());
+        Assert.assertEquals(1, servlet.getNumFullResponses());
+        
+        follower.refreshAsync().get();
+        Assert.assertEquals(1, servlet.getNumFullResponses() + servlet.getNumNotModifiedResponses());
+        
+        leader.refreshAsync().get();
+        Assert.assertEquals(2, servlet.getNumFullResponses() + servlet.getNumNotModifiedResponses());
+        
+        
+        // leader terminates -> follower takes over 
+        leader.close();
+        follower.refreshAsync().get();
+        Assert.assertEquals(3, servlet.getNumFullResponses() + servlet.getNumNotModifiedResponses());
+        
+        follower.close();
+    }
+    
+
+    @Test
+    public void testFollowerConsumesCacheFilesOfLeader() throws Exception {
+        final File cacheDir = Files.createTempDir();
+        final File file = new File(Files.createTempDir(), "table.csv");   // does not exist so far 
+        
+        // simulates the leader process
+        final FileCache leaderCache = new FileCache(cacheDir, file.toURI().toString(), Duration.ofDays(1));
+        final LeaderLock leaderLock = leaderCache.newLeaderLock();
+        Assert.assertTrue(leaderLock.tryAcquire());
+        commit(leaderCache, "1,one");
+        
+        final AtomicReference<String> text = new AtomicReference<>();
+        final ReplicationJob follower = ReplicationJob.source(file.toURI())
+                                                      .withCacheDir(cacheDir)
+                                                      .withRefreshPeriod(Duration.ofDays(1))
+                                                      .withLeaderMode(true)
+                                                      .startConsumingText(text::set);
+        Assert.assertEquals("1,one", text.get());
+        
+        // new cache file of the leader will be consumed immediately 
+        Thread.sleep(5);
+        commit(leaderCache, "1,one\n2,two");
+        for (int i = 0; (i < 100) && !"1,one\n2,two".equals(text.get()); i++) {
+            Thread.sleep(100);
+        }
+        Assert.assertEquals("1,one\n2,two", text.get());
+        
+        
+        // leader dies -> follower takes over and fetches the resource by itself 
+        leaderLock.close();
+        Files.write("1,one\n2,two\n3,three", file, Charsets.UTF_8);
+        follower.refreshAsync().get();
+        Assert.assertEquals("1,one\n2,two\n3,three", text.get());
+        
+        follower.close();
+    }
+    
+    
+    private static void commit(final FileCache fileCache, final String content) throws Exception {
+        fileCache.commit(fileCache.spool(new ByteArrayInputStream(content.getBytes(Charsets.UTF_8)), Optional.empty(), Validators.NONE));
+    }
+}
@@ -0,0 +1,84 @@
+/*
+ * Copyright 1&1 Internet AG, https://github.com/1and1/
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.oneandone.neo.datareplicator;
+
+
+
+
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.Files;
+
+import net.oneandone.neo.datareplicator.utils.InMemoryConsumer;
+
+
+public class MappedConsumerTest {
+    
+    @Test
+    public void testMappedFileIsNotRemovedWhileInUse() throws Exception {
+        File cacheDir = Files.createTempDir();
+        File sourceFile = new File(Files.createTempDir(), "source.txt");
+        Files.write("version 1", sourceFile, Charsets.UTF_8);
+        
+        
+        // mapping job which does not refresh
+        AtomicReference<ByteBuffer> bufferRef = new AtomicReference<>();
+        ReplicationJob mappingJob = ReplicationJob.source(sourceFile.toURI())
+                                                  .withCacheDir(cacheDir)
+                                                  .withRefreshPeriod(Duration.ofHours(1))
+                                                  .startConsumingMapped(bufferRef::set);
+        Assert.assertEquals("version 1", toString(bufferRef.get()));
+        Assert.assertTrue(bufferRef.get().isReadOnly());
+        
+        
+        // modify source, which will be replicated by a second job sharing the cache dir 
+        Files.write("version 2", sourceFile, Charsets.UTF_8);
+        InMemoryConsumer testConsumer = new InMemoryConsumer();
+        ReplicationJob job = ReplicationJob.source(sourceFile.toURI())
+                                           .withCacheDir(cacheDir)
+                                           .withRefreshPeriod(Duration.ofMillis(100))
+                                           .startConsumingText(testConsumer);
+        Assert.assertEquals("version 2", testConsumer.waitForText());
+        
+        // the mapped cache file of version 1 is still in use -> not removed 
+        Assert.assertEquals(2, cacheDir.listFiles((dir, name) -> name.endsWith(".cache")).length);
+        Assert.assertEquals("version 1", toString(bufferRef.get()));
+        
+        
+        // release mapped file and modify source again 
+        mappingJob.close();
+        Files.write("version 3", sourceFile, Charsets.UTF_8);
+        Thread.sleep(400);
+        job.close();
+
+        Assert.assertEquals(1, cacheDir.listFiles((dir, name) -> name.endsWith(".cache")).length);
+    }
+    
+    
+    private static String toString(final ByteBuffer buffer) {
+        final byte[] bytes = new byte[buffer.remaining()];
+        buffer.duplicate().get(bytes);
+        return new String(bytes, Charsets.UTF_8);
+    }
+}
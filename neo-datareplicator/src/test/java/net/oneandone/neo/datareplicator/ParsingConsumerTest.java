@@ -0,0 +1,270 @@
+/*
+ * Copyright 1&1 Internet AG, https://github.com/1and1/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package net.oneandone.neo.datareplicator;
+
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.time.Duration;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.ImmutableList;
+import com.google.common.io.CharStreams;
+import com.google.common.io.Files;
+
+
+
+public class ParsingConsumerTest {
+    
+    @Test
+    public void testSnapshotOnRestart() throws Exception {
+        final File cacheDir = Files.createTempDir();
+        final File file = new File(Files.createTempDir(), "table.csv");
+        Files.write("1,one\n2,two\n3,three", file, Charsets.UTF_8);
+        
+        final CountingParser parser = new CountingParser();
+        final AtomicReference<ImmutableList<String>> rows = new AtomicReference<>();
+        
+        ReplicationJob.source(file.toURI())
+                      .withCacheDir(cacheDir)
+                      .startConsuming(parser, LinesCodec.INSTANCE, rows::set)
+                      .close();
+        Assert.assertEquals(ImmutableList.of("1,one", "2,two", "3,three"), rows.get());
+        Assert.assertEquals(1, parser.getNumCalls());
+        Assert.assertEquals(1, getSnapshotFiles(cacheDir).length);
+        
+        
+        // restart -> the snapshot will be used instead of parsing the data  
+        rows.set(null);
+        ReplicationJob.source(file.toURI())
+                      .withCacheDir(cacheDir)
+                      .startConsuming(parser, LinesCodec.INSTANCE, rows::set)
+                      .close();
+        Assert.assertEquals(ImmutableList.of("1,one", "2,two", "3,three"), rows.get());
+        Assert.assertEquals(1, parser.getNumCalls());
+        
+        
+        // modified data -> will be parsed. The snapshot of the former version will be removed with its cache file 
+        Files.write("1,one\n2,two\n3,three\n4,four", file, Charsets.UTF_8);
+        ReplicationJob.source(file.toURI())
+                      .withCacheDir(cacheDir)
+                      .startConsuming(parser, LinesCodec.INSTANCE, rows::set)
+                      .close();
+        Assert.assertEquals(ImmutableList.of("1,one", "2,two", "3,three", "4,four"), rows.get());
+        Assert.assertEquals(2, parser.getNumCalls());
+        Assert.assertEquals(1, getSnapshotFiles(cacheDir).length);
+    }
+    
+    
+    @Test
+    public void testBrokenSnapshot() throws Exception {
+        final File cacheDir = Files.createTempDir();
+        final File file = new File(Files.createTempDir(), "table.csv");
+        Files.write("1,one\n2,two", file, Charsets.UTF_8);
+        
+        final CountingParser parser = new CountingParser();
+        final AtomicReference<ImmutableList<String>> rows = new AtomicReference<>();
+        
+        ReplicationJob.source(file.toURI())
+                      .withCacheDir(cacheDir)
+                      .startConsuming(parser, LinesCodec.INSTANCE, rows::set)
+                      .close();
+        Files.write("broken", getSnapshotFiles(cacheDir)[0], Charsets.UTF_8);
+        
+        // broken snapshot -> the data will be parsed
+        rows.set(null);
+        ReplicationJob.source(file.toURI())
+                      .withCacheDir(cacheDir)
+                      .startConsuming(parser, LinesCodec.INSTANCE, rows::set)
+                      .close();
+        Assert.assertEquals(ImmutableList.of("1,one", "2,two"), rows.get());
+        Assert.assertEquals(2, parser.getNumCalls());
+    }
+    
+    
+    @Test
+    public void testSnapshotsOfRetainedVersionsAreKept() throws Exception {
+        final File cacheDir = Files.createTempDir();
+        final File file = new File(Files.createTempDir(), "table.csv");
+        final CountingParser parser = new CountingParser();
+        final AtomicReference<ImmutableList<String>> rows = new AtomicReference<>();
+        
+        for (String content : ImmutableList.of("1,one", "1,one\n2,two", "1,one\n2,two\n3,three")) {
+            Files.write(content, file, Charsets.UTF_8);
+            ReplicationJob.source(file.toURI())
+                          .withCacheDir(cacheDir)
+                          .withRetainedVersions(2)
+                          .startConsuming(parser, LinesCodec.INSTANCE, rows::set)
+                          .close();
+        }
+        Assert.assertEquals(2, getSnapshotFiles(cacheDir).length);
+    }
+    
+    
+    @Test
+    public void testSnapshotsAreKeyedByCodec() throws Exception {
+        final File cacheDir = Files.createTempDir();
+        final File file = new File(Files.createTempDir(), "table.csv");
+        Files.write("1,one\n2,two", file, Charsets.UTF_8);
+        
+        // no codec -> no snapshot 
+        final CountingParser parser = new CountingParser();
+        ReplicationJob.source(file.toURI())
+                      .withCacheDir(cacheDir)
+                      .startConsuming(parser, rows -> { })
+                      .close();
+        Assert.assertEquals(0, getSnapshotFiles(cacheDir).length);
+        
+        ReplicationJob.source(file.toURI())
+                      .withCacheDir(cacheDir)
+                      .startConsuming(parser, LinesCodec.INSTANCE, rows -> { })
+                      .close();
+        Assert.assertEquals(1, getSnapshotFiles(cacheDir).length);
+        
+        // the snapshot of another codec will not be read
+        final AtomicReference<Integer> numRows = new AtomicReference<>();
+        ReplicationJob.source(file.toURI())
+                      .withCacheDir(cacheDir)
+                      .startConsuming(is -> parser.apply(is).size(), new CountCodec(), numRows::set)
+                      .close();
+        Assert.assertEquals(Integer.valueOf(2), numRows.get());
+        Assert.assertEquals(3, parser.getNumCalls());
+        Assert.assertEquals(2, getSnapshotFiles(cacheDir).length);
+    }
+    
+    
+    @Test
+    public void testRejectedValueIsNotParsedAgain() throws Exception {
+        final File file = new File(Files.createTempDir(), "table.csv");
+        Files.write("1,one\n2,two", file, Charsets.UTF_8);
+        
+        final CountingParser parser = new CountingParser();
+        final AtomicInteger numConsumerCalls = new AtomicInteger();
+        
+        final ReplicationJob job = ReplicationJob.source(file.toURI())
+                                                 .withCacheDir(Files.createTempDir())
+                                                 .withRefreshPeriod(Duration.ofDays(1))
+                                                 .startConsuming(parser, (ImmutableList<String> rows) -> { 
+                                                     if (numConsumerCalls.incrementAndGet() == 2) {
+                                                         throw new IllegalStateException("rejected");
+                                                     }
+                                                 });
+        final String fingerprint = job.getFingerprint().get();
+        
+        // the consumer rejects the modified data 
+        Files.write("1,one\n2,two\n3,three", file, Charsets.UTF_8);
+        try {
+            job.refreshAsync().get();
+            Assert.fail("ExecutionException expected");
+        } catch (final ExecutionException expected) { }
+        Assert.assertEquals(fingerprint, job.getFingerprint().get());
+        Assert.assertEquals(2, parser.getNumCalls());
+        
+        // the same data will be accepted by the next refresh without parsing it again
+        job.refreshAsync().get();
+        Assert.assertNotEquals(fingerprint, job.getFingerprint().get());
+        Assert.assertEquals(3, numConsumerCalls.get());
+        Assert.assertEquals(2, parser.getNumCalls());
+        job.close();
+    }
+    
+    
+    private static File[] getSnapshotFiles(final File cacheDir) {
+        return cacheDir.listFiles((dir, name) -> name.endsWith(".snapshot"));
+    }
+    
+    
+    
+    private static final class LinesCodec implements SnapshotCodec<ImmutableList<String>> {
+        static final LinesCodec INSTANCE = new LinesCodec();
+        
+        @Override
+        public String getId() {
+            return "lines-v1";
+        }
+        
+        @Override
+        public void write(final ImmutableList<String> value, final OutputStream os) throws IOException {
+            final DataOutputStream dos = new DataOutputStream(os);
+            dos.writeInt(value.size());
+            for (String line : value) {
+                dos.writeUTF(line);
+            }
+            dos.flush();
+        }
+        
+        @Override
+        public ImmutableList<String> read(final InputStream is) throws IOException {
+            final DataInputStream dis = new DataInputStream(is);
+            final ImmutableList.Builder<String> lines = ImmutableList.builder();
+            for (int i = dis.readInt(); i > 0; i--) {
+                lines.add(dis.readUTF());
+            }
+            return lines.build();
+        }
+    }
+    
+    
+    private static final class CountCodec implements SnapshotCodec<Integer> {
+        
+        @Override
+        public String getId() {
+            return "count-v1";
+        }
+        
+        @Override
+        public void write(final Integer value, final OutputStream os) throws IOException {
+            new DataOutputStream(os).writeInt(value);
+        }
+        
+        @Override
+        public Integer read(final InputStream is) throws IOException {
+            return new DataInputStream(is).readInt();
+        }
+    }
+    
+    
+    private static final class CountingParser implements java.util.function.Function<InputStream, ImmutableList<String>> {
+        private final AtomicInteger numCalls = new AtomicInteger();
+        
+        @Override
+        public ImmutableList<String> apply(final InputStream is) {
+            numCalls.incrementAndGet();
+            try {
+                return ImmutableList.copyOf(CharStreams.readLines(new InputStreamReader(is, Charsets.UTF_8)));
+            } catch (final IOException ioe) {
+                throw new RuntimeException(ioe);
+            }
+        }
+        
+        public int getNumCalls() {
+            return numCalls.get();
+        }
+    }
+}
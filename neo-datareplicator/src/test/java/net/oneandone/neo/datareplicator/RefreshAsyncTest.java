@@ -0,0 +1,154 @@
+/*
+ * Copyright 1&1 Internet AG, https://github.com/1and1/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.oneandone.neo.datareplicator;
+
+
+import java.io.File;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.Files;
+
+import net.oneandone.neo.datareplicator.utils.AppendableTestServlet;
+import net.oneandone.neo.datareplicator.utils.InMemoryConsumer;
+import net.oneandone.neo.datareplicator.utils.WebServer;
+
+
+public class RefreshAsyncTest {
+    
+    private static AppendableTestServlet servlet = new AppendableTestServlet();
+    private static WebServer server;
+
+    
+    @BeforeClass
+    public static void setUp() throws Exception {
+        server = WebServer.withServlet(servlet)
+                          .start();
+    }
+    
+    @AfterClass
+    public static void tearDown() throws Exception {
+        server.close();
+    }
+    
+    @Before
+    public void resetServlet() {
+        servlet.reset();
+        servlet.setContent("first".getBytes(Charsets.UTF_8));
+    }
+    
+    
+    @Test
+    public void testRefreshAsync() throws Exception {
+        testRefreshAsync(false);
+    }
+    
+    @Test
+    public void testRefreshAsyncNonBlockingFetch() throws Exception {
+        testRefreshAsync(true);
+    }
+    
+    private void testRefreshAsync(final boolean nonBlockingFetch) throws Exception {
+        final InMemoryConsumer consumer = new InMemoryConsumer();
+        final ReplicationJob job = ReplicationJob.source(server.getBasepath() + "res.txt")
+                                                 .withCacheDir(Files.createTempDir())
+                                                 .withRefreshPeriod(Duration.ofHours(1))
+                                                 .withNonBlockingFetch(nonBlockingFetch)
+                                                 .startConsumingText(consumer);
+        Assert.assertEquals("first", consumer.waitForText());
+        
+        servlet.setContent("second".getBytes(Charsets.UTF_8));
+        job.refreshAsync().get(3, TimeUnit.SECONDS);
+        Assert.assertEquals("second", consumer.waitForText());
+        
+        // unchanged
+        job.refreshAsync().get(3, TimeUnit.SECONDS);
+        Assert.assertEquals(1, servlet.getNumNotModifiedResponses());
+        
+        job.close();
+    }
+    
+    
+    @Test
+    public void testRefreshAsyncFailed() throws Exception {
+        final File file = new File(Files.createTempDir(), "res.txt");
+        Files.write("first", file, Charsets.UTF_8);
+        
+        final ReplicationJob job = ReplicationJob.source(file.toURI())
+                                                 .withCacheDir(Files.createTempDir())
+                                                 .withRefreshPeriod(Duration.ofHours(1))
+                                                 .startConsumingText(new InMemoryConsumer());
+        file.delete();
+        
+        try {
+            job.refreshAsync().get(3, TimeUnit.SECONDS);
+            Assert.fail("ExecutionException expected");
+        } catch (ExecutionException expected) { 
+            Assert.assertTrue(job.getExpiredTimeSinceRefreshError().isPresent());
+        }
+        
+        job.close();
+    }
+    
+    
+    @Test
+    public void testRefreshAsyncClosed() throws Exception {
+        final ReplicationJob job = ReplicationJob.source(server.getBasepath() + "res.txt")
+                                                 .withCacheDir(Files.createTempDir())
+                                                 .startConsumingText(new InMemoryConsumer());
+        job.close();
+        
+        Assert.assertTrue(job.refreshAsync().isCancelled());
+    }
+    
+    
+    @Test
+    public void testNonBlockingFetchReleasesWorker() throws Exception {
+        try (ReplicationScheduler scheduler = ReplicationScheduler.create(1, 2, 0)) {   // single worker only
+            
+            final ReplicationJob job1 = ReplicationJob.source(server.getBasepath() + "res1.txt?delay=700")
+                                                      .withCacheDir(Files.createTempDir())
+                                                      .withRefreshPeriod(Duration.ofHours(1))
+                                                      .withScheduler(scheduler)
+                                                      .withNonBlockingFetch(true)
+                                                      .startConsumingText(new InMemoryConsumer());
+            final ReplicationJob job2 = ReplicationJob.source(server.getBasepath() + "res2.txt?delay=700")
+                                                      .withCacheDir(Files.createTempDir())
+                                                      .withRefreshPeriod(Duration.ofHours(1))
+                                                      .withScheduler(scheduler)
+                                                      .withNonBlockingFetch(true)
+                                                      .startConsumingText(new InMemoryConsumer());
+            
+            // the worker is not blocked while the requests are in flight -> refreshes are performed in parallel
+            final long start = System.currentTimeMillis();
+            CompletableFuture.allOf(job1.refreshAsync(), job2.refreshAsync()).get(5, TimeUnit.SECONDS);
+            Assert.assertTrue((System.currentTimeMillis() - start) < 1300);
+            
+            job1.close();
+            job2.close();
+        }
+    }
+}
@@ -0,0 +1,110 @@
+/*
+ * Copyright 1&1 Internet AG, https://github.com/1and1/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.oneandone.neo.datareplicator;
+
+
+import java.net.URI;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.Files;
+
+import net.oneandone.neo.datareplicator.utils.CompressingTestServlet;
+import net.oneandone.neo.datareplicator.utils.WebServer;
+
+
+
+/**
+ * Measures the latency of a full refresh (fetching a large JSON resource and committing it into the cache) 
+ * with and without transfer compression and cache compression. The server runs on the loopback interface,
+ * which means the network time saved by the transfer compression is underestimated  
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class RefreshCompressionBenchmark {
+    
+    @Param({ "false", "true" })
+    public boolean transferCompression;
+
+    @Param({ "false", "true" })
+    public boolean cacheCompression;
+    
+    private WebServer server;
+    private FileCache fileCache;
+    private HttpDatasource datasource;
+    
+    
+    @Setup
+    public void setUp() throws Exception {
+        final StringBuilder sb = new StringBuilder("[");
+        for (int i = 0; i < 50000; i++) {
+            sb.append((i == 0) ? "" : ",")
+              .append("{\"id\": " + i + ", \"name\": \"entry " + i + "\", \"description\": \"generated benchmark entry\", \"active\": " + (i % 2 == 0) + "}");
+        }
+        final CompressingTestServlet servlet = new CompressingTestServlet();
+        servlet.setContent(sb.append("]").toString().getBytes(Charsets.UTF_8));
+        
+        server = WebServer.withServlet(servlet).start();
+        
+        final URI uri = URI.create(server.getBasepath() + "entries.json");
+        fileCache = new FileCache(Files.createTempDir(), uri.toString(), Duration.ofDays(1), cacheCompression, Durability.NONE, 1);
+        datasource = new HttpDatasource(uri, null, false, transferCompression, fileCache);
+    }
+    
+    @TearDown
+    public void tearDown() throws Exception {
+        datasource.close();
+        server.close();
+    }
+    
+    
+    @Benchmark
+    public Object refresh() {
+        final Data data = datasource.load();   // the servlet does not support validators. Each refresh is a full request 
+        try {
+            fileCache.commit(data);
+            return data.getFingerprint();
+        } finally {
+            fileCache.discard(data);
+        }
+    }
+    
+    
+    public static void main(final String[] args) throws Exception {
+        new Runner(new OptionsBuilder().include(RefreshCompressionBenchmark.class.getSimpleName()).build()).run();
+    }
+}
@@ -0,0 +1,111 @@
+/*
+ * Copyright 1&1 Internet AG, https://github.com/1and1/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package net.oneandone.neo.datareplicator;
+
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import com.google.common.io.Files;
+
+
+
+/**
+ * Measures the read cost of {@link ReplicatedReference#get()} and of a version check compared to a plain field 
+ * read and a volatile field read. The reads are performed by several threads concurrently
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Threads(4)
+@Fork(1)
+public class ReplicatedReferenceBenchmark {
+    
+    private String plainField;
+    private volatile String volatileField;
+    private ReplicatedReference<String> reference;
+    
+    
+    @State(Scope.Thread)
+    public static class ThreadVersion {
+        long version;
+    }
+    
+    
+    @Setup
+    public void setUp() throws Exception {
+        reference = ReplicationJob.source("classpath:hello.utf8.txt")
+                                  .withCacheDir(Files.createTempDir())
+                                  .withRefreshPeriod(Duration.ofDays(1))
+                                  .startReplicatingText();
+        plainField = reference.get();
+        volatileField = reference.get();
+    }
+    
+    @TearDown
+    public void tearDown() throws Exception {
+        reference.close();
+    }
+    
+    
+    @Benchmark
+    public String plainFieldRead() {
+        return plainField;
+    }
+
+    @Benchmark
+    public String volatileFieldRead() {
+        return volatileField;
+    }
+
+    @Benchmark
+    public String replicatedReferenceGet() {
+        return reference.get();
+    }
+
+    @Benchmark
+    public boolean replicatedReferenceVersionCheck(final ThreadVersion threadVersion) {
+        if (reference.isUpdatedSince(threadVersion.version)) {
+            threadVersion.version = reference.getVersion();
+            return true;
+        }
+        return false;
+    }
+    
+    
+    public static void main(final String[] args) throws Exception {
+        new Runner(new OptionsBuilder().include(ReplicatedReferenceBenchmark.class.getSimpleName()).build()).run();
+    }
+}
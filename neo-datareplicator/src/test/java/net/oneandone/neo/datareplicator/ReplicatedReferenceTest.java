@@ -0,0 +1,97 @@
+/*
+ * Copyright 1&1 Internet AG, https://github.com/1and1/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package net.oneandone.neo.datareplicator;
+
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.Duration;
+import java.util.concurrent.ExecutionException;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.ByteStreams;
+import com.google.common.io.Files;
+
+
+
+public class ReplicatedReferenceTest {
+    
+    @Test
+    public void testReplicatedText() throws Exception {
+        final File file = new File(Files.createTempDir(), "config.txt");
+        Files.write("timeout=10", file, Charsets.UTF_8);
+        
+        final ReplicatedReference<String> config = ReplicationJob.source(file.toURI())
+                                                                 .withCacheDir(Files.createTempDir())
+                                                                 .withRefreshPeriod(Duration.ofDays(1))
+                                                                 .startReplicatingText();
+        Assert.assertEquals("timeout=10", config.get());
+        Assert.assertEquals(1, config.getVersion());
+        final long version = config.getVersion();
+        
+        // unchanged -> same version 
+        config.refreshAsync().get();
+        Assert.assertFalse(config.isUpdatedSince(version));
+        
+        // modified -> new version
+        Files.write("timeout=100", file, Charsets.UTF_8);
+        config.refreshAsync().get();
+        Assert.assertTrue(config.isUpdatedSince(version));
+        Assert.assertEquals(2, config.getVersion());
+        Assert.assertEquals("timeout=100", config.get());
+        
+        config.close();
+    }
+    
+    
+    @Test
+    public void testReplicatedParsedValue() throws Exception {
+        final File file = new File(Files.createTempDir(), "limit.txt");
+        Files.write("10", file, Charsets.UTF_8);
+        
+        final ReplicatedReference<Integer> limit = ReplicationJob.source(file.toURI())
+                                                                 .withCacheDir(Files.createTempDir())
+                                                                 .withRefreshPeriod(Duration.ofDays(1))
+                                                                 .startReplicating(ReplicatedReferenceTest::parseInt);
+        Assert.assertEquals(Integer.valueOf(10), limit.get());
+        
+        // parsing error -> the current value will be kept
+        Files.write("ten", file, Charsets.UTF_8);
+        try {
+            limit.refreshAsync().get();
+            Assert.fail("ExecutionException expected");
+        } catch (final ExecutionException expected) { }
+        Assert.assertEquals(Integer.valueOf(10), limit.get());
+        Assert.assertEquals(1, limit.getVersion());
+        
+        limit.close();
+    }
+    
+    
+    private static Integer parseInt(final InputStream is) {
+        try {
+            return Integer.parseInt(new String(ByteStreams.toByteArray(is), Charsets.UTF_8));
+        } catch (final IOException ioe) {
+            throw new RuntimeException(ioe);
+        }
+    }
+}
@@ -0,0 +1,194 @@
+/*
+ * Copyright 1&1 Internet AG, https://github.com/1and1/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package net.oneandone.neo.datareplicator;
+
+
+import java.io.File;
+import java.net.URI;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.function.Consumer;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.io.Files;
+
+
+
+public class ReplicationGroupTest {
+    
+    @Test
+    public void testConsistentSnapshots() throws Exception {
+        final File dir = Files.createTempDir();
+        final File fileA = new File(dir, "a.txt");
+        final File fileB = new File(dir, "b.txt");
+        Files.write("a1", fileA, Charsets.UTF_8);
+        Files.write("b1", fileB, Charsets.UTF_8);
+
+        final SnapshotConsumer consumer = new SnapshotConsumer();
+        final ReplicationGroup group = ReplicationGroup.of(ReplicationJob.source(fileA.toURI()).withCacheDir(dir),
+                                                           ReplicationJob.source(fileB.toURI()).withCacheDir(dir))
+                                                       .withCacheDir(dir)
+                                                       .withRefreshPeriod(Duration.ofDays(1))
+                                                       .startConsumingText(consumer);
+        Assert.assertEquals(ImmutableMap.of(fileA.toURI(), "a1", fileB.toURI(), "b1"), consumer.getLast());
+        Assert.assertEquals(ImmutableList.of(fileA.toURI(), fileB.toURI()), group.getEndpoints());
+        final String fingerprint = group.getFingerprint().get();
+        
+        
+        // unchanged members -> consumer will not be called
+        group.refreshAsync().get();
+        Assert.assertEquals(1, consumer.getSnapshots().size());
+        Assert.assertEquals(fingerprint, group.getFingerprint().get());
+        
+        
+        // modified member -> snapshot contains the modified and the unchanged member
+        Files.write("a22", fileA, Charsets.UTF_8);
+        group.refreshAsync().get();
+        Assert.assertEquals(2, consumer.getSnapshots().size());
+        Assert.assertEquals(ImmutableMap.of(fileA.toURI(), "a22", fileB.toURI(), "b1"), consumer.getLast());
+        Assert.assertNotEquals(fingerprint, group.getFingerprint().get());
+
+        
+        // a member fails -> no mixed snapshot is delivered
+        Files.write("a333", fileA, Charsets.UTF_8);
+        fileB.delete();
+        try {
+            group.refreshAsync().get();
+            Assert.fail("ExecutionException expected");
+        } catch (final ExecutionException expected) { }
+        Assert.assertEquals(2, consumer.getSnapshots().size());
+        Assert.assertTrue(group.getExpiredTimeSinceRefreshError().isPresent());
+        
+        
+        // all members are available again 
+        Files.write("b4444", fileB, Charsets.UTF_8);
+        group.refreshAsync().get();
+        Assert.assertEquals(3, consumer.getSnapshots().size());
+        Assert.assertEquals(ImmutableMap.of(fileA.toURI(), "a333", fileB.toURI(), "b4444"), consumer.getLast());
+        
+        group.close();
+    }
+
+    
+    @Test
+    public void testCachedGeneration() throws Exception {
+        final File dir = Files.createTempDir();
+        final File cacheDir = Files.createTempDir();
+        final File fileA = new File(dir, "a.txt");
+        final File fileB = new File(dir, "b.txt");
+        Files.write("a1", fileA, Charsets.UTF_8);
+        Files.write("b1", fileB, Charsets.UTF_8);
+
+        final ReplicationGroupBuilder builder = ReplicationGroup.of(ReplicationJob.source(fileA.toURI()).withCacheDir(cacheDir),
+                                                                    ReplicationJob.source(fileB.toURI()).withCacheDir(cacheDir))
+                                                                .withCacheDir(cacheDir)
+                                                                .withRefreshPeriod(Duration.ofDays(1));
+
+        final SnapshotConsumer consumer = new SnapshotConsumer();
+        final ReplicationGroup group = builder.startConsumingText(consumer);
+        
+        Files.write("a22", fileA, Charsets.UTF_8);
+        group.refreshAsync().get();
+        Assert.assertEquals(ImmutableMap.of(fileA.toURI(), "a22", fileB.toURI(), "b1"), consumer.getLast());
+        
+        // the consumer rejects the snapshot -> it will not be committed
+        Files.write("broken", fileB, Charsets.UTF_8);
+        try {
+            group.refreshAsync().get();
+            Assert.fail("ExecutionException expected");
+        } catch (final ExecutionException expected) { }
+        group.close();
+        
+
+        // sources are not available -> the last committed generation will be used
+        fileA.delete();
+        fileB.delete();
+        
+        final SnapshotConsumer consumer2 = new SnapshotConsumer();
+        builder.startConsumingText(consumer2).close();
+        Assert.assertEquals(ImmutableMap.of(fileA.toURI(), "a22", fileB.toURI(), "b1"), consumer2.getLast());
+        
+        
+        // fail on init failure
+        try {
+            builder.withFailOnInitFailure(true).startConsumingText(new SnapshotConsumer());
+            Assert.fail("ReplicationException expected");
+        } catch (final ReplicationException expected) { }
+    }
+
+    
+    @Test
+    public void testIncompleteCachedGeneration() throws Exception {
+        final File dir = Files.createTempDir();
+        final File fileA = new File(dir, "a.txt");
+        final File fileB = new File(dir, "b.txt");
+        Files.write("a1", fileA, Charsets.UTF_8);
+        Files.write("b1", fileB, Charsets.UTF_8);
+        
+        // member a has been cached by a single job, but there is no committed generation
+        ReplicationJob.source(fileA.toURI())
+                      .withCacheDir(dir)
+                      .startConsumingText(text -> { })
+                      .close();
+        fileA.delete();
+        
+        try {
+            ReplicationGroup.of(ReplicationJob.source(fileA.toURI()).withCacheDir(dir),
+                                ReplicationJob.source(fileB.toURI()).withCacheDir(dir))
+                            .withCacheDir(dir)
+                            .startConsumingText(new SnapshotConsumer());
+            Assert.fail("ReplicationException expected");
+        } catch (final ReplicationException expected) { }
+    }
+    
+    
+    @Test(expected = IllegalArgumentException.class)
+    public void testDuplicatedMember() throws Exception {
+        ReplicationGroup.of(ReplicationJob.source("classpath:hello.utf8.txt"), 
+                            ReplicationJob.source("classpath:hello.utf8.txt"));
+    }
+    
+    
+    
+    private static final class SnapshotConsumer implements Consumer<ImmutableMap<URI, String>> {
+        private final List<ImmutableMap<URI, String>> snapshots = new CopyOnWriteArrayList<>();
+        
+        @Override
+        public void accept(final ImmutableMap<URI, String> snapshot) {
+            if (snapshot.values().contains("broken")) {
+                throw new RuntimeException("broken data");
+            }
+            snapshots.add(snapshot);
+        }
+        
+        public List<ImmutableMap<URI, String>> getSnapshots() {
+            return snapshots;
+        }
+        
+        public ImmutableMap<URI, String> getLast() {
+            return snapshots.get(snapshots.size() - 1);
+        }
+    }
+}
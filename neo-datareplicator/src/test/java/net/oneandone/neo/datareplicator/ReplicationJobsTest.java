@@ -0,0 +1,193 @@
+/*
+ * Copyright 1&1 Internet AG, https://github.com/1and1/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.oneandone.neo.datareplicator;
+
+
+import java.io.File;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.google.common.base.Stopwatch;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.common.io.Files;
+
+import net.oneandone.neo.datareplicator.utils.SlowTestServlet;
+import net.oneandone.neo.datareplicator.utils.WebServer;
+
+
+
+public class ReplicationJobsTest {
+    
+    private static SlowTestServlet servlet = new SlowTestServlet();
+    private static WebServer server;
+
+    
+    @BeforeClass
+    public static void setUp() throws Exception {
+        server = WebServer.withServlet(servlet)
+                          .start();
+    }
+    
+    @AfterClass
+    public static void tearDown() throws Exception {
+        server.close();
+    }
+    
+    
+    @Test
+    public void testParallelStart() throws Exception {
+        servlet.set("data", Duration.ofMillis(500));
+        
+        final List<ReplicationJobs.JobStart> starts = Lists.newArrayList();
+        final List<AtomicReference<String>> texts = Lists.newArrayList();
+        for (int i = 0; i < 10; i++) {
+            final AtomicReference<String> text = new AtomicReference<>();
+            texts.add(text);
+            
+            // the same builder may be used several times 
+            final ReplicationJobBuilder builder = ReplicationJob.source(server.getBasepath() + "resource" + (i / 2))
+                                                                .withCacheDir(Files.createTempDir())
+                                                                .withFailOnInitFailure(true);
+            starts.add(ReplicationJobs.jobStart(builder, b -> b.startConsumingText(text::set)));
+        }
+        
+        final Stopwatch stopwatch = Stopwatch.createStarted();
+        final ImmutableList<ReplicationJob> jobs = ReplicationJobs.startAll(Duration.ofSeconds(30), starts);
+        Assert.assertTrue(stopwatch.elapsed(TimeUnit.MILLISECONDS) < 10 * 500);
+        Assert.assertEquals(10, jobs.size());
+        texts.forEach(text -> Assert.assertEquals("data", text.get()));
+        
+        // the jobs are returned in the order of the starts
+        for (int i = 0; i < 10; i++) {
+            Assert.assertTrue(jobs.get(i).getEndpoint().toString().endsWith("resource" + (i / 2)));
+        }
+        
+        jobs.forEach(ReplicationJob::close);
+    }
+    
+    
+    @Test
+    public void testDeadlineMissed() throws Exception {
+        final File cacheDir = Files.createTempDir();
+        final String uri = server.getBasepath() + "resource";
+        
+        // fill the cache 
+        servlet.set("cached", Duration.ZERO);
+        ReplicationJob.source(uri)
+                      .withCacheDir(cacheDir)
+                      .startConsumingText(text -> { })
+                      .close();
+        
+        
+        // slow server -> deadline will be missed  
+        servlet.set("current", Duration.ofSeconds(2));
+        final AtomicReference<String> text = new AtomicReference<>();
+        final Stopwatch stopwatch = Stopwatch.createStarted();
+        final ImmutableList<ReplicationJob> jobs = ReplicationJobs.startAll(Duration.ofMillis(200), 
+                                                                            ReplicationJobs.jobStart(ReplicationJob.source(uri).withCacheDir(cacheDir),
+                                                                                                     builder -> builder.startConsumingText(text::set)));
+        Assert.assertTrue(stopwatch.elapsed(TimeUnit.MILLISECONDS) < 1500);
+        Assert.assertEquals("cached", text.get());
+        
+        // the initial load proceeds in the background 
+        for (int i = 0; (i < 100) && !"current".equals(text.get()); i++) {
+            Thread.sleep(100);
+        }
+        Assert.assertEquals("current", text.get());
+        
+        jobs.forEach(ReplicationJob::close);
+    }
+    
+    
+    @Test
+    public void testDeadlineMissedWithoutCacheFile() throws Exception {
+        // slow server and no cache file -> the job will be started at the deadline without data 
+        servlet.set("current", Duration.ofSeconds(1));
+        final AtomicReference<String> text = new AtomicReference<>();
+        final Stopwatch stopwatch = Stopwatch.createStarted();
+        final ImmutableList<ReplicationJob> jobs = ReplicationJobs.startAll(Duration.ofMillis(200), 
+                                                                            ReplicationJobs.jobStart(ReplicationJob.source(server.getBasepath() + "resource").withCacheDir(Files.createTempDir()),
+                                                                                                     builder -> builder.startConsumingText(text::set)));
+        Assert.assertTrue(stopwatch.elapsed(TimeUnit.MILLISECONDS) < 900);
+        Assert.assertNull(text.get());
+        Assert.assertFalse(jobs.get(0).getFingerprint().isPresent());
+        
+        // the consumer will be notified, if the initial load is completed
+        for (int i = 0; (i < 100) && (text.get() == null); i++) {
+            Thread.sleep(100);
+        }
+        Assert.assertEquals("current", text.get());
+        
+        jobs.forEach(ReplicationJob::close);
+    }
+    
+    
+    @Test
+    public void testDeadlineMissedWithoutCacheFileFailOnInitFailure() throws Exception {
+        // slow server and no cache file -> start-up fails at the deadline  
+        servlet.set("current", Duration.ofSeconds(1));
+        final AtomicReference<String> text = new AtomicReference<>();
+        final Stopwatch stopwatch = Stopwatch.createStarted();
+        try {
+            ReplicationJobs.startAll(Duration.ofMillis(200), 
+                                     ReplicationJobs.jobStart(ReplicationJob.source(server.getBasepath() + "resource")
+                                                                            .withCacheDir(Files.createTempDir())
+                                                                            .withFailOnInitFailure(true),
+                                                              builder -> builder.startConsumingText(text::set)));
+            Assert.fail("ReplicationException expected");
+        } catch (final ReplicationException expected) { }
+        Assert.assertTrue(stopwatch.elapsed(TimeUnit.MILLISECONDS) < 900);
+        
+        // the initial load of the abandoned job does not notify the consumer
+        Thread.sleep(1500);
+        Assert.assertNull(text.get());
+    }
+    
+    
+    @Test
+    public void testManyJobs() throws Exception {
+        servlet.set("data", Duration.ofMillis(50));
+        
+        // more jobs than threads -> the starts are queued
+        final List<ReplicationJobs.JobStart> starts = Lists.newArrayList();
+        for (int i = 0; i < ReplicationJobs.MAX_PARALLEL_STARTS * 3; i++) {
+            starts.add(ReplicationJobs.jobStart(ReplicationJob.source(server.getBasepath() + "resource" + i)
+                                                              .withCacheDir(Files.createTempDir())
+                                                              .withFailOnInitFailure(true),
+                                                builder -> builder.startConsumingText(text -> { })));
+        }
+        final ImmutableList<ReplicationJob> jobs = ReplicationJobs.startAll(Duration.ofSeconds(30), starts);
+        jobs.forEach(job -> Assert.assertTrue(job.getFingerprint().isPresent()));
+        
+        final long numStartupThreads = Thread.getAllStackTraces()
+                                             .keySet()
+                                             .stream()
+                                             .filter(thread -> thread.getName().startsWith("datareplicator-startup") || thread.getName().startsWith("datareplicator-initialload"))
+                                             .count();
+        Assert.assertTrue(numStartupThreads <= 2 * ReplicationJobs.MAX_PARALLEL_STARTS);
+        
+        jobs.forEach(ReplicationJob::close);
+    }
+}
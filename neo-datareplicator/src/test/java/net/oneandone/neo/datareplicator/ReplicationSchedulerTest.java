@@ -0,0 +1,248 @@
+/*
+ * Copyright 1&1 Internet AG, https://github.com/1and1/
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.oneandone.neo.datareplicator;
+
+
+
+
+
+import java.net.URI;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.google.common.collect.Lists;
+
+import net.oneandone.neo.datareplicator.utils.InMemoryConsumer;
+import net.oneandone.neo.datareplicator.utils.TestServlet;
+import net.oneandone.neo.datareplicator.utils.Utils;
+import net.oneandone.neo.datareplicator.utils.WebServer;
+
+
+public class ReplicationSchedulerTest {
+    
+    private static TestServlet servlet = new TestServlet();
+    private static WebServer server;
+
+    
+    @BeforeClass
+    public static void setUp() throws Exception {
+        server = WebServer.withServlet(servlet)
+                          .start();
+    }
+    
+    @AfterClass
+    public static void tearDown() throws Exception {
+        server.close();
+    }
+    
+    
+    @Test
+    public void testSharedScheduler() throws Exception {
+        try (ReplicationScheduler scheduler = ReplicationScheduler.create(2, 1, 0.1)) {
+            
+            final List<ReplicationJob> jobs = Lists.newArrayList();
+            final List<InMemoryConsumer> consumers = Lists.newArrayList();
+            for (int i = 0; i < 20; i++) {
+                final InMemoryConsumer testConsumer = new InMemoryConsumer();
+                consumers.add(testConsumer);
+                jobs.add(ReplicationJob.source(server.getBasepath() + "hello.utf8.txt?charset=utf-8&job=" + i)
+                                       .withScheduler(scheduler)
+                                       .withRefreshPeriod(Duration.ofMillis(100))
+                                       .startConsumingText(testConsumer));
+            }
+            
+            for (InMemoryConsumer testConsumer : consumers) {
+                Utils.assertMapEntryEquals(Utils.loadFileAsMap("hello.utf8.txt", "UTF-8"), Utils.toMap(testConsumer.waitForText()), "Greek");
+            }
+            
+            Thread.sleep(500);
+            for (ReplicationJob job : jobs) {
+                Assert.assertTrue(job.getExpiredTimeSinceRefreshSuccess().isPresent());
+                job.close();
+            }
+        }
+    }
+    
+    
+    @Test
+    public void testMaxConcurrentRefreshesPerHost() throws Exception {
+        final AtomicInteger running = new AtomicInteger();
+        final AtomicInteger maxRunning = new AtomicInteger();
+        final AtomicInteger runs = new AtomicInteger();
+        
+        final Runnable task = () -> {
+            maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+            try {
+                Thread.sleep(20);
+            } catch (InterruptedException ignore) { }
+            running.decrementAndGet();
+            runs.incrementAndGet();
+        };
+        
+        
+        try (ReplicationScheduler scheduler = ReplicationScheduler.create(8, 2, 0.2)) {
+            final List<ReplicationScheduler.Schedule> schedules = Lists.newArrayList();
+            for (int i = 0; i < 10; i++) {
+                schedules.add(scheduler.schedule(URI.create("http://example.org/res" + i), Duration.ofMillis(10), task));
+            }
+            
+            Thread.sleep(1000);
+            schedules.forEach(ReplicationScheduler.Schedule::cancel);
+        }
+        
+        Assert.assertTrue(runs.get() > 10);
+        Assert.assertEquals(2, maxRunning.get());
+    }
+    
+    
+    @Test
+    public void testQueuedPerHost() throws Exception {
+        final CompletableFuture<Void> firstRefresh = new CompletableFuture<>();
+        final AtomicInteger secondRuns = new AtomicInteger();
+        
+        try (ReplicationScheduler scheduler = ReplicationScheduler.create(1, 1, 0)) {
+            final ReplicationScheduler.Schedule first = scheduler.scheduleAsync(URI.create("http://example.org/first"),
+                                                                                Duration.ofMinutes(10), 
+                                                                                () -> firstRefresh);
+            final ReplicationScheduler.Schedule second = scheduler.scheduleAsync(URI.create("http://example.org/second"), 
+                                                                                 Duration.ofMinutes(10), 
+                                                                                 () -> { 
+                                                                                     secondRuns.incrementAndGet();
+                                                                                     return CompletableFuture.completedFuture(null);
+                                                                                 });
+            final ReplicationScheduler.Schedule other = scheduler.scheduleAsync(URI.create("http://example.com/other"), 
+                                                                                Duration.ofMinutes(10), 
+                                                                                () -> CompletableFuture.completedFuture(null));
+            
+            // the permit of the host is taken by the first refresh -> the second run is queued
+            final CompletableFuture<Void> firstDone = first.trigger(Duration.ZERO);
+            Thread.sleep(100);
+            final CompletableFuture<Void> secondDone = second.trigger(Duration.ZERO);
+            Thread.sleep(300);
+            Assert.assertEquals(0, secondRuns.get());
+            
+            // the queued run does not occupy the single worker 
+            other.trigger(Duration.ZERO).get(1, TimeUnit.SECONDS);
+            
+            // the released permit is handed over to the queued run immediately
+            firstRefresh.complete(null);
+            firstDone.get(1, TimeUnit.SECONDS);
+            secondDone.get(50, TimeUnit.MILLISECONDS);
+            Assert.assertEquals(1, secondRuns.get());
+            
+            first.cancel();
+            second.cancel();
+            other.cancel();
+        }
+    }
+    
+    
+    @Test
+    public void testCancelQueued() throws Exception {
+        final CompletableFuture<Void> firstRefresh = new CompletableFuture<>();
+        
+        try (ReplicationScheduler scheduler = ReplicationScheduler.create(2, 1, 0)) {
+            final ReplicationScheduler.Schedule first = scheduler.scheduleAsync(URI.create("http://example.org/first"),
+                                                                                Duration.ofMinutes(10), 
+                                                                                () -> firstRefresh);
+            final ReplicationScheduler.Schedule second = scheduler.scheduleAsync(URI.create("http://example.org/second"), 
+                                                                                 Duration.ofMinutes(10), 
+                                                                                 () -> CompletableFuture.completedFuture(null));
+            first.trigger(Duration.ZERO);
+            Thread.sleep(100);
+            second.trigger(Duration.ZERO);
+            Thread.sleep(100);
+            
+            // the queued run does not wait for the permit of the host anymore 
+            second.cancel().get(50, TimeUnit.MILLISECONDS);
+            
+            firstRefresh.complete(null);
+            first.cancel().get(1, TimeUnit.SECONDS);
+        }
+    }
+    
+    
+    @Test
+    public void testTriggeredRunsNeverOverlap() throws Exception {
+        final AtomicInteger running = new AtomicInteger();
+        final AtomicInteger maxRunning = new AtomicInteger();
+        final AtomicInteger runs = new AtomicInteger();
+        
+        final Runnable task = () -> {
+            maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+            try {
+                Thread.sleep(1);
+            } catch (InterruptedException ignore) { }
+            running.decrementAndGet();
+            runs.incrementAndGet();
+        };
+        
+        try (ReplicationScheduler scheduler = ReplicationScheduler.create(8, 8, 0)) {
+            // a periodic run is due nearly all the time. Triggers (see ReplicationJob#refreshAsync) replace it 
+            final ReplicationScheduler.Schedule schedule = scheduler.schedule(URI.create("classpath:hello.utf8.txt"), 
+                                                                              Duration.ofMillis(1), 
+                                                                              task);
+            final List<Thread> triggerThreads = Lists.newArrayList();
+            for (int i = 0; i < 8; i++) {
+                final Thread thread = new Thread(() -> {
+                    for (int j = 0; j < 5000; j++) {
+                        schedule.trigger(Duration.ZERO);
+                    }
+                });
+                thread.start();
+                triggerThreads.add(thread);
+            }
+            for (Thread thread : triggerThreads) {
+                thread.join();
+            }
+            
+            Thread.sleep(200);
+            schedule.cancel();
+        }
+        
+        Assert.assertTrue(runs.get() > 10);
+        Assert.assertEquals(1, maxRunning.get());
+    }
+    
+    
+    @Test
+    public void testCancel() throws Exception {
+        final AtomicInteger runs = new AtomicInteger();
+        
+        try (ReplicationScheduler scheduler = ReplicationScheduler.create()) {
+            final ReplicationScheduler.Schedule schedule = scheduler.schedule(URI.create("classpath:hello.utf8.txt"), 
+                                                                              Duration.ofMillis(10), 
+                                                                              () -> runs.incrementAndGet());
+            Thread.sleep(300);
+            schedule.cancel();
+            Thread.sleep(50);
+            
+            final int numRuns = runs.get();
+            Assert.assertTrue(numRuns > 0);
+            
+            Thread.sleep(300);
+            Assert.assertEquals(numRuns, runs.get());
+        }
+    }
+}
@@ -28,6 +28,9 @@ import org.junit.Assert;
 import org.junit.BeforeClass;
 import org.junit.Test;
 
+import com.google.common.hash.Hashing;
+import com.google.common.io.Files;
+
 import net.oneandone.neo.datareplicator.utils.InMemoryConsumer;
 import net.oneandone.neo.datareplicator.utils.TestServlet;
 import net.oneandone.neo.datareplicator.utils.Utils;
@@ -74,6 +77,18 @@ public class ReplicatorSupportedSchemesTest {
         job.close();
     }
     
+    @Test
+    public void testFingerprint() throws Exception {
+        InMemoryConsumer testConsumer = new InMemoryConsumer();
+        
+        File file = new File("src" + File.separator + "test" + File.separator + "resources" + File.separator + "hello.utf8.txt");
+        ReplicationJob job = ReplicationJob.source(file.toURI())
+                                           .startConsumingText(testConsumer);
+        testConsumer.waitForText();
+        Assert.assertEquals(Hashing.murmur3_128().hashBytes(Files.toByteArray(file)).toString(), job.getFingerprint().get());
+        job.close();
+    }
+    
     @Test
     public void testClasspathSource() throws Exception {
         InMemoryConsumer testConsumer = new InMemoryConsumer();
@@ -97,7 +112,6 @@ public class ReplicatorSupportedSchemesTest {
         } catch (RuntimeException expected) { }
     }
 
-    //todo - add tests for http etag.
     //todo - re-check thrown exceptions.
 
 }
\ No newline at end of file
@@ -0,0 +1,68 @@
+/*
+ * Copyright 1&1 Internet AG, https://github.com/1and1/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.oneandone.neo.datareplicator;
+
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+
+
+public class ResumableFingerprintTest {
+
+    @Test
+    public void testEqualsFingerprintFunction() throws Exception {
+        final Random random = new Random(42);
+        for (int length = 0; length < 100; length++) {
+            final byte[] bytes = new byte[length];
+            random.nextBytes(bytes);
+
+            final ResumableFingerprint fingerprint = new ResumableFingerprint();
+            fingerprint.update(bytes, 0, length);
+            Assert.assertEquals(Data.FINGERPRINT_FUNCTION.hashBytes(bytes), fingerprint.hash());
+        }
+    }
+
+
+    @Test
+    public void testResumed() throws Exception {
+        final byte[] bytes = new byte[10000];
+        new Random(42).nextBytes(bytes);
+
+        // the bytes are hashed in chunks of different sizes. The state is recorded and resumed after each chunk
+        ResumableFingerprint fingerprint = new ResumableFingerprint();
+        for (int pos = 0, chunk = 1; pos < bytes.length; pos += chunk, chunk = (chunk * 7) % 97 + 1) {
+            final int len = Math.min(chunk, bytes.length - pos);
+            fingerprint.update(bytes, pos, len);
+
+            Assert.assertEquals(Data.FINGERPRINT_FUNCTION.hashBytes(Arrays.copyOf(bytes, pos + len)), fingerprint.hash());
+            fingerprint = ResumableFingerprint.resume(fingerprint.getState()).get();
+        }
+        Assert.assertEquals(bytes.length, fingerprint.getLength());
+    }
+
+
+    @Test
+    public void testInvalidState() throws Exception {
+        Assert.assertFalse(ResumableFingerprint.resume("").isPresent());
+        Assert.assertFalse(ResumableFingerprint.resume("1:2:3:").isPresent());   // length does not match the pending bytes
+        Assert.assertFalse(ResumableFingerprint.resume("x:2:0:").isPresent());
+    }
+}
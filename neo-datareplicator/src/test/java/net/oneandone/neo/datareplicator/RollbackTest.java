@@ -0,0 +1,114 @@
+/*
+ * Copyright 1&1 Internet AG, https://github.com/1and1/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.oneandone.neo.datareplicator;
+
+
+import java.io.File;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.ImmutableList;
+import com.google.common.io.Files;
+
+
+
+public class RollbackTest {
+    
+    @Test
+    public void testRollback() throws Exception {
+        final File file = new File(Files.createTempDir(), "table.csv");
+        write(file, "1,one", 60);
+        
+        final AtomicReference<String> text = new AtomicReference<>();
+        final ReplicationJob job = ReplicationJob.source(file.toURI())
+                                                 .withCacheDir(Files.createTempDir())
+                                                 .withRefreshPeriod(Duration.ofDays(1))
+                                                 .withRetainedVersions(3)
+                                                 .startConsumingText(text::set);
+        final String fingerprint1 = job.getFingerprint().get();
+        
+        write(file, "1,one\n2,two", 30);
+        job.refreshAsync().get();
+        Assert.assertEquals("1,one\n2,two", text.get());
+        
+        final ImmutableList<CachedVersion> versions = job.getVersions();
+        Assert.assertEquals(2, versions.size());
+        Assert.assertEquals(job.getFingerprint().get(), versions.get(0).getFingerprint());
+        Assert.assertEquals(fingerprint1, versions.get(1).getFingerprint());
+        Assert.assertTrue(versions.get(0).getTimestamp().isAfter(versions.get(1).getTimestamp()));
+        
+        
+        // roll back to the former version -> will be delivered from the local cache
+        job.rollbackTo(versions.get(1));
+        Assert.assertEquals("1,one", text.get());
+        Assert.assertEquals(fingerprint1, job.getFingerprint().get());
+        Assert.assertEquals(fingerprint1, job.getVersions().get(0).getFingerprint());
+        
+        // the source is unmodified -> the rolled back version will be kept
+        job.refreshAsync().get();
+        Assert.assertEquals("1,one", text.get());
+        
+        // the source is modified -> the new version will be delivered 
+        write(file, "1,one\n2,two\n3,three", 0);
+        job.refreshAsync().get();
+        Assert.assertEquals("1,one\n2,two\n3,three", text.get());
+        Assert.assertEquals(3, job.getVersions().size());
+        
+        job.close();
+    }
+    
+    
+    @Test
+    public void testOnlyNewestVersionIsRetainedByDefault() throws Exception {
+        final File file = new File(Files.createTempDir(), "table.csv");
+        write(file, "1,one", 60);
+        
+        final AtomicInteger numConsumerCalls = new AtomicInteger();
+        final ReplicationJob job = ReplicationJob.source(file.toURI())
+                                                 .withCacheDir(Files.createTempDir())
+                                                 .withRefreshPeriod(Duration.ofDays(1))
+                                                 .startConsumingBinary(binary -> numConsumerCalls.incrementAndGet());
+        final CachedVersion version1 = job.getVersions().get(0);
+        
+        write(file, "1,one\n2,two", 30);
+        job.refreshAsync().get();
+        Assert.assertEquals(1, job.getVersions().size());
+        Assert.assertEquals(2, numConsumerCalls.get());
+        
+        try {
+            job.rollbackTo(version1);
+            Assert.fail("ReplicationException expected");
+        } catch (final ReplicationException expected) { }
+        Assert.assertEquals(2, numConsumerCalls.get());
+        
+        job.close();
+    }
+    
+    
+    private static void write(final File file, final String content, final int ageSec) throws Exception {
+        Files.write(content, file, Charsets.UTF_8);
+        
+        // modification time in the past -> the file attributes become validators 
+        file.setLastModified(Instant.now().minus(Duration.ofSeconds(ageSec)).toEpochMilli());
+    }
+}
@@ -0,0 +1,115 @@
+/*
+ * Copyright 1&1 Internet AG, https://github.com/1and1/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.oneandone.neo.datareplicator;
+
+
+import java.io.File;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.google.common.base.Stopwatch;
+import com.google.common.io.Files;
+
+import net.oneandone.neo.datareplicator.utils.SlowTestServlet;
+import net.oneandone.neo.datareplicator.utils.WebServer;
+
+
+
+public class StaleWhileRevalidateTest {
+    
+    private static SlowTestServlet servlet = new SlowTestServlet();
+    private static WebServer server;
+
+    
+    @BeforeClass
+    public static void setUp() throws Exception {
+        server = WebServer.withServlet(servlet)
+                          .start();
+    }
+    
+    @AfterClass
+    public static void tearDown() throws Exception {
+        server.close();
+    }
+    
+    
+    @Test
+    public void testStaleCacheFileIsServedFirst() throws Exception {
+        final File cacheDir = Files.createTempDir();
+        final String uri = server.getBasepath() + "resource";
+        fillCache(cacheDir, uri);
+        
+        // slow server -> cache file will be served first   
+        servlet.set("current", Duration.ofSeconds(2));
+        final AtomicReference<String> text = new AtomicReference<>();
+        final Stopwatch stopwatch = Stopwatch.createStarted();
+        final ReplicationJob job = ReplicationJob.source(uri)
+                                                 .withCacheDir(cacheDir)
+                                                 .withMaxStale(Duration.ofHours(1))
+                                                 .startConsumingText(text::set);
+        Assert.assertTrue(stopwatch.elapsed(TimeUnit.MILLISECONDS) < 1500);
+        Assert.assertEquals("cached", text.get());
+        Assert.assertTrue(job.getStaleness().isPresent());
+        
+        // the cache file will be revalidated in the background 
+        for (int i = 0; (i < 100) && !"current".equals(text.get()); i++) {
+            Thread.sleep(100);
+        }
+        Assert.assertEquals("current", text.get());
+        Assert.assertFalse(job.getStaleness().isPresent());
+        
+        job.close();
+    }
+    
+    
+    @Test
+    public void testTooStaleCacheFileIsNotServedFirst() throws Exception {
+        final File cacheDir = Files.createTempDir();
+        final String uri = server.getBasepath() + "resource";
+        fillCache(cacheDir, uri);
+        for (File cacheFile : cacheDir.listFiles((dir, name) -> name.endsWith(".cache"))) {
+            cacheFile.setLastModified(Instant.now().minus(Duration.ofHours(2)).toEpochMilli());
+        }
+        
+        servlet.set("current", Duration.ofMillis(200));
+        final AtomicReference<String> text = new AtomicReference<>();
+        final ReplicationJob job = ReplicationJob.source(uri)
+                                                 .withCacheDir(cacheDir)
+                                                 .withMaxStale(Duration.ofHours(1))
+                                                 .startConsumingText(text::set);
+        Assert.assertEquals("current", text.get());
+        Assert.assertFalse(job.getStaleness().isPresent());
+        
+        job.close();
+    }
+    
+    
+    private static void fillCache(final File cacheDir, final String uri) {
+        servlet.set("cached", Duration.ZERO);
+        ReplicationJob.source(uri)
+                      .withCacheDir(cacheDir)
+                      .startConsumingText(text -> { })
+                      .close();
+    }
+}
@@ -0,0 +1,166 @@
+/*
+ * Copyright 1&1 Internet AG, https://github.com/1and1/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.oneandone.neo.datareplicator;
+
+
+import java.io.File;
+import java.net.URI;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.Files;
+
+import net.oneandone.neo.datareplicator.ReplicationMetrics.Counter;
+import net.oneandone.neo.datareplicator.ReplicationMetrics.Phase;
+import net.oneandone.neo.datareplicator.utils.ConditionalTestServlet;
+import net.oneandone.neo.datareplicator.utils.InMemoryConsumer;
+import net.oneandone.neo.datareplicator.utils.WebServer;
+
+
+public class StatisticsTest {
+    
+    private static ConditionalTestServlet servlet = new ConditionalTestServlet();
+    private static WebServer server;
+
+    
+    @BeforeClass
+    public static void setUp() throws Exception {
+        server = WebServer.withServlet(servlet)
+                          .start();
+    }
+    
+    @AfterClass
+    public static void tearDown() throws Exception {
+        server.close();
+    }
+    
+    
+    @Test
+    public void testStatistics() throws Exception {
+        final CountingMetrics metrics = new CountingMetrics();
+        final InMemoryConsumer consumer = new InMemoryConsumer();
+        
+        final ReplicationJob job = ReplicationJob.source(server.getBasepath() + "hello.utf8.txt?charset=utf-8")
+                                                 .withCacheDir(Files.createTempDir())
+                                                 .withRefreshPeriod(Duration.ofMillis(100))
+                                                 .withMetrics(metrics)
+                                                 .startConsumingText(consumer);
+        consumer.waitForText();
+        Thread.sleep(700);
+        job.close();
+        
+        final ReplicationStatistics statistics = job.getStatistics();
+        
+        // the resource has been downloaded once. All refreshes has been answered by a 304 
+        Assert.assertTrue(statistics.getCount(Counter.REFRESH_SUCCESS) >= 4);
+        Assert.assertEquals(0, statistics.getCount(Counter.REFRESH_ERROR));
+        Assert.assertEquals(1, statistics.getCount(Counter.MODIFIED));
+        Assert.assertEquals(statistics.getCount(Counter.REFRESH_SUCCESS) - 1, statistics.getCount(Counter.NOT_MODIFIED));
+        Assert.assertEquals(0, statistics.getCount(Counter.UNCHANGED));
+        Assert.assertEquals(new File("src/test/resources/hello.utf8.txt").length(), statistics.getCount(Counter.BYTES_FETCHED));
+        
+        Assert.assertEquals(statistics.getCount(Counter.REFRESH_SUCCESS), statistics.getLatency(Phase.FETCH).getCount());
+        Assert.assertEquals(1, statistics.getLatency(Phase.DECODE).getCount());
+        Assert.assertEquals(1, statistics.getLatency(Phase.CONSUMER).getCount());
+        Assert.assertEquals(1, statistics.getLatency(Phase.CACHE_WRITE).getCount());
+        Assert.assertTrue(statistics.getLatency(Phase.FETCH).getMax().compareTo(Duration.ZERO) > 0);
+        Assert.assertTrue(statistics.getLatency(Phase.FETCH).getPercentile(0.5).compareTo(statistics.getLatency(Phase.FETCH).getMax()) <= 0);
+        
+        // the metrics has been forwarded to the custom metrics
+        Assert.assertEquals(statistics.getCount(Counter.REFRESH_SUCCESS), metrics.get(Counter.REFRESH_SUCCESS));
+        Assert.assertEquals(statistics.getCount(Counter.BYTES_FETCHED), metrics.get(Counter.BYTES_FETCHED));
+    }
+    
+    
+    @Test
+    public void testCacheFallbackStatistics() throws Exception {
+        final File cacheDir = Files.createTempDir();
+        final File file = new File(Files.createTempDir(), "res.txt");
+        Files.write("content", file, Charsets.UTF_8);
+
+        ReplicationJob.source(file.toURI())
+                      .withCacheDir(cacheDir)
+                      .startConsumingText(new InMemoryConsumer())
+                      .close();
+        file.delete();
+        
+        final ReplicationJob job = ReplicationJob.source(file.toURI())
+                                                 .withCacheDir(cacheDir)
+                                                 .startConsumingText(new InMemoryConsumer());
+        job.close();
+        
+        Assert.assertEquals(1, job.getStatistics().getCount(Counter.CACHE_FALLBACK));
+        Assert.assertEquals(1, job.getStatistics().getCount(Counter.REFRESH_ERROR));
+        Assert.assertEquals(0, job.getStatistics().getCount(Counter.REFRESH_SUCCESS));
+    }
+    
+    
+    @Test
+    public void testLatencyHistogram() throws Exception {
+        final LatencyHistogram histogram = new LatencyHistogram();
+        for (long i = 1; i <= 100000; i++) {
+            histogram.record(i * 1000);   // 1 µs ... 100 ms
+        }
+        
+        final ReplicationStatistics.Latency latency = histogram.getSnapshot();
+        Assert.assertEquals(100000, latency.getCount());
+        Assert.assertEquals(Duration.ofNanos(1000), latency.getMin());
+        Assert.assertEquals(Duration.ofMillis(100), latency.getMax());
+        Assert.assertEquals(50000500, latency.getMean().toNanos());
+        
+        assertWithinError(Duration.ofMillis(50), latency.getPercentile(0.5));
+        assertWithinError(Duration.ofMillis(99), latency.getPercentile(0.99));
+        assertWithinError(Duration.ofMillis(100), latency.getPercentile(1));
+        
+        // bucket bounds
+        for (int i = 0; i < LatencyHistogram.BUCKET_COUNT; i++) {
+            Assert.assertEquals(i, LatencyHistogram.indexOf(LatencyHistogram.highestValueOf(i)));
+            Assert.assertEquals(i + 1, LatencyHistogram.indexOf(LatencyHistogram.highestValueOf(i) + 1));
+        }
+    }
+    
+    private static void assertWithinError(final Duration expected, final Duration actual) {
+        Assert.assertTrue(actual + " not within error of " + expected, 
+                          Math.abs(expected.toNanos() - actual.toNanos()) <= (expected.toNanos() / 16));
+    }
+
+    
+    
+    private static final class CountingMetrics implements ReplicationMetrics {
+        private final Map<Counter, AtomicLong> counters = new ConcurrentHashMap<>();
+        
+        @Override
+        public void recordLatency(URI endpoint, Phase phase, long nanos) { }
+        
+        @Override
+        public void add(URI endpoint, Counter counter, long delta) {
+            counters.computeIfAbsent(counter, c -> new AtomicLong()).addAndGet(delta);
+        }
+        
+        public long get(Counter counter) {
+            return counters.getOrDefault(counter, new AtomicLong()).get();
+        }
+    }
+}
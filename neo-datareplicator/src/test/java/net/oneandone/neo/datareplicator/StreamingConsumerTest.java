@@ -0,0 +1,126 @@
+/*
+ * Copyright 1&1 Internet AG, https://github.com/1and1/
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.oneandone.neo.datareplicator;
+
+
+
+
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.google.common.io.ByteStreams;
+import com.google.common.io.Files;
+
+import net.oneandone.neo.datareplicator.utils.InMemoryConsumer;
+import net.oneandone.neo.datareplicator.utils.TestServlet;
+import net.oneandone.neo.datareplicator.utils.Utils;
+import net.oneandone.neo.datareplicator.utils.WebServer;
+
+
+public class StreamingConsumerTest {
+    
+    private static TestServlet servlet = new TestServlet();
+    private static WebServer server;
+
+    
+    @BeforeClass
+    public static void setUp() throws Exception {
+        server = WebServer.withServlet(servlet)
+                          .start();
+    }
+    
+    @AfterClass
+    public static void tearDown() throws Exception {
+        server.close();
+    }
+    
+    
+    @Test
+    public void testHttpSource() throws Exception {
+        File cacheDir = Files.createTempDir();
+        InMemoryConsumer testConsumer = new InMemoryConsumer();
+        
+        ReplicationJob job = ReplicationJob.source(server.getBasepath() + "hello.utf8.txt?charset=utf-8")
+                                           .withCacheDir(cacheDir)
+                                           .withRefreshPeriod(Duration.ofMillis(100))
+                                           .startConsumingStream(toTextConsumer(testConsumer));
+        Utils.assertMapEntryEquals(Utils.loadFileAsMap("hello.utf8.txt", "UTF-8"), Utils.toMap(testConsumer.waitForText()), "Greek");
+        
+        Thread.sleep(400);
+        job.close();
+        
+        // spooled data of unmodified refreshes has been removed
+        Assert.assertEquals(1, cacheDir.listFiles((dir, name) -> name.endsWith(".cache")).length);
+        Assert.assertEquals(0, cacheDir.listFiles((dir, name) -> name.endsWith(".temp")).length);
+    }
+    
+    
+    @Test
+    public void testFileSource() throws Exception {
+        File cacheDir = Files.createTempDir();
+        InMemoryConsumer testConsumer = new InMemoryConsumer();
+        
+        File file = new File("src" + File.separator + "test" + File.separator + "resources" + File.separator + "hello.utf8.txt");
+        ReplicationJob job = ReplicationJob.source(file.toURI())
+                                           .withCacheDir(cacheDir)
+                                           .startConsumingStream(toTextConsumer(testConsumer));
+        Utils.assertMapEntryEquals(Utils.loadFileAsMap("hello.utf8.txt", "UTF-8"), Utils.toMap(testConsumer.waitForText()), "Greek");
+        job.close();
+    }
+    
+    
+    @Test
+    public void testRejectedData() throws Exception {
+        File cacheDir = Files.createTempDir();
+        AtomicInteger numCalls = new AtomicInteger();
+        
+        try {
+            ReplicationJob.source(server.getBasepath() + "hello.utf8.txt?charset=utf-8")
+                          .withCacheDir(cacheDir)
+                          .startConsumingStream(is -> { 
+                                                    numCalls.incrementAndGet();
+                                                    throw new IllegalArgumentException("invalid data");
+                                                });
+            Assert.fail("RuntimeException expected");
+        } catch (RuntimeException expected) { }
+        
+        // rejected data will be neither cached nor kept as spooled file
+        Assert.assertEquals(1, numCalls.get());
+        Assert.assertEquals(0, cacheDir.listFiles((dir, name) -> name.endsWith(".cache")).length);
+        Assert.assertEquals(0, cacheDir.listFiles((dir, name) -> name.endsWith(".temp")).length);
+    }
+    
+    
+    private static Consumer<InputStream> toTextConsumer(final Consumer<String> consumer) {
+        return is -> {
+            try {
+                consumer.accept(new String(ByteStreams.toByteArray(is), "UTF-8"));
+            } catch (IOException ioe) {
+                throw new RuntimeException(ioe);
+            }
+        };
+    }
+}
@@ -0,0 +1,124 @@
+/*
+ * Copyright 1&1 Internet AG, https://github.com/1and1/
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.oneandone.neo.datareplicator;
+
+
+
+
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.net.URI;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.jar.JarOutputStream;
+import java.util.zip.ZipEntry;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.Files;
+
+
+public class UnmodifiedSourceTest {
+    
+    @Test
+    public void testFileSource() throws Exception {
+        File sourceFile = new File(Files.createTempDir(), "source.txt");
+        Files.write("version 1", sourceFile, Charsets.UTF_8);
+        sourceFile.setLastModified(Instant.now().minus(Duration.ofMinutes(1)).toEpochMilli());
+        
+        FileCache fileCache = new FileCache(Files.createTempDir(), sourceFile.toURI().toString(), Duration.ofDays(1));
+        FileDatasource datasource = new FileDatasource(sourceFile.toURI(), fileCache);
+
+        // initial load -> file will be read
+        Data data = datasource.load();
+        Assert.assertTrue(data.getFile().getName().endsWith(".temp"));
+        fileCache.commit(data);
+        
+        // unmodified -> file will not be read. The cached data is returned 
+        data = datasource.load();
+        Assert.assertTrue(data.getFile().getName().endsWith(".cache"));
+        Assert.assertEquals("version 1", data.asText());
+        
+        // modified -> file will be read 
+        Files.write("version 2", sourceFile, Charsets.UTF_8);
+        data = datasource.load();
+        Assert.assertTrue(data.getFile().getName().endsWith(".temp"));
+        Assert.assertEquals("version 2", data.asText());
+        fileCache.commit(data);
+        
+        // recently modified -> file will be read, even though it is unmodified  
+        data = datasource.load();
+        Assert.assertTrue(data.getFile().getName().endsWith(".temp"));
+        fileCache.discard(data);
+    }
+    
+    
+    @Test
+    public void testClasspathSource() throws Exception {
+        URI uri = URI.create("classpath:hello.utf8.txt");
+        FileCache fileCache = new FileCache(Files.createTempDir(), uri.toString(), Duration.ofDays(1));
+        ClasspathDatasource datasource = new ClasspathDatasource(uri, fileCache);
+        
+        // initial load -> resource will be read
+        Data data = datasource.load();
+        Assert.assertTrue(data.getFile().getName().endsWith(".temp"));
+        fileCache.commit(data);
+        
+        // unmodified -> resource will not be read. The cached data is returned 
+        data = datasource.load();
+        Assert.assertTrue(data.getFile().getName().endsWith(".cache"));
+    }
+    
+    
+    @Test
+    public void testJarClasspathSource() throws Exception {
+        final File jarFile = new File(Files.createTempDir(), "resources.jar");
+        try (JarOutputStream os = new JarOutputStream(new FileOutputStream(jarFile))) {
+            os.putNextEntry(new ZipEntry("jarred.txt"));
+            os.write("jarred".getBytes(Charsets.UTF_8));
+            os.closeEntry();
+        }
+        jarFile.setLastModified(Instant.now().minus(Duration.ofMinutes(2)).toEpochMilli());
+        
+        final ClassLoader contextClassLoader = Thread.currentThread().getContextClassLoader();
+        try (URLClassLoader classLoader = new URLClassLoader(new URL[] { jarFile.toURI().toURL() }, null)) {
+            Thread.currentThread().setContextClassLoader(classLoader);
+            
+            URI uri = URI.create("classpath:jarred.txt");
+            FileCache fileCache = new FileCache(Files.createTempDir(), uri.toString(), Duration.ofDays(1));
+            ClasspathDatasource datasource = new ClasspathDatasource(uri, fileCache);
+            
+            // initial load -> resource will be read
+            Data data = datasource.load();
+            Assert.assertTrue(data.getFile().getName().endsWith(".temp"));
+            Assert.assertEquals("jarred", data.asText());
+            fileCache.commit(data);
+            
+            // the jar file is not checked anymore (the attributes of the jar file are changed to detect it) 
+            jarFile.setLastModified(Instant.now().minus(Duration.ofMinutes(1)).toEpochMilli());
+            data = datasource.load();
+            Assert.assertTrue(data.getFile().getName().endsWith(".cache"));
+            Assert.assertEquals("jarred", data.asText());
+        } finally {
+            Thread.currentThread().setContextClassLoader(contextClassLoader);
+        }
+    }
+}
@@ -0,0 +1,137 @@
+/*
+ * Copyright 1&1 Internet AG, https://github.com/1and1/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.oneandone.neo.datareplicator.utils;
+
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import com.google.common.hash.Hashing;
+
+
+/**
+ * Test servlet which serves an in-memory content and supports conditional requests as well as 
+ * open-ended range requests (<i>Range: bytes=&lt;start&gt;-</i>, optionally conditional by <i>If-Range</i>). 
+ * The <i>delay</i> parameter delays the response by the given millis. By default the ETag is derived from
+ * the content. If ETags per generation are activated, the ETag changes by setting the content only, but not by 
+ * appending (like append-only log servers do)
+ */
+public class AppendableTestServlet extends HttpServlet {
+    private static final long serialVersionUID = -2410948277160372610L;
+    private static final Pattern RANGE_PATTERN = Pattern.compile("bytes=(\\d+)-");
+    
+    private final AtomicInteger numFullResponses = new AtomicInteger();
+    private final AtomicInteger numPartialResponses = new AtomicInteger();
+    private final AtomicInteger numNotModifiedResponses = new AtomicInteger();
+    private volatile byte[] content = new byte[0];
+    private volatile int generation = 0;
+    private volatile boolean isEtagPerGeneration = false;
+    
+    
+    @Override
+    protected void doGet(HttpServletRequest req, HttpServletResponse resp) throws IOException {
+        if (req.getParameter("delay") != null) {
+            try {
+                Thread.sleep(Long.parseLong(req.getParameter("delay")));
+            } catch (InterruptedException ignore) { }
+        }
+        
+        final byte[] content;
+        final String etag;
+        synchronized (this) {
+            content = this.content;
+            etag = isEtagPerGeneration ? "\"generation-" + generation + "\""
+                                       : "\"" + Hashing.md5().hashBytes(content).toString() + "\"";
+        }
+        resp.setHeader("ETag", etag);
+        resp.setHeader("Accept-Ranges", "bytes");
+        resp.setContentType("text/plain; charset=utf-8");
+        
+        // not modified?
+        if (etag.equals(req.getHeader("If-None-Match"))) {
+            numNotModifiedResponses.incrementAndGet();
+            resp.setStatus(304);
+            return;
+        }
+
+        // range request?
+        final String range = req.getHeader("Range");
+        final String ifRange = req.getHeader("If-Range");
+        if ((range != null) && ((ifRange == null) || ifRange.equals(etag))) {
+            final Matcher matcher = RANGE_PATTERN.matcher(range);
+            if (matcher.matches()) {
+                final int start = Integer.parseInt(matcher.group(1));
+                if (start >= content.length) {
+                    resp.setHeader("Content-Range", "bytes */" + content.length);
+                    resp.setStatus(416);
+                    return;
+                }
+                
+                numPartialResponses.incrementAndGet();
+                resp.setStatus(206);
+                resp.setHeader("Content-Range", "bytes " + start + "-" + (content.length - 1) + "/" + content.length);
+                resp.getOutputStream().write(Arrays.copyOfRange(content, start, content.length));
+                return;
+            }
+        }
+        
+        numFullResponses.incrementAndGet();
+        resp.getOutputStream().write(content);
+    }
+    
+    
+    public synchronized void setContent(final byte[] content) {
+        this.content = content;
+        this.generation++;
+    }
+    
+    public synchronized void append(final byte[] bytes) {
+        final byte[] newContent = Arrays.copyOf(content, content.length + bytes.length);
+        System.arraycopy(bytes, 0, newContent, content.length, bytes.length);
+        this.content = newContent;
+    }
+    
+    public void setEtagPerGeneration(final boolean isEtagPerGeneration) {
+        this.isEtagPerGeneration = isEtagPerGeneration;
+    }
+    
+    public int getNumFullResponses() {
+        return numFullResponses.get();
+    }
+    
+    public int getNumPartialResponses() {
+        return numPartialResponses.get();
+    }
+    
+    public int getNumNotModifiedResponses() {
+        return numNotModifiedResponses.get();
+    }
+    
+    public void reset() {
+        numFullResponses.set(0);
+        numPartialResponses.set(0);
+        numNotModifiedResponses.set(0);
+        isEtagPerGeneration = false;
+    }
+}
@@ -0,0 +1,97 @@
+/*
+ * Copyright 1&1 Internet AG, https://github.com/1and1/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.oneandone.neo.datareplicator.utils;
+
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+
+/**
+ * Test servlet which serves an in-memory content compressed, if the client accepts it. The <i>encoding</i> 
+ * parameter controls the used encoding: <i>gzip</i> (default), <i>deflate</i> or <i>rawdeflate</i> (deflate 
+ * without zlib wrapper as sent by some servers) 
+ */
+public class CompressingTestServlet extends HttpServlet {
+    private static final long serialVersionUID = 3937461729281761846L;
+    
+    private final AtomicInteger numCompressedResponses = new AtomicInteger();
+    private final AtomicInteger numUncompressedResponses = new AtomicInteger();
+    private volatile byte[] content = new byte[0];
+    private volatile byte[] gzipped = new byte[0];
+    
+    
+    @Override
+    protected void doGet(HttpServletRequest req, HttpServletResponse resp) throws IOException {
+        resp.setContentType("application/json; charset=utf-8");
+        
+        final String acceptEncoding = req.getHeader("Accept-Encoding");
+        final String encoding = (req.getParameter("encoding") == null) ? "gzip" : req.getParameter("encoding");
+        final String contentEncoding = encoding.equals("rawdeflate") ? "deflate" : encoding;
+        
+        if ((acceptEncoding != null) && acceptEncoding.contains(contentEncoding)) {
+            numCompressedResponses.incrementAndGet();
+            resp.setHeader("Content-Encoding", contentEncoding);
+            resp.getOutputStream().write(encoding.equals("gzip") ? gzipped : compress(content, encoding));
+        } else {
+            numUncompressedResponses.incrementAndGet();
+            resp.getOutputStream().write(content);
+        }
+    }
+    
+    
+    public synchronized void setContent(final byte[] content) {
+        this.content = content;
+        this.gzipped = compress(content, "gzip");
+    }
+    
+    public int getNumCompressedResponses() {
+        return numCompressedResponses.get();
+    }
+    
+    public int getNumUncompressedResponses() {
+        return numUncompressedResponses.get();
+    }
+    
+    public void reset() {
+        numCompressedResponses.set(0);
+        numUncompressedResponses.set(0);
+    }
+    
+    
+    private static byte[] compress(final byte[] data, final String encoding) {
+        try {
+            final ByteArrayOutputStream bos = new ByteArrayOutputStream();
+            try (OutputStream os = encoding.equals("gzip") ? new GZIPOutputStream(bos) 
+                                                           : new DeflaterOutputStream(bos, new Deflater(Deflater.DEFAULT_COMPRESSION, encoding.equals("rawdeflate")))) {
+                os.write(data);
+            }
+            return bos.toByteArray();
+        } catch (final IOException ioe) {
+            throw new RuntimeException(ioe);
+        }
+    }
+}
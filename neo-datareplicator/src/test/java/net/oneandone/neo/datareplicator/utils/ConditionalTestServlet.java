@@ -0,0 +1,102 @@
+/*
+ * Copyright 1&1 Internet AG, https://github.com/1and1/
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.oneandone.neo.datareplicator.utils;
+
+
+
+
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+
+import com.google.common.hash.Hashing;
+import com.google.common.io.Files;
+
+
+/**
+ * Test servlet which supports conditional requests. The <i>validator</i> parameter controls which 
+ * validators are returned: <i>etag</i>, <i>lastmodified</i> or both (default) 
+ */
+public class ConditionalTestServlet extends HttpServlet {
+    private static final long serialVersionUID = 5284947727409512395L;
+    
+    private final AtomicInteger numFullResponses = new AtomicInteger();
+    private final AtomicInteger numNotModifiedResponses = new AtomicInteger();
+    
+    
+    @Override
+    protected void doGet(HttpServletRequest req, HttpServletResponse resp) throws IOException {
+        String resource = req.getRequestURI().substring(1);
+        final File file = new File("src" + File.separator + "test" + File.separator + "resources" + File.separator + resource);
+        final byte[] content = Files.toByteArray(file);
+        
+        final String validator = req.getParameter("validator");
+        final boolean useEtag = (validator == null) || validator.equals("etag");
+        final boolean useLastModified = (validator == null) || validator.equals("lastmodified");
+
+        final String etag = "\"" + Hashing.md5().hashBytes(content).toString() + "\"";
+        final long lastModified = (file.lastModified() / 1000) * 1000;   // http dates have seconds precision 
+        
+        if (useEtag) {
+            resp.setHeader("ETag", etag);
+        }
+        if (useLastModified) {
+            resp.setDateHeader("Last-Modified", lastModified);
+        }
+        
+        
+        // not modified?
+        final String ifNoneMatch = req.getHeader("If-None-Match");
+        final long ifModifiedSince = req.getDateHeader("If-Modified-Since");
+        if ((useEtag && etag.equals(ifNoneMatch)) || 
+            (useLastModified && (ifNoneMatch == null) && (ifModifiedSince >= lastModified))) {
+            numNotModifiedResponses.incrementAndGet();
+            resp.setStatus(304);
+            return;
+        }
+        
+        
+        String charset = req.getParameter("charset"); 
+        if (charset == null) {
+            resp.setContentType("text/plain");
+        } else {
+            resp.setContentType("text/plain; charset=" + charset);
+        }
+        
+        numFullResponses.incrementAndGet();
+        resp.getOutputStream().write(content);
+    }
+    
+    
+    public int getNumFullResponses() {
+        return numFullResponses.get();
+    }
+    
+    public int getNumNotModifiedResponses() {
+        return numNotModifiedResponses.get();
+    }
+    
+    public void reset() {
+        numFullResponses.set(0);
+        numNotModifiedResponses.set(0);
+    }
+}
@@ -0,0 +1,56 @@
+/*
+ * Copyright 1&1 Internet AG, https://github.com/1and1/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.oneandone.neo.datareplicator.utils;
+
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import com.google.common.base.Charsets;
+
+
+/**
+ * Test servlet which responds the given content after the given delay
+ */
+public class SlowTestServlet extends HttpServlet {
+    private static final long serialVersionUID = -2787036434287290577L;
+    
+    private final AtomicReference<String> content = new AtomicReference<>("");
+    private final AtomicLong delayMillis = new AtomicLong();
+    
+    
+    public void set(final String content, final Duration delay) {
+        this.content.set(content);
+        this.delayMillis.set(delay.toMillis());
+    }
+    
+    @Override
+    protected void doGet(final HttpServletRequest req, final HttpServletResponse resp) throws IOException {
+        try {
+            Thread.sleep(delayMillis.get());
+        } catch (final InterruptedException ignore) { }
+        
+        resp.setContentType("text/plain; charset=utf-8");
+        resp.getOutputStream().write(content.get().getBytes(Charsets.UTF_8));
+    }
+}